@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Per-thread sequence of entry indexes. Each benchmark thread gets its own sequence, derived from
+ * a fixed seed and the thread index, so runs with the same number of threads access the same
+ * entries in the same order.
+ * @author Andres Rodriguez.
+ */
+@State(Scope.Thread)
+public class AccessCursor {
+	/** Random index generator. */
+	private Random random;
+	/** Sequential counter. */
+	private int counter;
+
+	/** Sets up the sequence of a thread. */
+	@Setup(Level.Trial)
+	public void setup(ThreadParams params) {
+		random = new Random(BenchmarkData.ACCESS_SEED + params.getThreadIndex());
+		counter = params.getThreadIndex();
+	}
+
+	/** Returns a random index in [0, bound). */
+	int random(int bound) {
+		return random.nextInt(bound);
+	}
+
+	/** Returns the next sequential index in [0, bound), starting at the thread index. */
+	int sequential(int bound) {
+		final int index = counter % bound;
+		counter = index + 1;
+		return index;
+	}
+}
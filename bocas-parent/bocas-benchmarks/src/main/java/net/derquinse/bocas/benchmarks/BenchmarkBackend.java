@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasException;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.jdbc.JDBCBocasServices;
+import net.derquinse.bocas.je.JEBocasServices;
+import net.derquinse.bocas.jersey.client.BocasClientFactory;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Bucket back-end under benchmark, with the resources needed to run it. Every back-end is created
+ * empty and its resources are released when closed.
+ * @author Andres Rodriguez.
+ */
+final class BenchmarkBackend implements Closeable {
+	/** Heap memory bucket. */
+	static final String MEMORY = "memory";
+	/** Off-heap memory bucket. */
+	static final String OFF_HEAP = "offHeap";
+	/** Berkeley DB JE bucket in a temporary directory. */
+	static final String JE = "je";
+	/** JDBC bucket on an in-memory H2 database. */
+	static final String JDBC = "jdbc";
+	/** Jersey client of an in-process server backed by a memory bucket. */
+	static final String JERSEY = "jersey";
+
+	/** H2 database counter. */
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	/**
+	 * Opens a back-end.
+	 * @param name Back-end name.
+	 * @throws IllegalArgumentException if the back-end is unknown.
+	 */
+	static BenchmarkBackend open(String name) throws IOException {
+		final Closer closer = Closer.create();
+		try {
+			return new BenchmarkBackend(create(checkNotNull(name), closer), closer);
+		} catch (Throwable t) {
+			throw closer.rethrow(t, IOException.class);
+		}
+	}
+
+	private static Bocas create(String name, Closer closer) throws IOException {
+		if (MEMORY.equals(name)) {
+			return BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		} else if (OFF_HEAP.equals(name)) {
+			return BocasServices.offHeapBucket(sha256());
+		} else if (JE.equals(name)) {
+			final File directory = Files.createTempDir();
+			closer.register(new Closeable() {
+				@Override
+				public void close() throws IOException {
+					delete(directory);
+				}
+			});
+			return register(closer, JEBocasServices.newBuilder().setCacheSizeMB(64).build(directory.getAbsolutePath()));
+		} else if (JDBC.equals(name)) {
+			final JdbcDataSource ds = new JdbcDataSource();
+			ds.setURL("jdbc:h2:mem:bocas" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+			execute(ds, "CREATE TABLE BOCAS_TABLE(BOCAS_KEY BINARY(32) PRIMARY KEY, BOCAS_VALUE BLOB)");
+			closer.register(new Closeable() {
+				@Override
+				public void close() throws IOException {
+					execute(ds, "SHUTDOWN");
+				}
+			});
+			return register(closer, JDBCBocasServices.newBuilder().build(ds));
+		} else if (JERSEY.equals(name)) {
+			final URI uri = URI.create("http://localhost:" + freePort() + "/");
+			final DefaultResourceConfig config = new DefaultResourceConfig();
+			final Bocas served = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+			config.getSingletons().add(new BenchmarkResource(BocasServices.shared(served)));
+			final HttpServer server = HttpServerFactory.create(uri, config);
+			server.start();
+			closer.register(new Closeable() {
+				@Override
+				public void close() throws IOException {
+					server.stop(0);
+				}
+			});
+			return BocasClientFactory.create().get(uri, MemoryByteSourceLoader.get()).getBucket("benchmark");
+		}
+		throw new IllegalArgumentException("Unknown back-end " + name);
+	}
+
+	/** Registers a bucket to be closed. */
+	private static Bocas register(Closer closer, final Bocas bocas) {
+		closer.register(new Closeable() {
+			@Override
+			public void close() throws IOException {
+				bocas.close();
+			}
+		});
+		return bocas;
+	}
+
+	/** Executes a statement in a new connection. */
+	private static void execute(JdbcDataSource ds, String sql) {
+		try {
+			final Connection cnn = ds.getConnection();
+			try {
+				cnn.createStatement().execute(sql);
+			} finally {
+				cnn.close();
+			}
+		} catch (SQLException e) {
+			throw new BocasException(e);
+		}
+	}
+
+	/** Returns a free local port. */
+	private static int freePort() throws IOException {
+		final ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/** Deletes a file or directory recursively. */
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/** Bucket. */
+	private final Bocas bocas;
+	/** Resources to release. */
+	private final Closer closer;
+
+	private BenchmarkBackend(Bocas bocas, Closer closer) {
+		this.bocas = bocas;
+		this.closer = closer;
+	}
+
+	/** Returns the bucket. */
+	Bocas bucket() {
+		return bocas;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		closer.close();
+	}
+}
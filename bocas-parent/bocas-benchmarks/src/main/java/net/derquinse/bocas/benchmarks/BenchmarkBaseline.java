@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.derquinse.common.base.NotInstantiable;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Compares the results of a benchmark run with a baseline run, both saved by JMH in CSV format
+ * ({@code -rf csv -rff file.csv}). A result is a regression if its score is worse than the baseline
+ * one by more than the tolerance, where worse means lower for throughput and higher for the time
+ * based modes. Results without a baseline are ignored.
+ * <p>
+ * Run it as a Java application with the baseline file, the current file and, optionally, the
+ * tolerance as a percentage (10% by default). The exit status is 1 if there are regressions.
+ * @author Andres Rodriguez.
+ */
+public final class BenchmarkBaseline extends NotInstantiable {
+	private BenchmarkBaseline() {
+	}
+
+	/** Default tolerance. */
+	private static final double DEFAULT_TOLERANCE = 0.1;
+	/** Throughput mode. */
+	private static final String THROUGHPUT = "thrpt";
+	/** Prefix of parameter columns. */
+	private static final String PARAM = "Param: ";
+
+	/** Benchmark result. */
+	static final class Result {
+		/** Mode. */
+		final String mode;
+		/** Score. */
+		final double score;
+		/** Unit. */
+		final String unit;
+
+		Result(String mode, double score, String unit) {
+			this.mode = mode;
+			this.score = score;
+			this.unit = unit;
+		}
+	}
+
+	/** Splits a CSV line, removing the quotes. */
+	static List<String> split(String line) {
+		final List<String> fields = Lists.newArrayList();
+		final StringBuilder b = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					b.append(c);
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				fields.add(b.toString());
+				b.setLength(0);
+			} else {
+				b.append(c);
+			}
+		}
+		fields.add(b.toString());
+		return fields;
+	}
+
+	/**
+	 * Parses the lines of a JMH CSV result file.
+	 * @return The results by benchmark, mode, threads and parameters.
+	 * @throws IllegalArgumentException if the lines are not a JMH CSV result file.
+	 */
+	static Map<String, Result> parse(List<String> lines) {
+		checkArgument(!lines.isEmpty(), "Empty result file");
+		final List<String> header = split(lines.get(0));
+		final int benchmark = header.indexOf("Benchmark");
+		final int mode = header.indexOf("Mode");
+		final int threads = header.indexOf("Threads");
+		final int score = header.indexOf("Score");
+		final int unit = header.indexOf("Unit");
+		checkArgument(benchmark >= 0 && mode >= 0 && threads >= 0 && score >= 0 && unit >= 0,
+				"Not a JMH CSV result file");
+		final Map<String, Result> results = Maps.newLinkedHashMap();
+		for (String line : lines.subList(1, lines.size())) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			final List<String> fields = split(line);
+			checkArgument(fields.size() == header.size(), "Invalid result line: %s", line);
+			final List<String> key = Lists.newArrayList(fields.get(benchmark), fields.get(mode), "t=" + fields.get(threads));
+			for (int i = 0; i < header.size(); i++) {
+				if (header.get(i).startsWith(PARAM) && !fields.get(i).isEmpty()) {
+					key.add(header.get(i).substring(PARAM.length()) + "=" + fields.get(i));
+				}
+			}
+			final double value;
+			try {
+				value = Double.parseDouble(fields.get(score).replace(',', '.'));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid score: " + line);
+			}
+			results.put(Joiner.on(' ').join(key), new Result(fields.get(mode), value, fields.get(unit)));
+		}
+		return results;
+	}
+
+	/**
+	 * Compares two sets of results.
+	 * @param baseline Baseline results.
+	 * @param current Current results.
+	 * @param tolerance Allowed relative difference.
+	 * @return The description of the regressions found.
+	 */
+	static List<String> compare(Map<String, Result> baseline, Map<String, Result> current, double tolerance) {
+		checkArgument(tolerance >= 0.0, "The tolerance must be >= 0");
+		final ImmutableList.Builder<String> regressions = ImmutableList.builder();
+		for (Entry<String, Result> entry : current.entrySet()) {
+			final Result base = baseline.get(entry.getKey());
+			final Result result = entry.getValue();
+			if (base == null || !base.unit.equals(result.unit) || base.score == 0.0) {
+				continue;
+			}
+			final double change = (result.score - base.score) / base.score;
+			final boolean regression = THROUGHPUT.equals(result.mode) ? change < -tolerance : change > tolerance;
+			if (regression) {
+				regressions.add(String.format("%s: %.3f -> %.3f %s (%+.1f%%)", entry.getKey(), base.score, result.score,
+						result.unit, change * 100.0));
+			}
+		}
+		return regressions.build();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: BenchmarkBaseline baseline.csv current.csv [tolerance%]");
+			System.exit(2);
+		}
+		final Map<String, Result> baseline = parse(Files.readLines(new File(args[0]), Charsets.UTF_8));
+		final Map<String, Result> current = parse(Files.readLines(new File(args[1]), Charsets.UTF_8));
+		final double tolerance = args.length > 2 ? Double.parseDouble(args[2]) / 100.0 : DEFAULT_TOLERANCE;
+		final List<String> regressions = compare(baseline, current, tolerance);
+		for (String regression : regressions) {
+			System.out.println(regression);
+		}
+		System.out.printf("%d results compared, %d regressions%n", current.size(), regressions.size());
+		if (!regressions.isEmpty()) {
+			System.exit(1);
+		}
+	}
+}
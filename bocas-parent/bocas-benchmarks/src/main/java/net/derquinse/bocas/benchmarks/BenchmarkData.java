@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Random;
+
+import net.derquinse.common.base.NotInstantiable;
+import net.derquinse.common.io.MemoryByteSource;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Deterministic data for the benchmarks. Every value is generated from a fixed seed, so that
+ * different runs, and runs of different versions, work on exactly the same data and their results
+ * can be compared.
+ * <p>
+ * The benchmarks are run from the shaded jar built by this module, e.g.
+ * {@code java -jar target/benchmarks.jar -t 4 -p valueSize=4096}. The number of threads is set with
+ * JMH's {@code -t} option and the parameters with {@code -p}. To check for regressions, save the
+ * results of a baseline run with {@code -rf csv -rff baseline.csv} and compare later runs against
+ * them with {@link BenchmarkBaseline}.
+ * @author Andres Rodriguez.
+ */
+public final class BenchmarkData extends NotInstantiable {
+	private BenchmarkData() {
+	}
+
+	/** Seed of the values preloaded in the buckets. */
+	public static final long PRELOAD_SEED = 0x5eedL;
+	/** Seed of the values written by the benchmarks. */
+	public static final long WRITE_SEED = 0xb0ca5L;
+	/** Seed of the key access sequences. */
+	public static final long ACCESS_SEED = 0xacce55L;
+
+	/**
+	 * Generates values.
+	 * @param count Number of values.
+	 * @param size Size of each value.
+	 * @param seed Seed of the contents.
+	 */
+	public static List<MemoryByteSource> values(int count, int size, long seed) {
+		checkArgument(count >= 0, "The number of values must be >= 0");
+		checkArgument(size > 0, "The value size must be > 0");
+		final Random random = new Random(seed);
+		final List<MemoryByteSource> values = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			final byte[] data = new byte[size];
+			random.nextBytes(data);
+			values.add(MemoryByteSource.wrap(data));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static net.derquinse.bocas.benchmarks.BenchmarkData.PRELOAD_SEED;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.WRITE_SEED;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.values;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
+
+/**
+ * Benchmark of the bucket operations of every back-end. With a batch size of one the single-key
+ * operations are measured, otherwise the bulk ones, and the score is the number of calls per
+ * second. Reads access random preloaded entries. Writes cycle over a fixed pool of values, so once
+ * the pool has been written they measure the path of values already stored, which is the common one
+ * for content-addressed buckets.
+ * @author Andres Rodriguez.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xmx2g", "-XX:MaxDirectMemorySize=2g" })
+public class BucketBenchmark {
+	/** Number of preloaded entries and of values to write. */
+	static final int ENTRIES = 1024;
+	/** Number of values per preloading write. */
+	private static final int PRELOAD_BATCH = 64;
+
+	/** Back-end. */
+	@Param({ BenchmarkBackend.MEMORY, BenchmarkBackend.OFF_HEAP, BenchmarkBackend.JE, BenchmarkBackend.JDBC,
+			BenchmarkBackend.JERSEY })
+	public String backend;
+	/** Size of the values. */
+	@Param({ "256", "4096", "65536" })
+	public int valueSize;
+	/** Number of keys per operation. */
+	@Param({ "1", "16", "128" })
+	public int batchSize;
+
+	/** Back-end resources. */
+	private BenchmarkBackend opened;
+	/** Bucket. */
+	private Bocas bocas;
+	/** Preloaded keys. */
+	private List<ByteString> keys;
+	/** Values to write. */
+	private List<MemoryByteSource> writes;
+
+	/** Creates the bucket and preloads the entries. */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		opened = BenchmarkBackend.open(backend);
+		bocas = opened.bucket();
+		keys = Lists.newArrayListWithCapacity(ENTRIES);
+		for (List<MemoryByteSource> batch : Lists.partition(values(ENTRIES, valueSize, PRELOAD_SEED), PRELOAD_BATCH)) {
+			keys.addAll(bocas.putAll(batch));
+		}
+		writes = values(ENTRIES, valueSize, WRITE_SEED);
+	}
+
+	/** Releases the back-end. */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		opened.close();
+	}
+
+	/** Returns {@code batchSize} consecutive elements of a list, starting at a random position. */
+	private <T> List<T> batch(List<T> list, AccessCursor cursor) {
+		final int from = cursor.random(list.size() - batchSize + 1);
+		return list.subList(from, from + batchSize);
+	}
+
+	/** Consumes a value. */
+	private static void consume(ByteSource value, Blackhole bh) throws IOException {
+		bh.consume(value.size());
+	}
+
+	@Benchmark
+	public void get(AccessCursor cursor, Blackhole bh) throws IOException {
+		if (batchSize == 1) {
+			final Optional<ByteSource> value = bocas.get(keys.get(cursor.random(ENTRIES)));
+			consume(value.get(), bh);
+		} else {
+			for (ByteSource value : bocas.get(batch(keys, cursor)).values()) {
+				consume(value, bh);
+			}
+		}
+	}
+
+	@Benchmark
+	public Object contains(AccessCursor cursor) {
+		if (batchSize == 1) {
+			return bocas.contains(keys.get(cursor.random(ENTRIES)));
+		}
+		return bocas.contained(batch(keys, cursor));
+	}
+
+	@Benchmark
+	public Object put(AccessCursor cursor) {
+		if (batchSize == 1) {
+			return bocas.put(writes.get(cursor.sequential(ENTRIES)));
+		}
+		final int from = cursor.sequential(ENTRIES / batchSize) * batchSize;
+		return bocas.putAll(writes.subList(from, from + batchSize));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.PRELOAD_SEED;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.values;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.CachingBocasService;
+import net.derquinse.bocas.GuavaCachingBocasBuilder;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Guava caching buckets at different hit ratios. The cached bucket holds
+ * {@code cacheSize / hitRatio} entries and reads are uniformly distributed among them, so with a
+ * full cache of {@code cacheSize} entries the expected hit ratio is the requested one. Misses are
+ * loaded from a memory bucket, so they measure the cache overhead rather than a slow back-end. The
+ * actual hit ratio is printed when the trial ends.
+ * @author Andres Rodriguez.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xmx2g" })
+public class CachingBenchmark {
+	/** Maximum number of cached entries. */
+	private static final int CACHE_SIZE = 4096;
+
+	/** Expected hit ratio. */
+	@Param({ "0.5", "0.9", "0.99" })
+	public double hitRatio;
+	/** Eviction policy, {@code lru} or {@code tinyLfu}. */
+	@Param({ "lru", "tinyLfu" })
+	public String policy;
+	/** Size of the values. */
+	@Param({ "256", "4096" })
+	public int valueSize;
+
+	/** Caching service. */
+	private CachingBocasService service;
+	/** Caching bucket. */
+	private Bocas bocas;
+	/** Keys of the cached bucket. */
+	private List<ByteString> keys;
+
+	/** Creates and warms the cache. */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		final Bocas source = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		keys = source.putAll(values((int) Math.round(CACHE_SIZE / hitRatio), valueSize, PRELOAD_SEED));
+		final GuavaCachingBocasBuilder builder = BocasServices.cache().maximumSize(CACHE_SIZE);
+		if ("tinyLfu".equals(policy)) {
+			builder.tinyLfu();
+		} else if (!"lru".equals(policy)) {
+			throw new IllegalArgumentException("Unknown policy " + policy);
+		}
+		service = builder.build(BocasServices.shared(source));
+		bocas = service.getBucket("benchmark");
+		bocas.get(keys);
+	}
+
+	/** Prints the actual hit ratio. */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.printf("Hit ratio: %.3f%n", service.stats().hitRate());
+	}
+
+	@Benchmark
+	public Object get(AccessCursor cursor) {
+		return bocas.get(keys.get(cursor.random(keys.size())));
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.PRELOAD_SEED;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.WRITE_SEED;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.values;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.BloomFilterBocas;
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark of the overhead of the bucket decorators over a memory bucket. Reads alternate present
+ * and absent keys, so that decorators answering misses are measured too. The batching decorator is
+ * built with a short window, and only merges reads when run with several threads.
+ * @author Andres Rodriguez.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xmx2g" })
+public class DecoratorBenchmark {
+	/** Number of preloaded entries and of values to write. */
+	private static final int ENTRIES = 1024;
+
+	/** Decorator. */
+	@Param({ "none", "instrumented", "batching", "bloomFilter", "syncReplica" })
+	public String decorator;
+	/** Size of the values. */
+	@Param({ "256", "4096" })
+	public int valueSize;
+
+	/** Decorated bucket. */
+	private Bocas bocas;
+	/** Preloaded keys, alternating with absent ones. */
+	private List<ByteString> keys;
+	/** Values to write. */
+	private List<MemoryByteSource> writes;
+
+	private static Bocas memory() {
+		return BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+	}
+
+	/** Creates the bucket and preloads the entries. */
+	@Setup(Level.Trial)
+	public void setup() {
+		final Bocas source = memory();
+		final List<ByteString> present = source.putAll(values(ENTRIES, valueSize, PRELOAD_SEED));
+		final List<MemoryByteSource> absent = values(ENTRIES, valueSize, WRITE_SEED + 1);
+		keys = Lists.newArrayListWithCapacity(2 * ENTRIES);
+		for (int i = 0; i < ENTRIES; i++) {
+			keys.add(present.get(i));
+			keys.add(sha256().hash(absent.get(i)));
+		}
+		writes = values(ENTRIES, valueSize, WRITE_SEED);
+		if ("none".equals(decorator)) {
+			bocas = source;
+		} else if ("instrumented".equals(decorator)) {
+			bocas = BocasServices.instrumented().sink(BocasServices.metrics()).build(source, "benchmark");
+		} else if ("batching".equals(decorator)) {
+			bocas = BocasServices.batching().window(100L, TimeUnit.MICROSECONDS).build(source);
+		} else if ("bloomFilter".equals(decorator)) {
+			final BloomFilterBocas bloom = BocasServices.bloomFilter().expectedInsertions(4 * ENTRIES).build(source,
+					"benchmark");
+			bloom.rebuild();
+			bocas = bloom;
+		} else if ("syncReplica".equals(decorator)) {
+			final Bocas replica = memory();
+			replica.putAll(source.get(present).values());
+			bocas = BocasServices.syncReplica(source, replica, true);
+		} else {
+			throw new IllegalArgumentException("Unknown decorator " + decorator);
+		}
+	}
+
+	@Benchmark
+	public Object get(AccessCursor cursor) {
+		return bocas.get(keys.get(cursor.random(keys.size())));
+	}
+
+	@Benchmark
+	public boolean contains(AccessCursor cursor) {
+		return bocas.contains(keys.get(cursor.random(keys.size())));
+	}
+
+	@Benchmark
+	public Object put(AccessCursor cursor) {
+		return bocas.put(writes.get(cursor.sequential(ENTRIES)));
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.derquinse.common.base.NotInstantiable;
+
+/**
+ * Random distributions used by the load generator.
+ * @author Andres Rodriguez.
+ */
+final class Distributions extends NotInstantiable {
+	private Distributions() {
+	}
+
+	/** Distribution of integer values. */
+	interface IntDistribution {
+		/** Returns the next value. */
+		int next(Random random);
+	}
+
+	/** Returns a distribution that always returns the same value. */
+	static IntDistribution fixed(final int value) {
+		return new IntDistribution() {
+			@Override
+			public int next(Random random) {
+				return value;
+			}
+		};
+	}
+
+	/** Returns a uniform distribution in [min, max]. */
+	static IntDistribution uniform(final int min, final int max) {
+		checkArgument(min <= max, "The minimum must be <= the maximum");
+		return new IntDistribution() {
+			@Override
+			public int next(Random random) {
+				return min + random.nextInt(max - min + 1);
+			}
+		};
+	}
+
+	/**
+	 * Returns a log-normal distribution truncated to [1, max].
+	 * @param median Median value.
+	 * @param sigma Standard deviation of the logarithm of the values.
+	 * @param max Maximum value.
+	 */
+	static IntDistribution logNormal(int median, final double sigma, final int max) {
+		checkArgument(median > 0, "The median must be > 0");
+		checkArgument(sigma >= 0.0, "The sigma must be >= 0");
+		checkArgument(max >= median, "The maximum must be >= the median");
+		final double mu = Math.log(median);
+		return new IntDistribution() {
+			@Override
+			public int next(Random random) {
+				final double value = Math.exp(mu + sigma * random.nextGaussian());
+				return (int) Math.max(1L, Math.min(max, Math.round(value)));
+			}
+		};
+	}
+
+	/**
+	 * Returns a Zipf distribution in [0, n), where the probability of rank {@code k} is proportional
+	 * to {@code 1 / (k + 1)^exponent}. Values are drawn by binary search of the cumulative
+	 * probabilities, which are computed once.
+	 */
+	static IntDistribution zipf(int n, double exponent) {
+		checkArgument(n > 0, "The number of values must be > 0");
+		checkArgument(exponent > 0.0, "The exponent must be > 0");
+		final double[] cdf = new double[n];
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += 1.0 / Math.pow(i + 1, exponent);
+			cdf[i] = sum;
+		}
+		final double total = sum;
+		return new IntDistribution() {
+			@Override
+			public int next(Random random) {
+				final int i = Arrays.binarySearch(cdf, random.nextDouble() * total);
+				return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+			}
+		};
+	}
+}
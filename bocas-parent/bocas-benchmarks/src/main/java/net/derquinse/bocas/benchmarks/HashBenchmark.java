@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static net.derquinse.bocas.benchmarks.BenchmarkData.PRELOAD_SEED;
+import static net.derquinse.bocas.benchmarks.BenchmarkData.values;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the computation of the keys of values of different sizes.
+ * @author Andres Rodriguez.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HashBenchmark {
+	/** Number of different values hashed. */
+	private static final int VALUES = 16;
+
+	/** Hash function name. */
+	@Param({ "SHA-256" })
+	public String function;
+	/** Size of the values. */
+	@Param({ "64", "1024", "65536", "1048576" })
+	public int valueSize;
+
+	/** Hash function. */
+	private BocasHashFunction hashFunction;
+	/** Values to hash. */
+	private List<MemoryByteSource> values;
+
+	/** Generates the values. */
+	@Setup(Level.Trial)
+	public void setup() {
+		hashFunction = BocasHashFunction.get(function);
+		values = values(VALUES, valueSize, PRELOAD_SEED);
+	}
+
+	@Benchmark
+	public ByteString hash(AccessCursor cursor) {
+		return hashFunction.hash(values.get(cursor.sequential(VALUES)));
+	}
+}
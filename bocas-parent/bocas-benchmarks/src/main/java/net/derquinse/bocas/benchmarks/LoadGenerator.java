@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasException;
+import net.derquinse.bocas.BocasMetrics;
+import net.derquinse.bocas.BocasOperation;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.benchmarks.Distributions.IntDistribution;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Load generator that drives a bucket with a configurable mix of reads and writes from several
+ * threads and records the latency of every operation. Before the run a set of entries is written,
+ * and the reads are spread among them following the key popularity distribution. Writes store new
+ * random values. Failed operations and reads of missing entries are recorded as errors.
+ * @author Andres Rodriguez.
+ * @see LoadGeneratorBuilder
+ */
+public final class LoadGenerator {
+	/** Name the operations are recorded with. */
+	private static final String NAME = "load";
+	/** Number of values per preloading write. */
+	private static final int PRELOAD_BATCH = 100;
+
+	/** Number of threads. */
+	private final int threads;
+	/** Warm-up duration in nanoseconds. */
+	private final long warmup;
+	/** Measured duration in nanoseconds. */
+	private final long duration;
+	/** Fraction of reads. */
+	private final double readRatio;
+	/** Number of keys per operation. */
+	private final int batchSize;
+	/** Number of preloaded entries. */
+	private final int keys;
+	/** Key popularity distribution. */
+	private final IntDistribution popularity;
+	/** Value size distribution. */
+	private final IntDistribution sizes;
+	/** Time between the operations of a thread in nanoseconds, 0 for unlimited. */
+	private final long interval;
+	/** Seed. */
+	private final long seed;
+
+	/** Constructor. */
+	LoadGenerator(int threads, long warmup, long duration, double readRatio, int batchSize, int keys,
+			IntDistribution popularity, IntDistribution sizes, long interval, long seed) {
+		this.threads = threads;
+		this.warmup = warmup;
+		this.duration = duration;
+		this.readRatio = readRatio;
+		this.batchSize = batchSize;
+		this.keys = keys;
+		this.popularity = popularity;
+		this.sizes = sizes;
+		this.interval = interval;
+		this.seed = seed;
+	}
+
+	/** Generates a random value. */
+	private MemoryByteSource value(Random random) {
+		final byte[] data = new byte[sizes.next(random)];
+		random.nextBytes(data);
+		return MemoryByteSource.wrap(data);
+	}
+
+	/** Reads a value, returning its size. */
+	private static long read(ByteSource value) throws IOException {
+		return value.copyTo(ByteStreams.nullOutputStream());
+	}
+
+	/**
+	 * Writes the entries to read.
+	 * @return The written keys.
+	 */
+	private List<ByteString> preload(Bocas bocas) {
+		final Random random = new Random(seed);
+		final List<ByteString> written = Lists.newArrayListWithCapacity(keys);
+		while (written.size() < keys) {
+			final int n = Math.min(PRELOAD_BATCH, keys - written.size());
+			final List<MemoryByteSource> values = Lists.newArrayListWithCapacity(n);
+			for (int i = 0; i < n; i++) {
+				values.add(value(random));
+			}
+			written.addAll(bocas.putAll(values));
+		}
+		return written;
+	}
+
+	/**
+	 * Runs the load against a bucket. The bucket is not closed.
+	 * @param bocas Bucket to drive.
+	 * @return The report of the measured operations.
+	 * @throws BocasException if unable to write the entries to read.
+	 */
+	public LoadReport run(final Bocas bocas) {
+		final List<ByteString> preloaded = ImmutableList.copyOf(preload(bocas));
+		final BocasMetrics metrics = BocasServices.metrics();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("bocas-load-%d").build());
+		final long start = System.nanoTime();
+		final long measured = start + warmup;
+		final long end = measured + duration;
+		try {
+			final List<Future<?>> futures = Lists.newArrayListWithCapacity(threads);
+			for (int t = 0; t < threads; t++) {
+				final Worker worker = new Worker(bocas, preloaded, metrics, new Random(seed + 1 + t));
+				final long first = start + interval * t / threads;
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						worker.run(first, measured, end);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				Uninterruptibles.getUninterruptibly(future);
+			}
+		} catch (ExecutionException e) {
+			throw new BocasException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return new LoadReport(metrics.getStats(NAME), Math.max(System.nanoTime() - measured, duration));
+	}
+
+	/** Operations of a thread. */
+	private final class Worker {
+		/** Bucket. */
+		final Bocas bocas;
+		/** Keys to read. */
+		final List<ByteString> preloaded;
+		/** Metrics. */
+		final BocasMetrics metrics;
+		/** Random source. */
+		final Random random;
+
+		Worker(Bocas bocas, List<ByteString> preloaded, BocasMetrics metrics, Random random) {
+			this.bocas = bocas;
+			this.preloaded = preloaded;
+			this.metrics = metrics;
+			this.random = random;
+		}
+
+		/**
+		 * Issues operations until the end of the run.
+		 * @param first Scheduled time of the first operation.
+		 * @param measured Time the measurement starts.
+		 * @param end Time the run ends.
+		 */
+		void run(long first, long measured, long end) {
+			long scheduled = first;
+			while (true) {
+				final boolean read = random.nextDouble() < readRatio;
+				final Set<ByteString> requested = Sets.newHashSetWithExpectedSize(batchSize);
+				final List<MemoryByteSource> values = Lists.newArrayListWithCapacity(batchSize);
+				for (int i = 0; i < batchSize; i++) {
+					if (read) {
+						requested.add(preloaded.get(popularity.next(random)));
+					} else {
+						values.add(value(random));
+					}
+				}
+				long now = System.nanoTime();
+				if (interval > 0) {
+					while (now < scheduled) {
+						LockSupport.parkNanos(scheduled - now);
+						now = System.nanoTime();
+					}
+				} else {
+					scheduled = now;
+				}
+				// A bucket slower than the target rate falls behind the schedule, so wall time is checked too.
+				if (scheduled >= end || now >= end || Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				final BocasOperation operation = read ? (batchSize == 1 ? BocasOperation.GET : BocasOperation.GET_ALL)
+						: (batchSize == 1 ? BocasOperation.PUT : BocasOperation.PUT_ALL);
+				final int n = read ? requested.size() : values.size();
+				long bytes = 0L;
+				boolean failed = false;
+				try {
+					if (operation == BocasOperation.GET) {
+						final Optional<ByteSource> value = bocas.get(requested.iterator().next());
+						failed = !value.isPresent();
+						bytes = failed ? 0L : read(value.get());
+					} else if (operation == BocasOperation.GET_ALL) {
+						final Map<ByteString, ByteSource> found = bocas.get(requested);
+						failed = found.size() < n;
+						for (ByteSource value : found.values()) {
+							bytes += read(value);
+						}
+					} else {
+						if (operation == BocasOperation.PUT) {
+							bocas.put(values.get(0));
+						} else {
+							bocas.putAll(values);
+						}
+						for (MemoryByteSource value : values) {
+							bytes += value.size();
+						}
+					}
+				} catch (Exception e) {
+					failed = true;
+				}
+				record(operation, scheduled, measured, n, bytes, failed);
+				scheduled += interval;
+			}
+		}
+
+		/** Records an operation if it was scheduled after the warm-up. */
+		private void record(BocasOperation operation, long scheduled, long measured, int n, long bytes, boolean failed) {
+			if (scheduled >= measured) {
+				metrics.record(NAME, operation, System.nanoTime() - scheduled, n, bytes, failed);
+			}
+		}
+	}
+}
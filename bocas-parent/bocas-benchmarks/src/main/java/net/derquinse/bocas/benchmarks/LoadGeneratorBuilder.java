@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.benchmarks.Distributions.IntDistribution;
+
+/**
+ * Builder for load generators.
+ * @author Andres Rodriguez.
+ */
+public final class LoadGeneratorBuilder {
+	/** Whether the generator has already been built. */
+	private boolean built = false;
+	/** Number of threads. */
+	private int threads = 4;
+	/** Warm-up duration in nanoseconds. */
+	private long warmup = TimeUnit.SECONDS.toNanos(5L);
+	/** Measured duration in nanoseconds. */
+	private long duration = TimeUnit.SECONDS.toNanos(30L);
+	/** Fraction of reads. */
+	private double readRatio = 0.9;
+	/** Number of keys per operation. */
+	private int batchSize = 1;
+	/** Number of preloaded entries. */
+	private int keys = 10000;
+	/** Zipf exponent of the key popularity, 0 for uniform. */
+	private double zipfExponent = 0.0;
+	/** Value size distribution. */
+	private IntDistribution sizes = Distributions.uniform(1024, 10240);
+	/** Target rate in operations per second, 0 for unlimited. */
+	private double rate = 0.0;
+	/** Seed. */
+	private long seed = BenchmarkData.PRELOAD_SEED;
+
+	/** Constructor. */
+	public LoadGeneratorBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The generator has already been built");
+	}
+
+	/**
+	 * Specifies the number of threads issuing operations. The default is 4.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder threads(int threads) {
+		checkNotBuilt();
+		checkArgument(threads > 0, "The number of threads must be > 0");
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Specifies the duration of the warm-up, whose operations are not recorded, and of the
+	 * measurement. The defaults are 5 and 30 seconds.
+	 * @throws IllegalArgumentException if the warm-up is negative or the duration is not > 0
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder duration(long warmup, long duration, TimeUnit unit) {
+		checkNotBuilt();
+		checkArgument(warmup >= 0, "The warm-up must be >= 0");
+		checkArgument(duration > 0, "The duration must be > 0");
+		this.warmup = unit.toNanos(warmup);
+		this.duration = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Specifies the fraction of operations that are reads, the rest being writes. The default is 0.9.
+	 * @throws IllegalArgumentException if the argument is not in [0, 1]
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder readRatio(double readRatio) {
+		checkNotBuilt();
+		checkArgument(readRatio >= 0.0 && readRatio <= 1.0, "The read ratio must be in [0, 1]");
+		this.readRatio = readRatio;
+		return this;
+	}
+
+	/**
+	 * Specifies the number of keys read or values written by each operation. With a batch size of
+	 * one the single-key operations are used, otherwise the bulk ones. The default is 1.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder batchSize(int batchSize) {
+		checkNotBuilt();
+		checkArgument(batchSize > 0, "The batch size must be > 0");
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Specifies the number of entries written before the run, which are the ones read. The default is
+	 * 10000.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder keys(int keys) {
+		checkNotBuilt();
+		checkArgument(keys > 0, "The number of keys must be > 0");
+		this.keys = keys;
+		return this;
+	}
+
+	/**
+	 * Specifies that every entry is read with the same probability. This is the default.
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder uniformKeys() {
+		checkNotBuilt();
+		this.zipfExponent = 0.0;
+		return this;
+	}
+
+	/**
+	 * Specifies that entries are read following a Zipf distribution, where the probability of the
+	 * k-th most popular entry is proportional to {@code 1 / k^exponent}.
+	 * @throws IllegalArgumentException if the exponent is not > 0
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder zipfKeys(double exponent) {
+		checkNotBuilt();
+		checkArgument(exponent > 0.0, "The exponent must be > 0");
+		this.zipfExponent = exponent;
+		return this;
+	}
+
+	/**
+	 * Specifies that every value has the same size.
+	 * @throws IllegalArgumentException if the size is not > 0
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder fixedSize(int size) {
+		checkNotBuilt();
+		checkArgument(size > 0, "The value size must be > 0");
+		this.sizes = Distributions.fixed(size);
+		return this;
+	}
+
+	/**
+	 * Specifies that value sizes are uniformly distributed. The default is between 1 KB and 10 KB.
+	 * @throws IllegalArgumentException if the minimum is not > 0 or the maximum is smaller
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder uniformSize(int min, int max) {
+		checkNotBuilt();
+		checkArgument(min > 0, "The minimum value size must be > 0");
+		this.sizes = Distributions.uniform(min, max);
+		return this;
+	}
+
+	/**
+	 * Specifies that value sizes follow a log-normal distribution, truncated to a maximum size.
+	 * @param median Median size.
+	 * @param sigma Standard deviation of the logarithm of the size.
+	 * @param max Maximum size.
+	 * @throws IllegalArgumentException if the median is not > 0, the sigma is negative or the maximum
+	 *           is smaller than the median
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder logNormalSize(int median, double sigma, int max) {
+		checkNotBuilt();
+		this.sizes = Distributions.logNormal(median, sigma, max);
+		return this;
+	}
+
+	/**
+	 * Specifies the target rate in operations per second, evenly divided among the threads. Each
+	 * operation is scheduled in advance and its latency is measured from the scheduled time, so that
+	 * the delays caused by a slow service are included. The default is unlimited.
+	 * @param rate Target rate, 0 for unlimited.
+	 * @throws IllegalArgumentException if the rate is negative
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder rate(double rate) {
+		checkNotBuilt();
+		checkArgument(rate >= 0.0, "The rate must be >= 0");
+		this.rate = rate;
+		return this;
+	}
+
+	/**
+	 * Specifies the seed of the generated values and keys. Runs with the same seed and number of
+	 * threads generate the same operations.
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGeneratorBuilder seed(long seed) {
+		checkNotBuilt();
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Builds the generator.
+	 * @throws IllegalStateException if the generator has already been built
+	 */
+	public LoadGenerator build() {
+		checkNotBuilt();
+		built = true;
+		final IntDistribution popularity = zipfExponent > 0.0 ? Distributions.zipf(keys, zipfExponent)
+				: Distributions.uniform(0, keys - 1);
+		final long interval = rate > 0.0 ? Math.max(1L, Math.round(threads * 1e9 / rate)) : 0L;
+		return new LoadGenerator(threads, warmup, duration, readRatio, batchSize, keys, checkNotNull(popularity),
+				sizes, interval, seed);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import net.derquinse.bocas.BocasOperation;
+import net.derquinse.bocas.BocasOperationStats;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Results of a load generator run. Latencies are measured from the time each operation was
+ * scheduled, in nanoseconds.
+ * @author Andres Rodriguez.
+ */
+public final class LoadReport {
+	/** Statistics of the operations performed. */
+	private final List<BocasOperationStats> stats;
+	/** Measured time in nanoseconds. */
+	private final long elapsed;
+
+	/** Constructor. */
+	LoadReport(List<BocasOperationStats> stats, long elapsed) {
+		this.stats = ImmutableList.copyOf(checkNotNull(stats));
+		checkArgument(elapsed > 0, "The elapsed time must be > 0");
+		this.elapsed = elapsed;
+	}
+
+	/** Returns the statistics of every operation performed. */
+	public List<BocasOperationStats> getStats() {
+		return stats;
+	}
+
+	/** Returns the measured time in nanoseconds. */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/** Returns the total number of operations. */
+	public long getCount() {
+		long n = 0L;
+		for (BocasOperationStats s : stats) {
+			n += s.getCount();
+		}
+		return n;
+	}
+
+	/** Returns the total number of failed operations. */
+	public long getErrorCount() {
+		long n = 0L;
+		for (BocasOperationStats s : stats) {
+			n += s.getErrorCount();
+		}
+		return n;
+	}
+
+	/** Returns the throughput in operations per second. */
+	public double getThroughput() {
+		return getCount() * 1e9 / elapsed;
+	}
+
+	/** Returns the throughput of an operation in operations per second. */
+	public double getThroughput(BocasOperation operation) {
+		for (BocasOperationStats s : stats) {
+			if (s.getOperation() == operation) {
+				return s.getCount() * 1e9 / elapsed;
+			}
+		}
+		return 0.0;
+	}
+
+	/** Converts nanoseconds into milliseconds. */
+	private static double millis(double nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * Returns a table with the throughput and latency percentiles, in milliseconds, of every
+	 * operation.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder();
+		b.append(String.format("%-8s %10s %8s %10s %9s %9s %9s %9s %9s%n", "op", "count", "errors", "ops/s", "MB/s",
+				"p50 ms", "p99 ms", "p999 ms", "max ms"));
+		for (BocasOperationStats s : stats) {
+			b.append(String.format("%-8s %10d %8d %10.1f %9.2f %9.3f %9.3f %9.3f %9.3f%n", s.getOperation(), s.getCount(),
+					s.getErrorCount(), s.getCount() * 1e9 / elapsed, s.getByteCount() * 1e9 / elapsed / (1 << 20),
+					millis(s.getLatency50()), millis(s.getLatency99()), millis(s.getLatency999()), millis(s.getMaxLatency())));
+		}
+		b.append(String.format("total: %d operations, %d errors, %.1f ops/s in %.1f s%n", getCount(), getErrorCount(),
+				getThroughput(), elapsed / 1e9));
+		return b.toString();
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+
+import java.io.File;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasException;
+import net.derquinse.bocas.BocasService;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.jdbc.JDBCBocasServices;
+import net.derquinse.bocas.je.JEBocasServices;
+import net.derquinse.bocas.jersey.client.BocasClientFactory;
+import net.derquinse.common.base.NotInstantiable;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+
+/**
+ * Command line load-testing tool. It drives a bucket of a service with a {@link LoadGenerator} and
+ * prints the throughput and latency percentiles of the run. Options are given as
+ * {@code --name=value}:
+ * <ul>
+ * <li>{@code target}: {@code memory} (default), {@code je:<directory>}, an H2 JDBC URL or the URI of
+ * a remote Jersey service.</li>
+ * <li>{@code bucket}: bucket name, {@code load} by default.</li>
+ * <li>{@code threads}, {@code warmup} and {@code duration} (in seconds), {@code reads} (fraction of
+ * reads), {@code batch}, {@code keys}, {@code rate} (operations per second) and {@code seed}.</li>
+ * <li>{@code popularity}: {@code uniform} or {@code zipf:<exponent>}.</li>
+ * <li>{@code size}: {@code fixed:<bytes>}, {@code uniform:<min>:<max>} or
+ * {@code lognormal:<median>:<sigma>:<max>}.</li>
+ * </ul>
+ * @author Andres Rodriguez.
+ */
+public final class LoadTool extends NotInstantiable {
+	private LoadTool() {
+	}
+
+	/** Option value splitter. */
+	private static final Splitter COLON = Splitter.on(':');
+
+	/** Parses the {@code --name=value} arguments. */
+	static Map<String, String> options(String[] args) {
+		final Map<String, String> options = Maps.newHashMap();
+		for (String arg : args) {
+			final int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Invalid argument " + arg);
+			}
+			options.put(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		return options;
+	}
+
+	/** Configures a builder with the parsed options. */
+	static LoadGeneratorBuilder configure(Map<String, String> options) {
+		final Map<String, String> o = Maps.newHashMap(options);
+		o.remove("target");
+		o.remove("bucket");
+		final LoadGeneratorBuilder builder = new LoadGeneratorBuilder();
+		final String threads = o.remove("threads");
+		if (threads != null) {
+			builder.threads(Integer.parseInt(threads));
+		}
+		final String warmup = o.remove("warmup");
+		final String duration = o.remove("duration");
+		if (warmup != null || duration != null) {
+			builder.duration(warmup != null ? Long.parseLong(warmup) : 5L, duration != null ? Long.parseLong(duration)
+					: 30L, TimeUnit.SECONDS);
+		}
+		final String reads = o.remove("reads");
+		if (reads != null) {
+			builder.readRatio(Double.parseDouble(reads));
+		}
+		final String batch = o.remove("batch");
+		if (batch != null) {
+			builder.batchSize(Integer.parseInt(batch));
+		}
+		final String keys = o.remove("keys");
+		if (keys != null) {
+			builder.keys(Integer.parseInt(keys));
+		}
+		final String rate = o.remove("rate");
+		if (rate != null) {
+			builder.rate(Double.parseDouble(rate));
+		}
+		final String seed = o.remove("seed");
+		if (seed != null) {
+			builder.seed(Long.parseLong(seed));
+		}
+		final String popularity = o.remove("popularity");
+		if (popularity != null) {
+			final List<String> p = COLON.splitToList(popularity);
+			if (p.size() == 1 && "uniform".equals(p.get(0))) {
+				builder.uniformKeys();
+			} else if (p.size() == 2 && "zipf".equals(p.get(0))) {
+				builder.zipfKeys(Double.parseDouble(p.get(1)));
+			} else {
+				throw new IllegalArgumentException("Invalid popularity " + popularity);
+			}
+		}
+		final String size = o.remove("size");
+		if (size != null) {
+			final List<String> s = COLON.splitToList(size);
+			if (s.size() == 2 && "fixed".equals(s.get(0))) {
+				builder.fixedSize(Integer.parseInt(s.get(1)));
+			} else if (s.size() == 3 && "uniform".equals(s.get(0))) {
+				builder.uniformSize(Integer.parseInt(s.get(1)), Integer.parseInt(s.get(2)));
+			} else if (s.size() == 4 && "lognormal".equals(s.get(0))) {
+				builder.logNormalSize(Integer.parseInt(s.get(1)), Double.parseDouble(s.get(2)), Integer.parseInt(s.get(3)));
+			} else {
+				throw new IllegalArgumentException("Invalid size " + size);
+			}
+		}
+		if (!o.isEmpty()) {
+			throw new IllegalArgumentException("Unknown options " + o.keySet());
+		}
+		return builder;
+	}
+
+	/** Opens the target service. */
+	static BocasService target(String target) {
+		if ("memory".equals(target)) {
+			return BocasServices.shared(BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get()));
+		} else if (target.startsWith("je:")) {
+			final File directory = new File(target.substring(3));
+			directory.mkdirs();
+			return BocasServices.shared(JEBocasServices.basic(directory.getAbsolutePath()));
+		} else if (target.startsWith("jdbc:h2:")) {
+			final JdbcDataSource ds = new JdbcDataSource();
+			ds.setURL(target);
+			try {
+				final Connection cnn = ds.getConnection();
+				try {
+					cnn.createStatement().execute(
+							"CREATE TABLE IF NOT EXISTS BOCAS_TABLE(BOCAS_KEY BINARY(32) PRIMARY KEY, BOCAS_VALUE BLOB)");
+				} finally {
+					cnn.close();
+				}
+			} catch (SQLException e) {
+				throw new BocasException(e);
+			}
+			return BocasServices.shared(JDBCBocasServices.newBuilder().build(ds));
+		} else if (target.startsWith("http:") || target.startsWith("https:")) {
+			return BocasClientFactory.create().get(URI.create(target), MemoryByteSourceLoader.get());
+		}
+		throw new IllegalArgumentException("Unknown target " + target);
+	}
+
+	public static void main(String[] args) {
+		final Map<String, String> options;
+		final LoadGenerator generator;
+		try {
+			options = options(args);
+			generator = configure(options).build();
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: LoadTool [--target=memory|je:<dir>|jdbc:h2:<url>|<uri>] [--bucket=<name>] "
+					+ "[--threads=<n>] [--warmup=<s>] [--duration=<s>] [--reads=<ratio>] [--batch=<n>] [--keys=<n>] "
+					+ "[--rate=<ops/s>] [--seed=<n>] [--popularity=uniform|zipf:<exponent>] "
+					+ "[--size=fixed:<n>|uniform:<min>:<max>|lognormal:<median>:<sigma>:<max>]");
+			System.exit(2);
+			return;
+		}
+		final String target = options.containsKey("target") ? options.get("target") : "memory";
+		final String bucketName = options.containsKey("bucket") ? options.get("bucket") : "load";
+		final Bocas bucket = target(target).getBucket(bucketName);
+		try {
+			System.out.print(generator.run(bucket));
+		} finally {
+			bucket.close();
+		}
+	}
+}
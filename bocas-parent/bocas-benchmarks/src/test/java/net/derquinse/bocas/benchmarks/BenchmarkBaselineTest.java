@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import net.derquinse.bocas.benchmarks.BenchmarkBaseline.Result;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test for the benchmark baseline comparison.
+ */
+public class BenchmarkBaselineTest {
+	private static final String HEADER = "\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\","
+			+ "\"Score Error (99.9%)\",\"Unit\",\"Param: backend\",\"Param: valueSize\"";
+
+	private static Map<String, Result> results(double get, double hash) {
+		return BenchmarkBaseline.parse(ImmutableList.of(HEADER,
+				"\"net.derquinse.bocas.benchmarks.BucketBenchmark.get\",\"thrpt\",4,10," + get + ",1.5,\"ops/s\",memory,256",
+				"\"net.derquinse.bocas.benchmarks.HashBenchmark.hash\",\"avgt\",1,10," + hash + ",0.1,\"us/op\",,64"));
+	}
+
+	@Test
+	public void parse() {
+		final Map<String, Result> results = results(1000.0, 2.0);
+		assertEquals(results.size(), 2);
+		assertTrue(results.containsKey("net.derquinse.bocas.benchmarks.BucketBenchmark.get thrpt t=4 backend=memory valueSize=256"));
+		assertTrue(results.containsKey("net.derquinse.bocas.benchmarks.HashBenchmark.hash avgt t=1 valueSize=64"));
+		assertEquals(BenchmarkBaseline.split("\"a,b\",\"c\"\"d\",e"), ImmutableList.of("a,b", "c\"d", "e"));
+	}
+
+	@Test
+	public void compare() {
+		final Map<String, Result> baseline = results(1000.0, 2.0);
+		assertTrue(BenchmarkBaseline.compare(baseline, results(950.0, 2.1), 0.1).isEmpty());
+		assertTrue(BenchmarkBaseline.compare(baseline, results(2000.0, 1.0), 0.1).isEmpty());
+		final List<String> regressions = BenchmarkBaseline.compare(baseline, results(800.0, 3.0), 0.1);
+		assertEquals(regressions.size(), 2);
+		assertTrue(regressions.get(0).contains("-20.0%"));
+		assertTrue(regressions.get(1).contains("+50.0%"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void notResults() {
+		BenchmarkBaseline.parse(ImmutableList.of("a,b,c"));
+	}
+}
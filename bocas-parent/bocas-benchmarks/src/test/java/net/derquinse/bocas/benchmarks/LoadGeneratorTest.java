@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.benchmarks;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasOperation;
+import net.derquinse.bocas.BocasOperationStats;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.ForwardingBocas;
+import net.derquinse.bocas.benchmarks.Distributions.IntDistribution;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Test for the load generator.
+ */
+public class LoadGeneratorTest {
+	private static LoadReport run(LoadGeneratorBuilder builder) {
+		return builder.build().run(BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get()));
+	}
+
+	/** A mixed load must record reads and writes. */
+	@Test
+	public void mixed() {
+		final LoadReport report = run(new LoadGeneratorBuilder().threads(2).duration(0L, 300L, TimeUnit.MILLISECONDS)
+				.keys(100).readRatio(0.5).zipfKeys(1.0).fixedSize(256));
+		assertTrue(report.getCount() > 0);
+		assertEquals(report.getErrorCount(), 0L);
+		assertTrue(report.getThroughput(BocasOperation.GET) > 0.0);
+		assertTrue(report.getThroughput(BocasOperation.PUT) > 0.0);
+		for (BocasOperationStats s : report.getStats()) {
+			assertEquals(s.getByteCount(), s.getCount() * 256L);
+		}
+		assertTrue(report.toString().contains("GET"));
+	}
+
+	/** Batches must use the bulk operations. */
+	@Test
+	public void batches() {
+		final LoadReport report = run(new LoadGeneratorBuilder().threads(2).duration(0L, 200L, TimeUnit.MILLISECONDS)
+				.keys(100).batchSize(8).readRatio(0.5).logNormalSize(512, 1.0, 4096));
+		assertEquals(report.getErrorCount(), 0L);
+		assertTrue(report.getThroughput(BocasOperation.GET_ALL) > 0.0);
+		assertTrue(report.getThroughput(BocasOperation.PUT_ALL) > 0.0);
+		assertEquals(report.getThroughput(BocasOperation.GET), 0.0);
+	}
+
+	/** The target rate must be honoured. */
+	@Test
+	public void rate() {
+		final LoadReport report = run(new LoadGeneratorBuilder().threads(2).duration(100L, 1000L, TimeUnit.MILLISECONDS)
+				.keys(10).rate(200.0));
+		assertTrue(report.getCount() >= 150 && report.getCount() <= 250, "Count: " + report.getCount());
+	}
+
+	/** A bucket slower than the target rate must not extend the run. */
+	@Test
+	public void overloaded() {
+		final Bocas slow = new ForwardingBocas() {
+			final Bocas delegate = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+
+			@Override
+			protected Bocas delegate() {
+				return delegate;
+			}
+
+			@Override
+			public Optional<ByteSource> get(ByteString key) {
+				Uninterruptibles.sleepUninterruptibly(20L, TimeUnit.MILLISECONDS);
+				return super.get(key);
+			}
+
+			@Override
+			public ByteString put(ByteSource value) {
+				Uninterruptibles.sleepUninterruptibly(20L, TimeUnit.MILLISECONDS);
+				return super.put(value);
+			}
+		};
+		final Stopwatch watch = Stopwatch.createStarted();
+		final LoadReport report = new LoadGeneratorBuilder().threads(1).duration(0L, 300L, TimeUnit.MILLISECONDS)
+				.keys(10).fixedSize(64).rate(1000.0).build().run(slow);
+		assertTrue(watch.elapsed(TimeUnit.MILLISECONDS) < 2000L, "Elapsed: " + watch);
+		assertTrue(report.getCount() > 0);
+		// Latencies include the time the operations waited behind the schedule.
+		assertTrue(report.getStats().get(0).getMaxLatency() > TimeUnit.MILLISECONDS.toNanos(100L));
+	}
+
+	/** Zipf popularity must favour the first keys. */
+	@Test
+	public void zipf() {
+		final IntDistribution d = Distributions.zipf(100, 1.0);
+		final Random random = new Random(0L);
+		final int[] counts = new int[100];
+		for (int i = 0; i < 100000; i++) {
+			counts[d.next(random)]++;
+		}
+		assertTrue(counts[0] > 10 * counts[99]);
+		assertTrue(counts[0] > counts[1] && counts[1] > counts[9]);
+	}
+
+	@Test
+	public void options() {
+		LoadTool.configure(LoadTool.options(new String[] { "--target=memory", "--threads=8", "--reads=0.99",
+				"--popularity=zipf:0.9", "--size=uniform:100:1000", "--rate=1000" })).build();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void unknownOption() {
+		LoadTool.configure(LoadTool.options(new String[] { "--color=blue" }));
+	}
+}
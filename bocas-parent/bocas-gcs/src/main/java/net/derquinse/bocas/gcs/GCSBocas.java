@@ -15,13 +15,23 @@
  */
 package net.derquinse.bocas.gcs;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import net.derquinse.bocas.AsyncBocasService;
 import net.derquinse.bocas.BocasHashFunction;
 import net.derquinse.bocas.BocasService;
+import net.derquinse.bocas.BocasServices;
 import net.derquinse.common.base.NotInstantiable;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Factory class for Bocas repositories based on Google Cloud Storage.
  * @author Andres Rodriguez.
@@ -39,7 +49,42 @@ public final class GCSBocas extends NotInstantiable {
 	 * @return The requested service.
 	 */
 	public static BocasService service(String email, File p12, BocasHashFunction function, MemoryByteSourceLoader loader) {
-		return new GCSBocasService(email, p12, function, loader);
+		return service(email, p12, function, loader, GCSBocasService.DEFAULT_MAX_CONCURRENCY);
+	}
+
+	/**
+	 * Creates a new service using service account authentication. Multiple key operations on each
+	 * bucket transfer up to the provided number of objects concurrently.
+	 * @param email Account email address.
+	 * @param p12 Private key file.
+	 * @param function Hash function to use.
+	 * @param loader Memory loader to use.
+	 * @param maxConcurrency Maximum number of concurrent media transfers per bucket.
+	 * @return The requested service.
+	 */
+	public static BocasService service(String email, File p12, BocasHashFunction function,
+			MemoryByteSourceLoader loader, int maxConcurrency) {
+		return new GCSBocasService(email, p12, function, loader, maxConcurrency);
+	}
+
+	/**
+	 * Creates a new asynchronous service using service account authentication. The underlying HTTP
+	 * transport is blocking, so requests are performed by a pool of daemon threads of the provided
+	 * size and callers are never blocked.
+	 * @param email Account email address.
+	 * @param p12 Private key file.
+	 * @param function Hash function to use.
+	 * @param loader Memory loader to use.
+	 * @param maxConcurrency Maximum number of concurrent requests.
+	 * @return The requested service.
+	 */
+	public static AsyncBocasService asyncService(String email, File p12, BocasHashFunction function,
+			MemoryByteSourceLoader loader, int maxConcurrency) {
+		checkArgument(maxConcurrency > 0, "The maximum number of concurrent requests must be > 0");
+		final ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gcs-bocas-%d").build();
+		final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(
+				maxConcurrency, factory));
+		return BocasServices.async(service(email, p12, function, loader), executor);
 	}
 
 }
@@ -21,6 +21,10 @@ import static net.derquinse.bocas.BocasPreconditions.checkHash;
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasException;
@@ -36,12 +40,19 @@ import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.storage.Storage;
 import com.google.api.services.storage.StorageScopes;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Bocas repository based on Google Cloud Storage.
  * @author Andres Rodriguez.
  */
 final class GCSBocasService implements BocasService {
+	/** Default maximum number of concurrent media transfers per bucket. */
+	static final int DEFAULT_MAX_CONCURRENCY = 8;
+
 	/** Global instance of the HTTP transport. */
 	private static HttpTransport HTTP_TRANSPORT;
 
@@ -54,7 +65,11 @@ final class GCSBocasService implements BocasService {
 	private final BocasHashFunction function;
 	/** Memory loader. */
 	private final MemoryByteSourceLoader loader;
-	
+	/** Maximum number of concurrent media transfers per bucket. */
+	private final int maxConcurrency;
+	/** Transfer executors by bucket name. */
+	private final ConcurrentMap<String, ListeningExecutorService> executors = Maps.newConcurrentMap();
+
 	private static synchronized void init() {
 		try {
 			HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
@@ -68,11 +83,13 @@ final class GCSBocasService implements BocasService {
 	 * Constructor.
 	 * @throws BocasException
 	 */
-	GCSBocasService(String email, File p12, BocasHashFunction function, MemoryByteSourceLoader loader) {
+	GCSBocasService(String email, File p12, BocasHashFunction function, MemoryByteSourceLoader loader,
+			int maxConcurrency) {
 		checkNotNull(email);
 		checkNotNull(p12);
 		this.function = checkHash(function);
 		this.loader = checkLoader(loader);
+		this.maxConcurrency = checkConcurrency(maxConcurrency);
 		checkArgument(p12.exists());
 		init();
 		try {
@@ -86,13 +103,48 @@ final class GCSBocasService implements BocasService {
 		}
 	}
 
+	/** Constructor for an already built storage client. */
+	GCSBocasService(Storage storage, BocasHashFunction function, MemoryByteSourceLoader loader, int maxConcurrency) {
+		this.storage = checkNotNull(storage);
+		this.function = checkHash(function);
+		this.loader = checkLoader(loader);
+		this.maxConcurrency = checkConcurrency(maxConcurrency);
+	}
+
+	static int checkConcurrency(int maxConcurrency) {
+		checkArgument(maxConcurrency > 0, "The maximum number of concurrent requests must be > 0");
+		return maxConcurrency;
+	}
+
+	/**
+	 * Returns the transfer executor of a bucket, creating it if needed. Threads are daemons and time
+	 * out when idle, so unused executors need not be shut down.
+	 */
+	private ListeningExecutorService getExecutor(String name) {
+		ListeningExecutorService executor = executors.get(name);
+		if (executor == null) {
+			final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 30L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true)
+							.setNameFormat("gcs-bocas-" + name.replace("%", "%%") + "-%d").build());
+			pool.allowCoreThreadTimeOut(true);
+			executor = MoreExecutors.listeningDecorator(pool);
+			final ListeningExecutorService existing = executors.putIfAbsent(name, executor);
+			if (existing != null) {
+				executor.shutdown();
+				executor = existing;
+			}
+		}
+		return executor;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.BocasService#getBucket(java.lang.String)
 	 */
 	@Override
 	public Bocas getBucket(String name) {
-		return new GCSBucket(storage, name, function, loader);
+		checkNotNull(name, "The bucket name must be provided");
+		return new GCSBucket(storage, name, function, loader, getExecutor(name));
 	}
 
 }
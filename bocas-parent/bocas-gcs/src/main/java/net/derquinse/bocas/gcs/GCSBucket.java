@@ -20,40 +20,66 @@ import static net.derquinse.bocas.BocasPreconditions.checkLoader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import net.derquinse.bocas.BocasException;
 import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.bocas.BocasKeyPage;
+import net.derquinse.bocas.BocasPreconditions;
 import net.derquinse.bocas.SimpleSkeletalBocas;
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 import net.derquinse.common.io.MemoryOutputStream;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.InputStreamContent;
 import com.google.api.services.storage.Storage;
+import com.google.api.services.storage.model.Objects;
 import com.google.api.services.storage.model.StorageObject;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 /**
- * A bocas bucket based on Google Cloud Storage.
+ * A bocas bucket based on Google Cloud Storage. Metadata probes for multiple keys are sent as JSON
+ * batch requests and media transfers for multiple keys are performed in parallel using the
+ * bucket executor, which bounds the number of concurrent requests.
  * @author Andres Rodriguez.
  */
 @Beta
 final class GCSBucket extends SimpleSkeletalBocas {
+	/** Maximum number of requests in a JSON batch request. */
+	static final int MAX_BATCH = 100;
 	/** Storage service. */
 	private final Storage storage;
 	/** Bucket name. */
 	private final String bucket;
 	/** Memory loader to use. */
 	private final MemoryByteSourceLoader loader;
+	/** Executor for parallel media transfers. */
+	private final ListeningExecutorService executor;
 
 	private static void checkKey(ByteString key) {
 		checkNotNull(key, "The object key must be provided");
@@ -70,11 +96,49 @@ final class GCSBucket extends SimpleSkeletalBocas {
 	}
 
 	/** Constructor. */
-	GCSBucket(Storage storage, String bucket, BocasHashFunction function, MemoryByteSourceLoader loader) {
+	GCSBucket(Storage storage, String bucket, BocasHashFunction function, MemoryByteSourceLoader loader,
+			ListeningExecutorService executor) {
 		super(function);
 		this.storage = checkNotNull(storage);
 		this.bucket = checkNotNull(bucket);
 		this.loader = checkLoader(loader);
+		this.executor = checkNotNull(executor);
+	}
+
+	/**
+	 * Runs the provided tasks in the bucket executor and waits for all of them to complete. A single
+	 * task is run in the calling thread.
+	 */
+	private <T> List<T> parallel(List<Callable<T>> tasks) {
+		if (tasks.size() == 1) {
+			try {
+				return ImmutableList.of(tasks.get(0).call());
+			} catch (BocasException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new BocasException(e);
+			}
+		}
+		final List<ListenableFuture<T>> futures = Lists.newArrayListWithCapacity(tasks.size());
+		for (Callable<T> task : tasks) {
+			futures.add(executor.submit(task));
+		}
+		final ListenableFuture<List<T>> all = Futures.allAsList(futures);
+		try {
+			return all.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BocasException(e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof BocasException) {
+				throw (BocasException) cause;
+			}
+			throw new BocasException(cause);
+		} finally {
+			// Pending transfers are useless if any of them has failed.
+			all.cancel(true);
+		}
 	}
 
 	private Storage.Objects.Get getObjectRequest(final ByteString key) {
@@ -122,17 +186,54 @@ final class GCSBucket extends SimpleSkeletalBocas {
 	 */
 	@Override
 	public Set<ByteString> contained(Iterable<ByteString> keys) {
-		// TODO: check batch requests
-		Set<ByteString> input = checkKeys(keys);
-		Set<ByteString> set = Sets.newHashSet();
-		for (ByteString key : input) {
-			if (contains(key)) {
-				set.add(key);
-			}
+		final Set<ByteString> input = checkKeys(keys);
+		if (input.isEmpty()) {
+			return ImmutableSet.of();
+		}
+		if (input.size() == 1) {
+			final ByteString key = input.iterator().next();
+			return contains(key) ? ImmutableSet.of(key) : ImmutableSet.<ByteString> of();
+		}
+		final Set<ByteString> set = Sets.newHashSet();
+		for (List<ByteString> chunk : Iterables.partition(input, MAX_BATCH)) {
+			probe(chunk, set);
 		}
 		return set;
 	}
 
+	/** Probes a chunk of keys using a single JSON batch request, adding the existing ones to the set. */
+	private void probe(List<ByteString> keys, final Set<ByteString> found) {
+		try {
+			final BatchRequest batch = storage.batch();
+			final List<GoogleJsonError> errors = Lists.newArrayListWithCapacity(1);
+			for (final ByteString key : keys) {
+				final Storage.Objects.Get request = getObjectRequest(key);
+				request.setFields("name");
+				request.queue(batch, new JsonBatchCallback<StorageObject>() {
+					@Override
+					public void onSuccess(StorageObject t, HttpHeaders responseHeaders) {
+						found.add(key);
+					}
+
+					@Override
+					public void onFailure(GoogleJsonError e, HttpHeaders responseHeaders) {
+						if (e.getCode() != 404) {
+							errors.add(e);
+						}
+					}
+				});
+			}
+			batch.execute();
+			if (!errors.isEmpty()) {
+				final GoogleJsonError e = errors.get(0);
+				throw new BocasException(String.format("Batch probe failed with status %d: %s", e.getCode(),
+						e.getMessage()));
+			}
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(net.derquinse.common.base.ByteString)
@@ -158,26 +259,117 @@ final class GCSBucket extends SimpleSkeletalBocas {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		checkKey(key);
+		BocasPreconditions.checkRange(offset, length);
+		if (length == 0) {
+			// Empty ranges can't be expressed as an HTTP range.
+			return contains(key) ? Optional.of(ByteSource.empty()) : Optional.<ByteSource> absent();
+		}
+		final Storage.Objects.Get request = getObjectRequest(key);
+		final long last = offset + length - 1;
+		request.getRequestHeaders().setRange("bytes=" + offset + "-" + (last < offset ? "" : Long.toString(last)));
+		final MemoryOutputStream os = loader.openStream();
+		try {
+			// Executed without the media downloader, as it uses its own ranges.
+			final HttpResponse response = request.executeMedia();
+			try {
+				response.download(os);
+			} finally {
+				response.disconnect();
+			}
+			return Optional.of((ByteSource) os.toByteSource());
+		} catch (HttpResponseException e) {
+			if (e.getStatusCode() == 404) {
+				return Optional.absent();
+			}
+			if (e.getStatusCode() == 416) {
+				return Optional.of(ByteSource.empty()); // Offset past the end of the object
+			}
+			throw new BocasException(e);
+		} catch (IOException e) {
+			throw new BocasException(e);
+		} finally {
+			os.close();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
 	 */
 	@Override
 	public Map<ByteString, ByteSource> get(final Iterable<ByteString> keys) {
-		Set<ByteString> input = checkKeys(keys);
-		Map<ByteString, ByteSource> map = Maps.newHashMap();
-		for (ByteString key : input) {
-			checkKey(key);
-			if (!map.containsKey(key)) {
-				Optional<ByteSource> v = get(key);
-				if (v.isPresent()) {
-					map.put(key, v.get());
+		final Set<ByteString> input = checkKeys(keys);
+		if (input.isEmpty()) {
+			return ImmutableMap.of();
+		}
+		final List<ByteString> requested = Lists.newArrayList(input);
+		final List<Callable<Optional<ByteSource>>> tasks = Lists.newArrayListWithCapacity(requested.size());
+		for (final ByteString key : requested) {
+			tasks.add(new Callable<Optional<ByteSource>>() {
+				@Override
+				public Optional<ByteSource> call() throws Exception {
+					return get(key);
 				}
+			});
+		}
+		final List<Optional<ByteSource>> values = parallel(tasks);
+		final Map<ByteString, ByteSource> map = Maps.newHashMap();
+		for (int i = 0; i < requested.size(); i++) {
+			final Optional<ByteSource> v = values.get(i);
+			if (v.isPresent()) {
+				map.put(requested.get(i), v.get());
 			}
 		}
 		return map;
 	}
 
+	/**
+	 * Scans the keys listing the bucket objects, so keys are returned in lexicographical order of
+	 * their names. The cursor is the page token returned by the service, and objects whose names are
+	 * not keys are skipped.
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		BocasPreconditions.checkLimit(limit);
+		try {
+			final Storage.Objects.List request = storage.objects().list(bucket);
+			request.setMaxResults(Long.valueOf(limit));
+			request.setFields(sizes ? "items(name,size),nextPageToken" : "items/name,nextPageToken");
+			if (cursor != null) {
+				request.setPageToken(cursor);
+			}
+			final Objects objects = request.execute();
+			final List<ByteString> keys = Lists.newArrayList();
+			final ImmutableMap.Builder<ByteString, Long> sizeMap = ImmutableMap.builder();
+			if (objects.getItems() != null) {
+				for (StorageObject obj : objects.getItems()) {
+					final ByteString key;
+					try {
+						key = ByteString.fromHexString(obj.getName());
+					} catch (RuntimeException e) {
+						continue; // Not a bocas object
+					}
+					keys.add(key);
+					if (sizes) {
+						final BigInteger size = obj.getSize();
+						sizeMap.put(key, size != null ? size.longValue() : 0L);
+					}
+				}
+			}
+			return BocasKeyPage.of(keys, sizeMap.build(), objects.getNextPageToken());
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+	}
+
 	@Override
 	protected void put(final ByteString key, final ByteSource value) {
 		boolean ok = false;
@@ -212,9 +404,20 @@ final class GCSBucket extends SimpleSkeletalBocas {
 	 */
 	@Override
 	protected void putAll(final Map<ByteString, ByteSource> entries) {
-		for (Entry<ByteString, ByteSource> entry : entries.entrySet()) {
-			put(entry.getKey(), entry.getValue());
+		if (entries.isEmpty()) {
+			return;
+		}
+		final List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(entries.size());
+		for (final Entry<ByteString, ByteSource> entry : entries.entrySet()) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					put(entry.getKey(), entry.getValue());
+					return null;
+				}
+			});
 		}
+		parallel(tasks);
 	}
 
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.gcs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Fake in-memory Google Cloud Storage HTTP transport, supporting the subset of the JSON API used
+ * by the GCS buckets: object metadata, media downloads (with ranges), media and resumable uploads,
+ * object listing and JSON batch requests.
+ * @author Andres Rodriguez.
+ */
+final class FakeGCSTransport extends MockHttpTransport {
+	private static final String OBJECTS = "/storage/v1/b/([^/]+)/o";
+	private static final Pattern OBJECT = Pattern.compile(OBJECTS + "/([^/?]+)");
+	private static final Pattern LIST = Pattern.compile(OBJECTS);
+	private static final Pattern UPLOAD = Pattern.compile("/upload" + OBJECTS);
+	private static final Pattern SESSION = Pattern.compile("/upload/session/(\\d+)");
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+	private static final Pattern PART_REQUEST = Pattern.compile("^(GET|POST|PUT) (\\S+)",
+			Pattern.MULTILINE);
+	private static final String BOUNDARY = "fake_batch_boundary";
+
+	/** Stored objects by bucket and name. */
+	private final ConcurrentMap<String, ConcurrentNavigableMap<String, byte[]>> buckets = Maps.newConcurrentMap();
+	/** Pending resumable upload sessions. */
+	private final ConcurrentMap<Integer, String[]> sessions = Maps.newConcurrentMap();
+	/** Session counter. */
+	private final AtomicInteger session = new AtomicInteger();
+	/** Number of HTTP requests received. */
+	private final AtomicInteger requests = new AtomicInteger();
+	/** Number of batch requests received. */
+	private final AtomicInteger batches = new AtomicInteger();
+
+	/** Returns the number of HTTP requests received, batches counting as one. */
+	int getRequests() {
+		return requests.get();
+	}
+
+	/** Returns the number of batch requests received. */
+	int getBatches() {
+		return batches.get();
+	}
+
+	private ConcurrentNavigableMap<String, byte[]> bucket(String name) {
+		ConcurrentNavigableMap<String, byte[]> bucket = buckets.get(name);
+		if (bucket == null) {
+			buckets.putIfAbsent(name, new ConcurrentSkipListMap<String, byte[]>());
+			bucket = buckets.get(name);
+		}
+		return bucket;
+	}
+
+	@Override
+	public LowLevelHttpRequest buildRequest(final String method, final String url) throws IOException {
+		return new MockLowLevelHttpRequest(url) {
+			@Override
+			public LowLevelHttpResponse execute() throws IOException {
+				requests.incrementAndGet();
+				return handle(method, getUrl(), getFirstHeaderValue("range"), content(this));
+			}
+		};
+	}
+
+	private static byte[] content(LowLevelHttpRequest request) throws IOException {
+		if (request.getStreamingContent() == null) {
+			return new byte[0];
+		}
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		request.getStreamingContent().writeTo(os);
+		final byte[] data = os.toByteArray();
+		if ("gzip".equals(request.getContentEncoding())) {
+			final InputStream is = new GZIPInputStream(new ByteArrayInputStream(data));
+			try {
+				return ByteStreams.toByteArray(is);
+			} finally {
+				is.close();
+			}
+		}
+		return data;
+	}
+
+	private static MockLowLevelHttpResponse json(int status, String json) {
+		return new MockLowLevelHttpResponse().setStatusCode(status).setContentType("application/json; charset=UTF-8")
+				.setContent(json);
+	}
+
+	private static MockLowLevelHttpResponse error(int status) {
+		return json(status, "{\"error\":{\"code\":" + status + ",\"message\":\"Error " + status + "\"}}");
+	}
+
+	private static String metadata(String bucket, String name, byte[] data) {
+		return "{\"bucket\":\"" + bucket + "\",\"name\":\"" + name + "\",\"size\":\"" + data.length + "\"}";
+	}
+
+	private MockLowLevelHttpResponse handle(String method, String url, String range, byte[] content)
+			throws IOException {
+		final GenericUrl u = new GenericUrl(url);
+		final String path = u.getRawPath();
+		Matcher m;
+		if ("POST".equals(method) && path.equals("/batch")) {
+			batches.incrementAndGet();
+			return batch(new String(content, Charsets.UTF_8));
+		}
+		if ("GET".equals(method) && (m = OBJECT.matcher(path)).matches()) {
+			final byte[] data = bucket(m.group(1)).get(m.group(2));
+			if (data == null) {
+				return error(404);
+			}
+			if (!"media".equals(u.getFirst("alt"))) {
+				return json(200, metadata(m.group(1), m.group(2), data));
+			}
+			return media(data, range);
+		}
+		if ("GET".equals(method) && (m = LIST.matcher(path)).matches()) {
+			return list(m.group(1), (String) u.getFirst("pageToken"), u.getFirst("maxResults"));
+		}
+		if ("POST".equals(method) && (m = UPLOAD.matcher(path)).matches()) {
+			final String name = (String) u.getFirst("name");
+			if ("resumable".equals(u.getFirst("uploadType"))) {
+				final int id = session.incrementAndGet();
+				sessions.put(id, new String[] { m.group(1), name });
+				return new MockLowLevelHttpResponse().setStatusCode(200).addHeader("Location",
+						"https://www.googleapis.com/upload/session/" + id);
+			}
+			bucket(m.group(1)).put(name, content);
+			return json(200, metadata(m.group(1), name, content));
+		}
+		if ("PUT".equals(method) && (m = SESSION.matcher(path)).matches()) {
+			final String[] target = sessions.remove(Integer.valueOf(m.group(1)));
+			if (target == null) {
+				return error(404);
+			}
+			bucket(target[0]).put(target[1], content);
+			return json(200, metadata(target[0], target[1], content));
+		}
+		return error(400);
+	}
+
+	private static MockLowLevelHttpResponse media(byte[] data, String range) {
+		final MockLowLevelHttpResponse response = new MockLowLevelHttpResponse()
+				.setContentType("application/octet-stream");
+		if (range == null) {
+			return response.setStatusCode(200).setContent(data);
+		}
+		final Matcher m = RANGE.matcher(range);
+		if (!m.matches()) {
+			return error(400);
+		}
+		final int first = Integer.parseInt(m.group(1));
+		if (first >= data.length) {
+			return error(416);
+		}
+		int last = data.length - 1;
+		if (m.group(2).length() > 0) {
+			last = (int) Math.min(last, Long.parseLong(m.group(2)));
+		}
+		final byte[] part = new byte[last - first + 1];
+		System.arraycopy(data, first, part, 0, part.length);
+		return response.setStatusCode(206).addHeader("Content-Range",
+				"bytes " + first + "-" + last + "/" + data.length).setContent(part);
+	}
+
+	private MockLowLevelHttpResponse list(String bucket, String token, Object maxResults) {
+		final int max = maxResults != null ? Integer.parseInt(maxResults.toString()) : 1000;
+		final Map<String, byte[]> tail = token != null ? bucket(bucket).tailMap(token, false) : bucket(bucket);
+		final StringBuilder b = new StringBuilder("{\"items\":[");
+		int n = 0;
+		String last = null;
+		for (Map.Entry<String, byte[]> e : tail.entrySet()) {
+			if (n == max) {
+				break;
+			}
+			if (n > 0) {
+				b.append(',');
+			}
+			b.append(metadata(bucket, e.getKey(), e.getValue()));
+			last = e.getKey();
+			n++;
+		}
+		b.append(']');
+		if (last != null && n == max && bucket(bucket).higherKey(last) != null) {
+			b.append(",\"nextPageToken\":\"").append(last).append('"');
+		}
+		return json(200, b.append('}').toString());
+	}
+
+	private MockLowLevelHttpResponse batch(String content) throws IOException {
+		final StringBuilder b = new StringBuilder();
+		final Matcher m = PART_REQUEST.matcher(content);
+		int id = 0;
+		while (m.find()) {
+			final MockLowLevelHttpResponse r = handle(m.group(1), m.group(2), null, new byte[0]);
+			final String body = new String(ByteStreams.toByteArray(r.getContent()), Charsets.UTF_8);
+			b.append("--").append(BOUNDARY).append("\r\n");
+			b.append("Content-Type: application/http\r\n");
+			b.append("Content-ID: <response-").append(++id).append(">\r\n\r\n");
+			b.append("HTTP/1.1 ").append(r.getStatusCode()).append(" Fake\r\n");
+			b.append("Content-Type: application/json; charset=UTF-8\r\n");
+			b.append("Content-Length: ").append(body.length()).append("\r\n\r\n");
+			b.append(body).append("\r\n");
+		}
+		b.append("--").append(BOUNDARY).append("--\r\n");
+		return new MockLowLevelHttpResponse().setStatusCode(200)
+				.setContentType("multipart/mixed; boundary=" + BOUNDARY).setContent(b.toString());
+	}
+}
@@ -15,10 +15,12 @@
  */
 package net.derquinse.bocas.gcs;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Map;
 
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasExerciser;
@@ -30,7 +32,11 @@ import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import org.testng.annotations.Test;
 
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.storage.Storage;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.io.ByteSource;
 
 /**
@@ -81,4 +87,30 @@ public class GCSBocasTest {
 		BocasExerciser.exercise(service.getBucket("gcstest.bocas.derquinse.net"), 15);
 	}
 
+	/** Exercises a bucket backed by a fake in-memory transport. */
+	@Test
+	public void fake() throws Exception {
+		final FakeGCSTransport transport = new FakeGCSTransport();
+		final Storage storage = new Storage.Builder(transport, JacksonFactory.getDefaultInstance(), null)
+				.setApplicationName("GCSBocasTest").build();
+		final Bocas bocas = new GCSBocasService(storage, f, loader, 4).getBucket("fake");
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(f, 2 * GCSBucket.MAX_BATCH + 10);
+		bocas.putAll(data.values());
+		final Iterable<ByteString> missing = BocasExerciser.dataSet(f, 5).keySet();
+		final Iterable<ByteString> keys = Iterables.concat(data.keySet(), missing);
+		// Probes are sent in batches.
+		final int requests = transport.getRequests();
+		assertEquals(bocas.contained(keys), data.keySet());
+		assertEquals(transport.getRequests() - requests, 3);
+		assertEquals(transport.getBatches(), 3);
+		// Parallel downloads.
+		final Map<ByteString, ByteSource> found = bocas.get(keys);
+		assertEquals(found.keySet(), data.keySet());
+		for (Map.Entry<ByteString, MemoryByteSource> entry : data.entrySet()) {
+			BocasExerciser.check(entry.getValue(), found.get(entry.getKey()));
+		}
+		assertEquals(bocas.contained(ImmutableSet.copyOf(missing)), ImmutableSet.of());
+		BocasExerciser.exercise(bocas, 10);
+	}
+
 }
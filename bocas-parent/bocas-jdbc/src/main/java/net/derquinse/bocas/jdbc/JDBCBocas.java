@@ -17,10 +17,12 @@ package net.derquinse.bocas.jdbc;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -29,15 +31,22 @@ import javax.sql.DataSource;
 
 import net.derquinse.bocas.BocasException;
 import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.bocas.BocasKeyPage;
+import net.derquinse.bocas.BocasPreconditions;
 import net.derquinse.bocas.SimpleSkeletalBocas;
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.io.Closer;
 
 /**
  * A Bocas repository based on a JDBC DataSource.
@@ -45,6 +54,11 @@ import com.google.common.io.ByteSource;
  */
 @Beta
 final class JDBCBocas extends SimpleSkeletalBocas {
+	/** Maximum number of keys per IN-list query. */
+	private static final int IN_CHUNK = 100;
+	/** Maximum number of entries per insert batch. */
+	private static final int INSERT_CHUNK = 100;
+
 	/** Data source. */
 	private final DataSource dataSource;
 	/** Data source dialect. */
@@ -56,8 +70,23 @@ final class JDBCBocas extends SimpleSkeletalBocas {
 		checkNotNull(key, "The object key must be provided");
 	}
 
-	private static void checkKeys(Iterable<ByteString> key) {
-		checkNotNull(key, "The object keys must be provided");
+	private static Set<ByteString> checkKeys(Iterable<ByteString> keys) {
+		checkNotNull(keys, "The object keys must be provided");
+		final Set<ByteString> set = Sets.newLinkedHashSet();
+		for (ByteString key : keys) {
+			checkKey(key);
+			set.add(key);
+		}
+		return set;
+	}
+
+	/** Closes the value streams of an executed statement. */
+	private static void closeStreams(Closer closer) {
+		try {
+			closer.close();
+		} catch (IOException e) {
+			// The statement has already been executed.
+		}
 	}
 
 	/** Constructor. */
@@ -92,19 +121,19 @@ final class JDBCBocas extends SimpleSkeletalBocas {
 	 * @see net.derquinse.bocas.Bocas#contained(java.lang.Iterable)
 	 */
 	@Override
-	public Set<ByteString> contained(final Iterable<ByteString> keys) {
-		checkKeys(keys);
+	public Set<ByteString> contained(Iterable<ByteString> keys) {
+		final Set<ByteString> requested = checkKeys(keys);
+		if (requested.isEmpty()) {
+			return ImmutableSet.of();
+		}
 		return new Tx<Set<ByteString>>() {
 			@Override
 			Set<ByteString> perform() throws SQLException {
-				Set<ByteString> set = Sets.newHashSet();
-				for (ByteString key : keys) {
-					checkKey(key);
-					if (!set.contains(key) && contains(key)) {
-						set.add(key);
-					}
+				final Map<ByteString, ByteSource> found = Maps.newHashMap();
+				for (List<ByteString> chunk : Iterables.partition(requested, IN_CHUNK)) {
+					read(chunk, false, found);
 				}
-				return set;
+				return found.keySet();
 			}
 		}.run();
 	}
@@ -124,27 +153,57 @@ final class JDBCBocas extends SimpleSkeletalBocas {
 		}.run();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(final ByteString key, final long offset, final long length) {
+		checkKey(key);
+		BocasPreconditions.checkRange(offset, length);
+		return new Tx<Optional<ByteSource>>() {
+			@Override
+			Optional<ByteSource> perform() throws SQLException {
+				return read(key, offset, length);
+			}
+		}.run();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
 	 */
 	@Override
-	public Map<ByteString, ByteSource> get(final Iterable<ByteString> keys) {
-		checkKeys(keys);
+	public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+		final Set<ByteString> requested = checkKeys(keys);
+		if (requested.isEmpty()) {
+			return ImmutableMap.of();
+		}
 		return new Tx<Map<ByteString, ByteSource>>() {
 			@Override
 			Map<ByteString, ByteSource> perform() throws SQLException {
-				Map<ByteString, ByteSource> map = Maps.newHashMap();
-				for (ByteString key : keys) {
-					checkKey(key);
-					if (!map.containsKey(key)) {
-						Optional<ByteSource> v = read(key);
-						if (v.isPresent()) {
-							map.put(key, v.get());
-						}
-					}
+				final Map<ByteString, ByteSource> found = Maps.newHashMap();
+				for (List<ByteString> chunk : Iterables.partition(requested, IN_CHUNK)) {
+					read(chunk, true, found);
 				}
-				return map;
+				return found;
+			}
+		}.run();
+	}
+
+	/**
+	 * Scans the keys using keyset pagination over the table primary key, so keys are returned in
+	 * the order of the key column.
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, final int limit, final boolean sizes) {
+		final ByteString after = BocasKeyPage.cursorKey(cursor);
+		BocasPreconditions.checkLimit(limit);
+		return new Tx<BocasKeyPage>() {
+			@Override
+			BocasKeyPage perform() throws SQLException {
+				return scan(after, limit, sizes);
 			}
 		}.run();
 	}
@@ -173,8 +232,8 @@ final class JDBCBocas extends SimpleSkeletalBocas {
 		new Put() {
 			@Override
 			void put() throws SQLException {
-				for (Entry<ByteString, ByteSource> entry : entries.entrySet()) {
-					write(entry.getKey(), entry.getValue());
+				for (List<Entry<ByteString, ByteSource>> chunk : Iterables.partition(entries.entrySet(), INSERT_CHUNK)) {
+					write(chunk);
 				}
 			}
 		}.run();
@@ -258,21 +317,143 @@ final class JDBCBocas extends SimpleSkeletalBocas {
 			}
 		}
 
+		/**
+		 * Reads a batch of entries from the database with a single IN-list query.
+		 * @param keys Keys to read.
+		 * @param values Whether to read the values. If not, the found keys are mapped to empty values.
+		 * @param found Map to put the entries found in.
+		 */
+		final void read(List<ByteString> keys, boolean values, Map<ByteString, ByteSource> found)
+				throws SQLException {
+			final PreparedStatement ps = cnn.prepareStatement(dialect.selectIn(keys.size(), values));
+			try {
+				int index = 1;
+				for (ByteString key : keys) {
+					dialect.setKey(ps, index++, key);
+				}
+				final ResultSet rs = ps.executeQuery();
+				try {
+					while (rs.next()) {
+						final ByteString key = dialect.getKey(rs, 1);
+						found.put(key, values ? dialect.getValue(rs, 2, loader) : ByteSource.empty());
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				ps.close();
+			}
+		}
+
+		/**
+		 * Reads a range of an entry from the database.
+		 * @param key Key to read.
+		 * @param offset Offset of the first byte.
+		 * @param length Maximum number of bytes.
+		 * @return The entry value range if found.
+		 */
+		final Optional<ByteSource> read(ByteString key, long offset, long length) throws SQLException {
+			final String query = dialect.selectRange();
+			final PreparedStatement ps;
+			if (query != null) {
+				ps = cnn.prepareStatement(query);
+				dialect.setRange(ps, offset, length);
+				dialect.setKey(ps, 3, key);
+			} else {
+				ps = cnn.prepareStatement("SELECT BOCAS_VALUE FROM BOCAS_TABLE WHERE BOCAS_KEY = ?");
+				dialect.setKey(ps, 1, key);
+			}
+			try {
+				final ResultSet rs = ps.executeQuery();
+				try {
+					if (rs.next()) {
+						ByteSource value = dialect.getRange(rs, 1, loader, offset, length);
+						return Optional.of(value);
+					}
+					return Optional.absent();
+				} finally {
+					rs.close();
+				}
+			} finally {
+				ps.close();
+			}
+		}
+
+		/**
+		 * Scans a page of keys. One more row than requested is fetched to know whether there are more
+		 * keys.
+		 * @param after Key after which the scan starts or {@code null} to start from the beginning.
+		 * @param limit Maximum number of keys.
+		 * @param sizes Whether to include the value sizes.
+		 */
+		final BocasKeyPage scan(ByteString after, int limit, boolean sizes) throws SQLException {
+			final PreparedStatement ps = cnn.prepareStatement(dialect.selectKeys(after != null, sizes));
+			try {
+				int index = 1;
+				if (after != null) {
+					dialect.setKey(ps, index++, after);
+				}
+				ps.setInt(index, limit == Integer.MAX_VALUE ? limit : limit + 1);
+				final ResultSet rs = ps.executeQuery();
+				try {
+					final List<ByteString> keys = Lists.newArrayListWithCapacity(Math.min(limit, 1024));
+					final ImmutableMap.Builder<ByteString, Long> sizeMap = ImmutableMap.builder();
+					boolean more = false;
+					while (rs.next()) {
+						if (keys.size() == limit) {
+							more = true;
+							break;
+						}
+						final ByteString key = dialect.getKey(rs, 1);
+						keys.add(key);
+						if (sizes) {
+							sizeMap.put(key, rs.getLong(2));
+						}
+					}
+					return BocasKeyPage.of(keys, sizeMap.build(), BocasKeyPage.keyCursor(keys, more));
+				} finally {
+					rs.close();
+				}
+			} finally {
+				ps.close();
+			}
+		}
+
 		/**
 		 * Writes an entry if it does not exist.
 		 * @param key Entry key.
 		 * @param value Entry value.
 		 */
 		final void write(ByteString key, ByteSource value) throws SQLException {
-			if (contains(key))
-				return;
-			final PreparedStatement ps = cnn.prepareStatement("INSERT INTO BOCAS_TABLE(BOCAS_KEY, BOCAS_VALUE) VALUES (?,?)");
+			final PreparedStatement ps = cnn.prepareStatement(dialect.insert());
+			final Closer closer = Closer.create();
 			try {
 				dialect.setKey(ps, 1, key);
-				dialect.setValue(ps, 2, value);
+				dialect.setValue(ps, 2, value, closer);
 				ps.executeUpdate();
 			} finally {
 				ps.close();
+				closeStreams(closer);
+			}
+		}
+
+		/**
+		 * Writes a batch of entries, ignoring those that already exist, with a single statement batch.
+		 * @param entries Entries to write.
+		 */
+		final void write(List<Entry<ByteString, ByteSource>> entries) throws SQLException {
+			final PreparedStatement ps = cnn.prepareStatement(dialect.insert());
+			final Closer closer = Closer.create();
+			try {
+				for (Entry<ByteString, ByteSource> entry : entries) {
+					dialect.setKey(ps, 1, entry.getKey());
+					dialect.setValue(ps, 2, entry.getValue(), closer);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			} finally {
+				ps.close();
+				closeStreams(closer);
 			}
 		}
 
@@ -15,7 +15,6 @@
  */
 package net.derquinse.bocas.jdbc;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.PreparedStatement;
@@ -28,6 +27,9 @@ import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.annotations.Beta;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import com.google.common.primitives.Ints;
 
 /**
  * JDBC Dialects for Bocas repositories.
@@ -37,8 +39,13 @@ import com.google.common.io.ByteSource;
 public enum JDBCBocasDialect {
 	MYSQL {
 		@Override
-		InputStream loadValue(ResultSet rs, int index) throws SQLException {
-			return new ByteArrayInputStream(rs.getBytes(index));
+		String selectRange() {
+			return "SELECT SUBSTRING(BOCAS_VALUE, ?, ?) FROM BOCAS_TABLE WHERE BOCAS_KEY = ?";
+		}
+
+		@Override
+		String insert() {
+			return "INSERT IGNORE INTO BOCAS_TABLE(BOCAS_KEY, BOCAS_VALUE) VALUES (?,?)";
 		}
 
 	},
@@ -56,22 +63,53 @@ public enum JDBCBocasDialect {
 		}
 		
 		@Override
-		InputStream loadValue(ResultSet rs, int index) throws SQLException {
-			return rs.getBinaryStream(index);
+		String selectRange() {
+			return "SELECT SUBSTRING(BOCAS_VALUE FROM ? FOR ?) FROM BOCAS_TABLE WHERE BOCAS_KEY = ?";
+		}
+
+		@Override
+		void setRange(PreparedStatement ps, long offset, long length) throws SQLException {
+			// Integer arguments in PostgreSQL
+			ps.setInt(1, (int) Math.min(offset, Integer.MAX_VALUE - 1) + 1);
+			ps.setInt(2, Ints.saturatedCast(length));
+		}
+
+		@Override
+		String insert() {
+			return "INSERT INTO BOCAS_TABLE(BOCAS_KEY, BOCAS_VALUE) VALUES (?,?) ON CONFLICT DO NOTHING";
 		}
 
 	},
 
 	H2 {
 		@Override
-		InputStream loadValue(ResultSet rs, int index) throws SQLException {
-			return rs.getBinaryStream(index);
+		String insert() {
+			// Existing rows are rewritten, but with the same value as keys are hashes.
+			return "MERGE INTO BOCAS_TABLE(BOCAS_KEY, BOCAS_VALUE) KEY(BOCAS_KEY) VALUES (?,?)";
 		}
 
 		@Override
-		void setValue(PreparedStatement ps, int index, ByteSource value) throws SQLException {
+		MemoryByteSource getRange(ResultSet rs, int index, MemoryByteSourceLoader loader, long offset, long length)
+				throws SQLException {
+			// SUBSTRING works on character strings in H2, so the range is read from the blob stream.
 			try {
-				ps.setBinaryStream(index, new ByteArrayInputStream(value.read()));
+				final InputStream is = loadValue(rs, index);
+				try {
+					long skip = offset;
+					while (skip > 0) {
+						long n = is.skip(skip);
+						if (n <= 0) {
+							if (is.read() < 0) {
+								break; // past the end
+							}
+							n = 1;
+						}
+						skip -= n;
+					}
+					return loader.load(ByteStreams.limit(is, length));
+				} finally {
+					is.close();
+				}
 			} catch (IOException e) {
 				throw new SQLException(e);
 			}
@@ -83,27 +121,101 @@ public enum JDBCBocasDialect {
 		return ByteString.copyFrom(rs.getBytes(index));
 	}
 
-	/** Reads a value from a result set. */
+	/**
+	 * Reads a value from a result set. The value is read incrementally from the column stream into
+	 * the loader, so no intermediate copy is made.
+	 */
 	final MemoryByteSource getValue(ResultSet rs, int index, MemoryByteSourceLoader loader) throws SQLException {
 		try {
-			return loader.load(loadValue(rs, index));
+			final InputStream is = loadValue(rs, index);
+			try {
+				return loader.load(is);
+			} finally {
+				is.close();
+			}
 		} catch (IOException e) {
 			throw new SQLException(e);
 		}
 	}
 
-	/** Loads a value from a result set (internal). */
-	abstract InputStream loadValue(ResultSet rs, int index) throws SQLException;
+	/** Opens the stream of a value from a result set (internal). */
+	InputStream loadValue(ResultSet rs, int index) throws SQLException {
+		return rs.getBinaryStream(index);
+	}
+
+	/**
+	 * Returns the query used to read a range of a value, or {@code null} if the range has to be
+	 * read from the full value. The parameters are the 1-based position, the length and the key.
+	 */
+	String selectRange() {
+		return null;
+	}
+
+	/** Sets the position and length parameters of the range query. */
+	void setRange(PreparedStatement ps, long offset, long length) throws SQLException {
+		ps.setLong(1, Math.min(offset, Long.MAX_VALUE - 1) + 1);
+		ps.setLong(2, length);
+	}
+
+	/** Reads a range of a value from a result set of the range query (or the full value query). */
+	MemoryByteSource getRange(ResultSet rs, int index, MemoryByteSourceLoader loader, long offset, long length)
+			throws SQLException {
+		return getValue(rs, index, loader);
+	}
+
+	/**
+	 * Returns the query used to scan a page of keys using keyset pagination. The parameters are the
+	 * key after which the scan starts, if any, and the maximum number of rows. The object size is
+	 * returned as the second column if requested.
+	 * @param after Whether the scan starts after a key.
+	 * @param sizes Whether to include the object sizes.
+	 */
+	String selectKeys(boolean after, boolean sizes) {
+		final StringBuilder b = new StringBuilder("SELECT BOCAS_KEY");
+		if (sizes) {
+			b.append(", LENGTH(BOCAS_VALUE)");
+		}
+		b.append(" FROM BOCAS_TABLE");
+		if (after) {
+			b.append(" WHERE BOCAS_KEY > ?");
+		}
+		return b.append(" ORDER BY BOCAS_KEY LIMIT ?").toString();
+	}
+
+	/**
+	 * Returns the statement used to insert an entry ignoring it if the key already exists. The
+	 * parameters are the key and the value.
+	 */
+	abstract String insert();
+
+	/**
+	 * Returns the query used to read a batch of entries. The parameters are the keys.
+	 * @param n Number of keys.
+	 * @param values Whether to read the values (as the second column) or only the keys.
+	 */
+	String selectIn(int n, boolean values) {
+		final StringBuilder b = new StringBuilder(values ? "SELECT BOCAS_KEY, BOCAS_VALUE" : "SELECT BOCAS_KEY");
+		b.append(" FROM BOCAS_TABLE WHERE BOCAS_KEY IN (?");
+		for (int i = 1; i < n; i++) {
+			b.append(",?");
+		}
+		return b.append(')').toString();
+	}
 
 	/** Puts a key in a prepared statement parameter. */
 	void setKey(PreparedStatement ps, int index, ByteString key) throws SQLException {
 		ps.setBytes(index, key.toByteArray());
 	}
 
-	/** Puts a value in a prepared statement parameter. */
-	void setValue(PreparedStatement ps, int index, ByteSource value) throws SQLException {
+	/**
+	 * Puts a value in a prepared statement parameter. The value is streamed with its known length
+	 * instead of being copied to an array first. The stream is registered in the provided closer, that
+	 * must be closed once the statement has been executed.
+	 */
+	void setValue(PreparedStatement ps, int index, ByteSource value, Closer closer) throws SQLException {
 		try {
-			ps.setBytes(index, value.read());
+			final long size = value.size();
+			ps.setBinaryStream(index, closer.register(value.openStream()), size);
 		} catch (IOException e) {
 			throw new SQLException(e);
 		}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.jdbc;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasExerciser;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.test.h2.H2MemorySingleConnectionDataSource;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Benchmark comparing batched multi-key operations with one operation per key on an in-process H2
+ * database. It is not run as part of the test suite, run it as a Java application.
+ * @author Andres Rodriguez.
+ */
+public final class JDBCBatchBenchmark {
+	/** Number of entries in each batch. */
+	private static final int BATCH_SIZE = 1000;
+	/** Number of rounds. */
+	private static final int ROUNDS = 5;
+
+	private JDBCBatchBenchmark() {
+	}
+
+	private static List<MemoryByteSource> values() {
+		final List<MemoryByteSource> values = Lists.newArrayListWithCapacity(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			values.add(BocasExerciser.data(64, 1024));
+		}
+		return values;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final DataSource ds = new H2MemorySingleConnectionDataSource();
+		final Connection cnn = ds.getConnection();
+		cnn.createStatement().execute("CREATE TABLE BOCAS_TABLE(BOCAS_KEY BINARY(32) PRIMARY KEY, BOCAS_VALUE BLOB)");
+		cnn.close();
+		final Bocas bocas = JDBCBocasServices.newBuilder().build(ds);
+		for (int round = 0; round < ROUNDS; round++) {
+			List<MemoryByteSource> values = values();
+			Stopwatch w = Stopwatch.createStarted();
+			for (MemoryByteSource value : values) {
+				bocas.put(value);
+			}
+			System.out.printf("Round %d: put x %d: %s%n", round, BATCH_SIZE, w);
+			values = values();
+			w = Stopwatch.createStarted();
+			final List<ByteString> keys = bocas.putAll(values);
+			System.out.printf("Round %d: putAll(%d): %s%n", round, BATCH_SIZE, w);
+			final Set<ByteString> batch = Sets.newHashSet(keys.subList(0, BATCH_SIZE / 2));
+			while (batch.size() < BATCH_SIZE) {
+				batch.add(bocas.getHashFunction().hash(BocasExerciser.data(64, 1024)));
+			}
+			w = Stopwatch.createStarted();
+			int found = 0;
+			for (ByteString key : batch) {
+				if (bocas.contains(key)) {
+					found++;
+				}
+			}
+			System.out.printf("Round %d: contains x %d: %s (%d found)%n", round, BATCH_SIZE, w, found);
+			w = Stopwatch.createStarted();
+			found = bocas.contained(batch).size();
+			System.out.printf("Round %d: contained(%d): %s (%d found)%n", round, BATCH_SIZE, w, found);
+			w = Stopwatch.createStarted();
+			found = 0;
+			for (ByteString key : batch) {
+				if (bocas.get(key).isPresent()) {
+					found++;
+				}
+			}
+			System.out.printf("Round %d: get x %d: %s (%d found)%n", round, BATCH_SIZE, w, found);
+			w = Stopwatch.createStarted();
+			found = bocas.get(batch).size();
+			System.out.printf("Round %d: get(%d): %s (%d found)%n", round, BATCH_SIZE, w, found);
+		}
+		bocas.close();
+	}
+}
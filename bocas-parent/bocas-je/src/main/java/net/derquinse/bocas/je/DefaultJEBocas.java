@@ -19,26 +19,47 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 import javax.annotation.concurrent.GuardedBy;
 
 import net.derquinse.bocas.BocasException;
 import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.bocas.BocasKeyPage;
+import net.derquinse.bocas.BocasPreconditions;
 import net.derquinse.bocas.SimpleSkeletalBocas;
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseEntry;
@@ -66,6 +87,18 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	/** Whether the database is still open. */
 	@GuardedBy("lock")
 	private boolean open = true;
+	/** Maximum number of entries committed together, 0 if group commit is disabled. */
+	private final int groupCommit;
+	/** Pending group commit writes. */
+	private final Queue<PendingWrite> pending = new ConcurrentLinkedQueue<PendingWrite>();
+	/** Group commit lock, held by the thread committing the pending writes. */
+	private final Lock commitLock = new ReentrantLock();
+	/** Background log flusher, if any. */
+	@Nullable
+	private final ScheduledExecutorService flusher;
+	/** Failure of the last background log flush, {@code null} if it succeeded. */
+	@Nullable
+	private volatile Exception flushFailure = null;
 
 	private static void checkKey(ByteString key) {
 		checkNotNull(key, "The object key must be provided");
@@ -75,8 +108,17 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 		checkNotNull(key, "The object keys must be provided");
 	}
 
-	/** Constructor. */
-	DefaultJEBocas(BocasHashFunction function, Environment e, boolean direct, boolean readOnly) {
+	/**
+	 * Constructor.
+	 * @param function Hash function.
+	 * @param e Database environment.
+	 * @param direct Whether to load entries in direct memory.
+	 * @param readOnly Whether the database is read only.
+	 * @param groupCommit Maximum number of entries committed together, 0 to disable group commit.
+	 * @param flushInterval Interval of the background log flush (ms), 0 to disable it.
+	 */
+	DefaultJEBocas(BocasHashFunction function, Environment e, boolean direct, boolean readOnly, int groupCommit,
+			long flushInterval) {
 		super(function);
 		this.environment = checkNotNull(e, "The environment must be provided");
 		DatabaseConfig dc = new DatabaseConfig();
@@ -85,6 +127,19 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 		dc.setReadOnly(readOnly);
 		this.database = e.openDatabase(null, DB_NAME, dc);
 		this.direct = direct;
+		this.groupCommit = groupCommit;
+		if (flushInterval > 0) {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("bocas-je-flush-%d").build());
+			this.flusher.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		} else {
+			this.flusher = null;
+		}
 	}
 
 	/*
@@ -95,6 +150,28 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 		return MemoryByteSource.copyOf(direct, entry.getData());
 	}
 
+	/** Flushes the log to disk. */
+	private void flush() {
+		lock.readLock().lock();
+		try {
+			if (open) {
+				environment.sync();
+				flushFailure = null;
+			}
+		} catch (Exception e) {
+			// Kept instead of reported, as a persistent failure would be reported every interval.
+			flushFailure = e;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Returns the failure of the last background log flush, {@code null} if it succeeded. */
+	@Nullable
+	Exception getFlushFailure() {
+		return flushFailure;
+	}
+
 	/** Closes the database. */
 	@Override
 	@PreDestroy
@@ -104,6 +181,10 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 			if (!open) {
 				return;
 			}
+			open = false;
+			if (flusher != null) {
+				flusher.shutdownNow();
+			}
 			try {
 				database.close();
 			} catch (Exception e) {
@@ -130,7 +211,7 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	@Override
 	public boolean contains(final ByteString key) {
 		checkKey(key);
-		return new Tx<Boolean>() {
+		return new Read<Boolean>() {
 			@Override
 			Boolean perform() throws IOException {
 				return contains(key);
@@ -145,17 +226,10 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	@Override
 	public Set<ByteString> contained(final Iterable<ByteString> keys) {
 		checkKeys(keys);
-		return new Tx<Set<ByteString>>() {
+		return new Read<Set<ByteString>>() {
 			@Override
 			Set<ByteString> perform() throws IOException {
-				Set<ByteString> set = Sets.newHashSet();
-				for (ByteString key : keys) {
-					checkKey(key);
-					if (!set.contains(key) && contains(key)) {
-						set.add(key);
-					}
-				}
-				return set;
+				return lookup(keys, null);
 			}
 		}.run();
 	}
@@ -167,7 +241,7 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	@Override
 	public Optional<ByteSource> get(final ByteString key) {
 		checkKey(key);
-		return new Tx<Optional<ByteSource>>() {
+		return new Read<Optional<ByteSource>>() {
 			@Override
 			Optional<ByteSource> perform() throws IOException {
 				return read(key);
@@ -175,6 +249,22 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 		}.run();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(final ByteString key, final long offset, final long length) {
+		checkKey(key);
+		BocasPreconditions.checkRange(offset, length);
+		return new Read<Optional<ByteSource>>() {
+			@Override
+			Optional<ByteSource> perform() throws IOException {
+				return read(key, offset, length);
+			}
+		}.run();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
@@ -182,24 +272,33 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	@Override
 	public Map<ByteString, ByteSource> get(final Iterable<ByteString> keys) {
 		checkKeys(keys);
-		return new Tx<Map<ByteString, ByteSource>>() {
+		return new Read<Map<ByteString, ByteSource>>() {
 			@Override
 			Map<ByteString, ByteSource> perform() throws IOException {
 				Map<ByteString, ByteSource> map = Maps.newHashMap();
-				for (ByteString key : keys) {
-					checkKey(key);
-					if (!map.containsKey(key)) {
-						Optional<ByteSource> v = read(key);
-						if (v.isPresent()) {
-							map.put(key, v.get());
-						}
-					}
-				}
+				lookup(keys, map);
 				return map;
 			}
 		}.run();
 	}
 
+	/**
+	 * Scans the keys using a database cursor, so keys are returned in the unsigned byte order of the
+	 * database. Values are only read if sizes are requested.
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, final int limit, final boolean sizes) {
+		final ByteString after = BocasKeyPage.cursorKey(cursor);
+		BocasPreconditions.checkLimit(limit);
+		return new Read<BocasKeyPage>() {
+			@Override
+			BocasKeyPage perform() throws IOException {
+				return scan(after, limit, sizes);
+			}
+		}.run();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.SkeletalBocas#put(net.derquinse.common.base.ByteString,
@@ -207,6 +306,10 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	protected void put(final ByteString key, final ByteSource value) {
+		if (groupCommit > 0) {
+			groupPut(ImmutableMap.of(key, value));
+			return;
+		}
 		new Put() {
 			@Override
 			void put() throws IOException {
@@ -221,6 +324,10 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	protected void putAll(final Map<ByteString, ByteSource> entries) {
+		if (groupCommit > 0) {
+			groupPut(entries);
+			return;
+		}
 		new Put() {
 			@Override
 			void put() throws IOException {
@@ -231,6 +338,86 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 		}.run();
 	}
 
+	/**
+	 * Writes entries using group commit. The write is queued and the calling thread waits for the
+	 * commit lock. The thread holding it commits every queued write in a single transaction, so
+	 * threads arriving while a commit is in progress share the next one.
+	 */
+	private void groupPut(Map<ByteString, ByteSource> entries) {
+		final PendingWrite write = new PendingWrite(entries);
+		pending.add(write);
+		while (!write.done) {
+			commitLock.lock();
+			try {
+				if (!write.done) {
+					commitPending();
+				}
+			} finally {
+				commitLock.unlock();
+			}
+		}
+		if (write.error != null) {
+			throw write.error;
+		}
+	}
+
+	/** Commits a batch of pending writes. Must be called holding the commit lock. */
+	@GuardedBy("commitLock")
+	private void commitPending() {
+		final List<PendingWrite> batch = Lists.newArrayList();
+		int n = 0;
+		while (n < groupCommit) {
+			final PendingWrite w = pending.poll();
+			if (w == null) {
+				break;
+			}
+			batch.add(w);
+			n += w.entries.size();
+		}
+		boolean completed = false;
+		try {
+			try {
+				commit(batch);
+			} catch (RuntimeException e) {
+				if (batch.size() == 1) {
+					batch.get(0).error = e;
+				} else {
+					// The merged transaction has been aborted: each write is retried on its own so that only
+					// the failing ones are reported.
+					for (PendingWrite w : batch) {
+						try {
+							commit(ImmutableList.of(w));
+						} catch (RuntimeException ew) {
+							w.error = ew;
+						}
+					}
+				}
+			}
+			completed = true;
+		} finally {
+			for (PendingWrite w : batch) {
+				if (!completed && w.error == null) {
+					w.error = new BocasException("Group commit aborted");
+				}
+				w.done = true;
+			}
+		}
+	}
+
+	/** Writes a list of pending writes in a single transaction. */
+	private void commit(final List<PendingWrite> writes) {
+		new Put() {
+			@Override
+			void put() throws IOException {
+				for (PendingWrite w : writes) {
+					for (Entry<ByteString, ByteSource> entry : w.entries.entrySet()) {
+						write(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		}.run();
+	}
+
 	/** Bocas transaction. */
 	private abstract class Tx<T> {
 		private Transaction tx;
@@ -249,7 +436,8 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 			}
 		}
 
-		private T runTx() throws IOException {
+		/** Runs the operation in a transaction. */
+		T runTx() throws IOException {
 			boolean ok = false;
 			tx = environment.beginTransaction(null, null);
 			try {
@@ -296,6 +484,129 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 			return Optional.absent();
 		}
 
+		/**
+		 * Looks up a batch of keys walking a single cursor over the keys sorted in database order, so
+		 * that nearby keys are found in the same B-tree nodes. Each search positions the cursor at the
+		 * first existing key not less than the requested one, so the requested keys below that position
+		 * are known to be missing without searching. Reads are performed with read-committed isolation.
+		 * @param keys Requested keys.
+		 * @param values Map to put the values of the keys found in, {@code null} if only the keys are
+		 *          needed.
+		 * @return The keys found.
+		 */
+		final Set<ByteString> lookup(Iterable<ByteString> keys, @Nullable Map<ByteString, ByteSource> values) {
+			final SortedMap<byte[], ByteString> sorted = Maps.newTreeMap(UnsignedBytes.lexicographicalComparator());
+			for (ByteString key : keys) {
+				checkKey(key);
+				sorted.put(key.toByteArray(), key);
+			}
+			final Set<ByteString> found = Sets.newHashSetWithExpectedSize(sorted.size());
+			if (sorted.isEmpty()) {
+				return found;
+			}
+			final Cursor cursor = database.openCursor(tx, CursorConfig.READ_COMMITTED);
+			try {
+				final DatabaseEntry k = new DatabaseEntry();
+				final DatabaseEntry nodata = new DatabaseEntry();
+				nodata.setPartial(0, 0, true);
+				byte[] position = null;
+				for (Entry<byte[], ByteString> entry : sorted.entrySet()) {
+					final byte[] key = entry.getKey();
+					if (position != null && UnsignedBytes.lexicographicalComparator().compare(key, position) < 0) {
+						continue; // Between the previous requested key and the cursor position.
+					}
+					k.setData(key);
+					if (cursor.getSearchKeyRange(k, nodata, null) != OperationStatus.SUCCESS) {
+						break; // No more keys in the database.
+					}
+					position = k.getData();
+					if (Arrays.equals(key, position)) {
+						found.add(entry.getValue());
+						if (values != null) {
+							final DatabaseEntry v = new DatabaseEntry();
+							if (cursor.getCurrent(k, v, null) == OperationStatus.SUCCESS) {
+								values.put(entry.getValue(), load(v));
+							}
+						}
+					}
+				}
+			} finally {
+				cursor.close();
+			}
+			return found;
+		}
+
+		/**
+		 * Reads a range of an entry from the database. Only the requested range is copied.
+		 * @param key Key to read.
+		 * @param offset Offset of the first byte.
+		 * @param length Maximum number of bytes.
+		 * @return The entry value range if found.
+		 */
+		final Optional<ByteSource> read(ByteString key, long offset, long length) {
+			DatabaseEntry k = key(key);
+			DatabaseEntry v = new DatabaseEntry();
+			// Values are byte arrays, so offsets beyond the integer range are past the end. The length
+			// is bounded so that the end of the partial entry does not overflow.
+			final int off = Ints.saturatedCast(offset);
+			v.setPartial(off, Ints.saturatedCast(Math.min(length, Integer.MAX_VALUE - off)), true);
+			if (database.get(tx, k, v, null) == OperationStatus.SUCCESS) {
+				if (v.getData() == null) {
+					return Optional.of(ByteSource.empty());
+				}
+				ByteSource value = load(v);
+				return Optional.of(value);
+			}
+			return Optional.absent();
+		}
+
+		/**
+		 * Scans a page of keys. Read committed isolation is used so that the records scanned are not
+		 * kept locked until the end of the transaction.
+		 * @param after Key after which the scan starts or {@code null} to start from the beginning.
+		 * @param limit Maximum number of keys.
+		 * @param sizes Whether to include the value sizes.
+		 */
+		final BocasKeyPage scan(ByteString after, int limit, boolean sizes) {
+			final Cursor cursor = database.openCursor(tx, CursorConfig.READ_COMMITTED);
+			try {
+				final DatabaseEntry k;
+				final DatabaseEntry v = new DatabaseEntry();
+				if (!sizes) {
+					v.setPartial(0, 0, true);
+				}
+				OperationStatus status;
+				if (after == null) {
+					k = new DatabaseEntry();
+					status = cursor.getFirst(k, v, null);
+				} else {
+					k = key(after);
+					status = cursor.getSearchKeyRange(k, v, null);
+					if (status == OperationStatus.SUCCESS && after.equals(toKey(k))) {
+						status = cursor.getNext(k, v, null);
+					}
+				}
+				final List<ByteString> keys = Lists.newArrayListWithCapacity(Math.min(limit, 1024));
+				final ImmutableMap.Builder<ByteString, Long> sizeMap = ImmutableMap.builder();
+				while (status == OperationStatus.SUCCESS && keys.size() < limit) {
+					final ByteString key = toKey(k);
+					keys.add(key);
+					if (sizes) {
+						sizeMap.put(key, (long) v.getSize());
+					}
+					status = cursor.getNext(k, v, null);
+				}
+				return BocasKeyPage.of(keys, sizeMap.build(), BocasKeyPage.keyCursor(keys, status == OperationStatus.SUCCESS));
+			} finally {
+				cursor.close();
+			}
+		}
+
+		/** Converts a database entry into a key. */
+		private ByteString toKey(DatabaseEntry k) {
+			return ByteString.copyFrom(k.getData(), k.getOffset(), k.getSize());
+		}
+
 		/**
 		 * Writes an entry, if absent
 		 * @param key Entry key.
@@ -310,6 +621,31 @@ final class DefaultJEBocas extends SimpleSkeletalBocas {
 		abstract T perform() throws IOException;
 	}
 
+	/** Write waiting to be group committed. */
+	private static final class PendingWrite {
+		/** Entries to write. */
+		final Map<ByteString, ByteSource> entries;
+		/** Commit error, if any. Set before the done flag. */
+		RuntimeException error = null;
+		/** Whether the write has been committed or has failed. */
+		volatile boolean done = false;
+
+		PendingWrite(Map<ByteString, ByteSource> entries) {
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * Read-only operations, performed without a transaction. Single reads use the default
+	 * read-committed isolation of non-transactional operations.
+	 */
+	private abstract class Read<T> extends Tx<T> {
+		@Override
+		final T runTx() throws IOException {
+			return perform();
+		}
+	}
+
 	/** Put transactions. */
 	private abstract class Put extends Tx<Object> {
 		@Override
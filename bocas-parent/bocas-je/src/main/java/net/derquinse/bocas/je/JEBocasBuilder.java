@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static net.derquinse.bocas.BocasPreconditions.checkHash;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasException;
@@ -37,6 +38,10 @@ import com.sleepycat.je.EnvironmentConfig;
  */
 public final class JEBocasBuilder {
 	private static final long ONE_MB = 1024L * 1024L;
+	/** Default log flush interval in the no-sync durability mode (ms). */
+	private static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+	/** Default maximum number of entries committed together. */
+	private static final int DEFAULT_GROUP_COMMIT = 1000;
 
 	/** Log file size in bytes. */
 	private Long fileSize;
@@ -48,6 +53,12 @@ public final class JEBocasBuilder {
 	private Boolean readOnly;
 	/** Whether to use direct memory. */
 	private boolean direct = false;
+	/** Durability mode. */
+	private JEBocasDurability durability;
+	/** Log flush interval (ms). */
+	private Long flushInterval;
+	/** Maximum number of entries committed together, 0 if group commit is disabled. */
+	private int groupCommit = 0;
 	/** Hash function. */
 	private BocasHashFunction function = BocasHashFunction.sha256();
 	/** Whether the hash function has been set. */
@@ -139,6 +150,60 @@ public final class JEBocasBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets the durability mode. The default is {@link JEBocasDurability#SYNC}.
+	 * @param durability Durability mode.
+	 * @return This builder.
+	 * @throws IllegalStateException if the durability mode has already been set.
+	 */
+	public JEBocasBuilder durability(JEBocasDurability durability) {
+		checkState(this.durability == null, "The durability mode has already been set");
+		this.durability = checkNotNull(durability, "The durability mode must be provided");
+		return this;
+	}
+
+	/**
+	 * Sets the interval of the background log flush. By default the log is flushed every second in
+	 * the {@link JEBocasDurability#NO_SYNC} mode and never in the rest.
+	 * @param duration Interval between flushes.
+	 * @param unit Interval unit.
+	 * @return This builder.
+	 * @throws IllegalArgumentException if the interval is not positive.
+	 * @throws IllegalStateException if the flush interval has already been set.
+	 */
+	public JEBocasBuilder flushInterval(long duration, TimeUnit unit) {
+		checkState(this.flushInterval == null, "The flush interval has already been set");
+		checkArgument(duration > 0, "The flush interval must be > 0");
+		this.flushInterval = checkNotNull(unit, "The flush interval unit must be provided").toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Specifies that concurrent writes should be committed together in a single transaction, with a
+	 * maximum of 1000 entries per transaction.
+	 * @return This builder.
+	 * @throws IllegalStateException if group commit has already been enabled.
+	 */
+	public JEBocasBuilder groupCommit() {
+		return groupCommit(DEFAULT_GROUP_COMMIT);
+	}
+
+	/**
+	 * Specifies that concurrent writes should be committed together in a single transaction. If a
+	 * transaction fails every write in it fails.
+	 * @param maxEntries Maximum number of entries per transaction. Single writes with more entries are
+	 *          committed alone.
+	 * @return This builder.
+	 * @throws IllegalArgumentException if the maximum number of entries is not positive.
+	 * @throws IllegalStateException if group commit has already been enabled.
+	 */
+	public JEBocasBuilder groupCommit(int maxEntries) {
+		checkState(this.groupCommit == 0, "Group commit has already been enabled");
+		checkArgument(maxEntries > 0, "The maximum number of entries per transaction must be > 0");
+		this.groupCommit = maxEntries;
+		return this;
+	}
+
 	/**
 	 * Sets the hash function to use.
 	 * @param function The hash function to use.
@@ -175,9 +240,17 @@ public final class JEBocasBuilder {
 			ec.setCacheSize(cacheSize);
 		}
 		ec.setSharedCache(MoreObjects.firstNonNull(sharedCache, Boolean.FALSE));
+		final JEBocasDurability durability = MoreObjects.firstNonNull(this.durability, JEBocasDurability.SYNC);
+		ec.setDurability(durability.getDurability());
+		long flush = 0L;
+		if (flushInterval != null) {
+			flush = flushInterval;
+		} else if (durability == JEBocasDurability.NO_SYNC) {
+			flush = DEFAULT_FLUSH_INTERVAL;
+		}
 		try {
 			Environment e = new Environment(d, ec);
-			return new DefaultJEBocas(function, e, direct, readOnly);
+			return new DefaultJEBocas(function, e, direct, readOnly, groupCommit, flush);
 		} catch (DatabaseException e) {
 			throw new BocasException(e);
 		}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.je;
+
+import com.google.common.annotations.Beta;
+import com.sleepycat.je.Durability;
+
+/**
+ * Durability modes for Bocas buckets based on Berkeley DB Java Edition.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public enum JEBocasDurability {
+	/** The log is written and synchronized to disk on every commit. */
+	SYNC(Durability.COMMIT_SYNC),
+	/**
+	 * The log is written on every commit but not synchronized to disk, so commits survive a process
+	 * crash but may be lost if the operating system crashes.
+	 */
+	WRITE_NO_SYNC(Durability.COMMIT_WRITE_NO_SYNC),
+	/**
+	 * The log is neither written nor synchronized on commit, so commits since the last flush may be
+	 * lost if the process crashes. Buckets using this mode flush the log periodically.
+	 */
+	NO_SYNC(Durability.COMMIT_NO_SYNC);
+
+	/** JE durability. */
+	private final Durability durability;
+
+	private JEBocasDurability(Durability durability) {
+		this.durability = durability;
+	}
+
+	/** Returns the JE durability. */
+	Durability getDurability() {
+		return durability;
+	}
+}
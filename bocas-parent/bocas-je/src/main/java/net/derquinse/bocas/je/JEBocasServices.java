@@ -15,10 +15,14 @@
  */
 package net.derquinse.bocas.je;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasException;
 import net.derquinse.common.base.NotInstantiable;
 
+import com.google.common.base.Optional;
+
 /**
  * Factory class for Bocas buckets based on Berkeley DB Java Edition.
  * @author Andres Rodriguez.
@@ -42,4 +46,19 @@ public final class JEBocasServices extends NotInstantiable {
 	public static Bocas basic(String directory) {
 		return newBuilder().build(directory);
 	}
+
+	/**
+	 * Returns the failure of the last background log flush of a bucket. Failures are kept instead of
+	 * reported, and cleared by the next successful flush.
+	 * @param bucket Bucket to check.
+	 * @return The failure, absent if the last flush succeeded, the bucket has no background flush or
+	 *         it has not been created by this module.
+	 */
+	public static Optional<Exception> flushFailure(Bocas bucket) {
+		checkNotNull(bucket, "The bucket must be provided");
+		if (bucket instanceof DefaultJEBocas) {
+			return Optional.fromNullable(((DefaultJEBocas) bucket).getFlushFailure());
+		}
+		return Optional.absent();
+	}
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.je;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasExerciser;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * Benchmark comparing batch lookups with one lookup per key on a large JE bucket. It is not run as
+ * part of the test suite, run it as a Java application.
+ * @author Andres Rodriguez.
+ */
+public final class JEBatchLookupBenchmark {
+	/** Number of entries in the bucket. */
+	private static final int ENTRIES = 200000;
+	/** Number of entries in each put. */
+	private static final int PUT_SIZE = 1000;
+	/** Number of keys in each lookup batch, half of them present. */
+	private static final int BATCH_SIZE = 10000;
+	/** Number of rounds. */
+	private static final int ROUNDS = 5;
+
+	private JEBatchLookupBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final Bocas bocas = JEBocasServices.newBuilder().setCacheSizeMB(16).build(
+				Files.createTempDir().getAbsolutePath());
+		try {
+			final List<ByteString> present = Lists.newArrayListWithCapacity(ENTRIES);
+			for (int i = 0; i < ENTRIES; i += PUT_SIZE) {
+				final List<MemoryByteSource> values = Lists.newArrayListWithCapacity(PUT_SIZE);
+				for (int j = 0; j < PUT_SIZE; j++) {
+					values.add(BocasExerciser.data(64, 256));
+				}
+				present.addAll(bocas.putAll(values));
+			}
+			for (int round = 0; round < ROUNDS; round++) {
+				final Set<ByteString> batch = Sets.newLinkedHashSetWithExpectedSize(BATCH_SIZE);
+				while (batch.size() < BATCH_SIZE) {
+					batch.add(present.get((int) (Math.random() * ENTRIES)));
+					batch.add(bocas.getHashFunction().hash(BocasExerciser.data(64, 256)));
+				}
+				Stopwatch w = Stopwatch.createStarted();
+				int found = 0;
+				for (ByteString key : batch) {
+					if (bocas.contains(key)) {
+						found++;
+					}
+				}
+				System.out.printf("Round %d: contains x %d: %s (%d found)%n", round, BATCH_SIZE, w, found);
+				w = Stopwatch.createStarted();
+				found = bocas.contained(batch).size();
+				System.out.printf("Round %d: contained(%d): %s (%d found)%n", round, BATCH_SIZE, w, found);
+				w = Stopwatch.createStarted();
+				found = 0;
+				for (ByteString key : batch) {
+					if (bocas.get(key).isPresent()) {
+						found++;
+					}
+				}
+				System.out.printf("Round %d: get x %d: %s (%d found)%n", round, BATCH_SIZE, w, found);
+				w = Stopwatch.createStarted();
+				final Map<ByteString, ?> map = bocas.get(batch);
+				System.out.printf("Round %d: get(%d): %s (%d found)%n", round, BATCH_SIZE, w, map.size());
+			}
+		} finally {
+			bocas.close();
+		}
+	}
+}
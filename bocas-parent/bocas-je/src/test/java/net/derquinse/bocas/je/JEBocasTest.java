@@ -15,12 +15,39 @@
  */
 package net.derquinse.bocas.je;
 
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasException;
 import net.derquinse.bocas.BocasExerciser;
+import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.common.base.ByteString;
 
 import org.testng.annotations.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
 
 /**
  * Test for JEBocas.
@@ -57,6 +84,127 @@ public class JEBocasTest {
 		test(JEBocasServices.newBuilder().setFileSizeMB(32).setCacheSizeMB(2).shared().build(dir()));
 	}
 
+	@Test
+	public void groupCommit() throws Exception {
+		test(JEBocasServices.newBuilder().durability(JEBocasDurability.NO_SYNC).flushInterval(100, TimeUnit.MILLISECONDS)
+				.groupCommit(50).build(dir()));
+	}
+
+	@Test
+	public void flushFailure() throws Exception {
+		final Bocas bocas = JEBocasServices.newBuilder().durability(JEBocasDurability.NO_SYNC)
+				.flushInterval(10, TimeUnit.MILLISECONDS).build(dir());
+		try {
+			BocasExerciser.exercise(bocas);
+			Thread.sleep(50L);
+			assertFalse(JEBocasServices.flushFailure(bocas).isPresent());
+		} finally {
+			bocas.close();
+		}
+	}
+
+	/** A failing write only fails its own writer, not the rest of the group. */
+	@Test
+	public void groupCommitFailure() throws Exception {
+		final Bocas bocas = JEBocasServices.newBuilder().durability(JEBocasDurability.NO_SYNC).groupCommit(50)
+				.build(dir());
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<ByteString>> good = Lists.newArrayList();
+			for (int i = 0; i < 32; i++) {
+				good.add(executor.submit(put(bocas, start, ByteSource.wrap(("value" + i).getBytes(Charsets.UTF_8)))));
+			}
+			final Future<ByteString> bad = executor.submit(put(bocas, start, new FailingSource()));
+			start.countDown();
+			for (Future<ByteString> f : good) {
+				assertTrue(bocas.contains(f.get()));
+			}
+			try {
+				bad.get();
+				fail("The failing write must fail");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof BocasException);
+			}
+		} finally {
+			executor.shutdown();
+			bocas.close();
+		}
+	}
+
+	private static Callable<ByteString> put(final Bocas bocas, final CountDownLatch start, final ByteSource value) {
+		return new Callable<ByteString>() {
+			@Override
+			public ByteString call() throws Exception {
+				start.await();
+				return bocas.put(value);
+			}
+		};
+	}
+
+	/** Byte source that can be hashed but fails when written. */
+	private static final class FailingSource extends ByteSource {
+		private final AtomicInteger opened = new AtomicInteger();
+
+		@Override
+		public InputStream openStream() throws IOException {
+			if (opened.getAndIncrement() > 0) {
+				throw new IOException("Unreadable value");
+			}
+			return new ByteArrayInputStream("failing".getBytes(Charsets.UTF_8));
+		}
+	}
+
+	/** Flush failures are retained until a flush succeeds. */
+	@Test
+	public void flushFailureRetained() throws Exception {
+		final IllegalStateException failure = new IllegalStateException("Unable to sync");
+		final FailingEnvironment e = new FailingEnvironment(new File(dir()), failure);
+		final DefaultJEBocas bocas = new DefaultJEBocas(BocasHashFunction.sha256(), e, false, false, 0, 10L);
+		try {
+			BocasExerciser.exercise(bocas);
+			e.failing = true;
+			Thread.sleep(50L);
+			assertSame(JEBocasServices.flushFailure(bocas).get(), failure);
+			e.failing = false;
+			Thread.sleep(50L);
+			assertFalse(JEBocasServices.flushFailure(bocas).isPresent());
+		} finally {
+			bocas.close();
+		}
+	}
+
+	/** Environment whose log flush can be made to fail. */
+	private static final class FailingEnvironment extends Environment {
+		private final RuntimeException failure;
+		volatile boolean failing = false;
+
+		FailingEnvironment(File home, RuntimeException failure) {
+			super(home, config());
+			this.failure = failure;
+		}
+
+		private static EnvironmentConfig config() {
+			EnvironmentConfig ec = new EnvironmentConfig();
+			ec.setAllowCreate(true);
+			ec.setTransactional(true);
+			return ec;
+		}
+
+		@Override
+		public void sync() {
+			if (failing) {
+				throw failure;
+			}
+			super.sync();
+		}
+	}
+
+	@Test
+	public void writeNoSync() throws Exception {
+		test(JEBocasServices.newBuilder().durability(JEBocasDurability.WRITE_NO_SYNC).groupCommit().build(dir()));
+	}
+
 	@Test(expectedExceptions = Exception.class)
 	public void readOnly() throws Exception {
 		test(JEBocasServices.newBuilder().readOnly().setCacheSizeMB(2).shared().build(dir()));
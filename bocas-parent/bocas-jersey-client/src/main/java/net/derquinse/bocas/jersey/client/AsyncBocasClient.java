@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.jersey.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.derquinse.bocas.BocasPreconditions.checkLoader;
+import static net.derquinse.bocas.jersey.client.BocasClient.checkKey;
+import static net.derquinse.bocas.jersey.client.BocasClient.checkValue;
+import static net.derquinse.bocas.jersey.client.BocasClient.exception;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.core.MediaType;
+
+import net.derquinse.bocas.AsyncBocas;
+import net.derquinse.bocas.BocasException;
+import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.bocas.jersey.BocasResources;
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.sun.jersey.api.client.AsyncWebResource;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.ClientResponse.Status;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.async.TypeListener;
+import com.sun.jersey.multipart.FormDataMultiPart;
+import com.sun.jersey.multipart.MultiPartMediaTypes;
+
+/**
+ * Asynchronous Bocas bucket client based on Jersey (JAX-RS) asynchronous resources. Responses are
+ * processed by the Jersey client when they are available, so no caller thread is blocked while a
+ * request is in flight.
+ * @author Andres Rodriguez.
+ */
+final class AsyncBocasClient implements AsyncBocas {
+	/** Bucket resource. */
+	private final AsyncWebResource resource;
+	/** Memory loader to use. */
+	private final MemoryByteSourceLoader loader;
+
+	private static boolean isNotFound(ClientResponse response) {
+		return response.getStatus() == Status.NOT_FOUND.getStatusCode();
+	}
+
+	private static void checkOk(ClientResponse response) {
+		if (response.getStatus() / 100 != 2) {
+			throw new UniformInterfaceException(response);
+		}
+	}
+
+	AsyncBocasClient(AsyncWebResource resource, MemoryByteSourceLoader loader) {
+		this.resource = checkNotNull(resource, "The bucket resource must be provided");
+		this.loader = checkLoader(loader);
+	}
+
+	private AsyncWebResource object(ByteString key) {
+		return resource.path(checkKey(key).toHexString());
+	}
+
+	@Override
+	public BocasHashFunction getHashFunction() {
+		try {
+			return BocasClient.hashFunction(resource.path(BocasResources.HASH).get(String.class).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw exception(e);
+		} catch (ExecutionException e) {
+			throw exception(e.getCause());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public ListenableFuture<Boolean> contains(ByteString key) {
+		final Call<Boolean> call = new Call<Boolean>() {
+			@Override
+			Boolean convert(ClientResponse response) {
+				if (isNotFound(response)) {
+					return false;
+				}
+				checkOk(response);
+				return true;
+			}
+		};
+		resource.path(BocasResources.CATALOG).path(checkKey(key).toHexString()).get(call);
+		return call.future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#contained(java.lang.Iterable)
+	 */
+	@Override
+	public ListenableFuture<Set<ByteString>> contained(Iterable<ByteString> keys) {
+		final Set<ByteString> requested = BocasClient.keySet(keys);
+		if (requested.isEmpty()) {
+			return Futures.<Set<ByteString>> immediateFuture(ImmutableSet.<ByteString> of());
+		}
+		final Call<Set<ByteString>> call = new Call<Set<ByteString>>() {
+			@Override
+			Set<ByteString> convert(ClientResponse response) {
+				if (isNotFound(response)) {
+					return ImmutableSet.of();
+				}
+				checkOk(response);
+				return ImmutableSet.copyOf(BocasResources.response2List(response.getEntity(String.class)));
+			}
+		};
+		multi(resource.path(BocasResources.CATALOG), requested, call);
+		return call.future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public ListenableFuture<Optional<ByteSource>> get(ByteString key) {
+		final Call<Optional<ByteSource>> call = new Call<Optional<ByteSource>>() {
+			@Override
+			Optional<ByteSource> convert(ClientResponse response) throws Exception {
+				if (isNotFound(response)) {
+					return Optional.absent();
+				}
+				checkOk(response);
+				return Optional.<ByteSource> of(BocasClient.load(loader, response.getEntityInputStream()));
+			}
+		};
+		object(key).get(call);
+		return call.future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#get(java.lang.Iterable)
+	 */
+	@Override
+	public ListenableFuture<Map<ByteString, ByteSource>> get(Iterable<ByteString> keys) {
+		final Set<ByteString> requested = BocasClient.keySet(keys);
+		if (requested.isEmpty()) {
+			return Futures.<Map<ByteString, ByteSource>> immediateFuture(ImmutableMap.<ByteString, ByteSource> of());
+		}
+		final Call<Map<ByteString, ByteSource>> call = new Call<Map<ByteString, ByteSource>>() {
+			@Override
+			Map<ByteString, ByteSource> convert(ClientResponse response) {
+				if (isNotFound(response)) {
+					return ImmutableMap.of();
+				}
+				checkOk(response);
+				return BocasClient.objects(loader, response.getEntity(FormDataMultiPart.class));
+			}
+		};
+		multi(resource, requested, call);
+		return call.future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#put(com.google.common.io.ByteSource)
+	 */
+	@Override
+	public ListenableFuture<ByteString> put(ByteSource value) {
+		final Call<ByteString> call = new Call<ByteString>() {
+			@Override
+			ByteString convert(ClientResponse response) {
+				checkOk(response);
+				return BocasClient.created(response.getEntity(String.class));
+			}
+		};
+		resource.entity(checkValue(value), MediaType.APPLICATION_OCTET_STREAM_TYPE).post(call);
+		return call.future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#putAll(java.lang.Iterable)
+	 */
+	@Override
+	public ListenableFuture<List<ByteString>> putAll(Iterable<? extends ByteSource> values) {
+		final Call<List<ByteString>> call = new Call<List<ByteString>>() {
+			@Override
+			List<ByteString> convert(ClientResponse response) {
+				checkOk(response);
+				return ImmutableList.copyOf(BocasResources.response2List(response.getEntity(String.class)));
+			}
+		};
+		resource.entity(BocasClient.multipart(values), MultiPartMediaTypes.MULTIPART_MIXED_TYPE).post(call);
+		return call.future;
+	}
+
+	/** Performs a multiple key request over GET or POST depending on the number of keys. */
+	private static void multi(AsyncWebResource base, Set<ByteString> keys, Call<?> call) {
+		if (keys.size() > BocasClient.MAX_QUERY_KEYS) {
+			base.post(call, BocasResources.iterable2String(keys));
+		} else {
+			AsyncWebResource r = base;
+			for (ByteString k : keys) {
+				r = r.queryParam(BocasResources.KEY, k.toHexString());
+			}
+			r.get(call);
+		}
+	}
+
+	/** Asynchronous call that completes a listenable future when the response is available. */
+	private static abstract class Call<T> extends TypeListener<ClientResponse> {
+		/** Future to complete. */
+		final SettableFuture<T> future = SettableFuture.create();
+
+		Call() {
+			super(ClientResponse.class);
+		}
+
+		@Override
+		public final void onComplete(Future<ClientResponse> f) throws InterruptedException {
+			try {
+				final ClientResponse response = f.get();
+				try {
+					future.set(convert(response));
+				} finally {
+					response.close();
+				}
+			} catch (ExecutionException e) {
+				future.setException(exception(e.getCause()));
+			} catch (BocasException e) {
+				future.setException(e);
+			} catch (Exception e) {
+				future.setException(exception(e));
+			}
+		}
+
+		/** Converts the response. */
+		abstract T convert(ClientResponse response) throws Exception;
+	}
+}
@@ -18,8 +18,10 @@ package net.derquinse.bocas.jersey.client;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -30,12 +32,15 @@ import javax.ws.rs.core.MediaType;
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasException;
 import net.derquinse.bocas.BocasHashFunction;
+import net.derquinse.bocas.BocasKeyPage;
+import net.derquinse.bocas.BocasPreconditions;
 import net.derquinse.bocas.jersey.BocasResources;
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
@@ -45,6 +50,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Closer;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.ClientResponse.Status;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
@@ -60,25 +66,31 @@ import com.sun.jersey.multipart.MultiPartMediaTypes;
 final class BocasClient implements Bocas {
 	/** Hash splitter. */
 	private static final Splitter HASH_SPLITTER = Splitter.on(CharMatcher.WHITESPACE).trimResults().omitEmptyStrings();
+	/** Maximum number of keys sent as query parameters. */
+	static final int MAX_QUERY_KEYS = 20;
+	/** Chunk size used to upload streams. */
+	static final int CHUNK_SIZE = 64 * 1024;
 
 	/** Bucket resource. */
 	private final WebResource resource;
+	/** Bucket resource for streamed uploads (chunked transfer encoding). */
+	private final WebResource streaming;
 	/** Memory loader to use. */
 	private final MemoryByteSourceLoader loader;
 
-	private static ByteString checkKey(ByteString key) {
+	static ByteString checkKey(ByteString key) {
 		return checkNotNull(key, "The object key must be provided");
 	}
 
-	private static <T> T checkValue(T value) {
+	static <T> T checkValue(T value) {
 		return checkNotNull(value, "The value to put must be provided");
 	}
 
-	private static <T> T checkValues(T values) {
+	static <T> T checkValues(T values) {
 		return checkNotNull(values, "The values to put must be provided");
 	}
 
-	private static BocasException exception(Throwable t) {
+	static BocasException exception(Throwable t) {
 		return new BocasException(t);
 	}
 
@@ -87,8 +99,9 @@ final class BocasClient implements Bocas {
 		return r;
 	}
 
-	BocasClient(WebResource resource, MemoryByteSourceLoader loader) {
+	BocasClient(WebResource resource, WebResource streaming, MemoryByteSourceLoader loader) {
 		this.resource = checkNotNull(resource, "The bucket resource must be provided");
+		this.streaming = checkNotNull(streaming, "The bucket streaming resource must be provided");
 		this.loader = checkLoader(loader);
 	}
 
@@ -99,20 +112,23 @@ final class BocasClient implements Bocas {
 	@Override
 	public BocasHashFunction getHashFunction() {
 		try {
-			String result = resource.path(BocasResources.HASH).get(String.class);
-			if (result != null) {
-				List<String> split = Lists.newLinkedList(HASH_SPLITTER.split(result)); // TODO: change in
-																																								// guava 15
-				if (!split.isEmpty()) {
-					return BocasHashFunction.get(split.get(0));
-				}
-			}
-			throw new BocasException("Unable to get hash function");
+			return hashFunction(resource.path(BocasResources.HASH).get(String.class));
 		} catch (UniformInterfaceException e) {
 			throw exception(e);
 		}
 	}
 
+	/** Parses the response of a hash function request. */
+	static BocasHashFunction hashFunction(String result) {
+		if (result != null) {
+			List<String> split = Lists.newLinkedList(HASH_SPLITTER.split(result)); // TODO: change in guava 15
+			if (!split.isEmpty()) {
+				return BocasHashFunction.get(split.get(0));
+			}
+		}
+		throw new BocasException("Unable to get hash function");
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#close()
@@ -161,6 +177,11 @@ final class BocasClient implements Bocas {
 	}
 
 	private MemoryByteSource load(InputStream is) throws IOException {
+		return load(loader, is);
+	}
+
+	/** Loads an object closing the provided stream. */
+	static MemoryByteSource load(MemoryByteSourceLoader loader, InputStream is) throws IOException {
 		Closer closer = Closer.create();
 		try {
 			return loader.load(closer.register(is));
@@ -192,6 +213,47 @@ final class BocasClient implements Bocas {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		BocasPreconditions.checkRange(offset, length);
+		if (length == 0) {
+			// Empty ranges can't be expressed as an HTTP range.
+			return contains(key) ? Optional.of(ByteSource.empty()) : Optional.<ByteSource> absent();
+		}
+		try {
+			final ClientResponse response = object(key).header(BocasResources.RANGE, BocasResources.range(offset, length))
+					.get(ClientResponse.class);
+			try {
+				final int status = response.getStatus();
+				if (status == Status.NOT_FOUND.getStatusCode()) {
+					return Optional.absent();
+				} else if (status == Status.REQUESTED_RANGE_NOT_SATIFIABLE.getStatusCode()) {
+					return Optional.of(ByteSource.empty()); // Offset past the end of the object
+				} else if (status == Status.PARTIAL_CONTENT.getStatusCode()) {
+					return Optional.<ByteSource> of(load(response.getEntityInputStream()));
+				} else if (status == Status.OK.getStatusCode()) {
+					// The server ignored the range
+					final MemoryByteSource value = load(response.getEntityInputStream());
+					if (offset >= value.size()) {
+						return Optional.of(ByteSource.empty());
+					}
+					return Optional.of(value.slice(offset, Math.min(length, value.size() - offset)));
+				}
+				throw new UniformInterfaceException(response);
+			} finally {
+				response.close();
+			}
+		} catch (UniformInterfaceException e) {
+			throw exception(e);
+		} catch (IOException e) {
+			throw exception(e);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
@@ -203,34 +265,115 @@ final class BocasClient implements Bocas {
 			return ImmutableMap.of();
 		}
 		try {
-			FormDataMultiPart data = m.call(FormDataMultiPart.class);
-			if (data == null) {
+			return objects(loader, m.call(FormDataMultiPart.class));
+		} catch (UniformInterfaceException e) {
+			if (e.getResponse().getStatus() == Status.NOT_FOUND.getStatusCode()) {
 				return ImmutableMap.of();
 			}
-			Map<ByteString, ByteSource> found = Maps.newHashMap();
-			for (Entry<String, List<FormDataBodyPart>> entry : data.getFields().entrySet()) {
-				List<FormDataBodyPart> parts = entry.getValue();
-				if (parts != null && !parts.isEmpty()) {
-					try {
-						ByteString key = ByteString.fromHexString(entry.getKey());
-						ByteSource v = load(parts.get(0).getEntityAs(InputStream.class));
-						found.put(key, v);
-					} catch (BocasException e) {
-						throw e;
-					} catch (IOException e) {
-						throw exception(e);
-					} catch (RuntimeException e) {
-						// ignore result
-					}
+			throw exception(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		BocasPreconditions.checkLimit(limit);
+		WebResource r = resource.path(BocasResources.KEYS).queryParam(BocasResources.LIMIT, Integer.toString(limit));
+		if (sizes) {
+			r = r.queryParam(BocasResources.SIZES, Boolean.TRUE.toString());
+		}
+		if (cursor != null) {
+			r = r.queryParam(BocasResources.CURSOR, cursor);
+		}
+		try {
+			final ClientResponse response = r.get(ClientResponse.class);
+			try {
+				final int status = response.getStatus();
+				if (status == Status.BAD_REQUEST.getStatusCode()) {
+					throw new IllegalArgumentException("Invalid cursor: " + cursor);
+				} else if (status != Status.OK.getStatusCode()) {
+					throw new UniformInterfaceException(response);
 				}
+				return page(response.getEntityInputStream(), sizes, response.getHeaders().getFirst(BocasResources.NEXT_CURSOR));
+			} finally {
+				response.close();
 			}
-			return found;
 		} catch (UniformInterfaceException e) {
-			if (e.getResponse().getStatus() == Status.NOT_FOUND.getStatusCode()) {
-				return ImmutableMap.of();
-			}
 			throw exception(e);
+		} catch (IOException e) {
+			throw exception(e);
+		}
+	}
+
+	/** Parses a scan response, reading it line by line. */
+	private static BocasKeyPage page(InputStream is, boolean sizes, String cursor) throws IOException {
+		final List<ByteString> keys = Lists.newArrayList();
+		final ImmutableMap.Builder<ByteString, Long> sizeMap = ImmutableMap.builder();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(is, Charsets.US_ASCII));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				final List<String> fields = BocasResources.KEY_SPLITTER.splitToList(line);
+				if (fields.isEmpty()) {
+					continue;
+				}
+				final ByteString key = ByteString.fromHexString(fields.get(0));
+				keys.add(key);
+				if (sizes) {
+					sizeMap.put(key, Long.valueOf(fields.get(1)));
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new BocasException("Unexpected response", e);
+		} finally {
+			reader.close();
+		}
+		return BocasKeyPage.of(keys, sizeMap.build(), cursor);
+	}
+
+	/** Turns a multipart response into a map of objects. */
+	static Map<ByteString, ByteSource> objects(MemoryByteSourceLoader loader, FormDataMultiPart data) {
+		if (data == null) {
+			return ImmutableMap.of();
+		}
+		Map<ByteString, ByteSource> found = Maps.newHashMap();
+		for (Entry<String, List<FormDataBodyPart>> entry : data.getFields().entrySet()) {
+			List<FormDataBodyPart> parts = entry.getValue();
+			if (parts != null && !parts.isEmpty()) {
+				try {
+					ByteString key = ByteString.fromHexString(entry.getKey());
+					ByteSource v = load(loader, parts.get(0).getEntityAs(InputStream.class));
+					found.put(key, v);
+				} catch (BocasException e) {
+					throw e;
+				} catch (IOException e) {
+					throw exception(e);
+				} catch (RuntimeException e) {
+					// ignore result
+				}
+			}
+		}
+		return found;
+	}
+
+	/** Creates the multipart entity for a collection of values. */
+	static MultiPart multipart(Iterable<? extends ByteSource> values) {
+		MultiPart multipart = new MultiPart();
+		for (ByteSource object : checkValues(values)) {
+			multipart.bodyPart(checkValue(object), MediaType.APPLICATION_OCTET_STREAM_TYPE);
 		}
+		return multipart;
+	}
+
+	/** Turns a put response into a single key. */
+	static ByteString created(String response) {
+		List<ByteString> list = BocasResources.response2List(response);
+		if (list.size() != 1) {
+			throw new BocasException("Unexpected response");
+		}
+		return list.get(0);
 	}
 
 	/*
@@ -241,11 +384,22 @@ final class BocasClient implements Bocas {
 	public ByteString put(ByteSource value) {
 		try {
 			String response = resource.entity(checkValue(value), MediaType.APPLICATION_OCTET_STREAM_TYPE).post(String.class);
-			List<ByteString> list = BocasResources.response2List(response);
-			if (list.size() != 1) {
-				throw new BocasException("Unexpected response");
-			}
-			return list.get(0);
+			return created(response);
+		} catch (UniformInterfaceException e) {
+			throw exception(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#put(java.io.InputStream)
+	 */
+	@Override
+	public ByteString put(InputStream value) {
+		try {
+			String response = streaming.entity(checkValue(value), MediaType.APPLICATION_OCTET_STREAM_TYPE).post(
+					String.class);
+			return created(response);
 		} catch (UniformInterfaceException e) {
 			throw exception(e);
 		}
@@ -259,10 +413,7 @@ final class BocasClient implements Bocas {
 	public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
 		checkValues(values);
 		try {
-			MultiPart multipart = new MultiPart();
-			for (ByteSource object : values) {
-				multipart.bodyPart(object, MediaType.APPLICATION_OCTET_STREAM_TYPE);
-			}
+			MultiPart multipart = multipart(values);
 			String response = resource.entity(multipart, MultiPartMediaTypes.MULTIPART_MIXED_TYPE).post(String.class);
 			return BocasResources.response2List(response);
 		} catch (UniformInterfaceException e) {
@@ -270,6 +421,16 @@ final class BocasClient implements Bocas {
 		}
 	}
 
+	/** Returns the set of requested keys. */
+	static Set<ByteString> keySet(Iterable<ByteString> keys) {
+		checkNotNull(keys, "The object keys must be provided");
+		Set<ByteString> set = Sets.newHashSet();
+		for (ByteString k : keys) {
+			set.add(checkKey(k));
+		}
+		return set;
+	}
+
 	/** Resource that may get called over GET or POST depending on argument number. */
 	private static final class MultiMethod {
 		private final WebResource r;
@@ -277,12 +438,8 @@ final class BocasClient implements Bocas {
 		private final String body;
 
 		MultiMethod(WebResource base, Iterable<ByteString> keys) {
-			checkNotNull(keys, "The object keys must be provided");
-			this.keys = Sets.newHashSet();
-			for (ByteString k : keys) {
-				this.keys.add(checkKey(k));
-			}
-			if (this.keys.size() > 20) {
+			this.keys = keySet(keys);
+			if (this.keys.size() > MAX_QUERY_KEYS) {
 				this.body = BocasResources.iterable2String(this.keys);
 			} else {
 				this.body = null;
@@ -15,14 +15,19 @@
  */
 package net.derquinse.bocas.jersey.client;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.URI;
 
+import javax.annotation.Nullable;
+
+import net.derquinse.bocas.AsyncBocasService;
 import net.derquinse.bocas.BocasService;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 import net.derquinse.common.jaxrs.ByteSourceBodyWriter;
 
+import com.sun.jersey.api.client.AsyncWebResource;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.config.ClientConfig;
@@ -38,13 +43,26 @@ public final class BocasClientFactory {
 
 	/** Creates a new factory. */
 	public static BocasClientFactory create() {
-		return new BocasClientFactory();
+		return new BocasClientFactory(null);
+	}
+
+	/**
+	 * Creates a new factory with a bounded thread pool for asynchronous requests.
+	 * @param asyncThreads Maximum number of threads used to process asynchronous requests.
+	 * @throws IllegalArgumentException if the argument is < 1.
+	 */
+	public static BocasClientFactory create(int asyncThreads) {
+		checkArgument(asyncThreads > 0, "The number of asynchronous threads must be > 0");
+		return new BocasClientFactory(asyncThreads);
 	}
 
 	/** Constructor. */
-	private BocasClientFactory() {
+	private BocasClientFactory(@Nullable Integer asyncThreads) {
 		ClientConfig config = new DefaultClientConfig();
 		config.getClasses().add(ByteSourceBodyWriter.class);
+		if (asyncThreads != null) {
+			config.getProperties().put(ClientConfig.PROPERTY_THREADPOOL_SIZE, asyncThreads);
+		}
 		client = Client.create(config);
 		client.setFollowRedirects(true);
 	}
@@ -60,4 +78,15 @@ public final class BocasClientFactory {
 		return new BocasServiceClient(resource, loader);
 	}
 
+	/**
+	 * Creates a new asynchronous repository client.
+	 * @param uri Service URI.
+	 * @param loader Memory loader to use.
+	 * @return The requested service client.
+	 */
+	public AsyncBocasService getAsync(URI uri, MemoryByteSourceLoader loader) {
+		AsyncWebResource resource = client.asyncResource(checkNotNull(uri, "The indexer service URI must be provided"));
+		return new AsyncBocasServiceClient(resource, loader);
+	}
+
 }
@@ -21,6 +21,7 @@ import net.derquinse.bocas.BocasService;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
 
 /**
  * Bocas repository client based on Jersey (JAX-RS).
@@ -40,6 +41,8 @@ final class BocasServiceClient implements BocasService {
 	@Override
 	public Bocas getBucket(String name) {
 		checkNotNull(name);
-		return new BocasClient(resource.path(name), loader); // TODO ping bucket.
+		final WebResource streaming = resource.path(name);
+		streaming.setProperty(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, BocasClient.CHUNK_SIZE);
+		return new BocasClient(resource.path(name), streaming, loader); // TODO ping bucket.
 	}
 }
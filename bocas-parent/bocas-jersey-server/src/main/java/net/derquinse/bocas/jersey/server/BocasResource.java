@@ -20,8 +20,12 @@ import static net.derquinse.bocas.BocasPreconditions.checkLoader;
 import static net.derquinse.bocas.jersey.BocasResources.iterable2String;
 import static net.derquinse.common.jaxrs.ByteSourceOutput.output;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
@@ -30,7 +34,9 @@ import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -46,14 +52,17 @@ import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasException;
+import net.derquinse.bocas.BocasKeyPage;
 import net.derquinse.bocas.jersey.BocasResources;
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -158,11 +167,43 @@ public class BocasResource {
 		return null;
 	}
 
+	/**
+	 * Parses a single byte range of the form {@code first-last} or {@code first-}. Suffix and
+	 * multiple ranges are not supported.
+	 * @return The offset and length of the range or {@code null} if the whole object must be
+	 *         returned.
+	 */
+	private static long[] parseRange(@Nullable String range) {
+		if (range == null || !range.startsWith(BocasResources.BYTES + "=")) {
+			return null;
+		}
+		final String spec = range.substring(BocasResources.BYTES.length() + 1).trim();
+		final int dash = spec.indexOf('-');
+		if (dash < 1 || spec.indexOf(',') >= 0) {
+			return null;
+		}
+		try {
+			final long first = Long.parseLong(spec.substring(0, dash).trim());
+			final String lastSpec = spec.substring(dash + 1).trim();
+			if (lastSpec.isEmpty()) {
+				return new long[] { first, Long.MAX_VALUE };
+			}
+			final long last = Long.parseLong(lastSpec);
+			if (first < 0 || last < first) {
+				return null;
+			}
+			return new long[] { first, last - first + 1 };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	/** @see Bocas#get(ByteString) */
 	@GET
 	@Path("{id}")
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
-	public final Response getObject(@Context Request request, @PathParam("id") String id) throws IOException {
+	public final Response getObject(@Context Request request, @PathParam("id") String id,
+			@HeaderParam(BocasResources.RANGE) String range) throws IOException {
 		ByteString key = getKey(id);
 		// Check preconditions
 		Response pre = evaluate(request, key);
@@ -170,16 +211,35 @@ public class BocasResource {
 			return pre;
 		}
 		// Get object.
-		Optional<ByteSource> optional = bocas.get(key);
+		final long[] r = parseRange(range);
+		Optional<ByteSource> optional = r != null ? bocas.get(key, r[0], r[1]) : bocas.get(key);
 		if (!optional.isPresent()) {
 			throw notFound();
 		}
 		ByteSource value = optional.get();
-		ResponseBuilder b = Response.ok(output(value), MediaType.APPLICATION_OCTET_STREAM).tag(
-				new EntityTag(key.toHexString()));
-		if (value instanceof MemoryByteSource) {
-			b.header(HttpHeaders.CONTENT_LENGTH, Long.toString(value.size()));
+		final ResponseBuilder b;
+		if (r != null) {
+			final long size = value.size();
+			if (size == 0) {
+				// The range starts past the end of the object, whose complete length must be sent.
+				final Optional<ByteSource> complete = bocas.get(key);
+				if (!complete.isPresent()) {
+					throw notFound();
+				}
+				final String contentRange = BocasResources.BYTES + " */" + complete.get().size();
+				return Response.status(416).header(BocasResources.CONTENT_RANGE, contentRange).build();
+			}
+			b = Response.status(206).entity(output(value)).type(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+			b.header(BocasResources.CONTENT_RANGE,
+					String.format("%s %d-%d/*", BocasResources.BYTES, r[0], r[0] + size - 1));
+			b.header(HttpHeaders.CONTENT_LENGTH, Long.toString(size));
+		} else {
+			b = Response.ok(output(value), MediaType.APPLICATION_OCTET_STREAM);
+			if (value instanceof MemoryByteSource) {
+				b.header(HttpHeaders.CONTENT_LENGTH, Long.toString(value.size()));
+			}
 		}
+		b.tag(new EntityTag(key.toHexString())).header("Accept-Ranges", BocasResources.BYTES);
 		CacheControl cc = new CacheControl();
 		cc.setMaxAge(15552000);
 		return b.cacheControl(cc).build();
@@ -266,12 +326,54 @@ public class BocasResource {
 		return containsObjects(setFromBody(keys));
 	}
 
-	/** @see Bocas#put(ByteSource) */
+	/**
+	 * Returns a page of keys as text, one key per line followed by the object size if requested. The
+	 * cursor of the next page is returned in a header.
+	 * @see Bocas#scan(String, int, boolean)
+	 */
+	@GET
+	@Produces(MediaType.TEXT_PLAIN)
+	@Path(BocasResources.KEYS)
+	public final Response scan(@QueryParam(BocasResources.CURSOR) String cursor,
+			@QueryParam(BocasResources.LIMIT) @DefaultValue("1000") int limit,
+			@QueryParam(BocasResources.SIZES) boolean sizes) {
+		if (limit <= 0) {
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		}
+		final BocasKeyPage page;
+		try {
+			page = bocas.scan(cursor, Math.min(limit, BocasResources.MAX_SCAN_LIMIT), sizes);
+		} catch (IllegalArgumentException e) {
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		}
+		final StreamingOutput output = new StreamingOutput() {
+			@Override
+			public void write(OutputStream os) throws IOException {
+				final Writer w = new BufferedWriter(new OutputStreamWriter(os, Charsets.US_ASCII));
+				for (ByteString key : page.getKeys()) {
+					w.write(key.toHexString());
+					if (!page.getSizes().isEmpty()) {
+						w.write(' ');
+						w.write(page.getSizes().get(key).toString());
+					}
+					w.write('\n');
+				}
+				w.flush();
+			}
+		};
+		final ResponseBuilder b = Response.ok(output, MediaType.TEXT_PLAIN);
+		if (!page.isLast()) {
+			b.header(BocasResources.NEXT_CURSOR, page.getCursor().get());
+		}
+		return b.build();
+	}
+
+	/** @see Bocas#put(InputStream) */
 	@POST
 	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
 	@Produces(MediaType.TEXT_PLAIN)
 	public final Response putObject(InputStream stream) throws IOException {
-		ByteString created = bocas.put(loader.load(stream));
+		ByteString created = bocas.put(stream);
 		String key = created.toHexString();
 		return Response.created(URI.create(key)).entity(key).build();
 	}
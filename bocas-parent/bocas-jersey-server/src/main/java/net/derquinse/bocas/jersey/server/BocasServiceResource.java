@@ -18,12 +18,22 @@ package net.derquinse.bocas.jersey.server;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
 
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 
 import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasMetrics;
+import net.derquinse.bocas.BocasOperationStats;
 import net.derquinse.bocas.BocasService;
+import net.derquinse.bocas.jersey.BocasResources;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.sun.jersey.api.NotFoundException;
@@ -38,6 +48,9 @@ public class BocasServiceResource {
 	private final BocasService repository;
 	/** Memory loader to use. */
 	private final MemoryByteSourceLoader loader;
+	/** Metrics of the repository, {@code null} if not available. */
+	@Nullable
+	private final BocasMetrics metrics;
 
 	private static WebApplicationException notFound() {
 		throw new NotFoundException();
@@ -45,8 +58,46 @@ public class BocasServiceResource {
 
 	/** Constructor. */
 	public BocasServiceResource(BocasService repository, MemoryByteSourceLoader loader) {
+		this(repository, loader, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param repository Repository.
+	 * @param loader Memory loader to use.
+	 * @param metrics Metrics to publish, usually recorded by an instrumented repository. If
+	 *          {@code null} the metrics resource is not available.
+	 */
+	public BocasServiceResource(BocasService repository, MemoryByteSourceLoader loader,
+			@Nullable BocasMetrics metrics) {
 		this.repository = checkNotNull(repository);
 		this.loader = checkLoader(loader);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the metrics of the repository as text, with a line per bucket and operation. Latencies
+	 * are expressed in nanoseconds. The first line is a comment with the column names.
+	 * @param bucket If provided, only the metrics of this bucket are returned.
+	 */
+	@GET
+	@Path(BocasResources.STATS)
+	@Produces(MediaType.TEXT_PLAIN)
+	public final String stats(@QueryParam(BocasResources.BUCKET) String bucket) {
+		if (metrics == null) {
+			throw notFound();
+		}
+		final List<BocasOperationStats> stats = bucket != null ? metrics.getStats(bucket) : metrics.getStats();
+		final StringBuilder b = new StringBuilder(
+				"# bucket\toperation\tcount\terrors\tkeys\tbytes\tmean\tp50\tp90\tp99\tp999\tmax\n");
+		for (BocasOperationStats s : stats) {
+			b.append(s.getBucket()).append('\t').append(s.getOperation()).append('\t').append(s.getCount()).append('\t');
+			b.append(s.getErrorCount()).append('\t').append(s.getKeyCount()).append('\t').append(s.getByteCount());
+			b.append('\t').append(Math.round(s.getMeanLatency())).append('\t').append(s.getLatency50()).append('\t');
+			b.append(s.getLatency90()).append('\t').append(s.getLatency99()).append('\t').append(s.getLatency999());
+			b.append('\t').append(s.getMaxLatency()).append('\n');
+		}
+		return b.toString();
 	}
 
 	/** @see BocasService#getBucket(String) */
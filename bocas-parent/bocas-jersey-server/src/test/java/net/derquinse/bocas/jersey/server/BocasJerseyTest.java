@@ -17,14 +17,18 @@ package net.derquinse.bocas.jersey.server;
 
 import static net.derquinse.bocas.BocasHashFunction.sha256;
 import static net.derquinse.common.io.MemoryByteSourceLoader.get;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Set;
 
+import net.derquinse.bocas.AsyncBocas;
 import net.derquinse.bocas.Bocas;
 import net.derquinse.bocas.BocasExerciser;
 import net.derquinse.bocas.BocasService;
 import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.jersey.BocasResources;
 import net.derquinse.bocas.jersey.client.BocasClientFactory;
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
@@ -34,8 +38,10 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.testng.internal.annotations.Sets;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.test.framework.AppDescriptor;
 import com.sun.jersey.test.framework.JerseyTest;
 import com.sun.jersey.test.framework.LowLevelAppDescriptor;
@@ -73,6 +79,28 @@ public class BocasJerseyTest extends JerseyTest {
 		client.get(ImmutableSet.of(key));
 		// Now excercise
 		BocasExerciser.exercise(client);
+		// Asynchronous client
+		AsyncBocas async = BocasClientFactory.create(4).getAsync(getBaseURI(), get()).getBucket("test");
+		assertEquals(sha256(), async.getHashFunction());
+		assertTrue(async.contains(key).get());
+		Assert.assertArrayEquals(data, async.get(key).get().get().read());
+		assertEquals(ImmutableSet.of(key), async.contained(ImmutableSet.of(key)).get());
+		Assert.assertArrayEquals(data, async.get(ImmutableSet.of(key)).get().get(key).read());
+		MemoryByteSource value = BocasExerciser.data();
+		ByteString asyncKey = async.putAll(ImmutableList.of(value)).get().get(0);
+		assertTrue(client.contains(asyncKey));
+		assertEquals(asyncKey, async.put(value).get());
+		assertFalse(async.contains(sha256().hash(BocasExerciser.data())).get());
+	}
+
+	/** Unsatisfiable ranges must report the complete length of the object. */
+	@Test
+	public void unsatisfiableRange() throws Exception {
+		final ByteString key = SERVER.getBucket("test").put(MemoryByteSource.wrap(RandomSupport.getBytes(3072)));
+		final ClientResponse response = resource().path("test").path(key.toHexString())
+				.header(BocasResources.RANGE, BocasResources.BYTES + "=5000-").get(ClientResponse.class);
+		assertEquals(416, response.getStatus());
+		assertEquals(BocasResources.BYTES + " */3072", response.getHeaders().getFirst(BocasResources.CONTENT_RANGE));
 	}
 	
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas.jersey.server;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static net.derquinse.common.io.MemoryByteSourceLoader.get;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import net.derquinse.bocas.Bocas;
+import net.derquinse.bocas.BocasExerciser;
+import net.derquinse.bocas.BocasMetrics;
+import net.derquinse.bocas.BocasService;
+import net.derquinse.bocas.BocasServices;
+import net.derquinse.bocas.jersey.BocasResources;
+import net.derquinse.bocas.jersey.client.BocasClientFactory;
+import net.derquinse.common.base.ByteString;
+
+import org.junit.Test;
+import org.testng.internal.annotations.Sets;
+
+import com.sun.jersey.test.framework.AppDescriptor;
+import com.sun.jersey.test.framework.JerseyTest;
+import com.sun.jersey.test.framework.LowLevelAppDescriptor;
+
+/**
+ * Integration test for the statistics of an instrumented Jersey Bocas service.
+ * @author Andres Rodriguez
+ */
+public class BocasStatsJerseyTest extends JerseyTest {
+	static final BocasMetrics METRICS = BocasServices.metrics();
+	static final BocasService SERVER = BocasServices.instrumented().sink(METRICS)
+			.build(BocasServices.shared(BocasServices.memoryBucket(sha256(), get())));
+
+	public BocasStatsJerseyTest() throws InterruptedException {
+		Thread.sleep(2000);
+	}
+
+	@Override
+	protected AppDescriptor configure() {
+		Set<Class<?>> set = Sets.newHashSet();
+		set.add(TestStatsBocasResource.class);
+		Class<?>[] classes = new Class<?>[set.size()];
+		set.toArray(classes);
+		return new LowLevelAppDescriptor.Builder(classes).build();
+	}
+
+	@Test
+	public void test() throws Exception {
+		Bocas client = BocasClientFactory.create().get(getBaseURI(), get()).getBucket("test");
+		ByteString key = client.put(BocasExerciser.data());
+		assertTrue(client.contains(key));
+		String stats = resource().path(BocasResources.STATS).queryParam(BocasResources.BUCKET, "test").get(String.class);
+		assertTrue(stats.contains("test\tPUT\t"));
+	}
+
+}
@@ -50,6 +50,50 @@ public final class BocasResources extends NotInstantiable {
 	/** Hash function resource. */
 	public static final String HASH = "hash";
 
+	/** Key scan resource. */
+	public static final String KEYS = "keys";
+
+	/** Scan cursor query parameter. */
+	public static final String CURSOR = "cursor";
+
+	/** Scan limit query parameter. */
+	public static final String LIMIT = "limit";
+
+	/** Scan object sizes query parameter. */
+	public static final String SIZES = "sizes";
+
+	/** Scan response header with the cursor of the next page. Absent in the last page. */
+	public static final String NEXT_CURSOR = "X-Bocas-Cursor";
+
+	/** Maximum number of keys returned by a single scan request. */
+	public static final int MAX_SCAN_LIMIT = 10000;
+
+	/** Service metrics resource. Prefixed with an underscore to avoid hiding usual bucket names. */
+	public static final String STATS = "_stats";
+
+	/** Metrics bucket query parameter. */
+	public static final String BUCKET = "bucket";
+
+	/** Range request header. */
+	public static final String RANGE = "Range";
+
+	/** Content range response header. */
+	public static final String CONTENT_RANGE = "Content-Range";
+
+	/** Byte range unit prefix. */
+	public static final String BYTES = "bytes";
+
+	/**
+	 * Returns the value of the range header for a range of an object.
+	 * @param offset Offset of the first byte (>= 0).
+	 * @param length Maximum number of bytes (> 0).
+	 */
+	public static String range(long offset, long length) {
+		final long last = offset + length - 1;
+		// Ranges reaching the maximum length are open-ended.
+		return BYTES + "=" + offset + "-" + (last < offset ? "" : Long.toString(last));
+	}
+
 	/** Turns a non-null key into a string. */
 	public static String checkKey(ByteString key) {
 		return checkNotNull(key, "The object key must be provided").toHexString();
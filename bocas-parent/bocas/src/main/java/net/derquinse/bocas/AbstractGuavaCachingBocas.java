@@ -17,11 +17,15 @@ package net.derquinse.bocas;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
 
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
@@ -29,13 +33,18 @@ import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
-import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * Abstract base class for Guava-cache-based bocas buckets.
@@ -46,28 +55,32 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 	private final Bocas bocas;
 	/** Entry Cache. */
 	private final Cache<K, MemoryByteSource> cache;
+	/** Statistics of the loads of single entries, added to the ones of the cache. */
+	private final StatsCounter loads;
+	/** Ticker for load times. */
+	private final Ticker ticker = Ticker.systemTicker();
 	/** Whether writes are always performed. */
 	private final boolean alwaysWrite;
+	/** Negative cache, {@code null} if absent entries are not cached. */
+	@Nullable
+	private final Cache<BucketKey, Boolean> negative;
+	/** Number of writes, used to discard absent entries found by lookups concurrent with writes. */
+	private final AtomicLong writes = new AtomicLong();
+	/** Loads from the cached bucket in progress. */
+	private final ConcurrentMap<ByteString, SettableFuture<Optional<MemoryByteSource>>> loading = Maps
+			.newConcurrentMap();
 
 	/** Constructor. */
 	AbstractGuavaCachingBocas(Bocas bocas, MemoryByteSourceLoader loader, Cache<K, MemoryByteSource> cache,
-			boolean alwaysWrite) {
+			StatsCounter loads, @Nullable Cache<BucketKey, Boolean> negative, boolean alwaysWrite) {
 		super(checkNotNull(bocas, "The bucket to cache must be provided").getHashFunction(), loader);
 		this.bocas = bocas;
 		this.cache = checkNotNull(cache, "The cache to use must be provided");
+		this.loads = checkNotNull(loads, "The load statistics must be provided");
+		this.negative = negative;
 		this.alwaysWrite = alwaysWrite;
 	}
 
-	final MemoryByteSource loadFromSource(ByteString key) {
-		Optional<ByteSource> v = bocas.get(key);
-		if (v.isPresent()) {
-			return transform(v.get());
-		}
-		throw new EntryNotFoundException();
-	}
-
-	abstract Callable<MemoryByteSource> getLoader(K internalKey);
-
 	abstract K toInternalKey(ByteString key);
 
 	abstract ByteString toKey(K internalKey);
@@ -78,6 +91,34 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 
 	abstract Map<K, MemoryByteSource> toInternalEntryMap(Map<ByteString, MemoryByteSource> entries);
 
+	/** Returns whether the key is known to be absent. */
+	private boolean isAbsent(ByteString key) {
+		return negative != null && negative.getIfPresent(new BucketKey(this, key)) != null;
+	}
+
+	/**
+	 * Remembers an absent key, unless there have been writes since the lookup started.
+	 * @param key Absent key.
+	 * @param writesBefore Number of writes before the lookup started.
+	 */
+	private void absent(ByteString key, long writesBefore) {
+		if (negative != null && writes.get() == writesBefore) {
+			negative.put(new BucketKey(this, key), Boolean.TRUE);
+		}
+	}
+
+	/** Forgets absent keys after they have been written. */
+	private void written(Iterable<ByteString> keys) {
+		if (negative != null) {
+			writes.incrementAndGet();
+			final List<BucketKey> absent = Lists.newArrayList();
+			for (ByteString key : keys) {
+				absent.add(new BucketKey(this, key));
+			}
+			negative.invalidateAll(absent);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#close()
@@ -97,7 +138,15 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 		if (cache.asMap().containsKey(internalKey)) {
 			return true;
 		}
-		return bocas.contains(key);
+		if (isAbsent(key)) {
+			return false;
+		}
+		final long w = writes.get();
+		if (bocas.contains(key)) {
+			return true;
+		}
+		absent(key, w);
+		return false;
 	}
 
 	/*
@@ -116,7 +165,20 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 		if (ikNotCached.isEmpty()) {
 			return kCached;
 		}
-		Set<ByteString> kFound = bocas.contained(toKeySet(ikNotCached));
+		final Set<ByteString> kNotCached = Sets.newHashSet();
+		for (ByteString key : toKeySet(ikNotCached)) {
+			if (!isAbsent(key)) {
+				kNotCached.add(key);
+			}
+		}
+		if (kNotCached.isEmpty()) {
+			return kCached;
+		}
+		final long w = writes.get();
+		Set<ByteString> kFound = bocas.contained(kNotCached);
+		for (ByteString key : Sets.difference(kNotCached, kFound)) {
+			absent(key, w);
+		}
 		return Sets.union(kCached, kFound).immutableCopy();
 	}
 
@@ -126,22 +188,51 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 	 */
 	@Override
 	public final Optional<ByteSource> get(ByteString key) {
+		final MemoryByteSource cached = cache.getIfPresent(toInternalKey(key));
+		if (cached != null) {
+			return Optional.<ByteSource> of(cached);
+		}
+		if (isAbsent(key)) {
+			return Optional.absent();
+		}
+		// The load is recorded as Guava does: entries not found count as failed loads.
+		final long start = ticker.read();
+		final MemoryByteSource value;
 		try {
-			K internalKey = toInternalKey(key);
-			ByteSource v = cache.get(internalKey, getLoader(internalKey));
-			return Optional.of(v);
-		} catch (UncheckedExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause instanceof EntryNotFoundException) {
-				return Optional.absent();
-			}
-			if (cause instanceof BocasException) {
-				throw (BocasException) cause;
-			}
-			throw new BocasException(cause);
-		} catch (ExecutionException e) {
-			throw new BocasException(e.getCause());
+			value = load(ImmutableSet.of(key)).get(key);
+		} catch (RuntimeException e) {
+			loads.recordLoadException(ticker.read() - start);
+			throw e;
+		}
+		if (value != null) {
+			loads.recordLoadSuccess(ticker.read() - start);
+		} else {
+			loads.recordLoadException(ticker.read() - start);
+		}
+		return Optional.<ByteSource> fromNullable(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public final Optional<ByteSource> get(ByteString key, long offset, long length) {
+		BocasPreconditions.checkRange(offset, length);
+		// Ranges of entries not in the cache are not loaded to avoid fetching the full object.
+		final MemoryByteSource value = cache.getIfPresent(toInternalKey(key));
+		if (value != null) {
+			return Optional.of(InternalUtils.slice(value, offset, length));
 		}
+		if (isAbsent(key)) {
+			return Optional.absent();
+		}
+		final long w = writes.get();
+		final Optional<ByteSource> range = bocas.get(key, offset, length);
+		if (!range.isPresent()) {
+			absent(key, w);
+		}
+		return range;
 	}
 
 	/*
@@ -161,21 +252,123 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 			ByteSource value = cache.getIfPresent(internalKey);
 			if (value != null) {
 				found.put(key, value);
-			} else {
+			} else if (!isAbsent(key)) {
 				notCached.add(key);
 			}
 		}
-		Map<ByteString, ByteSource> foundNotCached = bocas.get(notCached);
-		for (Entry<ByteString, ByteSource> e : foundNotCached.entrySet()) {
-			ByteString key = e.getKey();
-			K internalKey = toInternalKey(key);
-			MemoryByteSource value = transform(e.getValue());
-			cache.put(internalKey, value);
-			found.put(key, value);
+		if (!notCached.isEmpty()) {
+			found.putAll(load(notCached));
+		}
+		return found;
+	}
+
+	/**
+	 * Loads entries not found in the cache. Each key is loaded from the cached bucket by at most one
+	 * caller at a time: keys already being loaded by other callers are waited for, and the rest are
+	 * fetched in a single call and put into the cache. Values are put as soon as they are fetched, even
+	 * when loading through the cache, so that concurrent lookups don't miss them.
+	 * @param keys Keys to load.
+	 * @return The entries found.
+	 */
+	private Map<ByteString, MemoryByteSource> load(Set<ByteString> keys) {
+		final Map<ByteString, SettableFuture<Optional<MemoryByteSource>>> owned = Maps.newHashMap();
+		final Map<ByteString, SettableFuture<Optional<MemoryByteSource>>> waiting = Maps.newHashMap();
+		for (ByteString key : keys) {
+			final SettableFuture<Optional<MemoryByteSource>> future = SettableFuture.create();
+			final SettableFuture<Optional<MemoryByteSource>> existing = loading.putIfAbsent(key, future);
+			if (existing == null) {
+				owned.put(key, future);
+			} else {
+				waiting.put(key, existing);
+			}
+		}
+		final Map<ByteString, MemoryByteSource> found = Maps.newHashMapWithExpectedSize(keys.size());
+		if (!owned.isEmpty()) {
+			try {
+				fetch(owned, found);
+			} catch (RuntimeException ex) {
+				for (SettableFuture<Optional<MemoryByteSource>> future : owned.values()) {
+					future.setException(ex);
+				}
+				throw ex;
+			} finally {
+				for (Entry<ByteString, SettableFuture<Optional<MemoryByteSource>>> e : owned.entrySet()) {
+					loading.remove(e.getKey(), e.getValue());
+					// No-op unless the fetch failed with an error.
+					e.getValue().setException(new BocasException("Unable to load entry " + e.getKey()));
+				}
+			}
+		}
+		for (Entry<ByteString, SettableFuture<Optional<MemoryByteSource>>> e : waiting.entrySet()) {
+			final Optional<MemoryByteSource> value;
+			try {
+				value = Uninterruptibles.getUninterruptibly(e.getValue());
+			} catch (ExecutionException ex) {
+				final Throwable cause = ex.getCause();
+				if (cause instanceof BocasException) {
+					throw (BocasException) cause;
+				}
+				throw new BocasException(cause);
+			}
+			if (value.isPresent()) {
+				found.put(e.getKey(), value.get());
+			}
 		}
 		return found;
 	}
 
+	/**
+	 * Fetches from the cached bucket the keys owned by the caller, putting them into the cache and
+	 * completing their loads.
+	 */
+	private void fetch(Map<ByteString, SettableFuture<Optional<MemoryByteSource>>> owned,
+			Map<ByteString, MemoryByteSource> found) {
+		// An entry may have been cached by a load that finished after the cache was checked.
+		final Set<ByteString> notCached = Sets.newHashSetWithExpectedSize(owned.size());
+		for (Entry<ByteString, SettableFuture<Optional<MemoryByteSource>>> e : owned.entrySet()) {
+			final MemoryByteSource value = cache.asMap().get(toInternalKey(e.getKey()));
+			if (value != null) {
+				found.put(e.getKey(), value);
+				e.getValue().set(Optional.of(value));
+			} else {
+				notCached.add(e.getKey());
+			}
+		}
+		if (notCached.isEmpty()) {
+			return;
+		}
+		final long w = writes.get();
+		final Map<ByteString, ByteSource> fetched;
+		if (notCached.size() == 1) {
+			final ByteString key = Iterables.getOnlyElement(notCached);
+			final Optional<ByteSource> value = bocas.get(key);
+			fetched = value.isPresent() ? ImmutableMap.of(key, value.get()) : ImmutableMap.<ByteString, ByteSource> of();
+		} else {
+			fetched = bocas.get(notCached);
+		}
+		for (ByteString key : notCached) {
+			final ByteSource source = fetched.get(key);
+			if (source != null) {
+				final MemoryByteSource value = transform(source);
+				cache.put(toInternalKey(key), value);
+				found.put(key, value);
+				owned.get(key).set(Optional.of(value));
+			} else {
+				absent(key, w);
+				owned.get(key).set(Optional.<MemoryByteSource> absent());
+			}
+		}
+	}
+
+	/**
+	 * Scans the cached bucket, as the cache only holds some of the entries.
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public final BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		return bocas.scan(cursor, limit, sizes);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.SkeletalBocas#put(net.derquinse.common.base.ByteString,
@@ -194,6 +387,7 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 			}
 			cache.put(internalKey, value);
 		}
+		written(ImmutableSet.of(key));
 	}
 
 	/*
@@ -204,6 +398,7 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 	protected void putAll(Map<ByteString, MemoryByteSource> entries) {
 		if (alwaysWrite) {
 			bocas.putAll(entries.values());
+			written(entries.keySet());
 		}
 		final Map<K, MemoryByteSource> map = cache.asMap();
 		final Map<K, MemoryByteSource> notCached = Maps.filterKeys(toInternalEntryMap(entries),
@@ -213,6 +408,7 @@ abstract class AbstractGuavaCachingBocas<K> extends AbstractMemoryBocas {
 		}
 		if (!alwaysWrite) {
 			bocas.putAll(notCached.values());
+			written(entries.keySet());
 		}
 		map.putAll(notCached);
 	}
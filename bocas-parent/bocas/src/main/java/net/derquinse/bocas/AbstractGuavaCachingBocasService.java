@@ -17,9 +17,17 @@ package net.derquinse.bocas;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -38,19 +46,28 @@ abstract class AbstractGuavaCachingBocasService<K> implements CachingBocasServic
 	private final LoadingCache<String, Bocas> bucketCache;
 	/** Entry Cache. */
 	private final Cache<K, MemoryByteSource> cache;
+	/** Statistics of the loads of single entries. */
+	private final SimpleStatsCounter loads = new SimpleStatsCounter();
+	/** Negative cache, {@code null} if absent entries are not cached. */
+	@Nullable
+	private final Cache<BucketKey, Boolean> negative;
 	/** Memory loader to use. */
 	private final MemoryByteSourceLoader loader;
 	/** Whether writes are always performed. */
 	private final boolean alwaysWrite;
+	/** Warm start support, {@code null} if not used. */
+	@Nullable
+	private volatile CacheWarmer warmer = null;
 
 	/** Constructor. */
 	AbstractGuavaCachingBocasService(BocasService service, MemoryByteSourceLoader loader,
-			CacheBuilder<Object, Object> builder, boolean alwaysWrite) {
+			Cache<K, MemoryByteSource> cache, @Nullable Cache<BucketKey, Boolean> negative, boolean alwaysWrite) {
 		this.service = checkNotNull(service);
 		this.loader = checkLoader(loader);
 		this.alwaysWrite = alwaysWrite;
 		this.bucketCache = CacheBuilder.newBuilder().build(new BucketLoader());
-		this.cache = builder.recordStats().build();
+		this.cache = checkNotNull(cache);
+		this.negative = negative;
 	}
 
 	/** Returns the cache to use. */
@@ -58,6 +75,17 @@ abstract class AbstractGuavaCachingBocasService<K> implements CachingBocasServic
 		return cache;
 	}
 
+	/** Returns the statistics of the loads of single entries. */
+	final StatsCounter getLoadStats() {
+		return loads;
+	}
+
+	/** Returns the negative cache to use, {@code null} if absent entries are not cached. */
+	@Nullable
+	final Cache<BucketKey, Boolean> getNegativeCache() {
+		return negative;
+	}
+
 	/** Returns whether writes are always performed. */
 	final boolean isAlwaysWrite() {
 		return alwaysWrite;
@@ -89,9 +117,44 @@ abstract class AbstractGuavaCachingBocasService<K> implements CachingBocasServic
 	 */
 	@Override
 	public CacheStats stats() {
-		return cache.stats();
+		return cache.stats().plus(loads.snapshot());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.CachingBocasService#negativeStats()
+	 */
+	@Override
+	public CacheStats negativeStats() {
+		return InternalUtils.stats(negative);
 	}
 
+	/** Sets and starts the warm start support. */
+	final void warmStart(CacheWarmer warmer) {
+		this.warmer = warmer;
+		warmer.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.CachingBocasService#close()
+	 */
+	@Override
+	public void close() {
+		final CacheWarmer w = warmer;
+		if (w != null) {
+			w.stop();
+		}
+	}
+
+	/** Returns the buckets opened so far, by name. */
+	final Map<String, Bocas> openBuckets() {
+		return bucketCache.asMap();
+	}
+
+	/** Returns the keys currently held by the cache, grouped by the buckets they may be loaded from. */
+	abstract List<CacheWarmer.Group> cachedKeys();
+
 	abstract AbstractGuavaCachingBocas<K> createBucket(Bocas source, MemoryByteSourceLoader loader);
 
 	private final class BucketLoader extends CacheLoader<String, Bocas> {
@@ -16,11 +16,15 @@
 package net.derquinse.bocas;
 
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
+import static net.derquinse.bocas.InternalUtils.checkStream;
 
 import java.io.IOException;
+import java.io.InputStream;
 
+import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
+import net.derquinse.common.io.MemoryOutputStream;
 
 import com.google.common.annotations.Beta;
 import com.google.common.io.ByteSource;
@@ -48,4 +52,25 @@ abstract class AbstractMemoryBocas extends SkeletalBocas<MemoryByteSource> {
 			throw new BocasException(e);
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#put(java.io.InputStream)
+	 */
+	@Override
+	public final ByteString put(InputStream value) {
+		checkStream(value);
+		// Values are kept in memory, so the stream is loaded directly while hashing.
+		final MemoryOutputStream os = loader.openStream();
+		try {
+			final ByteString key = getHashFunction().copy(value, os);
+			os.close();
+			put(key, os.toByteSource());
+			return key;
+		} catch (IOException e) {
+			throw new BocasException(e);
+		} finally {
+			os.close();
+		}
+	}
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteSource;
+
+/**
+ * Builder for asynchronously replicated buckets and services.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class AsyncReplicaBuilder {
+	/** Whether the decorator has already been built. */
+	private boolean built = false;
+	/** Queue capacity. */
+	private int capacity = 10000;
+	/** Batch size. */
+	private int batchSize = 100;
+	/** Initial retry delay in nanoseconds. */
+	private long retryNanos = TimeUnit.SECONDS.toNanos(1L);
+	/** Maximum retry delay in nanoseconds. */
+	private long maxRetryNanos = TimeUnit.MINUTES.toNanos(1L);
+	/** Directory of the journals, {@code null} if not used. */
+	private File directory = null;
+	/** Whether journal changes are forced to the storage device. */
+	private boolean sync = false;
+
+	/** Constructor. */
+	AsyncReplicaBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The decorator has already been built");
+	}
+
+	/**
+	 * Specifies the maximum number of keys pending replication per bucket. Writers block while the
+	 * queue is full. The default is 10000.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public AsyncReplicaBuilder queueCapacity(int capacity) {
+		checkNotBuilt();
+		checkArgument(capacity > 0, "The queue capacity must be > 0");
+		this.capacity = capacity;
+		return this;
+	}
+
+	/**
+	 * Specifies the maximum number of keys sent to the replica in each write. The default is 100.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public AsyncReplicaBuilder batchSize(int batchSize) {
+		checkNotBuilt();
+		checkArgument(batchSize > 0, "The batch size must be > 0");
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Specifies the delays before retrying a failed batch. The delay starts at the initial value and
+	 * doubles after each failure up to the maximum. The defaults are one second and one minute.
+	 * @throws IllegalArgumentException if the initial delay is not positive or the maximum is less than
+	 *           the initial delay
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public AsyncReplicaBuilder retryDelay(long initial, long maximum, TimeUnit unit) {
+		checkNotBuilt();
+		checkArgument(initial > 0, "The initial retry delay must be > 0");
+		checkArgument(maximum >= initial, "The maximum retry delay must be >= the initial one");
+		this.retryNanos = unit.toNanos(initial);
+		this.maxRetryNanos = unit.toNanos(maximum);
+		return this;
+	}
+
+	/**
+	 * Specifies the directory of the journals, which keep the keys pending replication across
+	 * restarts. Each bucket journal is kept in a file named after the hexadecimal encoding of the
+	 * UTF-8 bucket name, so that any name stays inside the directory.
+	 * @throws IllegalArgumentException if the argument is not a directory
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public AsyncReplicaBuilder directory(File directory) {
+		checkNotBuilt();
+		checkNotNull(directory, "The directory must be provided");
+		checkArgument(directory.isDirectory(), "%s is not a directory", directory);
+		this.directory = directory;
+		return this;
+	}
+
+	/**
+	 * Specifies whether journal changes are forced to the storage device, so that they survive
+	 * operating system crashes and not only process crashes. The default is false.
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public AsyncReplicaBuilder syncJournal(boolean sync) {
+		checkNotBuilt();
+		this.sync = sync;
+		return this;
+	}
+
+	/** Returns the journal file of a bucket. */
+	File journalFile(String name) {
+		return new File(directory, BaseEncoding.base16().lowerCase().encode(name.getBytes(Charsets.UTF_8)) + ".journal");
+	}
+
+	/** Creates a replicated bucket with the current configuration. */
+	AsyncReplicatedBocas create(Bocas primary, Bocas replica, String name) {
+		checkNotNull(primary, "The primary bucket must be provided.");
+		ReplicationJournal journal = null;
+		if (directory != null) {
+			final int keySize = primary.getHashFunction().hash(ByteSource.empty()).size();
+			try {
+				journal = new ReplicationJournal(journalFile(name), keySize, sync);
+			} catch (IOException e) {
+				throw new BocasException(e);
+			}
+		}
+		return new AsyncReplicatedBocas(primary, replica, capacity, batchSize, retryNanos, maxRetryNanos, journal);
+	}
+
+	/**
+	 * Decorates a bucket.
+	 * @param primary Primary bucket.
+	 * @param replica Replica bucket.
+	 * @param name Bucket name, used for the journal if a directory has been provided.
+	 * @return The replicated bucket.
+	 */
+	public AsyncReplicatedBocas build(Bocas primary, Bocas replica, String name) {
+		checkNotBuilt();
+		checkNotNull(name, "The bucket name must be provided");
+		built = true;
+		return create(primary, replica, name);
+	}
+
+	/**
+	 * Decorates a service. Closing the replicated buckets stops their replication, closing the
+	 * primary and replica buckets is the responsibility of the caller.
+	 * @param primary Primary service.
+	 * @param replica Replica service.
+	 * @return The replicated service.
+	 */
+	public BocasService build(BocasService primary, BocasService replica) {
+		checkNotBuilt();
+		built = true;
+		return BocasServices.decorate(primary, new AsyncReplicatedBocasDecorator(replica, this));
+	}
+}
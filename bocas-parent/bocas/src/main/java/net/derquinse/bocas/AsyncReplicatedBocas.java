@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Bocas bucket decorator that asynchronously replicates writes into a replica bucket. Writes are
+ * acknowledged once the primary bucket has been written, and the written keys are queued and sent
+ * to the replica in batches by a background thread, which reads the values back from the primary.
+ * Reads are always served by the primary bucket.
+ * <p>
+ * The queue is bounded: writers block while it is full. If a journal is used, queued keys are
+ * appended to it before the write is acknowledged, and keys not replicated when the bucket is
+ * closed or the process crashes are replicated when the bucket is created again. Without a journal
+ * they are lost.
+ * <p>
+ * When a batch fails the bucket enters catch-up mode: the batch is retried with an exponential
+ * backoff and, until the queue is drained, keys already in the replica are not sent again. Keys
+ * recovered from the journal are also replicated in catch-up mode.
+ * <p>
+ * If replication stops because of an unexpected error (e.g., the journal can't be written), the
+ * bucket is marked as failed and further writes throw a {@link BocasException} once the primary has
+ * been written, instead of blocking.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class AsyncReplicatedBocas extends ForwardingBocas {
+	/** Primary bucket. */
+	private final Bocas primary;
+	/** Replica bucket. */
+	private final Bocas replica;
+	/** Maximum number of keys per batch. */
+	private final int batchSize;
+	/** Initial retry delay in nanoseconds. */
+	private final long retryNanos;
+	/** Maximum retry delay in nanoseconds. */
+	private final long maxRetryNanos;
+	/** Journal, {@code null} if not used. */
+	@Nullable
+	@GuardedBy("this")
+	private final ReplicationJournal journal;
+	/** Queue capacity. */
+	private final int capacity;
+	/** Free queue slots. */
+	private final Semaphore slots;
+	/** Queued keys, including the batch being sent. */
+	@GuardedBy("this")
+	private final Deque<Pending> queue = new ArrayDeque<Pending>();
+	/** Number of replicated keys. */
+	private final AtomicLong replicated = new AtomicLong();
+	/** Number of failed batches. */
+	private final AtomicLong failures = new AtomicLong();
+	/** Whether the bucket is catching up. */
+	private volatile boolean catchingUp = false;
+	/** Whether the bucket has been closed. */
+	private volatile boolean closed = false;
+	/** Error that stopped the replication, {@code null} if none. */
+	@Nullable
+	private volatile Throwable failure = null;
+	/** Replication thread. */
+	private final Thread worker;
+
+	/**
+	 * Constructor.
+	 * @param primary Primary bucket.
+	 * @param replica Replica bucket.
+	 * @param capacity Maximum number of queued keys.
+	 * @param batchSize Maximum number of keys per batch.
+	 * @param retryNanos Initial retry delay in nanoseconds.
+	 * @param maxRetryNanos Maximum retry delay in nanoseconds.
+	 * @param journal Journal to use, {@code null} if not used.
+	 */
+	AsyncReplicatedBocas(Bocas primary, Bocas replica, int capacity, int batchSize, long retryNanos,
+			long maxRetryNanos, @Nullable ReplicationJournal journal) {
+		this.primary = checkNotNull(primary, "The primary bucket must be provided.");
+		this.replica = checkNotNull(replica, "The replica bucket must be provided.");
+		checkArgument(primary != replica, "The primary and replica bucket can't be the same");
+		checkArgument(primary.getHashFunction().equals(replica.getHashFunction()),
+				"The primary and replica hash functions must be the same");
+		checkArgument(capacity > 0, "The queue capacity must be > 0");
+		checkArgument(batchSize > 0, "The batch size must be > 0");
+		this.capacity = capacity;
+		this.slots = new Semaphore(capacity);
+		this.batchSize = batchSize;
+		this.retryNanos = retryNanos;
+		this.maxRetryNanos = Math.max(retryNanos, maxRetryNanos);
+		this.journal = journal;
+		if (journal != null) {
+			final List<ByteString> recovered;
+			try {
+				recovered = journal.pending();
+			} catch (IOException e) {
+				throw new BocasException(e);
+			}
+			final long now = System.nanoTime();
+			for (ByteString key : recovered) {
+				// Recovered keys don't take queue slots.
+				queue.add(new Pending(key, now, false));
+			}
+			catchingUp = !recovered.isEmpty();
+		}
+		this.worker = new Thread(new Worker(), "bocas-async-replica");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	@Override
+	protected Bocas delegate() {
+		return primary;
+	}
+
+	/** Throws a {@link BocasException} if the replication has stopped because of an error. */
+	private void checkNotFailed() {
+		final Throwable t = failure;
+		if (t != null) {
+			throw new BocasException("Asynchronous replication stopped", t);
+		}
+	}
+
+	/** Queues written keys for replication, blocking while the queue is full. */
+	private void enqueue(List<ByteString> keys) {
+		for (List<ByteString> chunk : Iterables.partition(keys, capacity)) {
+			checkNotFailed();
+			slots.acquireUninterruptibly(chunk.size());
+			synchronized (this) {
+				if (failure != null) {
+					// Give the slots back so that every blocked writer fails.
+					slots.release(chunk.size());
+					checkNotFailed();
+				}
+				if (journal != null) {
+					try {
+						journal.append(chunk);
+					} catch (IOException e) {
+						slots.release(chunk.size());
+						throw new BocasException(e);
+					}
+				}
+				final long now = System.nanoTime();
+				for (ByteString key : chunk) {
+					queue.add(new Pending(key, now, true));
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#put(com.google.common.io.ByteSource)
+	 */
+	@Override
+	public ByteString put(ByteSource value) {
+		final ByteString key = primary.put(value);
+		enqueue(ImmutableList.of(key));
+		return key;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#put(java.io.InputStream)
+	 */
+	@Override
+	public ByteString put(InputStream value) {
+		final ByteString key = primary.put(value);
+		enqueue(ImmutableList.of(key));
+		return key;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#putAll(java.lang.Iterable)
+	 */
+	@Override
+	public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+		final List<ByteString> keys = primary.putAll(values);
+		enqueue(keys);
+		return keys;
+	}
+
+	/** Returns the number of keys pending replication, including the batch being sent. */
+	public synchronized int getPendingCount() {
+		return queue.size();
+	}
+
+	/** Returns the time since the oldest key pending replication was written, zero if none. */
+	public synchronized long getLag(TimeUnit unit) {
+		final Pending oldest = queue.peekFirst();
+		return oldest != null ? unit.convert(System.nanoTime() - oldest.time, TimeUnit.NANOSECONDS) : 0L;
+	}
+
+	/** Returns the number of keys replicated since the bucket was created. */
+	public long getReplicatedCount() {
+		return replicated.get();
+	}
+
+	/** Returns the number of failed batches since the bucket was created. */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/** Returns the error that stopped the replication, {@code null} if none. */
+	@Nullable
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/** Returns whether the bucket is catching up after a failure or a restart. */
+	public boolean isCatchingUp() {
+		return catchingUp;
+	}
+
+	/**
+	 * Waits until every queued key has been replicated.
+	 * @return True if the queue was drained, false if the timeout elapsed first.
+	 */
+	public synchronized boolean awaitReplication(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!queue.isEmpty()) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the replication thread after the batch being sent, if any. Keys still queued remain in
+	 * the journal, if used. The primary and replica buckets are not closed.
+	 * @see net.derquinse.bocas.ForwardingBocas#close()
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		Uninterruptibles.joinUninterruptibly(worker);
+		if (journal != null) {
+			synchronized (this) {
+				try {
+					journal.close();
+				} catch (IOException e) {
+					throw new BocasException(e);
+				}
+			}
+		}
+	}
+
+	/** Returns the next batch, leaving it in the queue, or {@code null} if closed. */
+	private synchronized List<Pending> next() throws InterruptedException {
+		while (queue.isEmpty() && !closed) {
+			wait();
+		}
+		if (closed) {
+			return null;
+		}
+		final List<Pending> batch = Lists.newArrayListWithCapacity(Math.min(batchSize, queue.size()));
+		final Iterator<Pending> it = queue.iterator();
+		while (it.hasNext() && batch.size() < batchSize) {
+			batch.add(it.next());
+		}
+		return batch;
+	}
+
+	/** Sends a batch to the replica. */
+	private void send(List<Pending> batch) {
+		Set<ByteString> keys = Sets.newHashSetWithExpectedSize(batch.size());
+		for (Pending p : batch) {
+			keys.add(p.key);
+		}
+		if (catchingUp) {
+			keys = Sets.newHashSet(Sets.difference(keys, replica.contained(keys)));
+		}
+		if (keys.isEmpty()) {
+			return;
+		}
+		final Map<ByteString, ByteSource> values = primary.get(keys);
+		replica.putAll(values.values());
+	}
+
+	/** Removes a replicated batch from the queue. */
+	private synchronized void commit(List<Pending> batch) throws IOException {
+		if (journal != null) {
+			journal.commit(batch.size());
+		}
+		int permits = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			if (queue.removeFirst().slot) {
+				permits++;
+			}
+		}
+		slots.release(permits);
+		replicated.addAndGet(batch.size());
+		if (queue.isEmpty()) {
+			catchingUp = false;
+		}
+		notifyAll();
+	}
+
+	/** Waits before retrying a failed batch. Returns false if closed. */
+	private synchronized boolean backoff(long nanos) throws InterruptedException {
+		final long deadline = System.nanoTime() + nanos;
+		long remaining = nanos;
+		while (!closed && remaining > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		return !closed;
+	}
+
+	/** Marks the replication as failed, unblocking the waiting writers. */
+	private synchronized void fail(Throwable t) {
+		failure = t;
+		// Writers blocked on a full queue wake up and fail, giving their slots back.
+		slots.release(capacity);
+		notifyAll();
+	}
+
+	/** Replication loop. */
+	private final class Worker implements Runnable {
+		@Override
+		public void run() {
+			try {
+				replicate();
+			} catch (InterruptedException e) {
+				// Finish.
+			} catch (Throwable t) {
+				// Queued keys remain in the journal, if used, and will be replicated on restart.
+				fail(t);
+			}
+		}
+
+		/** Replicates the queued keys until closed. */
+		private void replicate() throws InterruptedException, IOException {
+			List<Pending> batch;
+			while ((batch = next()) != null) {
+				long delay = retryNanos;
+				while (true) {
+					try {
+						send(batch);
+						break;
+					} catch (RuntimeException e) {
+						failures.incrementAndGet();
+						catchingUp = true;
+						if (!backoff(delay)) {
+							return;
+						}
+						delay = Math.min(delay * 2, maxRetryNanos);
+					}
+				}
+				commit(batch);
+			}
+		}
+	}
+
+	/** Key pending replication. */
+	private static final class Pending {
+		/** Key. */
+		final ByteString key;
+		/** Time the key was queued. */
+		final long time;
+		/** Whether the key takes a queue slot. */
+		final boolean slot;
+
+		Pending(ByteString key, long time, boolean slot) {
+			this.key = key;
+			this.time = time;
+			this.slot = slot;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Bocas bucket decorator that merges concurrent single-key reads into bulk reads. The first caller
+ * of {@link #get(ByteString)} or {@link #contains(ByteString)} opens a batch and waits for the batch
+ * window, or until the batch is full, while other callers add their keys to the batch. Then it
+ * performs a single bulk read for the whole batch and the results are handed to the waiting callers.
+ * No additional threads are used. Bulk operations, ranged reads and writes are forwarded directly.
+ * <p>
+ * This trades some latency (up to the batch window) for fewer round trips, so it is useful for
+ * remote buckets read concurrently one key at a time.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BatchingBocas extends ForwardingBocas {
+	/** Decorated bucket. */
+	private final Bocas bocas;
+	/** Batch window in nanoseconds. */
+	private final long window;
+	/** Maximum number of keys per batch. */
+	private final int maxBatchSize;
+	/** Batcher of single entry reads. */
+	private final Batcher<Optional<ByteSource>> getBatcher = new Batcher<Optional<ByteSource>>() {
+		@Override
+		void load(Map<ByteString, SettableFuture<Optional<ByteSource>>> batch) {
+			if (batch.size() == 1) {
+				final Entry<ByteString, SettableFuture<Optional<ByteSource>>> entry = Iterables.getOnlyElement(batch
+						.entrySet());
+				entry.getValue().set(bocas.get(entry.getKey()));
+				return;
+			}
+			final Map<ByteString, ByteSource> found = bocas.get(batch.keySet());
+			for (Entry<ByteString, SettableFuture<Optional<ByteSource>>> entry : batch.entrySet()) {
+				entry.getValue().set(Optional.fromNullable(found.get(entry.getKey())));
+			}
+		}
+	};
+	/** Batcher of single entry containment checks. */
+	private final Batcher<Boolean> containsBatcher = new Batcher<Boolean>() {
+		@Override
+		void load(Map<ByteString, SettableFuture<Boolean>> batch) {
+			if (batch.size() == 1) {
+				final Entry<ByteString, SettableFuture<Boolean>> entry = Iterables.getOnlyElement(batch.entrySet());
+				entry.getValue().set(bocas.contains(entry.getKey()));
+				return;
+			}
+			final Set<ByteString> found = bocas.contained(batch.keySet());
+			for (Entry<ByteString, SettableFuture<Boolean>> entry : batch.entrySet()) {
+				entry.getValue().set(found.contains(entry.getKey()));
+			}
+		}
+	};
+	/** Number of single-key calls. */
+	private final AtomicLong calls = new AtomicLong();
+	/** Number of batches. */
+	private final AtomicLong batches = new AtomicLong();
+	/** Number of keys read in batches. */
+	private final AtomicLong keys = new AtomicLong();
+	/** Largest batch. */
+	private volatile int largest = 0;
+
+	/**
+	 * Constructor.
+	 * @param bocas Bucket to decorate.
+	 * @param window Batch window in nanoseconds.
+	 * @param maxBatchSize Maximum number of keys per batch.
+	 */
+	BatchingBocas(Bocas bocas, long window, int maxBatchSize) {
+		this.bocas = checkNotNull(bocas, "The bucket to decorate must be provided");
+		checkArgument(window >= 0, "The batch window must be >= 0");
+		checkArgument(maxBatchSize > 0, "The maximum batch size must be > 0");
+		this.window = window;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	protected Bocas delegate() {
+		return bocas;
+	}
+
+	/** Returns the number of single-key calls received. */
+	public long getCallCount() {
+		return calls.get();
+	}
+
+	/** Returns the number of bulk reads performed. */
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * Returns the number of distinct keys read in batches. Concurrent calls for the same key in a
+	 * batch are only read once.
+	 */
+	public long getBatchedKeyCount() {
+		return keys.get();
+	}
+
+	/** Returns the average number of keys per batch. */
+	public double getAverageBatchSize() {
+		final long n = batches.get();
+		return n > 0 ? (double) keys.get() / n : 0.0;
+	}
+
+	/** Returns the number of keys of the largest batch. */
+	public int getLargestBatchSize() {
+		return largest;
+	}
+
+	private synchronized void recordBatch(int size) {
+		batches.incrementAndGet();
+		keys.addAndGet(size);
+		if (size > largest) {
+			largest = size;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public boolean contains(ByteString key) {
+		return containsBatcher.call(checkNotNull(key, "The key must be provided"));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key) {
+		return getBatcher.call(checkNotNull(key, "The key must be provided"));
+	}
+
+	/** Batch of keys being collected. */
+	private static final class Batch<R> {
+		/** Futures by key. */
+		final Map<ByteString, SettableFuture<R>> futures = Maps.newHashMap();
+		/** Whether the batch is closed. Guarded by the batcher. */
+		boolean closed = false;
+	}
+
+	/** Collects single-key calls into batches. */
+	private abstract class Batcher<R> {
+		/** Batch being collected, {@code null} if there is none. Guarded by this. */
+		private Batch<R> current = null;
+
+		/** Performs a bulk read, setting the value of every future. */
+		abstract void load(Map<ByteString, SettableFuture<R>> batch);
+
+		/** Performs a read as part of a batch. */
+		R call(ByteString key) {
+			calls.incrementAndGet();
+			final Batch<R> batch;
+			final SettableFuture<R> future;
+			boolean leader = false;
+			synchronized (this) {
+				if (current == null) {
+					current = new Batch<R>();
+					leader = true;
+				}
+				batch = current;
+				SettableFuture<R> f = batch.futures.get(key);
+				if (f == null) {
+					f = SettableFuture.create();
+					batch.futures.put(key, f);
+				}
+				future = f;
+				if (batch.futures.size() >= maxBatchSize) {
+					close(batch);
+				}
+			}
+			if (leader) {
+				await(batch);
+				recordBatch(batch.futures.size());
+				try {
+					load(batch.futures);
+				} catch (RuntimeException e) {
+					for (SettableFuture<R> f : batch.futures.values()) {
+						f.setException(e);
+					}
+				} finally {
+					// Futures are only left unset if the load failed with an error.
+					for (SettableFuture<R> f : batch.futures.values()) {
+						f.setException(new BocasException("Unable to perform batched read"));
+					}
+				}
+			}
+			try {
+				return Uninterruptibles.getUninterruptibly(future);
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new BocasException(cause);
+			}
+		}
+
+		/** Closes a batch. Must be called holding the lock. */
+		private void close(Batch<R> batch) {
+			batch.closed = true;
+			if (current == batch) {
+				current = null;
+			}
+			notifyAll();
+		}
+
+		/** Waits until a batch is full or the window elapses, closing it. */
+		private synchronized void await(Batch<R> batch) {
+			final long deadline = System.nanoTime() + window;
+			boolean interrupted = false;
+			try {
+				long remaining = window;
+				while (!batch.closed && remaining > 0) {
+					try {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+					remaining = deadline - System.nanoTime();
+				}
+				close(batch);
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Builder for buckets and services that merge concurrent single-key reads into bulk reads.
+ * @see BatchingBocas
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BatchingBocasBuilder {
+	/** Whether the decorator has already been built. */
+	private boolean built = false;
+	/** Batch window in nanoseconds. */
+	private long window = TimeUnit.MILLISECONDS.toNanos(2L);
+	/** Maximum number of keys per batch. */
+	private int maxBatchSize = 100;
+
+	/** Constructor. */
+	BatchingBocasBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The decorator has already been built");
+	}
+
+	/**
+	 * Specifies the time the first read of a batch waits for other reads to join it. The default is
+	 * two milliseconds.
+	 * @throws IllegalArgumentException if the window is negative
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public BatchingBocasBuilder window(long window, TimeUnit unit) {
+		checkNotBuilt();
+		checkArgument(window >= 0, "The batch window must be >= 0");
+		this.window = unit.toNanos(window);
+		return this;
+	}
+
+	/**
+	 * Specifies the maximum number of keys per batch. Full batches are read without waiting for the
+	 * rest of the window. The default is 100.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public BatchingBocasBuilder maxBatchSize(int maxBatchSize) {
+		checkNotBuilt();
+		checkArgument(maxBatchSize > 0, "The maximum batch size must be > 0");
+		this.maxBatchSize = maxBatchSize;
+		return this;
+	}
+
+	/** Creates a batching bucket with the current configuration. */
+	BatchingBocas create(Bocas bocas) {
+		return new BatchingBocas(bocas, window, maxBatchSize);
+	}
+
+	/**
+	 * Decorates a bucket.
+	 * @param bocas Bucket to decorate.
+	 * @return The batching bucket.
+	 */
+	public BatchingBocas build(Bocas bocas) {
+		checkNotBuilt();
+		built = true;
+		return create(bocas);
+	}
+
+	/**
+	 * Decorates a service. The buckets returned by the service are instances of
+	 * {@link BatchingBocas}.
+	 * @param service Service to decorate.
+	 * @return The batching service.
+	 */
+	public BocasService build(BocasService service) {
+		checkNotBuilt();
+		checkNotNull(service, "The service to decorate must be provided");
+		built = true;
+		return BocasServices.decorate(service, new BatchingBocasDecorator(this));
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Closer;
+
+/**
+ * Bocas bucket decorator that keeps a scalable Bloom filter over the bucket key set and answers
+ * definite misses without querying the decorated bucket. The filter is updated on every write made
+ * through this bucket but it is only used once it covers the whole key set, that is, after being
+ * loaded from disk or rebuilt from the complete list of keys. Writes made to the decorated bucket
+ * by other means are not seen by the filter, so those keys would be reported as missing.
+ * <p>
+ * If a file is provided the filter is loaded from it at construction time and the file is deleted
+ * right away, so that a crash can't leave a stale filter behind. It is written again by
+ * {@link #save()} and when the bucket is closed.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BloomFilterBocas extends ForwardingBocas {
+	/** Number of keys fetched in each scan while rebuilding. */
+	private static final int REBUILD_PAGE_SIZE = 1000;
+	/** Decorated bucket. */
+	private final Bocas bocas;
+	/** File to persist the filter to. */
+	@Nullable
+	private final File file;
+	/** Filter lock. */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** Current filter. */
+	@GuardedBy("lock")
+	private ScalableBloomFilter filter;
+	/** Filter being rebuilt. */
+	@GuardedBy("lock")
+	private ScalableBloomFilter rebuilding = null;
+	/** Whether the current filter covers the whole key set. */
+	private volatile boolean ready = false;
+
+	/** Constructor. */
+	BloomFilterBocas(Bocas bocas, int expectedInsertions, double fpp, @Nullable File file) {
+		this.bocas = checkNotNull(bocas, "The bucket to decorate must be provided");
+		this.filter = new ScalableBloomFilter(expectedInsertions, fpp);
+		this.file = file;
+		if (file != null && file.exists()) {
+			load(file);
+		}
+	}
+
+	@Override
+	protected Bocas delegate() {
+		return bocas;
+	}
+
+	/** Loads the filter from a file and deletes it. */
+	private void load(File f) {
+		try {
+			final Closer closer = Closer.create();
+			try {
+				final InputStream is = closer.register(new BufferedInputStream(new FileInputStream(f)));
+				this.filter = ScalableBloomFilter.readFrom(is);
+				this.ready = true;
+			} catch (Throwable t) {
+				throw closer.rethrow(t);
+			} finally {
+				closer.close();
+			}
+		} catch (IOException e) {
+			// Invalid file, the filter must be rebuilt.
+		}
+		f.delete();
+	}
+
+	/** Returns whether the filter covers the whole key set and is used to answer misses. */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Rebuilds the filter from the complete key set of the bucket. Writes performed while the filter
+	 * is being rebuilt are added to both the current and the new filter. Use an empty iterable to
+	 * enable the filter for a new empty bucket.
+	 * @param keys Every key in the bucket.
+	 */
+	public void rebuild(Iterable<ByteString> keys) {
+		checkNotNull(keys, "The bucket keys must be provided");
+		final ScalableBloomFilter f;
+		lock.writeLock().lock();
+		try {
+			f = new ScalableBloomFilter(filter.getExpectedInsertions(), filter.getFpp());
+			rebuilding = f;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		boolean ok = false;
+		try {
+			for (ByteString key : keys) {
+				lock.writeLock().lock();
+				try {
+					f.put(checkNotNull(key, "Null keys not allowed"));
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+			ok = true;
+		} finally {
+			lock.writeLock().lock();
+			try {
+				if (rebuilding == f) {
+					rebuilding = null;
+					if (ok) {
+						filter = f;
+						ready = true;
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the filter scanning the complete key set of the decorated bucket.
+	 * @see #rebuild(Iterable)
+	 */
+	public void rebuild() {
+		rebuild(BocasServices.keys(bocas, REBUILD_PAGE_SIZE));
+	}
+
+	/**
+	 * Saves the filter to the provided file, if any. The filter is written to a temporary file that
+	 * is renamed afterwards. Filters that are not ready are not saved.
+	 * @throws BocasException if an error occurs.
+	 */
+	public void save() {
+		if (file == null || !ready) {
+			return;
+		}
+		final File tmp = new File(file.getPath() + ".tmp");
+		try {
+			final Closer closer = Closer.create();
+			try {
+				final OutputStream os = closer.register(new BufferedOutputStream(new FileOutputStream(tmp)));
+				lock.readLock().lock();
+				try {
+					filter.writeTo(os);
+				} finally {
+					lock.readLock().unlock();
+				}
+			} catch (Throwable t) {
+				throw closer.rethrow(t);
+			} finally {
+				closer.close();
+			}
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file)) {
+					throw new IOException("Unable to rename " + tmp + " to " + file);
+				}
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			throw new BocasException(e);
+		}
+	}
+
+	/** Returns whether the key might be in the bucket. */
+	private boolean mightContain(ByteString key) {
+		if (!ready) {
+			return true;
+		}
+		lock.readLock().lock();
+		try {
+			return filter.mightContain(checkNotNull(key, "The object key must be provided"));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Returns the subset of keys that might be in the bucket. */
+	private Set<ByteString> mightContain(Iterable<ByteString> keys) {
+		checkNotNull(keys, "The object keys must be provided");
+		final Set<ByteString> set = Sets.newHashSet();
+		if (!ready) {
+			for (ByteString key : keys) {
+				set.add(checkNotNull(key, "Null keys not allowed"));
+			}
+			return set;
+		}
+		lock.readLock().lock();
+		try {
+			for (ByteString key : keys) {
+				if (filter.mightContain(checkNotNull(key, "Null keys not allowed"))) {
+					set.add(key);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return set;
+	}
+
+	/** Adds a key to the filter. */
+	private void added(ByteString key) {
+		lock.writeLock().lock();
+		try {
+			filter.put(key);
+			if (rebuilding != null) {
+				rebuilding.put(key);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Adds some keys to the filter. */
+	private void added(Iterable<ByteString> keys) {
+		lock.writeLock().lock();
+		try {
+			for (ByteString key : keys) {
+				filter.put(key);
+				if (rebuilding != null) {
+					rebuilding.put(key);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves the filter and closes the decorated bucket.
+	 * @see net.derquinse.bocas.ForwardingBocas#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			save();
+		} finally {
+			super.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public boolean contains(ByteString key) {
+		return mightContain(key) && super.contains(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#contained(java.lang.Iterable)
+	 */
+	@Override
+	public Set<ByteString> contained(Iterable<ByteString> keys) {
+		final Set<ByteString> requested = mightContain(keys);
+		if (requested.isEmpty()) {
+			return ImmutableSet.of();
+		}
+		return super.contained(requested);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key) {
+		if (!mightContain(key)) {
+			return Optional.absent();
+		}
+		return super.get(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		BocasPreconditions.checkRange(offset, length);
+		if (!mightContain(key)) {
+			return Optional.absent();
+		}
+		return super.get(key, offset, length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(java.lang.Iterable)
+	 */
+	@Override
+	public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+		final Set<ByteString> requested = mightContain(keys);
+		if (requested.isEmpty()) {
+			return ImmutableMap.of();
+		}
+		return super.get(requested);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#put(com.google.common.io.ByteSource)
+	 */
+	@Override
+	public ByteString put(ByteSource value) {
+		final ByteString key = super.put(value);
+		added(key);
+		return key;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#put(java.io.InputStream)
+	 */
+	@Override
+	public ByteString put(InputStream value) {
+		final ByteString key = super.put(value);
+		added(key);
+		return key;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#putAll(java.lang.Iterable)
+	 */
+	@Override
+	public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+		final List<ByteString> keys = super.putAll(values);
+		added(keys);
+		return keys;
+	}
+}
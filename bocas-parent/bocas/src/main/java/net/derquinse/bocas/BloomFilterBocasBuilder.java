@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Builder for Bloom filter bocas decorators.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BloomFilterBocasBuilder {
+	/** Whether the decorator has already been built. */
+	private boolean built = false;
+	/** Expected insertions. */
+	private int expectedInsertions = 1000000;
+	/** False positive probability. */
+	private double fpp = 0.01;
+	/** Directory to persist the filters to. */
+	private File directory = null;
+
+	/** Constructor. */
+	BloomFilterBocasBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The decorator has already been built");
+	}
+
+	/**
+	 * Specifies the expected number of keys per bucket. The filters grow beyond this number, but
+	 * each growth step adds a filter that must be checked in every lookup. The default is 1000000.
+	 * @throws IllegalArgumentException if the argument is not > 0
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public BloomFilterBocasBuilder expectedInsertions(int expectedInsertions) {
+		checkNotBuilt();
+		checkArgument(expectedInsertions > 0, "The number of expected insertions must be > 0");
+		this.expectedInsertions = expectedInsertions;
+		return this;
+	}
+
+	/**
+	 * Specifies the desired false positive probability, that is, the probability of querying the
+	 * decorated bucket for a missing key. The default is 0.01.
+	 * @throws IllegalArgumentException if the argument is not in (0.0, 1.0)
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public BloomFilterBocasBuilder fpp(double fpp) {
+		checkNotBuilt();
+		checkArgument(fpp > 0.0 && fpp < 1.0, "The false positive probability must be in (0.0, 1.0)");
+		this.fpp = fpp;
+		return this;
+	}
+
+	/**
+	 * Specifies the directory the filters are persisted to. Each bucket filter is kept in a file
+	 * named after the hex encoding of the bucket name.
+	 * @throws IllegalArgumentException if the argument is not a directory
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public BloomFilterBocasBuilder directory(File directory) {
+		checkNotBuilt();
+		checkNotNull(directory, "The directory must be provided");
+		checkArgument(directory.isDirectory(), "%s is not a directory", directory);
+		this.directory = directory;
+		return this;
+	}
+
+	/**
+	 * Decorates a bucket.
+	 * @param bucket Bucket to decorate.
+	 * @param name Bucket name, used to persist the filter if a directory has been provided.
+	 * @return The decorated bucket.
+	 */
+	public BloomFilterBocas build(Bocas bucket, String name) {
+		checkNotBuilt();
+		checkNotNull(name, "The bucket name must be provided");
+		built = true;
+		return new BloomFilterBocas(bucket, expectedInsertions, fpp, BloomFilterBocasService.file(directory, name));
+	}
+
+	/**
+	 * Decorates a service.
+	 * @param service Service to decorate.
+	 * @return The decorated service.
+	 */
+	public BloomFilterBocasService build(BocasService service) {
+		checkNotBuilt();
+		built = true;
+		return new BloomFilterBocasService(service, expectedInsertions, fpp, directory);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Bocas service that decorates the buckets of another one with Bloom filters.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BloomFilterBocasService implements BocasService {
+	/** Decorated service. */
+	private final BocasService service;
+	/** Expected insertions per bucket. */
+	private final int expectedInsertions;
+	/** False positive probability. */
+	private final double fpp;
+	/** Directory to persist the filters to. */
+	@Nullable
+	private final File directory;
+	/** Decorated buckets. */
+	private final Cache<String, BloomFilterBocas> buckets;
+
+	/** Constructor. */
+	BloomFilterBocasService(BocasService service, int expectedInsertions, double fpp, @Nullable File directory) {
+		this.service = checkNotNull(service, "The bocas service to decorate must be provided");
+		this.expectedInsertions = expectedInsertions;
+		this.fpp = fpp;
+		this.directory = directory;
+		this.buckets = CacheBuilder.newBuilder().build();
+	}
+
+	/**
+	 * Returns the file used to persist the filter of a bucket. The bucket name is hex encoded, so that
+	 * any name results in a file in the directory.
+	 */
+	@Nullable
+	static File file(@Nullable File directory, String name) {
+		if (directory == null) {
+			return null;
+		}
+		return new File(directory, BaseEncoding.base16().lowerCase().encode(name.getBytes(Charsets.UTF_8)) + ".bloom");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasService#getBucket(java.lang.String)
+	 */
+	@Override
+	public BloomFilterBocas getBucket(final String name) {
+		checkNotNull(name, "The bucket name must be provided");
+		Callable<BloomFilterBocas> loader = new Callable<BloomFilterBocas>() {
+			@Override
+			public BloomFilterBocas call() throws Exception {
+				Bocas original = service.getBucket(name);
+				return new BloomFilterBocas(original, expectedInsertions, fpp, file(directory, name));
+			}
+		};
+		try {
+			return buckets.get(name, loader);
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof BocasException) {
+				throw (BocasException) t;
+			}
+			throw new BocasException(t);
+		}
+	}
+
+	/**
+	 * Saves the filters of every bucket obtained so far.
+	 * @throws BocasException if an error occurs.
+	 */
+	public void save() {
+		for (BloomFilterBocas bucket : buckets.asMap().values()) {
+			bucket.save();
+		}
+	}
+}
@@ -15,10 +15,13 @@
  */
 package net.derquinse.bocas;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import net.derquinse.common.base.ByteString;
 
 import com.google.common.annotations.Beta;
@@ -61,6 +64,18 @@ public interface Bocas {
 	 */
 	Optional<ByteSource> get(ByteString key);
 
+	/**
+	 * Returns a range of the object for the provided key. The range is truncated at the end of the
+	 * object, so an empty source is returned if the offset is beyond the end.
+	 * @param key The requested key.
+	 * @param offset Offset of the first byte to return.
+	 * @param length Maximum number of bytes to return.
+	 * @return The requested range of the object, if found.
+	 * @throws IllegalArgumentException if the offset or length is negative.
+	 * @throws BocasException if an error occurs.
+	 */
+	Optional<ByteSource> get(ByteString key, long offset, long length);
+
 	/**
 	 * Returns the objects for a collection of keys.
 	 * @param keys The requested keys.
@@ -69,6 +84,21 @@ public interface Bocas {
 	 */
 	Map<ByteString, ByteSource> get(Iterable<ByteString> keys);
 
+	/**
+	 * Returns a page of the keys in the bucket. Keys are returned in an order specific to the bucket
+	 * implementation, and each key is returned once in a complete scan. Keys added or removed during
+	 * the scan may or may not be returned.
+	 * @param cursor Cursor returned with the previous page or {@code null} to start from the
+	 *          beginning.
+	 * @param limit Maximum number of keys to return. Implementations may return fewer keys even if
+	 *          the page is not the last one.
+	 * @param sizes Whether to include the object sizes in the page.
+	 * @return The requested page.
+	 * @throws IllegalArgumentException if the cursor is not valid or the limit is not positive.
+	 * @throws BocasException if an error occurs.
+	 */
+	BocasKeyPage scan(@Nullable String cursor, int limit, boolean sizes);
+
 	/**
 	 * Puts a value into the repository.
 	 * @return The generated key.
@@ -76,6 +106,15 @@ public interface Bocas {
 	 */
 	ByteString put(ByteSource value);
 
+	/**
+	 * Puts a value read from a stream into the repository. The key is computed while the stream is
+	 * read, so the value does not need to be loaded in memory first. The stream is read until the end
+	 * but it is not closed.
+	 * @return The generated key.
+	 * @throws BocasException if an error occurs.
+	 */
+	ByteString put(InputStream value);
+
 	/**
 	 * Puts some values into the repository in a single operation. The operation must be atomic.
 	 * @return The list of generated keys, in the same order than the objects provided.
@@ -18,6 +18,9 @@ package net.derquinse.bocas;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static net.derquinse.bocas.InternalUtils.convertCacheException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 
 import net.derquinse.common.base.ByteString;
@@ -30,7 +33,9 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 
 /**
  * Abstraction for a Bocas hash function.
@@ -67,12 +72,14 @@ public abstract class BocasHashFunction {
 		return f;
 	}
 
+	/** Underlying function. */
+	private final HashFunction function;
 	/** Hashing cache. */
 	private final LoadingCache<ByteSource, ByteString> cache;
 
 	/** Constructor. */
 	private BocasHashFunction(final HashFunction f) {
-		checkNotNull(f);
+		this.function = checkNotNull(f);
 		this.cache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.MINUTES).weakKeys()
 				.build(new CacheLoader<ByteSource, ByteString>() {
 					public ByteString load(ByteSource key) throws Exception {
@@ -95,6 +102,22 @@ public abstract class BocasHashFunction {
 		}
 	}
 
+	/**
+	 * Copies the contents of an input stream into an output stream, hashing the bytes while they are
+	 * copied. Neither stream is closed.
+	 * @param from Input stream to read from.
+	 * @param to Output stream to write to.
+	 * @return The hash of the copied bytes.
+	 */
+	public final ByteString copy(InputStream from, OutputStream to) throws IOException {
+		checkNotNull(from, "The input stream must be provided");
+		checkNotNull(to, "The output stream must be provided");
+		final HashingOutputStream os = new HashingOutputStream(function, to);
+		ByteStreams.copy(from, os);
+		os.flush();
+		return ByteString.copyFrom(os.hash());
+	}
+
 	/** SHA-256 function. */
 	private static final class SHA256 extends BocasHashFunction {
 		SHA256() {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Page of keys returned by a bucket scan. The page includes the cursor to use in order to obtain
+ * the next page, if there are more keys to scan. Cursors are opaque and specific to the bucket
+ * implementation that returned them.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BocasKeyPage {
+	/** Empty last page. */
+	private static final BocasKeyPage EMPTY = new BocasKeyPage(ImmutableList.<ByteString> of(),
+			ImmutableMap.<ByteString, Long> of(), null);
+
+	/** Keys. */
+	private final ImmutableList<ByteString> keys;
+	/** Object sizes, if requested. */
+	private final ImmutableMap<ByteString, Long> sizes;
+	/** Cursor for the next page. */
+	@Nullable
+	private final String cursor;
+
+	/** Returns an empty last page. */
+	public static BocasKeyPage empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Creates a new page.
+	 * @param keys Keys in the page.
+	 * @param sizes Object sizes, empty if not requested. If not empty, there must be a size for every
+	 *          key in the page.
+	 * @param cursor Cursor for the next page, {@code null} if this is the last one.
+	 */
+	public static BocasKeyPage of(List<ByteString> keys, Map<ByteString, Long> sizes, @Nullable String cursor) {
+		final ImmutableList<ByteString> k = ImmutableList.copyOf(keys);
+		final ImmutableMap<ByteString, Long> s = ImmutableMap.copyOf(sizes);
+		checkArgument(s.isEmpty() || s.keySet().containsAll(k), "There must be a size for every key");
+		if (k.isEmpty() && cursor == null) {
+			return EMPTY;
+		}
+		return new BocasKeyPage(k, s, cursor);
+	}
+
+	/**
+	 * Returns the cursor to use for key-ordered buckets, which is the hex representation of the last
+	 * key returned.
+	 * @param keys Keys in the page.
+	 * @param more Whether there are more keys after the page.
+	 * @return The cursor or {@code null} if this is the last page.
+	 */
+	@Nullable
+	public static String keyCursor(List<ByteString> keys, boolean more) {
+		if (!more || keys.isEmpty()) {
+			return null;
+		}
+		return keys.get(keys.size() - 1).toHexString();
+	}
+
+	/**
+	 * Returns the key after which the scan must start for cursors created with
+	 * {@link #keyCursor(List, boolean)}.
+	 * @param cursor Cursor, {@code null} to start from the beginning.
+	 * @return The key after which the scan starts or {@code null} to start from the beginning.
+	 * @throws IllegalArgumentException if the cursor is not valid.
+	 */
+	@Nullable
+	public static ByteString cursorKey(@Nullable String cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			return ByteString.fromHexString(cursor);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+		}
+	}
+
+	/** Constructor. */
+	private BocasKeyPage(ImmutableList<ByteString> keys, ImmutableMap<ByteString, Long> sizes, @Nullable String cursor) {
+		this.keys = checkNotNull(keys);
+		this.sizes = checkNotNull(sizes);
+		this.cursor = cursor;
+	}
+
+	/** Returns the keys in the page. */
+	public ImmutableList<ByteString> getKeys() {
+		return keys;
+	}
+
+	/** Returns the object sizes, empty if they were not requested. */
+	public ImmutableMap<ByteString, Long> getSizes() {
+		return sizes;
+	}
+
+	/** Returns the cursor to use for the next page, absent if this is the last one. */
+	public Optional<String> getCursor() {
+		return Optional.fromNullable(cursor);
+	}
+
+	/** Returns whether this is the last page. */
+	public boolean isLast() {
+		return cursor == null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("keys", keys.size()).add("cursor", cursor).toString();
+	}
+}
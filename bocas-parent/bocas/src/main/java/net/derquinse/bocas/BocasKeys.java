@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Iterable over every key in a bucket, fetched lazily in pages. Each iteration starts a new scan.
+ * @author Andres Rodriguez.
+ */
+@Beta
+final class BocasKeys implements Iterable<ByteString> {
+	/** Bucket to scan. */
+	private final Bocas bocas;
+	/** Page size. */
+	private final int pageSize;
+
+	/** Constructor. */
+	BocasKeys(Bocas bocas, int pageSize) {
+		this.bocas = checkNotNull(bocas, "The bucket to scan must be provided");
+		this.pageSize = BocasPreconditions.checkLimit(pageSize);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<ByteString> iterator() {
+		return new AbstractIterator<ByteString>() {
+			/** Current page. */
+			private BocasKeyPage page = null;
+			/** Iterator over the current page. */
+			private Iterator<ByteString> current = null;
+
+			@Override
+			protected ByteString computeNext() {
+				while (current == null || !current.hasNext()) {
+					if (page != null && page.isLast()) {
+						return endOfData();
+					}
+					page = bocas.scan(page == null ? null : page.getCursor().get(), pageSize, false);
+					current = page.getKeys().iterator();
+				}
+				return current.next();
+			}
+		};
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+/**
+ * Metrics sink that keeps, in memory, latency histograms, key and byte counters and error counts
+ * for every bucket and operation. Recording is lock-free and uses a fixed amount of memory per
+ * bucket and operation. Snapshots taken while operations are being recorded may be slightly
+ * inconsistent, e.g. the count of an operation may not include its latency yet.
+ * <p>
+ * The metrics can be published as a JMX MXBean.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BocasMetrics implements BocasMetricsSink, BocasMetricsMXBean {
+	/** JMX domain. */
+	private static final String DOMAIN = "net.derquinse.bocas";
+	/** Operations. */
+	private static final BocasOperation[] OPERATIONS = BocasOperation.values();
+
+	/** Recorders by bucket, indexed by operation. */
+	private final ConcurrentMap<String, Recorder[]> buckets = Maps.newConcurrentMap();
+
+	/** Constructor. */
+	BocasMetrics() {
+	}
+
+	/** Returns the recorders of a bucket, creating them if needed. */
+	private Recorder[] recorders(String bucket) {
+		Recorder[] recorders = buckets.get(bucket);
+		if (recorders == null) {
+			recorders = new Recorder[OPERATIONS.length];
+			for (int i = 0; i < recorders.length; i++) {
+				recorders[i] = new Recorder();
+			}
+			final Recorder[] existing = buckets.putIfAbsent(bucket, recorders);
+			if (existing != null) {
+				recorders = existing;
+			}
+		}
+		return recorders;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasMetricsSink#record(java.lang.String,
+	 * net.derquinse.bocas.BocasOperation, long, int, long, boolean)
+	 */
+	@Override
+	public void record(String bucket, BocasOperation operation, long nanos, int keys, long bytes, boolean failed) {
+		recorders(checkNotNull(bucket))[operation.ordinal()].record(nanos, keys, bytes, failed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasMetricsMXBean#getBuckets()
+	 */
+	@Override
+	public List<String> getBuckets() {
+		return Ordering.natural().immutableSortedCopy(buckets.keySet());
+	}
+
+	/**
+	 * Returns the metrics of the recorded operations of a bucket.
+	 * @param bucket Bucket name.
+	 * @return The metrics of the operations performed at least once, in operation order.
+	 */
+	public List<BocasOperationStats> getStats(String bucket) {
+		final Recorder[] recorders = buckets.get(checkNotNull(bucket));
+		if (recorders == null) {
+			return ImmutableList.of();
+		}
+		final ImmutableList.Builder<BocasOperationStats> builder = ImmutableList.builder();
+		for (int i = 0; i < recorders.length; i++) {
+			if (recorders[i].count.get() > 0) {
+				builder.add(recorders[i].snapshot(bucket, OPERATIONS[i]));
+			}
+		}
+		return builder.build();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasMetricsMXBean#getStats()
+	 */
+	@Override
+	public List<BocasOperationStats> getStats() {
+		final ImmutableList.Builder<BocasOperationStats> builder = ImmutableList.builder();
+		for (String bucket : getBuckets()) {
+			builder.addAll(getStats(bucket));
+		}
+		return builder.build();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasMetricsMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		for (Recorder[] recorders : buckets.values()) {
+			for (Recorder recorder : recorders) {
+				recorder.reset();
+			}
+		}
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server.
+	 * @param name Name of the metrics, used in the object name.
+	 * @return The object name of the registered MBean.
+	 * @throws BocasException if unable to register the MBean.
+	 */
+	public ObjectName registerMBean(String name) {
+		checkNotNull(name, "The metrics name must be provided");
+		try {
+			final ObjectName objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new BocasException(e);
+		}
+	}
+
+	/** Metrics of an operation of a bucket. */
+	private static final class Recorder {
+		/** Number of operations. */
+		final AtomicLong count = new AtomicLong();
+		/** Number of failed operations. */
+		final AtomicLong errors = new AtomicLong();
+		/** Number of keys. */
+		final AtomicLong keys = new AtomicLong();
+		/** Number of bytes. */
+		final AtomicLong bytes = new AtomicLong();
+		/** Total latency. */
+		final AtomicLong total = new AtomicLong();
+		/** Maximum latency. */
+		final AtomicLong max = new AtomicLong();
+		/** Latency histogram. */
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		void record(long nanos, int keys, long bytes, boolean failed) {
+			final long latency = Math.max(nanos, 0L);
+			histogram.record(latency);
+			total.addAndGet(latency);
+			this.keys.addAndGet(keys);
+			if (bytes > 0) {
+				this.bytes.addAndGet(bytes);
+			}
+			if (failed) {
+				errors.incrementAndGet();
+			}
+			long current = max.get();
+			while (latency > current && !max.compareAndSet(current, latency)) {
+				current = max.get();
+			}
+			count.incrementAndGet();
+		}
+
+		BocasOperationStats snapshot(String bucket, BocasOperation operation) {
+			final long[] counts = histogram.counts();
+			long n = 0;
+			for (long c : counts) {
+				n += c;
+			}
+			return new BocasOperationStats(bucket, operation, n, errors.get(), keys.get(), bytes.get(), total.get(),
+					max.get(), counts);
+		}
+
+		void reset() {
+			histogram.reset();
+			count.set(0L);
+			errors.set(0L);
+			keys.set(0L);
+			bytes.set(0L);
+			total.set(0L);
+			max.set(0L);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * JMX management interface of the metrics recorded by instrumented buckets.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public interface BocasMetricsMXBean {
+	/** Returns the names of the buckets with recorded operations. */
+	List<String> getBuckets();
+
+	/** Returns the metrics of every recorded operation, sorted by bucket and operation. */
+	List<BocasOperationStats> getStats();
+
+	/** Clears the recorded metrics. */
+	void reset();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Receiver of the operations performed by instrumented buckets. Sinks are called synchronously
+ * after every operation, so they must be thread-safe and cheap, e.g. updating counters or
+ * handing the data to a metrics library. Exceptions thrown by sinks are ignored.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public interface BocasMetricsSink {
+	/**
+	 * Records an operation.
+	 * @param bucket Name of the bucket.
+	 * @param operation Operation performed.
+	 * @param nanos Duration of the operation in nanoseconds.
+	 * @param keys Number of keys requested or written.
+	 * @param bytes Number of bytes read or written, if known, or 0.
+	 * @param failed Whether the operation threw an exception.
+	 */
+	void record(String bucket, BocasOperation operation, long nanos, int keys, long bytes, boolean failed);
+}
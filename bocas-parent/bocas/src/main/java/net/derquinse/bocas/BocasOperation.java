@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Bucket operations recorded by instrumented buckets.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public enum BocasOperation {
+	/** @see Bocas#contains(net.derquinse.common.base.ByteString) */
+	CONTAINS,
+	/** @see Bocas#contained(Iterable) */
+	CONTAINED,
+	/** @see Bocas#get(net.derquinse.common.base.ByteString) */
+	GET,
+	/** @see Bocas#get(net.derquinse.common.base.ByteString, long, long) */
+	GET_RANGE,
+	/** @see Bocas#get(Iterable) */
+	GET_ALL,
+	/** @see Bocas#scan(String, int, boolean) */
+	SCAN,
+	/** @see Bocas#put(com.google.common.io.ByteSource) */
+	PUT,
+	/** @see Bocas#putAll(Iterable) */
+	PUT_ALL
+}
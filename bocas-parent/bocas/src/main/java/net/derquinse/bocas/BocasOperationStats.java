@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.MoreObjects;
+
+/**
+ * Snapshot of the metrics recorded for an operation of a bucket. Latencies are expressed in
+ * nanoseconds and percentiles are approximated by the histogram buckets, with a relative error below
+ * 3.2%. Instances are immutable and can be exposed as JMX open data.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class BocasOperationStats {
+	/** Bucket name. */
+	private final String bucket;
+	/** Operation. */
+	private final BocasOperation operation;
+	/** Number of operations. */
+	private final long count;
+	/** Number of failed operations. */
+	private final long errorCount;
+	/** Number of keys requested or written. */
+	private final long keyCount;
+	/** Number of bytes read or written. */
+	private final long byteCount;
+	/** Total latency. */
+	private final long totalLatency;
+	/** Maximum latency. */
+	private final long maxLatency;
+	/** Latency histogram counts. */
+	private final long[] histogram;
+
+	/** Constructor. */
+	BocasOperationStats(String bucket, BocasOperation operation, long count, long errorCount, long keyCount,
+			long byteCount, long totalLatency, long maxLatency, long[] histogram) {
+		this.bucket = checkNotNull(bucket);
+		this.operation = checkNotNull(operation);
+		this.count = count;
+		this.errorCount = errorCount;
+		this.keyCount = keyCount;
+		this.byteCount = byteCount;
+		this.totalLatency = totalLatency;
+		this.maxLatency = maxLatency;
+		this.histogram = checkNotNull(histogram);
+	}
+
+	/** Returns the bucket name. */
+	public String getBucket() {
+		return bucket;
+	}
+
+	/** Returns the operation. */
+	public BocasOperation getOperation() {
+		return operation;
+	}
+
+	/** Returns the number of operations performed, including the failed ones. */
+	public long getCount() {
+		return count;
+	}
+
+	/** Returns the number of operations that threw an exception. */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/** Returns the number of keys requested or written. */
+	public long getKeyCount() {
+		return keyCount;
+	}
+
+	/** Returns the average number of keys per operation. */
+	public double getAverageKeys() {
+		return count > 0 ? (double) keyCount / count : 0.0;
+	}
+
+	/**
+	 * Returns the number of bytes read or written. Only the values whose size is known without
+	 * reading them are counted.
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/** Returns the total latency. */
+	public long getTotalLatency() {
+		return totalLatency;
+	}
+
+	/** Returns the mean latency. */
+	public double getMeanLatency() {
+		return count > 0 ? (double) totalLatency / count : 0.0;
+	}
+
+	/** Returns the maximum latency. */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * Returns the latency at a percentile.
+	 * @param percentile Percentile in [0, 100].
+	 * @throws IllegalArgumentException if the percentile is out of range
+	 */
+	public long latencyAt(double percentile) {
+		return LatencyHistogram.valueAt(histogram, count, maxLatency, percentile);
+	}
+
+	/** Returns the median latency. */
+	public long getLatency50() {
+		return latencyAt(50.0);
+	}
+
+	/** Returns the 90th percentile latency. */
+	public long getLatency90() {
+		return latencyAt(90.0);
+	}
+
+	/** Returns the 99th percentile latency. */
+	public long getLatency99() {
+		return latencyAt(99.0);
+	}
+
+	/** Returns the 99.9th percentile latency. */
+	public long getLatency999() {
+		return latencyAt(99.9);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("bucket", bucket).add("operation", operation).add("count", count)
+				.add("errors", errorCount).add("keys", keyCount).add("bytes", byteCount).add("mean", getMeanLatency())
+				.add("p50", getLatency50()).add("p99", getLatency99()).add("max", maxLatency).toString();
+	}
+}
@@ -15,6 +15,7 @@
  */
 package net.derquinse.bocas;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import net.derquinse.common.base.NotInstantiable;
 import net.derquinse.common.io.MemoryByteSourceLoader;
@@ -37,4 +38,16 @@ public final class BocasPreconditions extends NotInstantiable {
 		return checkNotNull(loader, "The memory loader must be provided");
 	}
 
+	/** Checks the offset and length of a range of an object. */
+	public static void checkRange(long offset, long length) {
+		checkArgument(offset >= 0, "The range offset must be >= 0");
+		checkArgument(length >= 0, "The range length must be >= 0");
+	}
+
+	/** Checks the maximum number of keys to return in a scan. */
+	public static int checkLimit(int limit) {
+		checkArgument(limit > 0, "The scan limit must be > 0");
+		return limit;
+	}
+
 }
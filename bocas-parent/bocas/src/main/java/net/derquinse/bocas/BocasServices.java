@@ -15,12 +15,23 @@
  */
 package net.derquinse.bocas;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.base.ByteString;
 import net.derquinse.common.base.NotInstantiable;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 /**
  * Factory class for bocas repositories and buckets.
@@ -39,11 +50,34 @@ public final class BocasServices extends NotInstantiable {
 		return new MemoryBocas(function, loader);
 	}
 
+	/**
+	 * Creates a new memory based bucket that keeps values in direct memory slabs and keys in a
+	 * primitive index, so that the heap footprint does not depend on the number of entries.
+	 * @param function Hash function to use.
+	 * @param slabSize Size of the memory slabs. Values larger than a slab get their own.
+	 */
+	public static Bocas offHeapBucket(BocasHashFunction function, int slabSize) {
+		return new OffHeapBocas(function, slabSize);
+	}
+
+	/**
+	 * Creates a new memory based bucket that keeps values in direct memory slabs of 1 MB.
+	 * @param function Hash function to use.
+	 */
+	public static Bocas offHeapBucket(BocasHashFunction function) {
+		return offHeapBucket(function, OffHeapBocas.DEFAULT_SLAB_SIZE);
+	}
+
 	/** Creates a new caching repository builder. */
 	public static GuavaCachingBocasBuilder cache() {
 		return new GuavaCachingBocasBuilder();
 	}
 
+	/** Creates a new tiered caching repository builder. */
+	public static TieredCachingBocasBuilder tieredCache() {
+		return new TieredCachingBocasBuilder();
+	}
+
 	/**
 	 * Decorates an existing service. Bucket closing (both source and decorated) is the caller's
 	 * responsibility.
@@ -62,6 +96,14 @@ public final class BocasServices extends NotInstantiable {
 		return new SeededBocas(primary, seed);
 	}
 
+	/**
+	 * Creates a new builder for seeded buckets with promotion of seed hits or speculative reads.
+	 */
+	@Beta
+	public static SeededBocasBuilder seeded() {
+		return new SeededBocasBuilder();
+	}
+
 	/**
 	 * Creates a new service that shares a single bucket among several names.
 	 * @param bucket Bucket to share.
@@ -98,7 +140,114 @@ public final class BocasServices extends NotInstantiable {
 	 * @param check Whether to check for existing entries before writing.
 	 */
 	public static BocasService syncReplica(BocasService primary, BocasService replica, boolean check) {
-		return decorate(primary, new SyncReplicatedBocasDecorator(replica, check));
+		return decorate(primary, new SyncReplicatedBocasDecorator(ImmutableList.of(replica), check, 1, null, null));
+	}
+
+	/**
+	 * Creates a new bocas bucket that synchronously replicates writes to the primary bucket into
+	 * several replicas. Writes succeed if the primary and at least {@code quorum} replicas are
+	 * written, otherwise a {@link PartialWriteException} is thrown. Closing the buckets is the
+	 * responsibility of the caller.
+	 * @param primary Primary bucket.
+	 * @param replicas Replica buckets.
+	 * @param check Whether to check for existing entries before writing.
+	 * @param quorum Number of replicas that must be written.
+	 * @param executor Executor used to write every bucket in parallel. If {@code null} the replicas
+	 *          are written in order and then the primary.
+	 */
+	@Beta
+	public static Bocas syncReplica(Bocas primary, List<Bocas> replicas, boolean check, int quorum,
+			@Nullable Executor executor) {
+		return new SyncReplicatedBocas(primary, replicas, check, quorum, executor, null);
+	}
+
+	/**
+	 * Creates a new bocas service that synchronously replicates writes to the primary service buckets
+	 * into the buckets of several replica services. Bucket closing is the responsibility of the
+	 * caller.
+	 * @param primary Primary service.
+	 * @param replicas Replica services.
+	 * @param check Whether to check for existing entries before writing.
+	 * @param quorum Number of replicas that must be written.
+	 * @param executor Executor used to write every bucket in parallel. If {@code null} the replicas
+	 *          are written in order and then the primary.
+	 * @see #syncReplica(Bocas, List, boolean, int, Executor)
+	 */
+	@Beta
+	public static BocasService syncReplica(BocasService primary, List<BocasService> replicas, boolean check,
+			int quorum, @Nullable Executor executor) {
+		return decorate(primary, new SyncReplicatedBocasDecorator(replicas, check, quorum, executor, null));
+	}
+
+	/**
+	 * Creates a new builder for buckets and services that asynchronously replicate writes to the
+	 * primary into a replica.
+	 */
+	public static AsyncReplicaBuilder asyncReplica() {
+		return new AsyncReplicaBuilder();
+	}
+
+	/**
+	 * Creates a new bucket that distributes its entries among a set of shards using a
+	 * consistent-hash ring. Closing the shards is the responsibility of the caller.
+	 * @param shards Shards, by name. The names determine the position of the shards in the ring, so
+	 *          they must be stable.
+	 * @param executor Executor used to run bulk operations in different shards in parallel. If
+	 *          {@code null} they are run serially.
+	 */
+	@Beta
+	public static ShardedBocas sharded(Map<String, ? extends Bocas> shards, @Nullable Executor executor) {
+		checkNotNull(shards, "The shards must be provided");
+		return new ShardedBocas(ImmutableList.copyOf(shards.keySet()), ImmutableList.<Bocas> copyOf(shards.values()),
+				-1, executor);
+	}
+
+	/**
+	 * Creates a new service whose buckets are sharded among the buckets with the same name of a set of
+	 * services. Bucket closing is the responsibility of the caller.
+	 * @param shards Shard services, by name.
+	 * @param executor Executor used to run bulk operations in different shards in parallel. If
+	 *          {@code null} they are run serially.
+	 * @see #sharded(Map, Executor)
+	 */
+	@Beta
+	public static ShardedBocasService shardedService(Map<String, ? extends BocasService> shards,
+			@Nullable Executor executor) {
+		return new ShardedBocasService(shards, executor);
+	}
+
+	/**
+	 * Creates a new builder for seeded and synchronously replicated buckets and services that hedge
+	 * reads across their buckets.
+	 */
+	@Beta
+	public static HedgedReadBuilder hedgedReads() {
+		return new HedgedReadBuilder();
+	}
+
+	/**
+	 * Creates a new builder for buckets and services that merge concurrent single-key reads into bulk
+	 * reads.
+	 */
+	@Beta
+	public static BatchingBocasBuilder batching() {
+		return new BatchingBocasBuilder();
+	}
+
+	/**
+	 * Creates a new builder for buckets and services that record the metrics of every operation.
+	 */
+	@Beta
+	public static InstrumentedBocasBuilder instrumented() {
+		return new InstrumentedBocasBuilder();
+	}
+
+	/**
+	 * Creates a new in-memory metrics sink with latency histograms per bucket and operation.
+	 */
+	@Beta
+	public static BocasMetrics metrics() {
+		return new BocasMetrics();
 	}
 
 	/**
@@ -108,4 +257,41 @@ public final class BocasServices extends NotInstantiable {
 		return new MultiServiceGuavaCacheBuilder();
 	}
 
+	/**
+	 * Creates a new builder for decorators that answer definite misses using Bloom filters.
+	 */
+	public static BloomFilterBocasBuilder bloomFilter() {
+		return new BloomFilterBocasBuilder();
+	}
+
+	/**
+	 * Returns an iterable over every key in a bucket. Keys are fetched lazily using scans of the
+	 * provided page size, and each iteration starts a new scan.
+	 * @param bucket Bucket to scan.
+	 * @param pageSize Number of keys to fetch in each scan.
+	 */
+	public static Iterable<ByteString> keys(Bocas bucket, int pageSize) {
+		return new BocasKeys(bucket, pageSize);
+	}
+
+	/**
+	 * Creates an asynchronous view of a bucket that runs its operations in the provided executor.
+	 * Closing the bucket and shutting down the executor is the responsibility of the caller.
+	 * @param bucket Bucket to adapt.
+	 * @param executor Executor to use.
+	 */
+	public static AsyncBocas async(Bocas bucket, ListeningExecutorService executor) {
+		return new ExecutorAsyncBocas(bucket, executor);
+	}
+
+	/**
+	 * Creates an asynchronous view of a service that runs the bucket operations in the provided
+	 * executor. Bucket closing and shutting down the executor is the responsibility of the caller.
+	 * @param service Service to adapt.
+	 * @param executor Executor to use.
+	 */
+	public static AsyncBocasService async(BocasService service, ListeningExecutorService executor) {
+		return new ExecutorAsyncBocasService(service, executor);
+	}
+
 }
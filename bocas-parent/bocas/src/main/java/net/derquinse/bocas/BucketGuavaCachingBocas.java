@@ -18,12 +18,14 @@ package net.derquinse.bocas;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
 
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
+import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.Cache;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -35,18 +37,8 @@ import com.google.common.collect.Sets;
 final class BucketGuavaCachingBocas extends AbstractGuavaCachingBocas<BucketKey> {
 	/** Constructor. */
 	BucketGuavaCachingBocas(Bocas bocas, MemoryByteSourceLoader loader, Cache<BucketKey, MemoryByteSource> cache,
-			boolean alwaysWrite) {
-		super(bocas, loader, cache, alwaysWrite);
-	}
-
-	@Override
-	Callable<MemoryByteSource> getLoader(final BucketKey internalKey) {
-		return new Callable<MemoryByteSource>() {
-			@Override
-			public MemoryByteSource call() throws Exception {
-				return loadFromSource(internalKey.getKey());
-			}
-		};
+			StatsCounter loads, @Nullable Cache<BucketKey, Boolean> negative, boolean alwaysWrite) {
+		super(bocas, loader, cache, loads, negative, alwaysWrite);
 	}
 
 	BucketKey toInternalKey(ByteString key) {
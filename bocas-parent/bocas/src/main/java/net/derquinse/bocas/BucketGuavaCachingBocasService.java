@@ -15,9 +15,21 @@
  */
 package net.derquinse.bocas;
 
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
-import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Guava-cache-based bocas caching repositories that does not share the cache among every available
@@ -27,11 +39,36 @@ import com.google.common.cache.CacheBuilder;
 final class BucketGuavaCachingBocasService extends AbstractGuavaCachingBocasService<BucketKey> {
 	/** Constructor. */
 	BucketGuavaCachingBocasService(BocasService service, MemoryByteSourceLoader loader,
-			CacheBuilder<Object, Object> builder, boolean alwaysWrite) {
-		super(service, loader, builder, alwaysWrite);
+			Cache<BucketKey, MemoryByteSource> cache, @Nullable Cache<BucketKey, Boolean> negative, boolean alwaysWrite) {
+		super(service, loader, cache, negative, alwaysWrite);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AbstractGuavaCachingBocasService#cachedKeys()
+	 */
+	@Override
+	List<CacheWarmer.Group> cachedKeys() {
+		final Map<Bocas, String> names = Maps.newIdentityHashMap();
+		for (Map.Entry<String, Bocas> entry : openBuckets().entrySet()) {
+			names.put(entry.getValue(), entry.getKey());
+		}
+		final ListMultimap<String, ByteString> keys = ArrayListMultimap.create();
+		for (BucketKey key : getCache().asMap().keySet()) {
+			final String name = names.get(key.getBucket());
+			if (name != null) {
+				keys.put(name, key.getKey());
+			}
+		}
+		final List<CacheWarmer.Group> groups = Lists.newArrayList();
+		for (String name : keys.keySet()) {
+			groups.add(new CacheWarmer.Group(ImmutableList.of(name), keys.get(name)));
+		}
+		return groups;
 	}
 
 	BucketGuavaCachingBocas createBucket(Bocas source, MemoryByteSourceLoader loader) {
-		return new BucketGuavaCachingBocas(source, loader, getCache(), isAlwaysWrite());
+		return new BucketGuavaCachingBocas(source, loader, getCache(), getLoadStats(), getNegativeCache(),
+				isAlwaysWrite());
 	}
 }
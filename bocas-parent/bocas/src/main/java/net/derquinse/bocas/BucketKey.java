@@ -39,6 +39,11 @@ final class BucketKey {
 		this.hash = Objects.hashCode(bocas, key);
 	}
 	
+	/** Returns the bucket. */
+	Bocas getBucket() {
+		return bocas;
+	}
+
 	/** Returns the entry key. */
 	ByteString getKey() {
 		return key;
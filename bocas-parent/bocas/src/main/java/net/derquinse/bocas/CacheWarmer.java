@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Warm start support for caching services. The keys held by the cache, which are the working set
+ * kept by its eviction policy, are periodically written to a local file. When started, the cache is
+ * prewarmed in the background from the last written file, fetching the keys in batches through the
+ * caching buckets with bounded parallelism. Snapshots are not written until prewarming finishes, so
+ * that a partially warm cache does not replace a complete snapshot.
+ * <p>
+ * The snapshot task only holds the warmer weakly, so it stops once the service is no longer used,
+ * if not stopped before. Invalid or corrupt snapshot files are ignored.
+ * @author Andres Rodriguez.
+ */
+final class CacheWarmer {
+	/** File magic number. */
+	private static final int MAGIC = 0x426f6357;
+	/** File format version. */
+	private static final int VERSION = 1;
+	/** Number of keys fetched in each prewarming task. */
+	private static final int BATCH_SIZE = 100;
+
+	/** Service to warm. */
+	private final AbstractGuavaCachingBocasService<?> service;
+	/** Snapshot file. */
+	private final File file;
+	/** Snapshot period. */
+	private final long period;
+	/** Snapshot period unit. */
+	private final TimeUnit unit;
+	/** Prewarming parallelism. */
+	private final int parallelism;
+	/** Prewarming executor, {@code null} if not started. */
+	private volatile ExecutorService prewarm = null;
+	/** Snapshot scheduler, {@code null} if not started. */
+	private volatile ScheduledExecutorService scheduler = null;
+
+	/** Constructor. */
+	CacheWarmer(AbstractGuavaCachingBocasService<?> service, File file, long period, TimeUnit unit, int parallelism) {
+		this.service = checkNotNull(service);
+		this.file = checkNotNull(file, "The snapshot file must be provided");
+		checkArgument(period > 0, "The snapshot period must be > 0");
+		this.period = period;
+		this.unit = checkNotNull(unit);
+		checkArgument(parallelism > 0, "The prewarming parallelism must be > 0");
+		this.parallelism = parallelism;
+	}
+
+	/** Starts prewarming from the last snapshot, if any, and schedules the snapshots. */
+	void start() {
+		final List<Group> groups = file.exists() ? read() : ImmutableList.<Group> of();
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("bocas-cache-prewarm-%d").build());
+		for (final Group group : groups) {
+			for (final List<ByteString> batch : Iterables.partition(group.keys, BATCH_SIZE)) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						load(group.buckets, batch);
+					}
+				});
+			}
+		}
+		executor.shutdown();
+		prewarm = executor;
+		final ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("bocas-cache-snapshot-%d").build());
+		s.scheduleWithFixedDelay(new Snapshot(this, s), period, period, unit);
+		scheduler = s;
+	}
+
+	/** Stops prewarming and the snapshots. */
+	void stop() {
+		final ExecutorService p = prewarm;
+		if (p != null) {
+			p.shutdownNow();
+		}
+		final ScheduledExecutorService s = scheduler;
+		if (s != null) {
+			s.shutdownNow();
+		}
+	}
+
+	/** Writes a snapshot if prewarming has finished. */
+	private void snapshot() {
+		if (prewarm.isTerminated()) {
+			try {
+				save();
+			} catch (RuntimeException e) {
+				// Retried in the next period.
+			}
+		}
+	}
+
+	/** Loads a batch of keys into the cache, looking for them in every bucket of the group. */
+	private void load(List<String> buckets, List<ByteString> keys) {
+		final Set<ByteString> remaining = Sets.newHashSet(keys);
+		for (String name : buckets) {
+			if (remaining.isEmpty()) {
+				return;
+			}
+			try {
+				remaining.removeAll(service.getBucket(name).get(remaining).keySet());
+			} catch (RuntimeException e) {
+				// Prewarming is best effort.
+			}
+		}
+	}
+
+	/** Reads an element count, which can't be larger than the provided maximum. */
+	private static int readCount(DataInputStream in, long max) throws IOException {
+		final int n = in.readInt();
+		if (n < 0 || n > max) {
+			throw new IOException("Invalid count " + n);
+		}
+		return n;
+	}
+
+	/** Reads the snapshot file, returning no groups if it is not valid. */
+	private List<Group> read() {
+		final List<Group> groups = Lists.newArrayList();
+		// Every element takes at least two bytes, which bounds the counts of a corrupt file.
+		final long max = file.length() / 2;
+		try {
+			final Closer closer = Closer.create();
+			try {
+				final DataInputStream in = closer.register(new DataInputStream(new BufferedInputStream(
+						new FileInputStream(file))));
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return ImmutableList.of();
+				}
+				final int n = readCount(in, max);
+				for (int i = 0; i < n; i++) {
+					final int nb = readCount(in, max);
+					final List<String> buckets = Lists.newArrayListWithCapacity(nb);
+					for (int j = 0; j < nb; j++) {
+						buckets.add(in.readUTF());
+					}
+					final int nk = readCount(in, max);
+					final List<ByteString> keys = Lists.newArrayListWithCapacity(nk);
+					for (int j = 0; j < nk; j++) {
+						final byte[] key = new byte[in.readUnsignedShort()];
+						in.readFully(key);
+						keys.add(ByteString.copyFrom(key));
+					}
+					groups.add(new Group(buckets, keys));
+				}
+			} catch (Throwable t) {
+				throw closer.rethrow(t);
+			} finally {
+				closer.close();
+			}
+		} catch (IOException e) {
+			// Invalid file, the cache starts cold.
+			return ImmutableList.of();
+		} catch (RuntimeException e) {
+			// Corrupt file, the cache starts cold.
+			return ImmutableList.of();
+		}
+		return groups;
+	}
+
+	/** Writes the keys currently held by the cache to the snapshot file. */
+	void save() {
+		final List<Group> groups = service.cachedKeys();
+		final File tmp = new File(file.getPath() + ".tmp");
+		try {
+			final Closer closer = Closer.create();
+			try {
+				final DataOutputStream out = closer.register(new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tmp))));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(groups.size());
+				for (Group group : groups) {
+					out.writeInt(group.buckets.size());
+					for (String name : group.buckets) {
+						out.writeUTF(name);
+					}
+					out.writeInt(group.keys.size());
+					for (ByteString key : group.keys) {
+						final byte[] bytes = key.toByteArray();
+						out.writeShort(bytes.length);
+						out.write(bytes);
+					}
+				}
+				out.flush();
+			} catch (Throwable t) {
+				throw closer.rethrow(t);
+			} finally {
+				closer.close();
+			}
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file)) {
+					throw new IOException("Unable to rename " + tmp + " to " + file);
+				}
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			throw new BocasException(e);
+		}
+	}
+
+	/** Snapshot task. */
+	private static final class Snapshot implements Runnable {
+		/** Warmer, weakly held so that the task does not keep the service alive. */
+		private final WeakReference<CacheWarmer> warmer;
+		/** Scheduler running the task. */
+		private final ScheduledExecutorService scheduler;
+
+		Snapshot(CacheWarmer warmer, ScheduledExecutorService scheduler) {
+			this.warmer = new WeakReference<CacheWarmer>(warmer);
+			this.scheduler = scheduler;
+		}
+
+		@Override
+		public void run() {
+			final CacheWarmer w = warmer.get();
+			if (w == null) {
+				scheduler.shutdown();
+			} else {
+				w.snapshot();
+			}
+		}
+	}
+
+	/** Group of keys that may be found in any of a list of buckets, which are tried in order. */
+	static final class Group {
+		/** Bucket names. */
+		final List<String> buckets;
+		/** Keys. */
+		final List<ByteString> keys;
+
+		Group(List<String> buckets, List<ByteString> keys) {
+			this.buckets = ImmutableList.copyOf(buckets);
+			this.keys = ImmutableList.copyOf(keys);
+		}
+	}
+}
@@ -29,4 +29,18 @@ public interface CachingBocasService extends BocasService {
 	 *         being recorded.
 	 */
 	CacheStats stats();
+
+	/**
+	 * Returns the statistics of the negative cache, which remembers absent entries. Hits are lookups
+	 * answered as absent without querying the cached service.
+	 * @return A current snapshot of the recorded statistics or an empty object if there is no
+	 *         negative cache.
+	 */
+	CacheStats negativeStats();
+
+	/**
+	 * Stops the background tasks of the service, if any, such as the warm start snapshots. The
+	 * service may still be used, and the cached service is not closed.
+	 */
+	void close();
 }
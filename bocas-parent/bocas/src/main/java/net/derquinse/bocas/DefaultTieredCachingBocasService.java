@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Default tiered caching service, which uses a {@link TieredCache} in a Guava-cache-based caching
+ * service.
+ * @author Andres Rodriguez.
+ */
+final class DefaultTieredCachingBocasService implements TieredCachingBocasService {
+	/** Caching service. */
+	private final CachingBocasService service;
+	/** Tiered cache used by the service. */
+	private final TieredCache<?> cache;
+
+	/** Constructor. */
+	DefaultTieredCachingBocasService(CachingBocasService service, TieredCache<?> cache) {
+		this.service = checkNotNull(service);
+		this.cache = checkNotNull(cache);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasService#getBucket(java.lang.String)
+	 */
+	@Override
+	public Bocas getBucket(String name) {
+		return service.getBucket(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.CachingBocasService#stats()
+	 */
+	@Override
+	public CacheStats stats() {
+		return service.stats();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.CachingBocasService#negativeStats()
+	 */
+	@Override
+	public CacheStats negativeStats() {
+		return service.negativeStats();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.CachingBocasService#close()
+	 */
+	@Override
+	public void close() {
+		service.close();
+		cache.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.TieredCachingBocasService#tierStats()
+	 */
+	@Override
+	public List<CacheStats> tierStats() {
+		return cache.tierStats();
+	}
+}
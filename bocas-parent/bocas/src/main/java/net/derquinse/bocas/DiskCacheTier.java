@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+
+/**
+ * Cache tier that keeps values in memory-mapped segment files in a local directory. Values are
+ * appended to the current segment and, when the maximum weight is reached, the oldest segment is
+ * dropped with all its entries, so eviction is FIFO by segment. Invalidated entries are only removed
+ * from the index, their space is reclaimed when their segment is dropped. The index is kept on the
+ * heap and the segment files are deleted when dropped or when the tier is closed.
+ * @author Andres Rodriguez.
+ */
+final class DiskCacheTier<K> {
+	/** Directory to create the segment files in. */
+	private final File directory;
+	/** Segment size. */
+	private final int segmentSize;
+	/** Maximum number of segments. */
+	private final int maxSegments;
+	/** Entry index. */
+	private final ConcurrentMap<K, Location> index = Maps.newConcurrentMap();
+	/** Segments, oldest first. Guarded by this. */
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+	/** Statistics. */
+	private final SimpleStatsCounter stats = new SimpleStatsCounter();
+	/** Whether the tier has been closed. Guarded by this. */
+	private boolean closed = false;
+
+	/**
+	 * Constructor.
+	 * @param directory Directory to create the segment files in.
+	 * @param maximumWeight Maximum number of bytes of the segment files.
+	 * @param segmentSize Segment size. Larger values are not stored.
+	 */
+	DiskCacheTier(File directory, long maximumWeight, int segmentSize) {
+		checkNotNull(directory, "The directory must be provided");
+		checkArgument(directory.isDirectory(), "%s is not a directory", directory);
+		checkArgument(maximumWeight >= 0, "The maximum weight must be >= 0");
+		checkArgument(segmentSize > 0, "The segment size must be > 0");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = (int) Math.min(maximumWeight / segmentSize, Integer.MAX_VALUE);
+	}
+
+	/** Returns the value of a key, or {@code null} if not found. Records statistics. */
+	@Nullable
+	ByteSource getIfPresent(Object key) {
+		final ByteSource value = peek(key);
+		if (value != null) {
+			stats.recordHits(1);
+		} else {
+			stats.recordMisses(1);
+		}
+		return value;
+	}
+
+	/** Returns the value of a key, or {@code null} if not found. Does not record statistics. */
+	@Nullable
+	ByteSource peek(Object key) {
+		final Location location = index.get(key);
+		return location != null ? new OffHeapBocas.Value(location.region()) : null;
+	}
+
+	/** Returns whether the tier contains a key. */
+	boolean containsKey(Object key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Stores a value, unless the key is already present, the value is larger than a segment or the
+	 * tier has been closed.
+	 */
+	synchronized void put(K key, ByteSource value) {
+		if (closed || index.containsKey(key)) {
+			return;
+		}
+		final long size;
+		try {
+			size = value.size();
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+		if (size > segmentSize || maxSegments == 0) {
+			stats.recordEviction();
+			return;
+		}
+		Segment segment = segments.peekLast();
+		if (segment == null || segmentSize - segment.free < size) {
+			segment = addSegment();
+		}
+		final Location location = new Location(segment, segment.free, (int) size);
+		try {
+			value.copyTo(new OffHeapBocas.BufferOutputStream(location.writableRegion()));
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+		segment.free += (int) size;
+		segment.keys.add(key);
+		index.put(key, location);
+	}
+
+	/** Creates a new segment, dropping the oldest ones if needed. Must be called holding the lock. */
+	private Segment addSegment() {
+		while (segments.size() >= maxSegments) {
+			drop(segments.removeFirst());
+		}
+		final Segment segment;
+		try {
+			final File file = File.createTempFile("bocas", ".segment", directory);
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(segmentSize);
+				segment = new Segment(file, raf.getChannel().map(MapMode.READ_WRITE, 0, segmentSize));
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+		segments.addLast(segment);
+		return segment;
+	}
+
+	/** Drops a segment and its entries. Must be called holding the lock. */
+	private void drop(Segment segment) {
+		for (K key : segment.keys) {
+			final Location location = index.get(key);
+			if (location != null && location.segment == segment && index.remove(key, location)) {
+				stats.recordEviction();
+			}
+		}
+		// Values already returned remain readable as the mapping lives until it is collected.
+		segment.file.delete();
+	}
+
+	/** Removes an entry. */
+	void invalidate(Object key) {
+		index.remove(key);
+	}
+
+	/** Removes every entry. */
+	void invalidateAll() {
+		index.clear();
+	}
+
+	/** Closes the tier, deleting every segment file. */
+	synchronized void close() {
+		closed = true;
+		// The index is cleared first so that the entries are not recorded as evicted.
+		index.clear();
+		while (!segments.isEmpty()) {
+			drop(segments.removeFirst());
+		}
+	}
+
+	/** Returns the number of entries. */
+	long size() {
+		return index.size();
+	}
+
+	/** Returns the statistics. */
+	CacheStats stats() {
+		return stats.snapshot();
+	}
+
+	/** Segment file. */
+	private final class Segment {
+		/** File. */
+		final File file;
+		/** Mapped buffer. */
+		final MappedByteBuffer buffer;
+		/** Offset of the first free byte. Guarded by the tier. */
+		int free = 0;
+		/** Keys stored in the segment. Guarded by the tier. */
+		final List<K> keys = Lists.newArrayList();
+
+		Segment(File file, MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	/** Entry location. */
+	private final class Location {
+		/** Segment. */
+		final Segment segment;
+		/** Offset. */
+		final int offset;
+		/** Length. */
+		final int length;
+
+		Location(Segment segment, int offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		ByteBuffer writableRegion() {
+			final ByteBuffer buffer = segment.buffer.duplicate();
+			buffer.limit(offset + length).position(offset);
+			return buffer.slice();
+		}
+
+		ByteBuffer region() {
+			return writableRegion().asReadOnlyBuffer();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.io.MemoryByteSource;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Internal builder for the entry caches of the caching services, which may be Guava caches or
+ * W-TinyLFU ones.
+ * @author Andres Rodriguez.
+ */
+final class EntryCacheBuilder {
+	/** Guava builder. */
+	private final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+	/** Maximum size, -1 if not set. */
+	private long maximumSize = -1L;
+	/** Maximum weight, -1 if not set. */
+	private long maximumWeight = -1L;
+	/** Expiration after access in nanoseconds, -1 if not set. */
+	private long expireNanos = -1L;
+	/** Whether to use a W-TinyLFU policy. */
+	private boolean tinyLfu = false;
+	/** Negative cache builder, {@code null} if not set. */
+	private CacheBuilder<Object, Object> negative = null;
+
+	/** Constructor. */
+	EntryCacheBuilder() {
+	}
+
+	void maximumSize(long size) {
+		builder.maximumSize(size);
+		this.maximumSize = size;
+	}
+
+	void maximumWeight(long weight) {
+		builder.maximumWeight(weight).weigher(EntryWeigher.INSTANCE);
+		this.maximumWeight = weight;
+	}
+
+	void expireAfterAccess(long duration, TimeUnit unit) {
+		builder.expireAfterAccess(duration, unit);
+		this.expireNanos = unit.toNanos(duration);
+	}
+
+	void tinyLfu() {
+		checkState(!tinyLfu, "The W-TinyLFU policy has already been set");
+		this.tinyLfu = true;
+	}
+
+	void negativeCache(long size, long duration, TimeUnit unit) {
+		checkState(negative == null, "The negative cache has already been set");
+		checkArgument(size >= 0, "The negative cache size must be >= 0");
+		checkArgument(duration >= 0, "The negative cache duration must be >= 0");
+		negative = CacheBuilder.newBuilder().recordStats().maximumSize(size).expireAfterWrite(duration, unit);
+	}
+
+	/** Builds the negative cache, returning {@code null} if it has not been set. */
+	@Nullable
+	Cache<BucketKey, Boolean> buildNegative() {
+		return negative != null ? negative.<BucketKey, Boolean> build() : null;
+	}
+
+	/** Builds a cache. */
+	<K> Cache<K, MemoryByteSource> build() {
+		if (!tinyLfu) {
+			return builder.build();
+		}
+		checkState(maximumSize >= 0 || maximumWeight >= 0, "The W-TinyLFU policy requires a maximum size or weight");
+		// As in Guava caches, a zero expiration disables caching.
+		final long max = expireNanos == 0 ? 0 : Math.max(maximumSize, maximumWeight);
+		final long expire = Math.max(expireNanos, 0L);
+		if (maximumWeight >= 0) {
+			return new TinyLfuCache<K, MemoryByteSource>(max, EntryWeigher.INSTANCE, expire, Ticker.systemTicker());
+		}
+		return new TinyLfuCache<K, MemoryByteSource>(max, null, expire, Ticker.systemTicker());
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Asynchronous bucket that runs the operations of a synchronous one in an executor.
+ * @author Andres Rodriguez.
+ */
+@Beta
+final class ExecutorAsyncBocas implements AsyncBocas {
+	/** Synchronous bucket. */
+	private final Bocas bocas;
+	/** Executor to use. */
+	private final ListeningExecutorService executor;
+
+	/** Constructor. */
+	ExecutorAsyncBocas(Bocas bocas, ListeningExecutorService executor) {
+		this.bocas = checkNotNull(bocas, "The bucket to adapt must be provided");
+		this.executor = checkNotNull(executor, "The executor must be provided");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#getHashFunction()
+	 */
+	@Override
+	public BocasHashFunction getHashFunction() {
+		return bocas.getHashFunction();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public ListenableFuture<Boolean> contains(final ByteString key) {
+		checkNotNull(key, "The object key must be provided");
+		return executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return bocas.contains(key);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#contained(java.lang.Iterable)
+	 */
+	@Override
+	public ListenableFuture<Set<ByteString>> contained(final Iterable<ByteString> keys) {
+		checkNotNull(keys, "The object keys must be provided");
+		return executor.submit(new Callable<Set<ByteString>>() {
+			@Override
+			public Set<ByteString> call() throws Exception {
+				return bocas.contained(keys);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public ListenableFuture<Optional<ByteSource>> get(final ByteString key) {
+		checkNotNull(key, "The object key must be provided");
+		return executor.submit(new Callable<Optional<ByteSource>>() {
+			@Override
+			public Optional<ByteSource> call() throws Exception {
+				return bocas.get(key);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#get(java.lang.Iterable)
+	 */
+	@Override
+	public ListenableFuture<Map<ByteString, ByteSource>> get(final Iterable<ByteString> keys) {
+		checkNotNull(keys, "The object keys must be provided");
+		return executor.submit(new Callable<Map<ByteString, ByteSource>>() {
+			@Override
+			public Map<ByteString, ByteSource> call() throws Exception {
+				return bocas.get(keys);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#put(com.google.common.io.ByteSource)
+	 */
+	@Override
+	public ListenableFuture<ByteString> put(final ByteSource value) {
+		InternalUtils.checkValue(value);
+		return executor.submit(new Callable<ByteString>() {
+			@Override
+			public ByteString call() throws Exception {
+				return bocas.put(value);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocas#putAll(java.lang.Iterable)
+	 */
+	@Override
+	public ListenableFuture<List<ByteString>> putAll(final Iterable<? extends ByteSource> values) {
+		checkNotNull(values, "The values to add must be provided");
+		return executor.submit(new Callable<List<ByteString>>() {
+			@Override
+			public List<ByteString> call() throws Exception {
+				return bocas.putAll(values);
+			}
+		});
+	}
+}
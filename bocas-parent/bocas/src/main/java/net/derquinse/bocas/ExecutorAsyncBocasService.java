@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Asynchronous service that runs the operations of the buckets of a synchronous one in an
+ * executor.
+ * @author Andres Rodriguez.
+ */
+@Beta
+final class ExecutorAsyncBocasService implements AsyncBocasService {
+	/** Synchronous service. */
+	private final BocasService service;
+	/** Executor to use. */
+	private final ListeningExecutorService executor;
+
+	/** Constructor. */
+	ExecutorAsyncBocasService(BocasService service, ListeningExecutorService executor) {
+		this.service = checkNotNull(service, "The service to adapt must be provided");
+		this.executor = checkNotNull(executor, "The executor must be provided");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.AsyncBocasService#getBucket(java.lang.String)
+	 */
+	@Override
+	public AsyncBocas getBucket(String name) {
+		return new ExecutorAsyncBocas(service.getBucket(name), executor);
+	}
+}
@@ -15,6 +15,7 @@
  */
 package net.derquinse.bocas;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -85,6 +86,15 @@ public abstract class ForwardingBocas extends ForwardingObject implements Bocas
 		return delegate().get(key);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		return delegate().get(key, offset, length);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
@@ -94,6 +104,15 @@ public abstract class ForwardingBocas extends ForwardingObject implements Bocas
 		return delegate().get(keys);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		return delegate().scan(cursor, limit, sizes);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#put(com.google.common.io.ByteSource)
@@ -103,6 +122,15 @@ public abstract class ForwardingBocas extends ForwardingObject implements Bocas
 		return delegate().put(value);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#put(java.io.InputStream)
+	 */
+	@Override
+	public ByteString put(InputStream value) {
+		return delegate().put(value);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#putAll(java.lang.Iterable)
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+/**
+ * Count-min sketch estimating the access frequency of cache entries, with four 4-bit counters per
+ * entry packed in long words. Counters are halved once the number of increments reaches ten times
+ * the table size, so that the sketch ages old accesses. Not thread-safe.
+ * @author Andres Rodriguez.
+ */
+final class FrequencySketch {
+	/** Hash seeds, one per counter. */
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+	/** Mask to halve every counter of a word at once. */
+	private static final long RESET_MASK = 0x7777777777777777L;
+	/** Maximum table size. */
+	private static final int MAX_SIZE = 1 << 24;
+
+	/** Counter table. */
+	private long[] table;
+	/** Number of increments since the last reset. */
+	private int size;
+	/** Number of increments that trigger a reset. */
+	private int sampleSize;
+
+	/** Constructor. */
+	FrequencySketch() {
+		resize(16);
+	}
+
+	private void resize(int n) {
+		table = new long[n];
+		sampleSize = 10 * n;
+		size = 0;
+	}
+
+	/**
+	 * Grows the sketch so that it is able to track the provided number of entries. Growing the sketch
+	 * discards the current counts.
+	 */
+	void ensureCapacity(long entries) {
+		if (entries > table.length && table.length < MAX_SIZE) {
+			int n = table.length;
+			while (n < entries && n < MAX_SIZE) {
+				n <<= 1;
+			}
+			resize(n);
+		}
+	}
+
+	/** Returns the hash locating the counter with the provided index. */
+	private long spread(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return h;
+	}
+
+	/** Returns the estimated frequency of an item, from 0 to 15. */
+	int frequency(int hash) {
+		int frequency = 15;
+		for (int i = 0; i < 4; i++) {
+			final long h = spread(hash, i);
+			final int offset = ((int) (h >>> 40) & 15) << 2;
+			final int count = (int) ((table[(int) h & (table.length - 1)] >>> offset) & 15L);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Increments the frequency of an item. */
+	void increment(int hash) {
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			final long h = spread(hash, i);
+			final int index = (int) h & (table.length - 1);
+			final int offset = ((int) (h >>> 40) & 15) << 2;
+			final long mask = 15L << offset;
+			if ((table[index] & mask) != mask) {
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+		if (added && ++size >= sampleSize) {
+			reset();
+		}
+	}
+
+	/** Halves every counter. */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size /= 2;
+	}
+}
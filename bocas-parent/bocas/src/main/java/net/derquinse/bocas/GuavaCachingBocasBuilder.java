@@ -15,15 +15,17 @@
  */
 package net.derquinse.bocas;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
 
+import java.io.File;
 import java.util.concurrent.TimeUnit;
 
+import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
-import com.google.common.cache.CacheBuilder;
-
 /**
  * Builder for caching bocas repositories based on Guava.
  * @author Andres Rodriguez.
@@ -37,8 +39,16 @@ public final class GuavaCachingBocasBuilder {
 	private boolean shared = false;
 	/** Whether writes are always performed. */
 	private Boolean alwaysWrite = null;
+	/** Warm start snapshot file, {@code null} if not used. */
+	private File warmStartFile = null;
+	/** Warm start snapshot period. */
+	private long warmStartPeriod;
+	/** Warm start snapshot period unit. */
+	private TimeUnit warmStartUnit;
+	/** Warm start prewarming parallelism. */
+	private int warmStartParallelism;
 	/** Internal builder. */
-	private final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+	private final EntryCacheBuilder builder = new EntryCacheBuilder();
 
 	/** Constructor. */
 	GuavaCachingBocasBuilder() {
@@ -83,7 +93,7 @@ public final class GuavaCachingBocasBuilder {
 	 */
 	public GuavaCachingBocasBuilder maximumWeight(long weight) {
 		checkNotBuilt();
-		builder.maximumWeight(weight).weigher(EntryWeigher.INSTANCE);
+		builder.maximumWeight(weight);
 		return this;
 	}
 
@@ -108,6 +118,62 @@ public final class GuavaCachingBocasBuilder {
 		return this;
 	}
 
+	/**
+	 * Specifies that the cache must use a W-TinyLFU policy instead of Guava's LRU-based eviction.
+	 * Entries are only admitted into the main region of the cache if they are used more often than
+	 * the ones they would evict, so bursts of entries that are read once (e.g., scans) don't flush
+	 * the working set. A maximum size or weight must be specified.
+	 * @throws IllegalStateException if the policy has already been set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public GuavaCachingBocasBuilder tinyLfu() {
+		checkNotBuilt();
+		builder.tinyLfu();
+		return this;
+	}
+
+	/**
+	 * Specifies that absent entries must be remembered in a negative cache, so that repeated
+	 * lookups of missing keys are not sent to the cached buckets. Negative entries are removed after
+	 * the provided time and when the key is written through the caching bucket, but writes performed
+	 * directly on the cached buckets may not be seen until they expire.
+	 * @param size the maximum number of absent keys to remember
+	 * @param duration the length of time after an absent key is remembered that it should be removed
+	 * @param unit the unit that {@code duration} is expressed in
+	 * @throws IllegalArgumentException if {@code size} or {@code duration} are negative
+	 * @throws IllegalStateException if the negative cache has already been set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public GuavaCachingBocasBuilder negativeCache(long size, long duration, TimeUnit unit) {
+		checkNotBuilt();
+		builder.negativeCache(size, duration, unit);
+		return this;
+	}
+
+	/**
+	 * Specifies that the keys held by the cache must be periodically written to a local file, and
+	 * that the cache must be prewarmed from that file when built. Prewarming runs in the background,
+	 * fetching the keys through the caching buckets, so it does not block the service.
+	 * @param file Snapshot file.
+	 * @param period Time between snapshots.
+	 * @param unit The unit that {@code period} is expressed in.
+	 * @param parallelism Maximum number of concurrent prewarming fetches.
+	 * @throws IllegalArgumentException if {@code period} or {@code parallelism} are not > 0
+	 * @throws IllegalStateException if the warm start has already been set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public GuavaCachingBocasBuilder warmStart(File file, long period, TimeUnit unit, int parallelism) {
+		checkNotBuilt();
+		checkState(warmStartFile == null, "The warm start has already been set");
+		checkArgument(period > 0, "The snapshot period must be > 0");
+		checkArgument(parallelism > 0, "The prewarming parallelism must be > 0");
+		this.warmStartFile = checkNotNull(file, "The snapshot file must be provided");
+		this.warmStartPeriod = period;
+		this.warmStartUnit = checkNotNull(unit, "The time unit must be provided");
+		this.warmStartParallelism = parallelism;
+		return this;
+	}
+
 	/**
 	 * Specifies the memory loader tu use.
 	 * @throws IllegalStateException if the service has already been built
@@ -150,11 +216,18 @@ public final class GuavaCachingBocasBuilder {
 		checkNotBuilt();
 		built = true;
 		final boolean write = alwaysWrite != null ? alwaysWrite.booleanValue() : shared;
+		final AbstractGuavaCachingBocasService<?> cache;
 		if (shared) {
-			return new SharedGuavaCachingBocasService(service, loader, builder, write);
+			cache = new SharedGuavaCachingBocasService(service, loader, builder.<ByteString> build(),
+					builder.buildNegative(), write);
 		} else {
-			return new BucketGuavaCachingBocasService(service, loader, builder, write);
+			cache = new BucketGuavaCachingBocasService(service, loader, builder.<BucketKey> build(),
+					builder.buildNegative(), write);
+		}
+		if (warmStartFile != null) {
+			cache.warmStart(new CacheWarmer(cache, warmStartFile, warmStartPeriod, warmStartUnit, warmStartParallelism));
 		}
+		return cache;
 	}
 
 }
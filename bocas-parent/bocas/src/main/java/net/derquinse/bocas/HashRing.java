@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Consistent-hash ring of shards. Every shard is placed in the ring at a number of positions derived
+ * from its name, so the ring does not depend on the order in which shards are added. The position
+ * of a key is its first eight bytes, which is enough as keys are uniformly distributed hashes, and
+ * the key belongs to the first shard found from that position clockwise.
+ * @author Andres Rodriguez.
+ */
+final class HashRing {
+	/** Number of positions of each shard. */
+	private static final int VIRTUAL_NODES = 128;
+
+	/** Shard names, by index. */
+	private final ImmutableList<String> names;
+	/** Ring positions, sorted in unsigned order and offset to be compared as signed values. */
+	private final long[] positions;
+	/** Shard index of each position. */
+	private final int[] owners;
+
+	/**
+	 * Constructor.
+	 * @param names Shard names, by index.
+	 * @throws IllegalArgumentException if there are no names or some are duplicated.
+	 */
+	HashRing(List<String> names) {
+		this.names = ImmutableList.copyOf(names);
+		final int n = this.names.size();
+		checkArgument(n > 0, "At least a shard must be provided");
+		checkArgument(Sets.newHashSet(this.names).size() == n, "Duplicate shard names");
+		final long[] entries = new long[n * VIRTUAL_NODES];
+		final long[] nodes = new long[entries.length];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < VIRTUAL_NODES; j++) {
+				nodes[i * VIRTUAL_NODES + j] = offset(Hashing.sha256()
+						.hashString(this.names.get(i) + "#" + j, Charsets.UTF_8).asLong());
+			}
+		}
+		// Sort positions keeping the owners.
+		final Integer[] order = new Integer[nodes.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(nodes[o1], nodes[o2]);
+			}
+		});
+		this.owners = new int[nodes.length];
+		for (int i = 0; i < order.length; i++) {
+			entries[i] = nodes[order[i]];
+			owners[i] = order[i] / VIRTUAL_NODES;
+		}
+		this.positions = entries;
+	}
+
+	/** Offsets an unsigned value so that signed comparisons give the unsigned order. */
+	private static long offset(long value) {
+		return value ^ Long.MIN_VALUE;
+	}
+
+	/** Returns the ring position of a key. */
+	static long position(ByteString key) {
+		long p = 0L;
+		for (int i = 0; i < 8; i++) {
+			p = (p << 8) | (i < key.size() ? key.byteAt(i) & 0xffL : 0L);
+		}
+		return offset(p);
+	}
+
+	/** Returns the number of shards. */
+	int size() {
+		return names.size();
+	}
+
+	/** Returns the shard names, by index. */
+	ImmutableList<String> getNames() {
+		return names;
+	}
+
+	/** Returns the index of the shard a position (as returned by {@link #position}) belongs to. */
+	private int owner(long position) {
+		int i = Arrays.binarySearch(positions, position);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return owners[i < positions.length ? i : 0];
+	}
+
+	/** Returns the index of the shard a key belongs to. */
+	int shard(ByteString key) {
+		return owner(position(checkNotNull(key)));
+	}
+
+	/**
+	 * Returns a new ring with additional shards. The indexes of the existing shards are preserved.
+	 */
+	HashRing add(List<String> added) {
+		return new HashRing(ImmutableList.<String> builder().addAll(names).addAll(added).build());
+	}
+
+	/**
+	 * Returns the indexes of the shards of this ring that lose keys to the shards added in a larger
+	 * one, built with {@link #add(List)}.
+	 */
+	Set<Integer> donors(HashRing larger) {
+		final Set<Integer> donors = Sets.newTreeSet();
+		final int n = names.size();
+		for (int i = 0; i < larger.positions.length; i++) {
+			if (larger.owners[i] >= n) {
+				donors.add(owner(larger.positions[i]));
+			}
+		}
+		return donors;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Builder for buckets and services that hedge reads across buckets with the same content. Reads are
+ * sent to the bucket with the lowest average latency and, if it has not answered after a delay, to
+ * the next one. The delay is a percentile of the recent latencies of the bucket being waited for,
+ * within configurable bounds. The first complete answer wins and the rest of the requests are
+ * cancelled.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class HedgedReadBuilder {
+	/** Whether the bucket or service has already been built. */
+	private boolean built = false;
+	/** Executor for the requests, {@code null} for the default one. */
+	private Executor executor = null;
+	/** Percentile of the latency used as the hedge delay. */
+	private double percentile = 95.0;
+	/** Minimum hedge delay in nanoseconds. */
+	private long minDelay = TimeUnit.MILLISECONDS.toNanos(1L);
+	/** Maximum hedge delay in nanoseconds. */
+	private long maxDelay = TimeUnit.SECONDS.toNanos(1L);
+
+	/** Constructor. */
+	HedgedReadBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The bucket or service has already been built");
+	}
+
+	/**
+	 * Specifies the executor for the read requests. The default is an unbounded pool of daemon
+	 * threads.
+	 * @throws IllegalStateException if the bucket or service has already been built
+	 */
+	public HedgedReadBuilder executor(Executor executor) {
+		checkNotBuilt();
+		this.executor = checkNotNull(executor, "The executor must be provided");
+		return this;
+	}
+
+	/**
+	 * Specifies the percentile of the recent latencies of a bucket used as the delay before hedging
+	 * a read sent to it. The default is 95.
+	 * @throws IllegalArgumentException if the argument is not in (0, 100]
+	 * @throws IllegalStateException if the bucket or service has already been built
+	 */
+	public HedgedReadBuilder percentile(double percentile) {
+		checkNotBuilt();
+		checkArgument(percentile > 0.0 && percentile <= 100.0, "The percentile must be in (0, 100]");
+		this.percentile = percentile;
+		return this;
+	}
+
+	/**
+	 * Specifies the bounds of the hedge delay. The maximum is used until enough latencies have been
+	 * recorded and as the latency of failed requests. The defaults are one millisecond and one second.
+	 * @throws IllegalArgumentException if the delays are negative or the maximum is less than the
+	 *           minimum
+	 * @throws IllegalStateException if the bucket or service has already been built
+	 */
+	public HedgedReadBuilder delay(long minimum, long maximum, TimeUnit unit) {
+		checkNotBuilt();
+		checkArgument(minimum >= 0 && maximum >= minimum, "Invalid hedge delays");
+		this.minDelay = unit.toNanos(minimum);
+		this.maxDelay = unit.toNanos(maximum);
+		return this;
+	}
+
+	/** Marks the builder as built, creating the default executor if needed. */
+	private void build() {
+		checkNotBuilt();
+		built = true;
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+					.setNameFormat("bocas-hedged-read-%d").build());
+		}
+	}
+
+	/** Creates the hedged reads of a set of buckets with the current configuration. */
+	HedgedReads create(List<Bocas> buckets, int authoritative) {
+		return new HedgedReads(buckets, authoritative, executor, percentile, minDelay, maxDelay);
+	}
+
+	/**
+	 * Creates a seeded bucket whose reads are hedged between the primary and the seed. Entries found
+	 * in either bucket are returned.
+	 * @see BocasServices#seeded(Bocas, Bocas)
+	 */
+	public Bocas seeded(Bocas primary, Bocas seed) {
+		build();
+		return new SeededBocas(primary, seed, create(ImmutableList.of(primary, seed), -1));
+	}
+
+	/**
+	 * Creates a synchronously replicated bucket whose reads are hedged between the primary and the
+	 * replicas. Entries found in any bucket are returned, but entries not found in a replica are
+	 * looked for in the primary, whose answer is final.
+	 * @see BocasServices#syncReplica(Bocas, List, boolean, int, Executor)
+	 */
+	public Bocas syncReplica(Bocas primary, List<Bocas> replicas, boolean check, int quorum,
+			@Nullable Executor writeExecutor) {
+		build();
+		checkNotNull(primary, "The primary bucket must be provided.");
+		final List<Bocas> buckets = ImmutableList.<Bocas> builder().add(primary)
+				.addAll(checkNotNull(replicas, "The replica buckets must be provided.")).build();
+		return new SyncReplicatedBocas(primary, replicas, check, quorum, writeExecutor, create(buckets, 0));
+	}
+
+	/**
+	 * Creates a synchronously replicated service whose reads are hedged between the primary and the
+	 * replicas. Bucket closing is the responsibility of the caller.
+	 * @see #syncReplica(Bocas, List, boolean, int, Executor)
+	 */
+	public BocasService syncReplica(BocasService primary, List<BocasService> replicas, boolean check, int quorum,
+			@Nullable Executor writeExecutor) {
+		build();
+		return BocasServices.decorate(primary, new SyncReplicatedBocasDecorator(replicas, check, quorum,
+				writeExecutor, this));
+	}
+}
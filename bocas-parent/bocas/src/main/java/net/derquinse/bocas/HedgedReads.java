@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Hedged reads across buckets with the same content. Each read is sent first to the bucket with the
+ * lowest average latency and, if it has not answered after its hedge delay, to the next one. The
+ * first complete answer wins and the rest of the requests are cancelled. Answers from different
+ * buckets are merged, and an incomplete answer (e.g., an entry not found) sends the read to the next
+ * bucket without waiting.
+ * <p>
+ * If there is an authoritative bucket its answer is final even if incomplete. Otherwise the read
+ * completes when every bucket has answered.
+ * @author Andres Rodriguez.
+ */
+final class HedgedReads {
+	/** Buckets. */
+	private final List<Bocas> buckets;
+	/** Latency trackers, one per bucket. */
+	private final List<LatencyTracker> trackers;
+	/** Index of the authoritative bucket, negative if there is none. */
+	private final int authoritative;
+	/** Executor for the requests. */
+	private final Executor executor;
+
+	/**
+	 * Constructor.
+	 * @param buckets Buckets to read from.
+	 * @param authoritative Index of the authoritative bucket, negative if there is none.
+	 * @param executor Executor for the requests.
+	 * @param percentile Percentile of the latency used as the hedge delay.
+	 * @param minDelay Minimum hedge delay in nanoseconds.
+	 * @param maxDelay Maximum hedge delay in nanoseconds.
+	 */
+	HedgedReads(List<Bocas> buckets, int authoritative, Executor executor, double percentile, long minDelay,
+			long maxDelay) {
+		this.buckets = ImmutableList.copyOf(buckets);
+		checkArgument(this.buckets.size() > 1, "At least two buckets must be provided");
+		checkArgument(authoritative < this.buckets.size(), "Invalid authoritative bucket");
+		this.authoritative = authoritative;
+		this.executor = checkNotNull(executor, "The executor must be provided");
+		final ImmutableList.Builder<LatencyTracker> builder = ImmutableList.builder();
+		for (int i = 0; i < this.buckets.size(); i++) {
+			builder.add(new LatencyTracker(percentile, minDelay, maxDelay));
+		}
+		this.trackers = builder.build();
+	}
+
+	/** Returns the latency tracker of a bucket. */
+	LatencyTracker getTracker(int index) {
+		return trackers.get(index);
+	}
+
+	/** Returns the bucket indexes, fastest first. */
+	private Integer[] order() {
+		final int n = buckets.size();
+		final double[] averages = new double[n];
+		final Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			averages[i] = trackers.get(i).average();
+			order[i] = i;
+		}
+		// Stable, so the provided order breaks ties.
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(averages[o1], averages[o2]);
+			}
+		});
+		return order;
+	}
+
+	/** Submits a request to a bucket. */
+	private <R> Future<R> submit(CompletionService<R> service, final Read<R> read, final int index) {
+		final Bocas bucket = buckets.get(index);
+		final LatencyTracker tracker = trackers.get(index);
+		return service.submit(new Callable<R>() {
+			@Override
+			public R call() throws Exception {
+				final long start = System.nanoTime();
+				try {
+					final R result = read.call(bucket);
+					tracker.record(System.nanoTime() - start);
+					return result;
+				} catch (RuntimeException e) {
+					if (Thread.currentThread().isInterrupted()) {
+						// Cancelled, the elapsed time is a lower bound of the latency.
+						tracker.record(System.nanoTime() - start);
+					} else {
+						tracker.failed();
+					}
+					throw e;
+				}
+			}
+		});
+	}
+
+	/** Performs a hedged read. */
+	private <R> R read(Read<R> read) {
+		final Integer[] order = order();
+		final int n = order.length;
+		final CompletionService<R> service = new ExecutorCompletionService<R>(executor);
+		final Map<Future<R>, Integer> submitted = Maps.newHashMapWithExpectedSize(n);
+		int next = 0;
+		int pending = 0;
+		R merged = null;
+		RuntimeException failure = null;
+		try {
+			submitted.put(submit(service, read, order[next++]), order[0]);
+			pending++;
+			while (pending > 0) {
+				final long delay = next < n ? trackers.get(order[next - 1]).delay() : -1L;
+				final Future<R> future = InternalUtils.poll(service, delay);
+				if (future == null) {
+					// Hedge
+					submitted.put(submit(service, read, order[next]), order[next]);
+					next++;
+					pending++;
+					continue;
+				}
+				pending--;
+				final int index = submitted.get(future);
+				try {
+					final R result = Uninterruptibles.getUninterruptibly(future);
+					merged = merged == null ? result : read.merge(merged, result);
+					if (index == authoritative || read.isComplete(merged)) {
+						return index == authoritative ? result : merged;
+					}
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					final RuntimeException re = cause instanceof RuntimeException ? (RuntimeException) cause
+							: new BocasException(cause);
+					if (failure == null || index == authoritative) {
+						failure = re;
+					}
+				}
+				if (next < n && pending == 0) {
+					// Incomplete answer or failure, no need to wait.
+					submitted.put(submit(service, read, order[next]), order[next]);
+					next++;
+					pending++;
+				}
+			}
+		} finally {
+			for (Future<R> future : submitted.keySet()) {
+				future.cancel(true);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return merged;
+	}
+
+	/** Returns whether any bucket contains a key. */
+	boolean contains(final ByteString key) {
+		return read(new Read<Boolean>() {
+			@Override
+			Boolean call(Bocas bucket) {
+				return bucket.contains(key);
+			}
+
+			@Override
+			boolean isComplete(Boolean result) {
+				return result;
+			}
+
+			@Override
+			Boolean merge(Boolean a, Boolean b) {
+				return a || b;
+			}
+		});
+	}
+
+	/** Returns the keys contained in any bucket. */
+	Set<ByteString> contained(final Set<ByteString> keys) {
+		if (keys.isEmpty()) {
+			return ImmutableSet.of();
+		}
+		return read(new Read<Set<ByteString>>() {
+			@Override
+			Set<ByteString> call(Bocas bucket) {
+				return bucket.contained(keys);
+			}
+
+			@Override
+			boolean isComplete(Set<ByteString> result) {
+				return result.size() >= keys.size();
+			}
+
+			@Override
+			Set<ByteString> merge(Set<ByteString> a, Set<ByteString> b) {
+				return Sets.union(a, b).immutableCopy();
+			}
+		});
+	}
+
+	/** Returns an entry from any bucket. */
+	Optional<ByteSource> get(final ByteString key) {
+		return read(new OptionalRead() {
+			@Override
+			Optional<ByteSource> call(Bocas bucket) {
+				return bucket.get(key);
+			}
+		});
+	}
+
+	/** Returns a range of an entry from any bucket. */
+	Optional<ByteSource> get(final ByteString key, final long offset, final long length) {
+		return read(new OptionalRead() {
+			@Override
+			Optional<ByteSource> call(Bocas bucket) {
+				return bucket.get(key, offset, length);
+			}
+		});
+	}
+
+	/** Returns the entries found in any bucket. */
+	Map<ByteString, ByteSource> get(final Set<ByteString> keys) {
+		if (keys.isEmpty()) {
+			return ImmutableMap.of();
+		}
+		return read(new Read<Map<ByteString, ByteSource>>() {
+			@Override
+			Map<ByteString, ByteSource> call(Bocas bucket) {
+				return bucket.get(keys);
+			}
+
+			@Override
+			boolean isComplete(Map<ByteString, ByteSource> result) {
+				return result.size() >= keys.size();
+			}
+
+			@Override
+			Map<ByteString, ByteSource> merge(Map<ByteString, ByteSource> a, Map<ByteString, ByteSource> b) {
+				if (a.isEmpty()) {
+					return b;
+				}
+				final Map<ByteString, ByteSource> total = Maps.newHashMap(a);
+				total.putAll(b);
+				return total;
+			}
+		});
+	}
+
+	/** Read operation. */
+	private static abstract class Read<R> {
+		/** Performs the read in a bucket. */
+		abstract R call(Bocas bucket);
+
+		/** Returns whether a result needs no further answers. */
+		abstract boolean isComplete(R result);
+
+		/** Merges the answers of two buckets. */
+		abstract R merge(R a, R b);
+	}
+
+	/** Single entry read operation. */
+	private static abstract class OptionalRead extends Read<Optional<ByteSource>> {
+		@Override
+		boolean isComplete(Optional<ByteSource> result) {
+			return result.isPresent();
+		}
+
+		@Override
+		Optional<ByteSource> merge(Optional<ByteSource> a, Optional<ByteSource> b) {
+			return a.isPresent() ? a : b;
+		}
+	}
+}
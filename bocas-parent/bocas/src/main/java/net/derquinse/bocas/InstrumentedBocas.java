@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CountingInputStream;
+
+/**
+ * Bocas bucket decorator that records the latency, number of keys, number of bytes and outcome of
+ * every operation in a metrics sink. Only the sizes of memory values are counted, so that values
+ * are never read just to be measured, except for streams written, which are counted as they are
+ * read.
+ * @author Andres Rodriguez.
+ */
+final class InstrumentedBocas extends ForwardingBocas {
+	/** Decorated bucket. */
+	private final Bocas bocas;
+	/** Bucket name. */
+	private final String name;
+	/** Metrics sink. */
+	private final BocasMetricsSink sink;
+
+	/** Constructor. */
+	InstrumentedBocas(Bocas bocas, String name, BocasMetricsSink sink) {
+		this.bocas = checkNotNull(bocas, "The bucket to decorate must be provided");
+		this.name = checkNotNull(name, "The bucket name must be provided");
+		this.sink = checkNotNull(sink, "The metrics sink must be provided");
+	}
+
+	@Override
+	protected Bocas delegate() {
+		return bocas;
+	}
+
+	/** Returns the size of a value if known without reading it, or 0. */
+	private static long size(ByteSource value) {
+		if (value instanceof MemoryByteSource) {
+			try {
+				return value.size();
+			} catch (IOException e) {
+				// Not expected for memory values.
+			}
+		}
+		return 0L;
+	}
+
+	/** Returns the size of the values known without reading them. */
+	private static long size(Iterable<? extends ByteSource> values) {
+		long bytes = 0L;
+		for (ByteSource value : values) {
+			bytes += size(value);
+		}
+		return bytes;
+	}
+
+	/** Records an operation, ignoring sink failures. */
+	private void record(BocasOperation operation, long start, int keys, long bytes, boolean failed) {
+		try {
+			sink.record(name, operation, System.nanoTime() - start, keys, bytes, failed);
+		} catch (RuntimeException e) {
+			// Ignored, metrics must not break the bucket.
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public boolean contains(ByteString key) {
+		final long start = System.nanoTime();
+		try {
+			final boolean found = bocas.contains(key);
+			record(BocasOperation.CONTAINS, start, 1, 0L, false);
+			return found;
+		} catch (RuntimeException e) {
+			record(BocasOperation.CONTAINS, start, 1, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#contained(java.lang.Iterable)
+	 */
+	@Override
+	public Set<ByteString> contained(Iterable<ByteString> keys) {
+		final long start = System.nanoTime();
+		final int n = Iterables.size(keys);
+		try {
+			final Set<ByteString> found = bocas.contained(keys);
+			record(BocasOperation.CONTAINED, start, n, 0L, false);
+			return found;
+		} catch (RuntimeException e) {
+			record(BocasOperation.CONTAINED, start, n, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key) {
+		final long start = System.nanoTime();
+		try {
+			final Optional<ByteSource> value = bocas.get(key);
+			record(BocasOperation.GET, start, 1, value.isPresent() ? size(value.get()) : 0L, false);
+			return value;
+		} catch (RuntimeException e) {
+			record(BocasOperation.GET, start, 1, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		final long start = System.nanoTime();
+		try {
+			final Optional<ByteSource> value = bocas.get(key, offset, length);
+			record(BocasOperation.GET_RANGE, start, 1, value.isPresent() ? size(value.get()) : 0L, false);
+			return value;
+		} catch (RuntimeException e) {
+			record(BocasOperation.GET_RANGE, start, 1, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(java.lang.Iterable)
+	 */
+	@Override
+	public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+		final long start = System.nanoTime();
+		final int n = Iterables.size(keys);
+		try {
+			final Map<ByteString, ByteSource> found = bocas.get(keys);
+			record(BocasOperation.GET_ALL, start, n, size(found.values()), false);
+			return found;
+		} catch (RuntimeException e) {
+			record(BocasOperation.GET_ALL, start, n, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		final long start = System.nanoTime();
+		try {
+			final BocasKeyPage page = bocas.scan(cursor, limit, sizes);
+			record(BocasOperation.SCAN, start, page.getKeys().size(), 0L, false);
+			return page;
+		} catch (RuntimeException e) {
+			record(BocasOperation.SCAN, start, 0, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#put(com.google.common.io.ByteSource)
+	 */
+	@Override
+	public ByteString put(ByteSource value) {
+		final long start = System.nanoTime();
+		try {
+			final ByteString key = bocas.put(value);
+			record(BocasOperation.PUT, start, 1, size(value), false);
+			return key;
+		} catch (RuntimeException e) {
+			record(BocasOperation.PUT, start, 1, 0L, true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#put(java.io.InputStream)
+	 */
+	@Override
+	public ByteString put(InputStream value) {
+		final long start = System.nanoTime();
+		final CountingInputStream counting = new CountingInputStream(checkNotNull(value, "The value must be provided"));
+		try {
+			final ByteString key = bocas.put(counting);
+			record(BocasOperation.PUT, start, 1, counting.getCount(), false);
+			return key;
+		} catch (RuntimeException e) {
+			record(BocasOperation.PUT, start, 1, counting.getCount(), true);
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#putAll(java.lang.Iterable)
+	 */
+	@Override
+	public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+		final long start = System.nanoTime();
+		final int n = Iterables.size(values);
+		try {
+			final List<ByteString> keys = bocas.putAll(values);
+			record(BocasOperation.PUT_ALL, start, n, size(values), false);
+			return keys;
+		} catch (RuntimeException e) {
+			record(BocasOperation.PUT_ALL, start, n, 0L, true);
+			throw e;
+		}
+	}
+}
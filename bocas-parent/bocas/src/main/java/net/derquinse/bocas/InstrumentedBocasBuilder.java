@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Builder for buckets and services that record the metrics of every operation in a set of metrics
+ * sinks.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class InstrumentedBocasBuilder {
+	/** Whether the decorator has already been built. */
+	private boolean built = false;
+	/** Metrics sinks. */
+	private final List<BocasMetricsSink> sinks = Lists.newArrayList();
+
+	/** Constructor. */
+	InstrumentedBocasBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The decorator has already been built");
+	}
+
+	/**
+	 * Adds a metrics sink. At least one must be provided. Sinks are called in the order they were
+	 * added.
+	 * @throws IllegalStateException if the decorator has already been built
+	 * @see BocasServices#metrics()
+	 */
+	public InstrumentedBocasBuilder sink(BocasMetricsSink sink) {
+		checkNotBuilt();
+		sinks.add(checkNotNull(sink, "The metrics sink must be provided"));
+		return this;
+	}
+
+	/** Marks the builder as built and returns the sink to use. */
+	private BocasMetricsSink buildSink() {
+		checkNotBuilt();
+		checkState(!sinks.isEmpty(), "At least one metrics sink must be provided");
+		built = true;
+		if (sinks.size() == 1) {
+			return sinks.get(0);
+		}
+		final List<BocasMetricsSink> list = ImmutableList.copyOf(sinks);
+		return new BocasMetricsSink() {
+			@Override
+			public void record(String bucket, BocasOperation operation, long nanos, int keys, long bytes,
+					boolean failed) {
+				for (BocasMetricsSink sink : list) {
+					try {
+						sink.record(bucket, operation, nanos, keys, bytes, failed);
+					} catch (RuntimeException e) {
+						// Ignored, a failing sink must not affect the rest.
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Decorates a bucket.
+	 * @param bocas Bucket to decorate.
+	 * @param name Name the operations are recorded with.
+	 * @return The instrumented bucket.
+	 * @throws IllegalStateException if no sink has been provided
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public Bocas build(Bocas bocas, String name) {
+		checkNotNull(bocas, "The bucket to decorate must be provided");
+		checkNotNull(name, "The bucket name must be provided");
+		return new InstrumentedBocas(bocas, name, buildSink());
+	}
+
+	/**
+	 * Decorates a service. Operations are recorded with the names of the buckets.
+	 * @param service Service to decorate.
+	 * @return The instrumented service.
+	 * @throws IllegalStateException if no sink has been provided
+	 * @throws IllegalStateException if the decorator has already been built
+	 */
+	public BocasService build(BocasService service) {
+		checkNotNull(service, "The service to decorate must be provided");
+		return BocasServices.decorate(service, new InstrumentedBocasDecorator(buildSink()));
+	}
+}
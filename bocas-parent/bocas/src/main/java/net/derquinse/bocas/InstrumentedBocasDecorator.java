@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bocas decorator that records the metrics of every operation.
+ * @author Andres Rodriguez.
+ */
+final class InstrumentedBocasDecorator implements BocasDecorator {
+	/** Metrics sink. */
+	private final BocasMetricsSink sink;
+
+	/** Constructor. */
+	InstrumentedBocasDecorator(BocasMetricsSink sink) {
+		this.sink = checkNotNull(sink);
+	}
+
+	@Override
+	public Bocas decorate(String name, Bocas bocas) {
+		return new InstrumentedBocas(bocas, name, sink);
+	}
+}
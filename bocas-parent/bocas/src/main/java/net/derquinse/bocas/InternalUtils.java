@@ -16,8 +16,21 @@
 package net.derquinse.bocas;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.base.ByteString;
 import net.derquinse.common.base.NotInstantiable;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
 import com.google.common.io.ByteSource;
 
 /**
@@ -28,6 +41,29 @@ final class InternalUtils extends NotInstantiable {
 	private InternalUtils() {
 	}
 
+	/** Key order used by memory buckets: unsigned lexicographical order of the key bytes. */
+	static final Comparator<ByteString> KEY_ORDER = new Comparator<ByteString>() {
+		@Override
+		public int compare(ByteString o1, ByteString o2) {
+			final int n = Math.min(o1.size(), o2.size());
+			for (int i = 0; i < n; i++) {
+				final int c = (o1.byteAt(i) & 0xff) - (o2.byteAt(i) & 0xff);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return o1.size() - o2.size();
+		}
+	};
+
+	/** Statistics of a cache that records nothing. */
+	static final CacheStats EMPTY_STATS = new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+
+	/** Returns the statistics of a cache, or empty ones if there is no cache. */
+	static CacheStats stats(@Nullable Cache<?, ?> cache) {
+		return cache != null ? cache.stats() : EMPTY_STATS;
+	}
+
 	/** Converts an exception thrown during cache loading. */
 	static BocasException convertCacheException(Throwable t) {
 		Throwable cause = t.getCause();
@@ -43,6 +79,55 @@ final class InternalUtils extends NotInstantiable {
 		return checkNotNull(value, "The value to add can't be null");
 	}
 
+	/** Checks the stream to put has been provided. */
+	static InputStream checkStream(InputStream value) {
+		return checkNotNull(value, "The stream to add can't be null");
+	}
+
+	/**
+	 * Returns a range of a value, truncated at the end of the value. Unlike
+	 * {@link ByteSource#slice(long, long)}, offsets beyond the end result in an empty source.
+	 */
+	static ByteSource slice(ByteSource value, long offset, long length) {
+		final long size;
+		try {
+			size = value.size();
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+		if (offset >= size) {
+			return ByteSource.empty();
+		}
+		return value.slice(offset, Math.min(length, size - offset));
+	}
+
+	/**
+	 * Retrieves the next completed task, waiting up to the provided time if necessary and ignoring
+	 * interruptions, which are restored on return.
+	 * @param timeout Maximum time to wait in nanoseconds, negative to wait until a task completes.
+	 * @return The completed task or {@code null} if the timeout elapses.
+	 */
+	@Nullable
+	static <T> Future<T> poll(CompletionService<T> service, long timeout) {
+		boolean interrupted = false;
+		try {
+			final long end = System.nanoTime() + timeout;
+			long remaining = timeout;
+			while (true) {
+				try {
+					return timeout < 0 ? service.take() : service.poll(remaining, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+					remaining = end - System.nanoTime();
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	/** Checks the transformed value to put has been provided. */
 	static <T extends ByteSource> T checkTransformedValue(T value) {
 		return checkNotNull(value, "The transformed value to add can't be null");
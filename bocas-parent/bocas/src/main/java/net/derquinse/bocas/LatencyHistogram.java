@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with log-linear buckets, in the style of HdrHistogram.
+ * Every power of two is divided in 32 sub-buckets, so values are recorded with a relative error
+ * below 3.2% using a fixed amount of memory.
+ * @author Andres Rodriguez.
+ */
+final class LatencyHistogram {
+	/** Number of bits of the sub-bucket index. */
+	private static final int SUB_BITS = 5;
+	/** Number of sub-buckets per power of two. */
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/** Number of buckets. */
+	static final int SIZE = (64 - SUB_BITS) * SUB_COUNT;
+
+	/** Returns the bucket of a value. */
+	static int index(long value) {
+		if (value < SUB_COUNT) {
+			return (int) Math.max(value, 0L);
+		}
+		final int exp = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = exp - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_COUNT - 1));
+	}
+
+	/** Returns the highest value recorded in a bucket. */
+	static long highestValue(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		final int shift = (index >>> SUB_BITS) - 1;
+		final long lowest = ((long) (SUB_COUNT + (index & (SUB_COUNT - 1)))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Returns the value at a percentile of a bucket count array.
+	 * @param counts Bucket counts.
+	 * @param total Sum of the counts.
+	 * @param max Maximum value recorded.
+	 * @param percentile Percentile in [0, 100].
+	 * @return The highest value equivalent to the percentile, never above {@code max}.
+	 */
+	static long valueAt(long[] counts, long total, long max, double percentile) {
+		checkArgument(percentile >= 0.0 && percentile <= 100.0, "The percentile must be in [0, 100]");
+		if (total == 0) {
+			return 0L;
+		}
+		final long rank = Math.max(1L, (long) Math.ceil(percentile * total / 100.0));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/** Bucket counts. */
+	private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+
+	/** Constructor. */
+	LatencyHistogram() {
+	}
+
+	/** Records a value. */
+	void record(long value) {
+		counts.incrementAndGet(index(value));
+	}
+
+	/** Returns a copy of the counts, trimmed after the last non-empty bucket. */
+	long[] counts() {
+		final long[] copy = new long[SIZE];
+		int last = -1;
+		for (int i = 0; i < SIZE; i++) {
+			copy[i] = counts.get(i);
+			if (copy[i] != 0) {
+				last = i;
+			}
+		}
+		return Arrays.copyOf(copy, last + 1);
+	}
+
+	/** Clears the histogram. */
+	void reset() {
+		for (int i = 0; i < SIZE; i++) {
+			counts.set(i, 0L);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Latency tracker of a bucket used for hedged reads. It keeps an exponentially weighted moving
+ * average of the latency, used to route reads to the fastest bucket, and the recent samples, used
+ * to compute the delay before hedging a read as a percentile of the latency.
+ * @author Andres Rodriguez.
+ */
+final class LatencyTracker {
+	/** Number of samples kept. */
+	private static final int SAMPLES = 128;
+	/** Number of samples between delay computations. */
+	private static final int REFRESH = 16;
+	/** Weight of each sample in the moving average. */
+	private static final double ALPHA = 0.2;
+
+	/** Percentile used as the hedge delay. */
+	private final double percentile;
+	/** Minimum hedge delay in nanoseconds. */
+	private final long minDelay;
+	/** Maximum hedge delay in nanoseconds. */
+	private final long maxDelay;
+	/** Recent samples, used as a ring. Guarded by this. */
+	private final long[] samples = new long[SAMPLES];
+	/** Number of samples recorded. Guarded by this. */
+	private long count = 0;
+	/** Moving average in nanoseconds. */
+	private volatile double average = 0.0;
+	/** Current hedge delay in nanoseconds. */
+	private volatile long delay;
+
+	/**
+	 * Constructor.
+	 * @param percentile Percentile used as the hedge delay, in (0, 100].
+	 * @param minDelay Minimum hedge delay in nanoseconds.
+	 * @param maxDelay Maximum hedge delay in nanoseconds, used until enough samples are recorded.
+	 */
+	LatencyTracker(double percentile, long minDelay, long maxDelay) {
+		checkArgument(percentile > 0.0 && percentile <= 100.0, "The percentile must be in (0, 100]");
+		checkArgument(minDelay >= 0 && maxDelay >= minDelay, "Invalid hedge delays");
+		this.percentile = percentile;
+		this.minDelay = minDelay;
+		this.maxDelay = maxDelay;
+		this.delay = maxDelay;
+	}
+
+	/** Records the latency of a successful operation, in nanoseconds. */
+	synchronized void record(long latency) {
+		average = count == 0 ? latency : average + ALPHA * (latency - average);
+		samples[(int) (count % SAMPLES)] = latency;
+		count++;
+		if (count % REFRESH == 0) {
+			final long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+			Arrays.sort(sorted);
+			final int index = (int) Math.ceil(percentile * sorted.length / 100.0) - 1;
+			delay = Math.max(minDelay, Math.min(maxDelay, sorted[Math.max(index, 0)]));
+		}
+	}
+
+	/** Records a failed operation, penalized with the maximum delay. */
+	void failed() {
+		record(maxDelay);
+	}
+
+	/** Returns the moving average of the latency in nanoseconds, zero if there are no samples. */
+	double average() {
+		return average;
+	}
+
+	/** Returns the current hedge delay in nanoseconds. */
+	long delay() {
+		return delay;
+	}
+}
@@ -15,9 +15,13 @@
  */
 package net.derquinse.bocas;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
@@ -25,7 +29,9 @@ import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -39,6 +45,8 @@ import com.google.common.io.ByteSource;
 final class MemoryBocas extends AbstractMemoryBocas {
 	/** Repository. */
 	private final ConcurrentMap<ByteString, MemoryByteSource> bucket = new MapMaker().makeMap();
+	/** Sorted keys, only used for scans. Keys are added after their entries. */
+	private final NavigableSet<ByteString> keys = new ConcurrentSkipListSet<ByteString>(InternalUtils.KEY_ORDER);
 
 	/** Constructor. */
 	MemoryBocas(BocasHashFunction function, MemoryByteSourceLoader loader) {
@@ -91,6 +99,20 @@ final class MemoryBocas extends AbstractMemoryBocas {
 		return Optional.fromNullable(value);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public final Optional<ByteSource> get(ByteString key, long offset, long length) {
+		BocasPreconditions.checkRange(offset, length);
+		ByteSource value = bucket.get(key);
+		if (value == null) {
+			return Optional.absent();
+		}
+		return Optional.of(InternalUtils.slice(value, offset, length));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
@@ -107,6 +129,28 @@ final class MemoryBocas extends AbstractMemoryBocas {
 		return map;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public final BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		BocasPreconditions.checkLimit(limit);
+		final ByteString after = BocasKeyPage.cursorKey(cursor);
+		final Set<ByteString> tail = after == null ? keys : keys.tailSet(after, false);
+		final List<ByteString> page = Lists.newArrayListWithCapacity(Math.min(limit, 1024));
+		final ImmutableMap.Builder<ByteString, Long> sizeMap = ImmutableMap.builder();
+		final Iterator<ByteString> it = tail.iterator();
+		while (page.size() < limit && it.hasNext()) {
+			final ByteString key = it.next();
+			page.add(key);
+			if (sizes) {
+				sizeMap.put(key, (long) bucket.get(key).size());
+			}
+		}
+		return BocasKeyPage.of(page, sizeMap.build(), BocasKeyPage.keyCursor(page, it.hasNext()));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.SkeletalBocas#put(net.derquinse.common.base.ByteString,
@@ -115,6 +159,7 @@ final class MemoryBocas extends AbstractMemoryBocas {
 	@Override
 	protected void put(ByteString key, MemoryByteSource value) {
 		bucket.putIfAbsent(key, value);
+		keys.add(key);
 	}
 
 	/*
@@ -124,6 +169,7 @@ final class MemoryBocas extends AbstractMemoryBocas {
 	@Override
 	protected void putAll(Map<ByteString, MemoryByteSource> entries) {
 		bucket.putAll(entries);
+		keys.addAll(entries.keySet());
 	}
 
 }
@@ -17,10 +17,14 @@ package net.derquinse.bocas;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static net.derquinse.bocas.BocasPreconditions.checkLoader;
+
+import javax.annotation.Nullable;
+
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -36,14 +40,21 @@ public final class MultiServiceGuavaCache {
 	private final MemoryByteSourceLoader loader;
 	/** Shared cache. */
 	private final Cache<ByteString, MemoryByteSource> cache;
+	/** Statistics of the loads of single entries. */
+	private final SimpleStatsCounter loads = new SimpleStatsCounter();
+	/** Negative cache, {@code null} if absent entries are not cached. */
+	@Nullable
+	private final Cache<BucketKey, Boolean> negative;
 	/** Service cache. */
 	private final LoadingCache<BocasService, Service> serviceCache = CacheBuilder.newBuilder().weakKeys()
 			.build(new ServiceLoader());
 
 	/** Constructor. */
-	MultiServiceGuavaCache(MemoryByteSourceLoader loader, Cache<ByteString, MemoryByteSource> cache) {
+	MultiServiceGuavaCache(MemoryByteSourceLoader loader, Cache<ByteString, MemoryByteSource> cache,
+			@Nullable Cache<BucketKey, Boolean> negative) {
 		this.loader = checkLoader(loader);
 		this.cache = checkNotNull(cache);
+		this.negative = negative;
 	}
 
 	/** Decorates a service, adding it to the cache. */
@@ -68,13 +79,23 @@ public final class MultiServiceGuavaCache {
 
 		@Override
 		public CacheStats stats() {
-			return cache.stats();
+			return cache.stats().plus(loads.snapshot());
+		}
+
+		@Override
+		public CacheStats negativeStats() {
+			return InternalUtils.stats(negative);
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do.
 		}
 
 		private final class BucketLoader extends CacheLoader<String, Bocas> {
 			@Override
 			public Bocas load(String key) throws Exception {
-				return new SharedGuavaCachingBocas(service.getBucket(key), loader, cache, true);
+				return new SharedGuavaCachingBocas(service.getBucket(key), loader, cache, loads, negative, true);
 			}
 		}
 
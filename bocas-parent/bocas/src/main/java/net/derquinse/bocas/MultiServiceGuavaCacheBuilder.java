@@ -25,7 +25,6 @@ import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 
 /**
  * Builder for a Guava-based cache for multiple services.
@@ -37,7 +36,7 @@ public final class MultiServiceGuavaCacheBuilder {
 	/** Memory loader to use. */
 	private MemoryByteSourceLoader loader = MemoryByteSourceLoader.get();
 	/** Internal builder. */
-	private final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+	private final EntryCacheBuilder builder = new EntryCacheBuilder();
 
 	/** Constructor. */
 	MultiServiceGuavaCacheBuilder() {
@@ -82,7 +81,7 @@ public final class MultiServiceGuavaCacheBuilder {
 	 */
 	public MultiServiceGuavaCacheBuilder maximumWeight(long weight) {
 		checkNotBuilt();
-		builder.maximumWeight(weight).weigher(EntryWeigher.INSTANCE);
+		builder.maximumWeight(weight);
 		return this;
 	}
 
@@ -107,6 +106,38 @@ public final class MultiServiceGuavaCacheBuilder {
 		return this;
 	}
 
+	/**
+	 * Specifies that the cache must use a W-TinyLFU policy instead of Guava's LRU-based eviction.
+	 * Entries are only admitted into the main region of the cache if they are used more often than
+	 * the ones they would evict, so bursts of entries that are read once (e.g., scans) don't flush
+	 * the working set. A maximum size or weight must be specified.
+	 * @throws IllegalStateException if the policy has already been set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public MultiServiceGuavaCacheBuilder tinyLfu() {
+		checkNotBuilt();
+		builder.tinyLfu();
+		return this;
+	}
+
+	/**
+	 * Specifies that absent entries must be remembered in a negative cache, so that repeated
+	 * lookups of missing keys are not sent to the cached buckets. Negative entries are removed after
+	 * the provided time and when the key is written through the caching bucket, but writes performed
+	 * directly on the cached buckets may not be seen until they expire.
+	 * @param size the maximum number of absent keys to remember
+	 * @param duration the length of time after an absent key is remembered that it should be removed
+	 * @param unit the unit that {@code duration} is expressed in
+	 * @throws IllegalArgumentException if {@code size} or {@code duration} are negative
+	 * @throws IllegalStateException if the negative cache has already been set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public MultiServiceGuavaCacheBuilder negativeCache(long size, long duration, TimeUnit unit) {
+		checkNotBuilt();
+		builder.negativeCache(size, duration, unit);
+		return this;
+	}
+
 	/**
 	 * Specifies the memory loader tu use.
 	 * @throws IllegalStateException if the service has already been built
@@ -124,8 +155,8 @@ public final class MultiServiceGuavaCacheBuilder {
 	public MultiServiceGuavaCache build() {
 		checkNotBuilt();
 		built = true;
-		Cache<ByteString, MemoryByteSource> cache = builder.build();
-		return new MultiServiceGuavaCache(loader, cache);
+		Cache<ByteString, MemoryByteSource> cache = builder.<ByteString> build();
+		return new MultiServiceGuavaCache(loader, cache, builder.buildNegative());
 	}
 
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+
+/**
+ * A memory-based Bocas bucket that keeps values off the heap. Values are copied into direct memory
+ * slabs and keys are indexed in a {@link OffHeapKeyIndex}, so the number of heap objects does not
+ * grow with the number of entries. Slabs are never compacted, which is fine as entries can't be
+ * removed, and they are released when the bucket is no longer reachable. Scans visit every entry,
+ * so their cost is linear in the size of the bucket.
+ * @author Andres Rodriguez.
+ */
+@Beta
+final class OffHeapBocas extends SimpleSkeletalBocas {
+	/** Default slab size. */
+	static final int DEFAULT_SLAB_SIZE = 1 << 20;
+	/** Number of index stripes. */
+	private static final int STRIPES = 64;
+
+	/** Key index. */
+	private final OffHeapKeyIndex index;
+	/** Slab size. */
+	private final int slabSize;
+	/** Allocated slabs. Replaced on growth, guarded by this for writes. */
+	private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+	/** Offset of the first free byte in the last slab. */
+	private int free = 0;
+	/** Current slab for small values, -1 if none. */
+	private int current = -1;
+
+	/**
+	 * Constructor.
+	 * @param function Hash function to use.
+	 * @param slabSize Slab size. Larger values get their own slab.
+	 */
+	OffHeapBocas(BocasHashFunction function, int slabSize) {
+		super(function);
+		checkArgument(slabSize > 0, "The slab size must be > 0");
+		this.index = new OffHeapKeyIndex(function.hash(ByteSource.empty()).size(), STRIPES);
+		this.slabSize = slabSize;
+	}
+
+	/** Returns the number of bytes of allocated slabs. */
+	synchronized long getAllocatedBytes() {
+		long n = 0;
+		for (ByteBuffer slab : slabs) {
+			n += slab.capacity();
+		}
+		return n;
+	}
+
+	/** Appends a new slab and returns its index. Must be called holding the lock. */
+	private int addSlab(int capacity) {
+		final ByteBuffer[] s = Arrays.copyOf(slabs, slabs.length + 1);
+		s[s.length - 1] = ByteBuffer.allocateDirect(capacity);
+		slabs = s;
+		return s.length - 1;
+	}
+
+	/** Allocates space for a value and returns its address: the slab index and the offset. */
+	private synchronized long allocate(int size) {
+		if (size > slabSize) {
+			return ((long) addSlab(size)) << 32;
+		}
+		if (current < 0 || slabSize - free < size) {
+			current = addSlab(slabSize);
+			free = 0;
+		}
+		final long address = (((long) current) << 32) | free;
+		free += size;
+		return address;
+	}
+
+	/** Returns a view of the stored value. */
+	private ByteBuffer region(long address, int length) {
+		final ByteBuffer buffer = slabs[(int) (address >>> 32)].duplicate();
+		final int offset = (int) address;
+		buffer.limit(offset + length).position(offset);
+		return buffer.slice();
+	}
+
+	/** Returns the value for an index entry, or {@code null} if not found. */
+	private ByteSource value(ByteString key) {
+		final long[] words = index.words(key);
+		if (words == null) {
+			return null;
+		}
+		final long[] entry = index.get(words);
+		if (entry == null) {
+			return null;
+		}
+		return new Value(region(entry[0], (int) entry[1]).asReadOnlyBuffer());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#close()
+	 */
+	@Override
+	public void close() {
+		// Nothing to do.
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public boolean contains(ByteString key) {
+		final long[] words = index.words(key);
+		return words != null && index.get(words) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#contained(java.lang.Iterable)
+	 */
+	@Override
+	public Set<ByteString> contained(Iterable<ByteString> keys) {
+		final ImmutableSet.Builder<ByteString> found = ImmutableSet.builder();
+		for (ByteString key : keys) {
+			if (contains(key)) {
+				found.add(key);
+			}
+		}
+		return found.build();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key) {
+		return Optional.fromNullable(value(key));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
+	 */
+	@Override
+	public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+		final Map<ByteString, ByteSource> map = Maps.newHashMap();
+		for (ByteString key : keys) {
+			final ByteSource value = value(key);
+			if (value != null) {
+				map.put(key, value);
+			}
+		}
+		return map;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		BocasPreconditions.checkLimit(limit);
+		final ByteString after = BocasKeyPage.cursorKey(cursor);
+		long[] afterWords = null;
+		if (after != null) {
+			afterWords = index.words(after);
+			if (afterWords == null) {
+				throw new IllegalArgumentException("Invalid cursor key size");
+			}
+		}
+		// A page can't be larger than the index, which also keeps the lookahead entry from overflowing.
+		final int max = (int) Math.max(1L, Math.min(limit, Math.min(index.size(), Integer.MAX_VALUE - 1)));
+		final List<long[]> entries = index.scan(afterWords, max + 1);
+		final boolean more = entries.size() > max;
+		final List<ByteString> keys = Lists.newArrayListWithCapacity(Math.min(max, entries.size()));
+		final ImmutableMap.Builder<ByteString, Long> sizeMap = ImmutableMap.builder();
+		for (long[] entry : entries.subList(0, Math.min(max, entries.size()))) {
+			final ByteString key = index.key(entry);
+			keys.add(key);
+			if (sizes) {
+				sizeMap.put(key, entry[entry.length - 1]);
+			}
+		}
+		return BocasKeyPage.of(keys, sizeMap.build(), BocasKeyPage.keyCursor(keys, more));
+	}
+
+	/**
+	 * Copies the value into the slabs, unless the key is already present. Concurrent puts of the same
+	 * value may waste the space of all but one of the copies.
+	 * @see net.derquinse.bocas.SkeletalBocas#put(net.derquinse.common.base.ByteString,
+	 * com.google.common.io.ByteSource)
+	 */
+	@Override
+	protected void put(ByteString key, ByteSource value) {
+		final long[] words = index.words(key);
+		if (index.get(words) != null) {
+			return;
+		}
+		try {
+			final byte[] bytes;
+			final long size;
+			if (value instanceof MemoryByteSource) {
+				bytes = null;
+				size = value.size();
+			} else {
+				bytes = value.read();
+				size = bytes.length;
+			}
+			checkArgument(size <= Integer.MAX_VALUE, "Value too large");
+			final long address = allocate((int) size);
+			final ByteBuffer region = region(address, (int) size);
+			if (bytes != null) {
+				region.put(bytes);
+			} else {
+				value.copyTo(new BufferOutputStream(region));
+			}
+			index.insert(words, address, (int) size);
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#putAll(java.util.Map)
+	 */
+	@Override
+	protected void putAll(Map<ByteString, ByteSource> entries) {
+		for (Map.Entry<ByteString, ByteSource> entry : entries.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/** Stored value, backed by a read-only slab region. */
+	static final class Value extends ByteSource {
+		/** Value bytes. */
+		private final ByteBuffer buffer;
+
+		Value(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public InputStream openStream() {
+			return new BufferInputStream(buffer.duplicate());
+		}
+
+		@Override
+		public long size() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public byte[] read() {
+			final byte[] bytes = new byte[buffer.remaining()];
+			buffer.duplicate().get(bytes);
+			return bytes;
+		}
+
+		@Override
+		public ByteSource slice(long offset, long length) {
+			checkArgument(offset >= 0 && length >= 0, "Offset and length must be >= 0");
+			final int size = buffer.remaining();
+			final int from = (int) Math.min(offset, size);
+			final int to = (int) Math.min(from + length, size);
+			final ByteBuffer b = buffer.duplicate();
+			b.limit(to).position(from);
+			return new Value(b.slice());
+		}
+	}
+
+	/** Input stream over a buffer. */
+	private static final class BufferInputStream extends InputStream {
+		/** Buffer to read. */
+		private final ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			final int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + k);
+			return k;
+		}
+	}
+
+	/** Output stream writing into a buffer of the exact size. */
+	static final class BufferOutputStream extends OutputStream {
+		/** Buffer to write. */
+		private final ByteBuffer buffer;
+
+		BufferOutputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public void write(int b) {
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			buffer.put(b, off, len);
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedLongs;
+
+/**
+ * Lock-striped open-addressing index of fixed size keys stored in primitive long arrays, so that
+ * no objects are allocated per entry. Each slot holds the key as big-endian words, followed by the
+ * value address and the value length plus one (so that zero marks an empty slot). Entries can't
+ * be removed.
+ * @author Andres Rodriguez.
+ */
+@Beta
+final class OffHeapKeyIndex {
+	/** Maximum load factor of each stripe table. */
+	private static final double LOAD_FACTOR = 0.75;
+	/** Initial number of slots of each stripe table. */
+	private static final int INITIAL_SLOTS = 16;
+
+	/** Key size in bytes. */
+	private final int keySize;
+	/** Number of words per key. */
+	private final int keyWords;
+	/** Number of words per slot. */
+	private final int stride;
+	/** Stripes. */
+	private final Stripe[] stripes;
+
+	/** Returns the first power of two greater or equal than the argument. */
+	private static int powerOfTwo(int n) {
+		int p = 1;
+		while (p < n) {
+			p <<= 1;
+		}
+		return p;
+	}
+
+	/** Mixes the key words into a well distributed hash (MurmurHash3 finalizer). */
+	private static long hash(long[] words) {
+		long h = 0;
+		for (long w : words) {
+			h = (h ^ w) * 0xc4ceb9fe1a85ec53L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Constructor.
+	 * @param keySize Key size in bytes.
+	 * @param concurrency Expected number of concurrent writers.
+	 */
+	OffHeapKeyIndex(int keySize, int concurrency) {
+		checkArgument(keySize > 0, "The key size must be > 0");
+		checkArgument(concurrency > 0, "The concurrency level must be > 0");
+		this.keySize = keySize;
+		this.keyWords = (keySize + 7) / 8;
+		this.stride = keyWords + 2;
+		this.stripes = new Stripe[powerOfTwo(concurrency)];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/** Returns the words of a key, or {@code null} if the key has the wrong size. */
+	@Nullable
+	long[] words(ByteString key) {
+		if (key.size() != keySize) {
+			return null;
+		}
+		final long[] words = new long[keyWords];
+		for (int i = 0; i < keySize; i++) {
+			words[i >>> 3] |= (key.byteAt(i) & 0xffL) << (56 - ((i & 7) << 3));
+		}
+		return words;
+	}
+
+	/** Rebuilds a key from its words. */
+	ByteString key(long[] words) {
+		final byte[] bytes = new byte[keySize];
+		for (int i = 0; i < keySize; i++) {
+			bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+		}
+		return ByteString.copyFrom(bytes);
+	}
+
+	/** Compares two key words arrays in unsigned lexicographical order. */
+	private int compare(long[] a, int aBase, long[] b, int bBase) {
+		for (int i = 0; i < keyWords; i++) {
+			final int c = UnsignedLongs.compare(a[aBase + i], b[bBase + i]);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private Stripe stripe(long hash) {
+		return stripes[(int) (hash >>> 40) & (stripes.length - 1)];
+	}
+
+	/** Returns the number of entries. */
+	long size() {
+		long n = 0;
+		for (Stripe s : stripes) {
+			n += s.size();
+		}
+		return n;
+	}
+
+	/**
+	 * Looks up a key.
+	 * @return The value address followed by the value length, or {@code null} if not found.
+	 */
+	@Nullable
+	long[] get(long[] words) {
+		final long h = hash(words);
+		return stripe(h).get(words, h);
+	}
+
+	/**
+	 * Inserts an entry if the key is not already present.
+	 * @return Whether the entry has been inserted.
+	 */
+	boolean insert(long[] words, long address, int length) {
+		final long h = hash(words);
+		return stripe(h).insert(words, h, address, length);
+	}
+
+	/**
+	 * Returns the smallest keys greater than the provided one, in order. Every entry is visited, so
+	 * the cost is linear in the size of the index.
+	 * @param after Key words to start after, {@code null} to start at the beginning.
+	 * @param limit Maximum number of entries to return.
+	 * @return The key words of each entry followed by the value length.
+	 */
+	List<long[]> scan(@Nullable long[] after, int limit) {
+		// Max-heap of the smallest entries found so far. It grows as needed.
+		final int capacity = Math.min(limit, 1024) + 1;
+		final PriorityQueue<long[]> heap = new PriorityQueue<long[]>(capacity, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] o1, long[] o2) {
+				return OffHeapKeyIndex.this.compare(o2, 0, o1, 0);
+			}
+		});
+		for (Stripe s : stripes) {
+			s.scan(after, limit, heap);
+		}
+		final List<long[]> entries = Lists.newArrayList(heap);
+		Collections.sort(entries, Collections.reverseOrder(heap.comparator()));
+		return entries;
+	}
+
+	/** Index stripe, with its own table and lock. */
+	private final class Stripe {
+		/** Lock. */
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		/** Table. */
+		private long[] table = new long[INITIAL_SLOTS * stride];
+		/** Number of slots. */
+		private int slots = INITIAL_SLOTS;
+		/** Number of entries. */
+		private int size = 0;
+
+		int size() {
+			lock.readLock().lock();
+			try {
+				return size;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/** Returns the base index of the slot of a key, which is empty if the key is not present. */
+		private int find(long[] t, int n, long[] words, long hash) {
+			int slot = (int) hash & (n - 1);
+			while (true) {
+				final int base = slot * stride;
+				if (t[base + keyWords + 1] == 0 || compare(t, base, words, 0) == 0) {
+					return base;
+				}
+				slot = (slot + 1) & (n - 1);
+			}
+		}
+
+		long[] get(long[] words, long hash) {
+			lock.readLock().lock();
+			try {
+				final int base = find(table, slots, words, hash);
+				final long length = table[base + keyWords + 1];
+				if (length == 0) {
+					return null;
+				}
+				return new long[] { table[base + keyWords], length - 1 };
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		boolean insert(long[] words, long hash, long address, int length) {
+			lock.writeLock().lock();
+			try {
+				int base = find(table, slots, words, hash);
+				if (table[base + keyWords + 1] != 0) {
+					return false;
+				}
+				if (size + 1 > slots * LOAD_FACTOR) {
+					resize();
+					base = find(table, slots, words, hash);
+				}
+				System.arraycopy(words, 0, table, base, keyWords);
+				table[base + keyWords] = address;
+				table[base + keyWords + 1] = length + 1L;
+				size++;
+				return true;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		/** Doubles the table size. Must be called with the write lock held. */
+		private void resize() {
+			final int n = slots << 1;
+			checkState(n > 0 && (long) n * stride <= Integer.MAX_VALUE, "Index stripe full");
+			final long[] t = new long[n * stride];
+			final long[] words = new long[keyWords];
+			for (int base = 0; base < table.length; base += stride) {
+				if (table[base + keyWords + 1] != 0) {
+					System.arraycopy(table, base, words, 0, keyWords);
+					System.arraycopy(table, base, t, find(t, n, words, hash(words)), stride);
+				}
+			}
+			table = t;
+			slots = n;
+		}
+
+		void scan(@Nullable long[] after, int limit, PriorityQueue<long[]> heap) {
+			lock.readLock().lock();
+			try {
+				for (int base = 0; base < table.length; base += stride) {
+					final long length = table[base + keyWords + 1];
+					if (length == 0 || (after != null && compare(table, base, after, 0) <= 0)) {
+						continue;
+					}
+					if (heap.size() == limit && compare(table, base, heap.peek(), 0) >= 0) {
+						continue;
+					}
+					final long[] entry = new long[keyWords + 1];
+					System.arraycopy(table, base, entry, 0, keyWords);
+					entry[keyWords] = length - 1;
+					heap.add(entry);
+					if (heap.size() > limit) {
+						heap.poll();
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+	}
+}
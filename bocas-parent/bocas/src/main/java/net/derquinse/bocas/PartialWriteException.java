@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Exception thrown by synchronously replicated buckets when the primary bucket or more replicas
+ * than allowed by the write quorum fail. The entries may have been written to some of the buckets.
+ * @author Andres Rodriguez
+ */
+public class PartialWriteException extends BocasException {
+	/** Serial UID. */
+	private static final long serialVersionUID = 2405912364391723618L;
+
+	/** Primary failure, {@code null} if the primary was written or not attempted. */
+	private final Throwable primaryFailure;
+	/** Replica failures, with {@code null} elements for the rest of the replicas. */
+	private final List<Throwable> replicaFailures;
+
+	private static String message(@Nullable Throwable primaryFailure, List<Throwable> replicaFailures) {
+		final StringBuilder b = new StringBuilder("Partial write. Failed:");
+		if (primaryFailure != null) {
+			b.append(" primary");
+		}
+		for (int i = 0; i < replicaFailures.size(); i++) {
+			if (replicaFailures.get(i) != null) {
+				b.append(" replica ").append(i);
+			}
+		}
+		return b.toString();
+	}
+
+	private static Throwable firstCause(@Nullable Throwable primaryFailure, List<Throwable> replicaFailures) {
+		if (primaryFailure != null) {
+			return primaryFailure;
+		}
+		for (Throwable t : replicaFailures) {
+			if (t != null) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	PartialWriteException(@Nullable Throwable primaryFailure, List<Throwable> replicaFailures) {
+		super(message(primaryFailure, replicaFailures), firstCause(primaryFailure, replicaFailures));
+		this.primaryFailure = primaryFailure;
+		this.replicaFailures = Collections.unmodifiableList(replicaFailures);
+	}
+
+	/** Returns the primary failure, or {@code null} if the primary was written or not attempted. */
+	@Nullable
+	public Throwable getPrimaryFailure() {
+		return primaryFailure;
+	}
+
+	/**
+	 * Returns the replica failures, in the order the replicas were provided. Elements are
+	 * {@code null} for replicas written, not attempted or still in progress.
+	 */
+	public List<Throwable> getReplicaFailures() {
+		return replicaFailures;
+	}
+}
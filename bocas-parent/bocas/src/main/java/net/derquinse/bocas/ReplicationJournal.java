@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Append-only journal of the keys pending replication. The file starts with the offset of the first
+ * pending entry, followed by fixed-size key entries in write order. Entries are committed in order
+ * once replicated, and the file is truncated when every entry has been committed. If the queue is
+ * never drained, the pending entries are moved to the start of the file once the committed ones take
+ * more space than them and a minimum size, so the file does not grow without bound. Not thread-safe.
+ * @author Andres Rodriguez.
+ */
+final class ReplicationJournal implements Closeable {
+	/** Header size. */
+	private static final int HEADER = 8;
+	/** Default minimum number of committed bytes before compacting. */
+	private static final long COMPACTION = 1L << 20;
+	/** Maximum size of the compaction buffer. */
+	private static final int BUFFER = 64 * 1024;
+
+	/** Journal file. */
+	private final RandomAccessFile file;
+	/** File channel. */
+	private final FileChannel channel;
+	/** Key size. */
+	private final int keySize;
+	/** Whether to force every change to the storage device. */
+	private final boolean sync;
+	/** Minimum number of committed bytes before compacting. */
+	private final long compaction;
+	/** Offset of the first pending entry. */
+	private long committed;
+	/** File length. */
+	private long length;
+
+	/**
+	 * Constructor. Opens or creates the journal, discarding any partially written entry.
+	 * @param f Journal file.
+	 * @param keySize Key size in bytes.
+	 * @param sync Whether to force every change to the storage device.
+	 */
+	ReplicationJournal(File f, int keySize, boolean sync) throws IOException {
+		this(f, keySize, sync, COMPACTION);
+	}
+
+	/**
+	 * Constructor. Opens or creates the journal, discarding any partially written entry.
+	 * @param f Journal file.
+	 * @param keySize Key size in bytes.
+	 * @param sync Whether to force every change to the storage device.
+	 * @param compaction Minimum number of committed bytes before compacting.
+	 */
+	ReplicationJournal(File f, int keySize, boolean sync, long compaction) throws IOException {
+		checkArgument(keySize > 0, "The key size must be > 0");
+		checkArgument(compaction >= 0, "The compaction threshold must be >= 0");
+		this.compaction = compaction;
+		this.file = new RandomAccessFile(f, "rw");
+		this.channel = file.getChannel();
+		this.keySize = keySize;
+		this.sync = sync;
+		boolean ok = false;
+		try {
+			long n = file.length();
+			if (n < HEADER) {
+				writeCommitted(HEADER);
+				n = HEADER;
+			} else {
+				file.seek(0);
+				committed = file.readLong();
+			}
+			length = n - (n - HEADER) % keySize;
+			if (committed < HEADER || committed > length || (committed - HEADER) % keySize != 0) {
+				throw new IOException("Invalid replication journal " + f);
+			}
+			file.setLength(length);
+			ok = true;
+		} finally {
+			if (!ok) {
+				file.close();
+			}
+		}
+	}
+
+	private void writeCommitted(long offset) throws IOException {
+		file.seek(0);
+		file.writeLong(offset);
+		committed = offset;
+	}
+
+	/** Returns the pending entries. */
+	List<ByteString> pending() throws IOException {
+		final int n = (int) ((length - committed) / keySize);
+		final List<ByteString> keys = Lists.newArrayListWithCapacity(n);
+		final byte[] key = new byte[keySize];
+		file.seek(committed);
+		for (int i = 0; i < n; i++) {
+			file.readFully(key);
+			keys.add(ByteString.copyFrom(key));
+		}
+		return keys;
+	}
+
+	/** Appends entries. */
+	void append(Collection<ByteString> keys) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(keys.size() * keySize);
+		for (ByteString key : keys) {
+			checkArgument(key.size() == keySize, "Invalid key size");
+			buffer.put(key.toByteArray());
+		}
+		buffer.flip();
+		long position = length;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		length = position;
+		if (sync) {
+			channel.force(false);
+		}
+	}
+
+	/** Commits the provided number of entries. */
+	void commit(int entries) throws IOException {
+		final long offset = committed + (long) entries * keySize;
+		checkArgument(offset <= length, "Not enough entries to commit");
+		if (offset == length) {
+			// A crash before truncating only leads to replicating the entries again.
+			writeCommitted(HEADER);
+			file.setLength(HEADER);
+			length = HEADER;
+		} else if (offset - HEADER >= compaction && offset - HEADER >= length - offset) {
+			compact(offset);
+		} else {
+			writeCommitted(offset);
+		}
+		if (sync) {
+			channel.force(true);
+		}
+	}
+
+	/** Moves the entries pending after committing up to the provided offset to the start of the file. */
+	private void compact(long offset) throws IOException {
+		// The pending entries fit in the committed space, so they are not overwritten while moved.
+		final long pending = length - offset;
+		final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(pending, BUFFER));
+		long from = offset;
+		long to = HEADER;
+		while (from < length) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), length - from));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, from + buffer.position()) < 0) {
+					throw new EOFException();
+				}
+			}
+			buffer.flip();
+			from += buffer.remaining();
+			while (buffer.hasRemaining()) {
+				to += channel.write(buffer, to);
+			}
+		}
+		if (sync) {
+			channel.force(false);
+		}
+		// A crash before truncating only leads to replicating some entries again.
+		writeCommitted(HEADER);
+		length = HEADER + pending;
+		file.setLength(length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+/**
+ * Scalable Bloom filter over bocas keys. It is a chain of Guava Bloom filters: when the last one
+ * reaches its expected number of insertions a new one, twice as large and with half the false
+ * positive probability, is added, so the overall probability stays below the configured one no
+ * matter how many keys are added. This class is not thread safe.
+ * @author Andres Rodriguez.
+ */
+final class ScalableBloomFilter {
+	/** Serialization magic number. */
+	private static final int MAGIC = 0xB0CA5B1F;
+	/** Serialization format version. */
+	private static final int VERSION = 1;
+	/** Tightening ratio of the false positive probability. */
+	private static final double TIGHTENING = 0.5;
+
+	/** Key funnel. */
+	private enum KeyFunnel implements Funnel<ByteString> {
+		INSTANCE;
+
+		@Override
+		public void funnel(ByteString from, PrimitiveSink into) {
+			into.putBytes(from.toByteArray());
+		}
+	}
+
+	/** Expected insertions of the first filter. */
+	private final int expectedInsertions;
+	/** Overall false positive probability. */
+	private final double fpp;
+	/** Filters. */
+	private final List<BloomFilter<ByteString>> filters = Lists.newArrayList();
+	/** Capacity of the last filter. */
+	private long capacity;
+	/** Insertions in the last filter. */
+	private long count;
+
+	/**
+	 * Constructor.
+	 * @param expectedInsertions Expected insertions of the first filter.
+	 * @param fpp Overall false positive probability.
+	 */
+	ScalableBloomFilter(int expectedInsertions, double fpp) {
+		checkArgument(expectedInsertions > 0, "The number of expected insertions must be > 0");
+		checkArgument(fpp > 0.0 && fpp < 1.0, "The false positive probability must be in (0.0, 1.0)");
+		this.expectedInsertions = expectedInsertions;
+		this.fpp = fpp;
+	}
+
+	/** Returns the expected insertions of the first filter. */
+	int getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	/** Returns the overall false positive probability. */
+	double getFpp() {
+		return fpp;
+	}
+
+	/** Returns whether the key might have been put in the filter. */
+	boolean mightContain(ByteString key) {
+		for (BloomFilter<ByteString> filter : filters) {
+			if (filter.mightContain(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Puts a key into the filter. */
+	void put(ByteString key) {
+		if (filters.isEmpty() || count >= capacity) {
+			final int n = filters.size();
+			capacity = Math.min(Integer.MAX_VALUE, (long) expectedInsertions << Math.min(n, 31));
+			final double p = Math.max(Double.MIN_NORMAL, fpp * (1 - TIGHTENING) * Math.pow(TIGHTENING, n));
+			filters.add(BloomFilter.create(KeyFunnel.INSTANCE, (int) capacity, p));
+			count = 0;
+		}
+		if (filters.get(filters.size() - 1).put(key)) {
+			count++;
+		}
+	}
+
+	/** Writes the filter to an output stream, which is not closed. */
+	void writeTo(OutputStream os) throws IOException {
+		final DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(expectedInsertions);
+		out.writeDouble(fpp);
+		out.writeLong(capacity);
+		out.writeLong(count);
+		out.writeInt(filters.size());
+		for (BloomFilter<ByteString> filter : filters) {
+			filter.writeTo(out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a filter written by {@link #writeTo(OutputStream)} from an input stream, which is not
+	 * closed.
+	 * @throws IOException if the stream does not contain a valid filter.
+	 */
+	static ScalableBloomFilter readFrom(InputStream is) throws IOException {
+		final DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Invalid Bloom filter format");
+		}
+		final ScalableBloomFilter f;
+		try {
+			f = new ScalableBloomFilter(in.readInt(), in.readDouble());
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+		f.capacity = in.readLong();
+		f.count = in.readLong();
+		final int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			f.filters.add(BloomFilter.readFrom(in, KeyFunnel.INSTANCE));
+		}
+		return f;
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+
+/**
+ * Asynchronous promotion of the entries found in the seed of a seeded bucket into its primary.
+ * Promotions of entries already in flight are ignored, and promotions are dropped if the number of
+ * entries in flight reaches the capacity, so reads are never blocked.
+ * @author Andres Rodriguez.
+ */
+final class SeedPromoter {
+	/** Primary bucket. */
+	private final Bocas primary;
+	/** Executor for the writes. */
+	private final Executor executor;
+	/** Maximum number of entries in flight. */
+	private final int capacity;
+	/** Keys in flight. */
+	private final Set<ByteString> inFlight = Sets.newConcurrentHashSet();
+	/** Number of entries in flight. */
+	private final AtomicInteger pending = new AtomicInteger();
+	/** Number of entries promoted. */
+	private final AtomicLong promoted = new AtomicLong();
+	/** Number of promotions dropped or failed. */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Constructor. */
+	SeedPromoter(Bocas primary, Executor executor, int capacity) {
+		this.primary = checkNotNull(primary, "The primary bucket must be provided");
+		this.executor = checkNotNull(executor, "The executor must be provided");
+		checkArgument(capacity > 0, "The promotion capacity must be > 0");
+		this.capacity = capacity;
+	}
+
+	/** Promotes an entry found in the seed. */
+	void promote(ByteString key, ByteSource value) {
+		promote(ImmutableMap.of(key, value));
+	}
+
+	/** Promotes entries found in the seed. */
+	void promote(Map<ByteString, ByteSource> entries) {
+		final ImmutableMap.Builder<ByteString, ByteSource> builder = ImmutableMap.builder();
+		int n = 0;
+		for (Entry<ByteString, ByteSource> entry : entries.entrySet()) {
+			if (inFlight.contains(entry.getKey())) {
+				continue;
+			}
+			if (pending.incrementAndGet() > capacity) {
+				pending.decrementAndGet();
+				dropped.incrementAndGet();
+			} else if (inFlight.add(entry.getKey())) {
+				builder.put(entry);
+				n++;
+			} else {
+				pending.decrementAndGet();
+			}
+		}
+		if (n == 0) {
+			return;
+		}
+		final Map<ByteString, ByteSource> batch = builder.build();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						primary.putAll(batch.values());
+						promoted.addAndGet(batch.size());
+					} catch (RuntimeException e) {
+						dropped.addAndGet(batch.size());
+					} finally {
+						done(batch);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			dropped.addAndGet(n);
+			done(batch);
+		}
+	}
+
+	private void done(Map<ByteString, ByteSource> batch) {
+		inFlight.removeAll(batch.keySet());
+		pending.addAndGet(-batch.size());
+	}
+
+	/** Returns the number of entries in flight. */
+	int getPendingCount() {
+		return pending.get();
+	}
+
+	/** Returns the number of entries promoted. */
+	long getPromotedCount() {
+		return promoted.get();
+	}
+
+	/** Returns the number of promotions dropped because the capacity was reached or the write failed. */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+}
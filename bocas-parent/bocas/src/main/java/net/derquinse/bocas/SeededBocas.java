@@ -20,20 +20,34 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nullable;
 
 import net.derquinse.common.base.ByteString;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * A Bocas transformer that fetches entries missing in the primary repository from the provided
- * seed. Closing is a no-op.
+ * seed. Closing is a no-op. Scans only return the keys in the primary repository. Reads may be
+ * hedged, in which case they are sent to both repositories and the first complete answer wins.
+ * <p>
+ * Entries found in the seed may be promoted, i.e., written into the primary asynchronously. Bulk
+ * reads may be speculative, probing both repositories in parallel when the estimated hit rate of
+ * the primary is low.
  * @author Andres Rodriguez.
  */
 @Beta
@@ -42,14 +56,113 @@ final class SeededBocas extends ForwardingBocas {
 	private final Bocas primary;
 	/** Seed repository. */
 	private final Bocas seed;
+	/** Weight of each request in the primary hit rate estimate. */
+	private static final double ALPHA = 0.05;
+
+	/** Hedged reads, {@code null} if the seed is only asked for entries missing in the primary. */
+	@Nullable
+	private final HedgedReads reads;
+	/** Promoter of seed hits, {@code null} if they are not promoted. */
+	@Nullable
+	private final SeedPromoter promoter;
+	/** Executor for speculative probes of the seed, {@code null} if not used. */
+	@Nullable
+	private final Executor executor;
+	/** Primary hit rate below which bulk reads probe both repositories in parallel. */
+	private final double speculativeHitRate;
+	/** Estimated primary hit rate. */
+	private volatile double hitRate = 1.0;
 
 	/** Constructor. */
 	SeededBocas(Bocas primary, Bocas seed) {
+		this(primary, seed, null);
+	}
+
+	/** Constructor. */
+	SeededBocas(Bocas primary, Bocas seed, @Nullable HedgedReads reads) {
+		this(primary, seed, reads, null, 0, 0.0);
+	}
+
+	/**
+	 * Constructor.
+	 * @param primary Primary repository.
+	 * @param seed Seed repository.
+	 * @param reads Hedged reads, {@code null} if the seed is only asked for entries missing in the
+	 *          primary.
+	 * @param executor Executor for promotions and speculative probes.
+	 * @param promotionCapacity Maximum number of seed hits being promoted, zero to disable promotion.
+	 * @param speculativeHitRate Primary hit rate below which bulk reads probe both repositories in
+	 *          parallel, zero to disable speculative probes.
+	 */
+	SeededBocas(Bocas primary, Bocas seed, @Nullable HedgedReads reads, @Nullable Executor executor,
+			int promotionCapacity, double speculativeHitRate) {
 		this.primary = checkNotNull(primary, "The primary repository must be provided");
 		this.seed = checkNotNull(seed, "The seed repository must be provided");
 		checkArgument(primary != seed, "Primary and seed repositories should not be the same");
 		checkArgument(primary.getHashFunction().equals(seed.getHashFunction()),
 				"The primary and replica hash functions must be the same");
+		this.reads = reads;
+		checkArgument(executor != null || (promotionCapacity == 0 && speculativeHitRate <= 0.0),
+				"An executor must be provided for promotions and speculative probes");
+		this.promoter = promotionCapacity > 0 ? new SeedPromoter(primary, executor, promotionCapacity) : null;
+		this.executor = executor;
+		this.speculativeHitRate = speculativeHitRate;
+	}
+
+	/** Returns the promoter, or {@code null} if seed hits are not promoted. */
+	@Nullable
+	SeedPromoter getPromoter() {
+		return promoter;
+	}
+
+	/** Returns the estimated primary hit rate. */
+	double getHitRate() {
+		return hitRate;
+	}
+
+	/** Records the result of a primary read. */
+	private void record(int hits, int requested) {
+		final double h = hitRate;
+		hitRate = h + ALPHA * ((double) hits / requested - h);
+	}
+
+	/** Returns whether bulk reads must probe both repositories in parallel. */
+	private boolean isSpeculative() {
+		return hitRate < speculativeHitRate;
+	}
+
+	/** Starts a probe of the seed. */
+	private <T> FutureTask<T> probe(Callable<T> callable) {
+		final FutureTask<T> task = new FutureTask<T>(callable);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+		return task;
+	}
+
+	/** Returns the result of a probe of the seed. */
+	private static <T> T join(FutureTask<T> task) {
+		try {
+			return Uninterruptibles.getUninterruptibly(task);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new BocasException(cause);
+		}
+	}
+
+	/** Promotes seed hits if enabled. */
+	private void promote(Map<ByteString, ByteSource> found) {
+		if (promoter != null && !found.isEmpty()) {
+			promoter.promote(found);
+		}
 	}
 
 	@Override
@@ -83,9 +196,14 @@ final class SeededBocas extends ForwardingBocas {
 	 */
 	@Override
 	public boolean contains(ByteString key) {
+		if (reads != null) {
+			return reads.contains(key);
+		}
 		if (primary.contains(key)) {
+			record(1, 1);
 			return true;
 		}
+		record(0, 1);
 		return seed.contains(key);
 	}
 
@@ -99,7 +217,26 @@ final class SeededBocas extends ForwardingBocas {
 		if (requested.isEmpty()) {
 			return ImmutableSet.of();
 		}
+		if (reads != null) {
+			return reads.contained(requested);
+		}
+		if (isSpeculative()) {
+			final FutureTask<Set<ByteString>> inSeed = probe(new Callable<Set<ByteString>>() {
+				@Override
+				public Set<ByteString> call() throws Exception {
+					return seed.contained(requested);
+				}
+			});
+			final Set<ByteString> inPrimary = primary.contained(requested);
+			record(inPrimary.size(), requested.size());
+			if (inPrimary.size() >= requested.size()) {
+				inSeed.cancel(true);
+				return inPrimary;
+			}
+			return Sets.union(inPrimary, join(inSeed)).immutableCopy();
+		}
 		Set<ByteString> inPrimary = primary.contained(requested);
+		record(inPrimary.size(), requested.size());
 		Set<ByteString> askSeed = Sets.difference(requested, inPrimary).immutableCopy();
 		if (askSeed.isEmpty()) {
 			return inPrimary;
@@ -114,11 +251,36 @@ final class SeededBocas extends ForwardingBocas {
 	 */
 	@Override
 	public Optional<ByteSource> get(ByteString key) {
+		if (reads != null) {
+			return reads.get(key);
+		}
 		Optional<ByteSource> p = primary.get(key);
+		if (p.isPresent()) {
+			record(1, 1);
+			return p;
+		}
+		record(0, 1);
+		Optional<ByteSource> s = seed.get(key);
+		if (s.isPresent() && promoter != null) {
+			promoter.promote(key, s.get());
+		}
+		return s;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.ForwardingBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		if (reads != null) {
+			return reads.get(key, offset, length);
+		}
+		Optional<ByteSource> p = primary.get(key, offset, length);
 		if (p.isPresent()) {
 			return p;
 		} else {
-			return seed.get(key);
+			return seed.get(key, offset, length);
 		}
 	}
 
@@ -132,7 +294,30 @@ final class SeededBocas extends ForwardingBocas {
 		if (requested.isEmpty()) {
 			return ImmutableMap.of();
 		}
+		if (reads != null) {
+			return reads.get(requested);
+		}
+		if (isSpeculative()) {
+			final FutureTask<Map<ByteString, ByteSource>> inSeed = probe(new Callable<Map<ByteString, ByteSource>>() {
+				@Override
+				public Map<ByteString, ByteSource> call() throws Exception {
+					return seed.get(requested);
+				}
+			});
+			final Map<ByteString, ByteSource> inPrimary = primary.get(requested);
+			record(inPrimary.size(), requested.size());
+			if (inPrimary.size() >= requested.size()) {
+				inSeed.cancel(true);
+				return inPrimary;
+			}
+			final Map<ByteString, ByteSource> inSecondary = Maps.newHashMap(Maps.filterKeys(join(inSeed),
+					Predicates.not(Predicates.in(inPrimary.keySet()))));
+			promote(inSecondary);
+			inSecondary.putAll(inPrimary);
+			return inSecondary;
+		}
 		Map<ByteString, ByteSource> inPrimary = primary.get(requested);
+		record(inPrimary.size(), requested.size());
 		Set<ByteString> askFallback = Sets.difference(requested, inPrimary.keySet()).immutableCopy();
 		if (askFallback.isEmpty()) {
 			return inPrimary;
@@ -141,6 +326,7 @@ final class SeededBocas extends ForwardingBocas {
 		if (inSecondary.isEmpty()) {
 			return inPrimary;
 		}
+		promote(inSecondary);
 		Map<ByteString, ByteSource> total = Maps.newHashMap(inPrimary);
 		total.putAll(inSecondary);
 		return total;
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.Beta;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Builder for seeded buckets, which fetch the entries missing in a primary bucket from a seed.
+ * @see BocasServices#seeded(Bocas, Bocas)
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class SeededBocasBuilder {
+	/** Number of threads of the default executor. */
+	private static final int DEFAULT_THREADS = 4;
+	/** Queue capacity of the default executor. */
+	private static final int DEFAULT_QUEUE = 256;
+
+	/** Whether the bucket has already been built. */
+	private boolean built = false;
+	/** Executor for promotions and speculative probes, {@code null} for the default one. */
+	private Executor executor = null;
+	/** Maximum number of seed hits being promoted, zero if not promoted. */
+	private int promotionCapacity = 0;
+	/** Primary hit rate below which bulk reads are speculative, zero if not used. */
+	private double speculativeHitRate = 0.0;
+
+	/** Constructor. */
+	SeededBocasBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The bucket has already been built");
+	}
+
+	/**
+	 * Specifies the executor for promotions and speculative probes. The default is a pool of 4 daemon
+	 * threads with a queue of 256 tasks. Rejected promotions are dropped and rejected probes are run
+	 * by the caller.
+	 * @throws IllegalStateException if the bucket has already been built
+	 */
+	public SeededBocasBuilder executor(Executor executor) {
+		checkNotBuilt();
+		this.executor = checkNotNull(executor, "The executor must be provided");
+		return this;
+	}
+
+	/**
+	 * Specifies that entries found in the seed must be written into the primary asynchronously, so
+	 * that they are not fetched from the seed again. Promotions of entries already being promoted are
+	 * ignored, and promotions are dropped while the number of entries being promoted is at the
+	 * provided capacity, so reads are never blocked.
+	 * @param capacity Maximum number of entries being promoted.
+	 * @throws IllegalArgumentException if the capacity is not > 0
+	 * @throws IllegalStateException if the bucket has already been built
+	 */
+	public SeededBocasBuilder promote(int capacity) {
+		checkNotBuilt();
+		checkArgument(capacity > 0, "The promotion capacity must be > 0");
+		this.promotionCapacity = capacity;
+		return this;
+	}
+
+	/**
+	 * Specifies that bulk reads must probe the primary and the seed in parallel while the estimated
+	 * hit rate of the primary is below the provided value, instead of asking the seed for the entries
+	 * missing in the primary afterwards. The hit rate is estimated with a moving average of the
+	 * recent reads and starts at one.
+	 * @param hitRate Primary hit rate in (0, 1].
+	 * @throws IllegalArgumentException if the hit rate is not in (0, 1]
+	 * @throws IllegalStateException if the bucket has already been built
+	 */
+	public SeededBocasBuilder speculative(double hitRate) {
+		checkNotBuilt();
+		checkArgument(hitRate > 0.0 && hitRate <= 1.0, "The hit rate must be in (0, 1]");
+		this.speculativeHitRate = hitRate;
+		return this;
+	}
+
+	/**
+	 * Builds a seeded bucket. Writes are not propagated to the seed. Closing is a no-op.
+	 * @param primary Primary bucket.
+	 * @param seed Seed bucket.
+	 */
+	public Bocas build(Bocas primary, Bocas seed) {
+		checkNotBuilt();
+		built = true;
+		Executor e = executor;
+		if (e == null && (promotionCapacity > 0 || speculativeHitRate > 0.0)) {
+			final ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60L,
+					TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE), new ThreadFactoryBuilder()
+							.setDaemon(true).setNameFormat("bocas-seeded-%d").build());
+			pool.allowCoreThreadTimeOut(true);
+			e = pool;
+		}
+		return new SeededBocas(primary, seed, null, e, promotionCapacity, speculativeHitRate);
+	}
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.base.ByteString;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Bucket that distributes its entries among a set of shards using a consistent-hash ring over the
+ * keys. Bulk operations are split per shard and, if an executor is provided, run in parallel, so bulk
+ * writes are only atomic per shard. Closing is a no-op, closing the shards is the responsibility of
+ * the caller.
+ * <p>
+ * Shards can be added online. Writes go to the new owners immediately, and reads of entries not
+ * found in their new shard are looked for in their previous one until the shards are rebalanced,
+ * copying the entries of the affected key ranges to their new shards. As buckets don't support
+ * removals, the previous copies are kept, and scans skip them. Writes that started before an
+ * addition are written again into the new shards once they finish, so that they are not left only in
+ * a previous shard already rebalanced.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class ShardedBocas extends SimpleSkeletalBocas {
+	/** Number of keys scanned in each rebalancing step. */
+	private static final int REBALANCE_PAGE = 1000;
+
+	/** Current state. */
+	private volatile State state;
+	/** Executor for the operations in different shards, {@code null} to run them serially. */
+	@Nullable
+	private final Executor executor;
+
+	/** Returns the hash function of a set of shards, checking it is the same for every shard. */
+	private static BocasHashFunction hashFunction(List<Bocas> shards) {
+		checkNotNull(shards, "The shards must be provided");
+		checkArgument(!shards.isEmpty(), "At least a shard must be provided");
+		final BocasHashFunction function = shards.get(0).getHashFunction();
+		checkHashFunction(function, shards);
+		return function;
+	}
+
+	private static void checkHashFunction(BocasHashFunction function, Iterable<Bocas> shards) {
+		for (Bocas shard : shards) {
+			checkArgument(function.equals(shard.getHashFunction()), "The shard hash functions must be the same");
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param names Shard names, which determine the position of the shards in the ring.
+	 * @param shards Shards, in the same order as their names.
+	 * @param previous Number of shards before the last addition if it has not been rebalanced yet,
+	 *          negative otherwise.
+	 * @param executor Executor for the operations in different shards, {@code null} to run them
+	 *          serially.
+	 */
+	ShardedBocas(List<String> names, List<Bocas> shards, int previous, @Nullable Executor executor) {
+		super(hashFunction(shards));
+		checkArgument(names.size() == shards.size(), "There must be a name for every shard");
+		final HashRing ring = new HashRing(names);
+		this.state = new State(ring, ImmutableList.copyOf(shards), previous >= 0 ? new HashRing(names.subList(0,
+				previous)) : null);
+		this.executor = executor;
+	}
+
+	/** Sharding state. */
+	private static final class State {
+		/** Current ring. */
+		final HashRing ring;
+		/** Shards, by index. */
+		final ImmutableList<Bocas> shards;
+		/** Ring before the last addition, {@code null} if it has been rebalanced. */
+		@Nullable
+		final HashRing previous;
+
+		State(HashRing ring, ImmutableList<Bocas> shards, @Nullable HashRing previous) {
+			this.ring = ring;
+			this.shards = shards;
+			this.previous = previous;
+		}
+
+		/** Returns the shard a key belongs to. */
+		Bocas shard(ByteString key) {
+			return shards.get(ring.shard(key));
+		}
+
+		/** Returns the previous shard of a key, or {@code null} if it has not changed. */
+		@Nullable
+		Bocas previous(ByteString key) {
+			if (previous == null) {
+				return null;
+			}
+			final int index = previous.shard(key);
+			return index != ring.shard(key) ? shards.get(index) : null;
+		}
+
+		/** Groups keys by shard. */
+		ListMultimap<Integer, ByteString> group(Iterable<ByteString> keys) {
+			return Multimaps.index(keys, new Function<ByteString, Integer>() {
+				@Override
+				public Integer apply(ByteString input) {
+					return ring.shard(input);
+				}
+			});
+		}
+
+		/** Groups by previous shard the keys whose shard has changed. */
+		ListMultimap<Integer, ByteString> groupMoved(Iterable<ByteString> keys) {
+			final ListMultimap<Integer, ByteString> groups = ArrayListMultimap.create();
+			if (previous != null) {
+				for (ByteString key : keys) {
+					final int index = previous.shard(key);
+					if (index != ring.shard(key)) {
+						groups.put(index, key);
+					}
+				}
+			}
+			return groups;
+		}
+	}
+
+	/** Operation on the keys of a shard. */
+	private static abstract class ShardOperation<T> {
+		abstract T call(Bocas shard, List<ByteString> keys);
+	}
+
+	/** Runs an operation on every group of keys, in parallel if there is an executor. */
+	private <T> List<T> perShard(State s, ListMultimap<Integer, ByteString> groups, final ShardOperation<T> op) {
+		final List<FutureTask<T>> tasks = Lists.newArrayListWithCapacity(groups.keySet().size());
+		for (Entry<Integer, List<ByteString>> group : Multimaps.asMap(groups).entrySet()) {
+			final Bocas shard = s.shards.get(group.getKey());
+			final List<ByteString> keys = group.getValue();
+			tasks.add(new FutureTask<T>(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					return op.call(shard, keys);
+				}
+			}));
+		}
+		final int n = tasks.size();
+		for (int i = 0; i < n; i++) {
+			// The last task is run by the caller.
+			if (executor != null && i < n - 1) {
+				executor.execute(tasks.get(i));
+			} else {
+				tasks.get(i).run();
+			}
+		}
+		final List<T> results = Lists.newArrayListWithCapacity(n);
+		RuntimeException failure = null;
+		for (FutureTask<T> task : tasks) {
+			try {
+				results.add(Uninterruptibles.getUninterruptibly(task));
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				if (failure == null) {
+					failure = cause instanceof RuntimeException ? (RuntimeException) cause : new BocasException(cause);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/** Returns the number of shards. */
+	public int getShardCount() {
+		return state.shards.size();
+	}
+
+	/** Returns whether shards have been added and not rebalanced yet. */
+	public boolean isRebalancing() {
+		return state.previous != null;
+	}
+
+	/**
+	 * Adds shards to the ring. Entries whose keys now belong to the new shards are still found in
+	 * their previous shards until {@link #rebalance()} is called.
+	 * @param shards Shards to add, by name.
+	 * @throws IllegalArgumentException if a shard name is already used or the hash function of a
+	 *           shard is different.
+	 * @throws IllegalStateException if the last addition has not been rebalanced yet.
+	 */
+	public synchronized void addShards(Map<String, ? extends Bocas> shards) {
+		checkNotNull(shards, "The shards to add must be provided");
+		final State s = state;
+		checkState(s.previous == null, "The last shard addition has not been rebalanced yet");
+		final List<Bocas> added = ImmutableList.copyOf(shards.values());
+		checkHashFunction(getHashFunction(), added);
+		final HashRing ring = s.ring.add(ImmutableList.copyOf(shards.keySet()));
+		state = new State(ring, ImmutableList.<Bocas> builder().addAll(s.shards).addAll(added).build(), s.ring);
+	}
+
+	/**
+	 * Rebalances the shards after an addition, copying the entries of the affected key ranges to their
+	 * new shards. Only the shards that lose key ranges are scanned. The bucket remains fully
+	 * operational while rebalancing.
+	 * @return The number of entries copied.
+	 * @throws BocasException if an error occurs. The rebalancing may be retried.
+	 */
+	public synchronized long rebalance() {
+		final State s = state;
+		if (s.previous == null) {
+			return 0L;
+		}
+		long moved = 0L;
+		for (int donor : s.previous.donors(s.ring)) {
+			final Bocas from = s.shards.get(donor);
+			String cursor = null;
+			do {
+				final BocasKeyPage page = from.scan(cursor, REBALANCE_PAGE, false);
+				moved += move(s, donor, page.getKeys());
+				cursor = page.getCursor().orNull();
+			} while (cursor != null);
+		}
+		state = new State(s.ring, s.shards, null);
+		return moved;
+	}
+
+	/** Copies the entries of a donor shard that now belong to another shard. */
+	private long move(State s, int donor, List<ByteString> keys) {
+		final ListMultimap<Integer, ByteString> groups = ArrayListMultimap.create();
+		for (ByteString key : keys) {
+			final int index = s.ring.shard(key);
+			if (index != donor) {
+				groups.put(index, key);
+			}
+		}
+		final Bocas from = s.shards.get(donor);
+		long moved = 0L;
+		for (Integer n : perShard(s, groups, new ShardOperation<Integer>() {
+			@Override
+			Integer call(Bocas shard, List<ByteString> keys) {
+				final Set<ByteString> missing = Sets.difference(ImmutableSet.copyOf(keys), shard.contained(keys));
+				if (missing.isEmpty()) {
+					return 0;
+				}
+				final Map<ByteString, ByteSource> values = from.get(missing);
+				shard.putAll(values.values());
+				return values.size();
+			}
+		})) {
+			moved += n;
+		}
+		return moved;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#close()
+	 */
+	@Override
+	public void close() {
+		// Nothing to do.
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#contains(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public boolean contains(ByteString key) {
+		final State s = state;
+		if (s.shard(key).contains(key)) {
+			return true;
+		}
+		final Bocas previous = s.previous(key);
+		return previous != null && previous.contains(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#contained(java.lang.Iterable)
+	 */
+	@Override
+	public Set<ByteString> contained(Iterable<ByteString> keys) {
+		final State s = state;
+		final Set<ByteString> requested = ImmutableSet.copyOf(keys);
+		if (requested.isEmpty()) {
+			return ImmutableSet.of();
+		}
+		final ShardOperation<Set<ByteString>> op = new ShardOperation<Set<ByteString>>() {
+			@Override
+			Set<ByteString> call(Bocas shard, List<ByteString> keys) {
+				return shard.contained(keys);
+			}
+		};
+		final Set<ByteString> found = Sets.newHashSet();
+		for (Set<ByteString> r : perShard(s, s.group(requested), op)) {
+			found.addAll(r);
+		}
+		if (s.previous != null && found.size() < requested.size()) {
+			for (Set<ByteString> r : perShard(s, s.groupMoved(Sets.difference(requested, found)), op)) {
+				found.addAll(r);
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#get(net.derquinse.common.base.ByteString)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key) {
+		final State s = state;
+		final Optional<ByteSource> value = s.shard(key).get(key);
+		if (value.isPresent()) {
+			return value;
+		}
+		final Bocas previous = s.previous(key);
+		return previous != null ? previous.get(key) : value;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		final State s = state;
+		final Optional<ByteSource> value = s.shard(key).get(key, offset, length);
+		if (value.isPresent()) {
+			return value;
+		}
+		final Bocas previous = s.previous(key);
+		return previous != null ? previous.get(key, offset, length) : value;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#get(java.lang.Iterable)
+	 */
+	@Override
+	public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+		final State s = state;
+		final Set<ByteString> requested = ImmutableSet.copyOf(keys);
+		if (requested.isEmpty()) {
+			return ImmutableMap.of();
+		}
+		final ShardOperation<Map<ByteString, ByteSource>> op = new ShardOperation<Map<ByteString, ByteSource>>() {
+			@Override
+			Map<ByteString, ByteSource> call(Bocas shard, List<ByteString> keys) {
+				return shard.get(keys);
+			}
+		};
+		final Map<ByteString, ByteSource> found = Maps.newHashMap();
+		for (Map<ByteString, ByteSource> r : perShard(s, s.group(requested), op)) {
+			found.putAll(r);
+		}
+		if (s.previous != null && found.size() < requested.size()) {
+			for (Map<ByteString, ByteSource> r : perShard(s, s.groupMoved(Sets.difference(requested, found.keySet())),
+					op)) {
+				found.putAll(r);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns a page of the keys, scanning the shards in order. Copies of entries that belong to
+	 * another shard are skipped, so pages may have fewer keys than the limit.
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(@Nullable String cursor, int limit, boolean sizes) {
+		checkArgument(limit > 0, "The limit must be > 0");
+		final State s = state;
+		int index = 0;
+		String inner = null;
+		if (cursor != null) {
+			final int sep = cursor.indexOf(':');
+			checkArgument(sep > 0, "Invalid cursor: %s", cursor);
+			try {
+				index = Integer.parseInt(cursor.substring(0, sep));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+			}
+			checkArgument(index >= 0 && index < s.shards.size(), "Invalid cursor: %s", cursor);
+			if (sep + 1 < cursor.length()) {
+				inner = cursor.substring(sep + 1);
+			}
+		}
+		final BocasKeyPage page = s.shards.get(index).scan(inner, limit, sizes);
+		final List<ByteString> keys = owned(s, index, page.getKeys());
+		final String next;
+		if (!page.isLast()) {
+			next = index + ":" + page.getCursor().get();
+		} else if (index + 1 < s.shards.size()) {
+			next = (index + 1) + ":";
+		} else {
+			next = null;
+		}
+		return BocasKeyPage.of(keys, Maps.filterKeys(page.getSizes(), Predicates.in(ImmutableSet.copyOf(keys))), next);
+	}
+
+	/** Returns the keys found in a shard that are owned by it. */
+	private List<ByteString> owned(State s, int index, List<ByteString> keys) {
+		final List<ByteString> owned = Lists.newArrayListWithCapacity(keys.size());
+		final ListMultimap<Integer, ByteString> moved = ArrayListMultimap.create();
+		for (ByteString key : keys) {
+			final int current = s.ring.shard(key);
+			if (current == index) {
+				owned.add(key);
+			} else if (s.previous != null && s.previous.shard(key) == index) {
+				moved.put(current, key);
+			}
+		}
+		// Entries not copied yet to their new shard are returned from the previous one.
+		for (Entry<Integer, List<ByteString>> group : Multimaps.asMap(moved).entrySet()) {
+			final Set<ByteString> copied = s.shards.get(group.getKey()).contained(group.getValue());
+			for (ByteString key : group.getValue()) {
+				if (!copied.contains(key)) {
+					owned.add(key);
+				}
+			}
+		}
+		return owned;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#put(net.derquinse.common.base.ByteString,
+	 * com.google.common.io.ByteSource)
+	 */
+	@Override
+	protected void put(ByteString key, ByteSource value) {
+		final State s = state;
+		s.shard(key).put(value);
+		reconcile(s, ImmutableMap.of(key, value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#putAll(java.util.Map)
+	 */
+	@Override
+	protected void putAll(final Map<ByteString, ByteSource> entries) {
+		final State s = state;
+		perShard(s, s.group(entries.keySet()), new ShardOperation<Void>() {
+			@Override
+			Void call(Bocas shard, List<ByteString> keys) {
+				shard.putAll(Lists.transform(keys, Functions.forMap(entries)));
+				return null;
+			}
+		});
+		reconcile(s, entries);
+	}
+
+	/**
+	 * Writes again the entries written with a previous state whose shard has changed since then, as
+	 * the write may have landed in their previous shard after it was scanned by the rebalancing.
+	 * @param written State the entries were written with.
+	 * @param entries Written entries.
+	 */
+	private void reconcile(State written, final Map<ByteString, ByteSource> entries) {
+		State s = written;
+		State current = state;
+		while (current != s) {
+			final ListMultimap<Integer, ByteString> moved = ArrayListMultimap.create();
+			for (ByteString key : entries.keySet()) {
+				final int index = current.ring.shard(key);
+				if (current.shards.get(index) != s.shard(key)) {
+					moved.put(index, key);
+				}
+			}
+			perShard(current, moved, new ShardOperation<Void>() {
+				@Override
+				Void call(Bocas shard, List<ByteString> keys) {
+					shard.putAll(Lists.transform(keys, Functions.forMap(entries)));
+					return null;
+				}
+			});
+			s = current;
+			current = state;
+		}
+	}
+}
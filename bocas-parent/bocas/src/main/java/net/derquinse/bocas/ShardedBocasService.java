@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Bocas service whose buckets are sharded among the buckets with the same name of a set of
+ * services.
+ * @see ShardedBocas
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class ShardedBocasService implements BocasService {
+	/** Shard services, by name. Guarded by this. */
+	private final Map<String, BocasService> shards = Maps.newLinkedHashMap();
+	/** Number of shards before the last addition if not rebalanced yet, negative otherwise. */
+	private int previous = -1;
+	/** Buckets open at the time of the last addition if not rebalanced yet. Guarded by this. */
+	private final Set<String> unbalanced = Sets.newHashSet();
+	/** Executor for the operations in different shards, {@code null} to run them serially. */
+	@Nullable
+	private final Executor executor;
+	/** Open buckets. */
+	private final ConcurrentMap<String, ShardedBocas> buckets = Maps.newConcurrentMap();
+
+	/** Constructor. */
+	ShardedBocasService(Map<String, ? extends BocasService> shards, @Nullable Executor executor) {
+		checkNotNull(shards, "The shards must be provided");
+		checkArgument(!shards.isEmpty(), "At least a shard must be provided");
+		this.shards.putAll(shards);
+		this.executor = executor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.BocasService#getBucket(java.lang.String)
+	 */
+	@Override
+	public Bocas getBucket(String name) {
+		checkNotNull(name, "The bucket name must be provided");
+		final ShardedBocas bucket = buckets.get(name);
+		if (bucket != null) {
+			return bucket;
+		}
+		return open(name);
+	}
+
+	private synchronized ShardedBocas open(String name) {
+		ShardedBocas bucket = buckets.get(name);
+		if (bucket == null) {
+			final List<Bocas> shardBuckets = Lists.newArrayListWithCapacity(shards.size());
+			for (BocasService shard : shards.values()) {
+				shardBuckets.add(shard.getBucket(name));
+			}
+			bucket = new ShardedBocas(ImmutableList.copyOf(shards.keySet()), shardBuckets, previous, executor);
+			buckets.put(name, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * Adds shards to every bucket. Every open bucket is checked before changing any of them, so that
+	 * they all keep the same shards if the addition fails.
+	 * @param added Shard services to add, by name.
+	 * @throws IllegalArgumentException if a shard name is already used or the hash function of a
+	 *           shard bucket is different.
+	 * @throws IllegalStateException if the last addition has not been rebalanced yet in every open
+	 *           bucket.
+	 * @see ShardedBocas#addShards(Map)
+	 */
+	public synchronized void addShards(Map<String, ? extends BocasService> added) {
+		checkNotNull(added, "The shards to add must be provided");
+		checkState(previous < 0, "The last shard addition has not been rebalanced yet");
+		for (String name : added.keySet()) {
+			checkArgument(!shards.containsKey(name), "Duplicate shard name %s", name);
+		}
+		final Map<ShardedBocas, Map<String, Bocas>> additions = Maps.newLinkedHashMap();
+		for (Entry<String, ShardedBocas> bucket : buckets.entrySet()) {
+			final ShardedBocas sharded = bucket.getValue();
+			checkState(!sharded.isRebalancing(), "Bucket %s has not been rebalanced yet", bucket.getKey());
+			final ImmutableMap.Builder<String, Bocas> builder = ImmutableMap.builder();
+			for (Entry<String, ? extends BocasService> shard : added.entrySet()) {
+				final Bocas shardBucket = shard.getValue().getBucket(bucket.getKey());
+				checkArgument(sharded.getHashFunction().equals(shardBucket.getHashFunction()),
+						"The shard hash functions must be the same");
+				builder.put(shard.getKey(), shardBucket);
+			}
+			additions.put(sharded, builder.build());
+		}
+		for (Entry<ShardedBocas, Map<String, Bocas>> addition : additions.entrySet()) {
+			addition.getKey().addShards(addition.getValue());
+		}
+		previous = shards.size();
+		shards.putAll(added);
+		unbalanced.addAll(buckets.keySet());
+	}
+
+	/**
+	 * Rebalances the provided buckets after an addition. As the service does not know which buckets
+	 * have entries, the caller must provide every one of them. Buckets opened before the rebalancing
+	 * is complete still look for the entries of the affected key ranges in their previous shards. The
+	 * addition is complete once every bucket open at the time of the addition has been rebalanced,
+	 * in this call or in previous ones.
+	 * @param names Names of the buckets to rebalance.
+	 * @return The number of entries copied.
+	 * @throws BocasException if an error occurs. The rebalancing may be retried.
+	 * @throws IllegalStateException if a bucket open at the time of the last addition has not been
+	 *           rebalanced yet. The provided buckets are rebalanced anyway.
+	 * @see ShardedBocas#rebalance()
+	 */
+	public long rebalance(Iterable<String> names) {
+		checkNotNull(names, "The bucket names must be provided");
+		long moved = 0L;
+		for (String name : names) {
+			moved += ((ShardedBocas) getBucket(name)).rebalance();
+		}
+		synchronized (this) {
+			for (Iterator<String> it = unbalanced.iterator(); it.hasNext();) {
+				final String name = it.next();
+				checkState(!buckets.get(name).isRebalancing(), "Bucket %s has not been rebalanced yet", name);
+				it.remove();
+			}
+			previous = -1;
+		}
+		return moved;
+	}
+}
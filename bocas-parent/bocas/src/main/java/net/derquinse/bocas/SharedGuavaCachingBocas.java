@@ -17,12 +17,14 @@ package net.derquinse.bocas;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
 
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
+import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.Cache;
 import com.google.common.collect.Sets;
 
@@ -33,18 +35,8 @@ import com.google.common.collect.Sets;
 final class SharedGuavaCachingBocas extends AbstractGuavaCachingBocas<ByteString> {
 	/** Constructor. */
 	SharedGuavaCachingBocas(Bocas bocas, MemoryByteSourceLoader loader, Cache<ByteString, MemoryByteSource> cache,
-			boolean alwaysWrite) {
-		super(bocas, loader, cache, alwaysWrite);
-	}
-
-	@Override
-	Callable<MemoryByteSource> getLoader(final ByteString internalKey) {
-		return new Callable<MemoryByteSource>() {
-			@Override
-			public MemoryByteSource call() throws Exception {
-				return loadFromSource(internalKey);
-			}
-		};
+			StatsCounter loads, @Nullable Cache<BucketKey, Boolean> negative, boolean alwaysWrite) {
+		super(bocas, loader, cache, loads, negative, alwaysWrite);
 	}
 
 	ByteString toInternalKey(ByteString key) {
@@ -15,10 +15,16 @@
  */
 package net.derquinse.bocas;
 
+import java.util.List;
+
+import javax.annotation.Nullable;
+
 import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
 import net.derquinse.common.io.MemoryByteSourceLoader;
 
-import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Guava-cache-based bocas caching repositories that shares the cache among every available bucket.
@@ -27,11 +33,25 @@ import com.google.common.cache.CacheBuilder;
 final class SharedGuavaCachingBocasService extends AbstractGuavaCachingBocasService<ByteString> {
 	/** Constructor. */
 	SharedGuavaCachingBocasService(BocasService service, MemoryByteSourceLoader loader,
-			CacheBuilder<Object, Object> builder, boolean alwaysWrite) {
-		super(service, loader, builder, alwaysWrite);
+			Cache<ByteString, MemoryByteSource> cache, @Nullable Cache<BucketKey, Boolean> negative, boolean alwaysWrite) {
+		super(service, loader, cache, negative, alwaysWrite);
+	}
+
+	/**
+	 * Cached values are shared, so every key is looked up in the open buckets in turn.
+	 * @see net.derquinse.bocas.AbstractGuavaCachingBocasService#cachedKeys()
+	 */
+	@Override
+	List<CacheWarmer.Group> cachedKeys() {
+		final List<String> names = ImmutableList.copyOf(openBuckets().keySet());
+		if (names.isEmpty()) {
+			return ImmutableList.of();
+		}
+		return ImmutableList.of(new CacheWarmer.Group(names, ImmutableList.copyOf(getCache().asMap().keySet())));
 	}
 
 	SharedGuavaCachingBocas createBucket(Bocas source, MemoryByteSourceLoader loader) {
-		return new SharedGuavaCachingBocas(source, loader, getCache(), isAlwaysWrite());
+		return new SharedGuavaCachingBocas(source, loader, getCache(), getLoadStats(), getNegativeCache(),
+				isAlwaysWrite());
 	}
 }
@@ -15,18 +15,23 @@
  */
 package net.derquinse.bocas;
 
+import static net.derquinse.bocas.InternalUtils.checkStream;
 import static net.derquinse.bocas.InternalUtils.checkTransformedValue;
 import static net.derquinse.bocas.InternalUtils.checkValue;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
 import net.derquinse.common.base.ByteString;
 
 import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteSource;
+import com.google.common.io.FileBackedOutputStream;
 
 /**
  * Base class for bucket implementations.
@@ -35,6 +40,9 @@ import com.google.common.io.ByteSource;
  */
 @Beta
 public abstract class SkeletalBocas<T extends ByteSource> implements Bocas {
+	/** Size above which streamed values are spooled to a temporary file. */
+	private static final int SPOOL_THRESHOLD = 256 * 1024;
+
 	/** Hash function to use. */
 	private final BocasHashFunction function;
 
@@ -43,7 +51,10 @@ public abstract class SkeletalBocas<T extends ByteSource> implements Bocas {
 		this.function = BocasPreconditions.checkHash(function);
 	}
 
-	/** Transforms a byte source before putting it. */
+	/**
+	 * Transforms a byte source before putting it. The transformation must preserve the contents, as
+	 * the key of a streamed value is computed before transforming it.
+	 */
 	protected abstract T transform(ByteSource value);
 
 	/** Obtains the transformed value. */
@@ -60,6 +71,21 @@ public abstract class SkeletalBocas<T extends ByteSource> implements Bocas {
 		return function;
 	}
 
+	/**
+	 * Returns a range of the object for the provided key. This implementation slices the full
+	 * object, subclasses that are able to read ranges natively should override it.
+	 * @see net.derquinse.bocas.Bocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		BocasPreconditions.checkRange(offset, length);
+		final Optional<ByteSource> value = get(key);
+		if (value.isPresent()) {
+			return Optional.of(InternalUtils.slice(value.get(), offset, length));
+		}
+		return value;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.derquinse.bocas.Bocas#put(com.google.common.io.ByteSource)
@@ -72,6 +98,31 @@ public abstract class SkeletalBocas<T extends ByteSource> implements Bocas {
 		return key;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#put(java.io.InputStream)
+	 */
+	@Override
+	public ByteString put(InputStream value) {
+		checkStream(value);
+		// The key is needed before writing, so the value is hashed while it is spooled.
+		final FileBackedOutputStream spool = new FileBackedOutputStream(SPOOL_THRESHOLD, true);
+		try {
+			final ByteString key = function.copy(value, spool);
+			spool.close();
+			put(key, transformed(spool.asByteSource()));
+			return key;
+		} catch (IOException e) {
+			throw new BocasException(e);
+		} finally {
+			try {
+				spool.reset();
+			} catch (IOException e) {
+				// Temporary file could not be deleted.
+			}
+		}
+	}
+
 	/** Puts an entry into the bucket. */
 	protected abstract void put(ByteString key, T value);
 
@@ -22,35 +22,88 @@ import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.Maps.filterKeys;
 import static com.google.common.collect.Maps.newHashMap;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
- * Bocas transformer that synchronously replicates operation in another bucket.
+ * Bocas transformer that synchronously replicates operation in other buckets. Reads are served by
+ * the primary bucket. A write succeeds if the primary and at least the quorum of replicas are
+ * written, otherwise a {@link PartialWriteException} is thrown.
+ * <p>
+ * Without an executor the replicas are written in order and then the primary, and the existence
+ * check is performed in the primary before writing. With an executor every bucket is written in
+ * parallel, each one checking its own entries first, and the write returns once the primary and
+ * the quorum of replicas have been written. Writes to the rest of the replicas may still be in
+ * progress, so values not already in memory are loaded first, as the provided ones may be released
+ * by the caller once the write returns (e.g., the spooled value of a streamed put).
+ * <p>
+ * Reads may be hedged between the primary and the replicas. In that case entries found in any bucket
+ * are returned, but entries not found in a replica are looked for in the primary, whose answer is
+ * final.
  * @author Andres Rodriguez.
  */
 final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	/** Primary bucket. */
 	private final Bocas primary;
-	/** Replica bucket. */
-	private final Bocas replica;
+	/** Replica buckets. */
+	private final List<Bocas> replicas;
 	/** Whether to check for existing entries before writing. */
 	private final boolean checkBeforeWrite;
+	/** Number of replicas that must be written. */
+	private final int quorum;
+	/** Executor for parallel writes, {@code null} for serial writes. */
+	@Nullable
+	private final Executor executor;
+	/** Hedged reads, {@code null} if reads are served by the primary. */
+	@Nullable
+	private final HedgedReads reads;
 
 	/** Constructor. */
-	SyncReplicatedBocas(Bocas primary, Bocas replica, boolean checkBeforeWrite) {
+	SyncReplicatedBocas(Bocas primary, List<Bocas> replicas, boolean checkBeforeWrite, int quorum,
+			@Nullable Executor executor, @Nullable HedgedReads reads) {
 		super(checkNotNull(primary, "The primary bucket must be provided.").getHashFunction());
 		this.primary = primary;
-		this.replica = checkNotNull(replica, "The replica bucket must be provided.");
-		checkArgument(primary != replica, "The primary and replica bucket can't be the same");
-		checkArgument(primary.getHashFunction().equals(replica.getHashFunction()),
-				"The primary and replica hash functions must be the same");
+		this.replicas = ImmutableList.copyOf(checkNotNull(replicas, "The replica buckets must be provided."));
+		checkArgument(!this.replicas.isEmpty(), "At least one replica must be provided");
+		for (Bocas replica : this.replicas) {
+			checkArgument(primary != replica, "The primary and replica bucket can't be the same");
+			checkArgument(primary.getHashFunction().equals(replica.getHashFunction()),
+					"The primary and replica hash functions must be the same");
+		}
+		checkArgument(quorum >= 0 && quorum <= this.replicas.size(), "The quorum must be in [0, %s]",
+				this.replicas.size());
 		this.checkBeforeWrite = checkBeforeWrite;
+		this.quorum = quorum;
+		this.executor = executor;
+		this.reads = reads;
+	}
+
+	/** Constructor for a single replica written serially. */
+	SyncReplicatedBocas(Bocas primary, Bocas replica, boolean checkBeforeWrite) {
+		this(primary, ImmutableList.of(checkNotNull(replica, "The replica bucket must be provided.")),
+				checkBeforeWrite, 1, null, null);
 	}
 
 	/*
@@ -68,7 +121,7 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	public boolean contains(ByteString key) {
-		return primary.contains(key);
+		return reads != null ? reads.contains(key) : primary.contains(key);
 	}
 
 	/*
@@ -77,7 +130,7 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	public Set<ByteString> contained(Iterable<ByteString> keys) {
-		return primary.contained(keys);
+		return reads != null ? reads.contained(ImmutableSet.copyOf(keys)) : primary.contained(keys);
 	}
 
 	/*
@@ -86,7 +139,16 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	public Optional<ByteSource> get(ByteString key) {
-		return primary.get(key);
+		return reads != null ? reads.get(key) : primary.get(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.SkeletalBocas#get(net.derquinse.common.base.ByteString, long, long)
+	 */
+	@Override
+	public Optional<ByteSource> get(ByteString key, long offset, long length) {
+		return reads != null ? reads.get(key, offset, length) : primary.get(key, offset, length);
 	}
 
 	/*
@@ -95,7 +157,16 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
-		return primary.get(keys);
+		return reads != null ? reads.get(ImmutableSet.copyOf(keys)) : primary.get(keys);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.derquinse.bocas.Bocas#scan(java.lang.String, int, boolean)
+	 */
+	@Override
+	public BocasKeyPage scan(String cursor, int limit, boolean sizes) {
+		return primary.scan(cursor, limit, sizes);
 	}
 
 	/*
@@ -105,11 +176,14 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	protected void put(ByteString key, ByteSource value) {
-		if (checkBeforeWrite && contains(key)) {
+		if (executor != null) {
+			parallel(ImmutableMap.of(key, value));
+			return;
+		}
+		if (checkBeforeWrite && primary.contains(key)) {
 			return; // nothing to do
 		}
-		replica.put(value);
-		primary.put(value);
+		serial(ImmutableMap.of(key, value));
 	}
 
 	/*
@@ -118,9 +192,13 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 	 */
 	@Override
 	protected void putAll(Map<ByteString, ByteSource> entries) {
+		if (executor != null) {
+			parallel(entries);
+			return;
+		}
 		final Map<ByteString, ByteSource> map;
 		if (checkBeforeWrite) {
-			Set<ByteString> found = contained(entries.keySet());
+			Set<ByteString> found = primary.contained(entries.keySet());
 			if (found.isEmpty()) {
 				map = entries;
 			} else {
@@ -129,8 +207,129 @@ final class SyncReplicatedBocas extends SimpleSkeletalBocas {
 		} else {
 			map = entries;
 		}
-		replica.putAll(map.values());
-		primary.putAll(map.values());
+		serial(map);
+	}
+
+	/** Writes entries into a bucket. */
+	private static void write(Bocas bocas, Map<ByteString, ByteSource> entries) {
+		if (entries.size() == 1) {
+			bocas.put(entries.values().iterator().next());
+		} else if (!entries.isEmpty()) {
+			bocas.putAll(entries.values());
+		}
 	}
 
+	/** Writes entries into the bucket not already containing them. */
+	private static void checkAndWrite(Bocas bocas, Map<ByteString, ByteSource> entries) {
+		final Set<ByteString> found = bocas.contained(entries.keySet());
+		if (found.isEmpty()) {
+			write(bocas, entries);
+		} else {
+			write(bocas, newHashMap(filterKeys(entries, not(in(found)))));
+		}
+	}
+
+	/**
+	 * Throws a {@link PartialWriteException} if the primary failed or the quorum can't be reached.
+	 * @param primaryFailure Primary failure, if any.
+	 * @param failures Replica failures, with {@code null} elements for the rest.
+	 * @param failed Number of failed replicas.
+	 */
+	private void checkQuorum(@Nullable Throwable primaryFailure, Throwable[] failures, int failed) {
+		if (primaryFailure != null || replicas.size() - failed < quorum) {
+			throw new PartialWriteException(primaryFailure, Arrays.asList(failures));
+		}
+	}
+
+	/** Writes the replicas in order and then the primary. */
+	private void serial(Map<ByteString, ByteSource> entries) {
+		final Throwable[] failures = new Throwable[replicas.size()];
+		int failed = 0;
+		for (int i = 0; i < failures.length; i++) {
+			try {
+				write(replicas.get(i), entries);
+			} catch (RuntimeException e) {
+				failures[i] = e;
+				failed++;
+				checkQuorum(null, failures, failed);
+			}
+		}
+		try {
+			write(primary, entries);
+		} catch (RuntimeException e) {
+			checkQuorum(e, failures, failed);
+		}
+	}
+
+	/** Returns the provided entries with their values loaded into memory if needed. */
+	private static Map<ByteString, ByteSource> retain(Map<ByteString, ByteSource> entries) {
+		final Map<ByteString, ByteSource> retained = newHashMap();
+		try {
+			for (Map.Entry<ByteString, ByteSource> entry : entries.entrySet()) {
+				final ByteSource value = entry.getValue();
+				if (value instanceof MemoryByteSource) {
+					retained.put(entry.getKey(), value);
+				} else {
+					retained.put(entry.getKey(), MemoryByteSourceLoader.get().load(value));
+				}
+			}
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+		return retained;
+	}
+
+	/** Writes every bucket in parallel. */
+	private void parallel(Map<ByteString, ByteSource> values) {
+		// Writes may outlive the call, so they must not read the values provided.
+		final Map<ByteString, ByteSource> entries = retain(values);
+		final CompletionService<Void> service = new ExecutorCompletionService<Void>(executor);
+		final Map<Future<Void>, Integer> indexes = newHashMap();
+		final int n = replicas.size();
+		// The primary is submitted with index n.
+		for (int i = 0; i <= n; i++) {
+			final Bocas bocas = i < n ? replicas.get(i) : primary;
+			indexes.put(service.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (checkBeforeWrite) {
+						checkAndWrite(bocas, entries);
+					} else {
+						write(bocas, entries);
+					}
+					return null;
+				}
+			}), i);
+		}
+		final Throwable[] failures = new Throwable[n];
+		int failed = 0;
+		int written = 0;
+		boolean primaryWritten = false;
+		for (int completed = 0; completed <= n; completed++) {
+			final Future<Void> future = InternalUtils.poll(service, -1L);
+			final int index = indexes.get(future);
+			try {
+				Uninterruptibles.getUninterruptibly(future);
+				if (index == n) {
+					primaryWritten = true;
+				} else {
+					written++;
+				}
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				if (index == n) {
+					checkQuorum(cause, failures, failed);
+				}
+				failures[index] = cause;
+				failed++;
+				checkQuorum(null, failures, failed);
+			}
+			if (primaryWritten && written >= quorum) {
+				return;
+			}
+		}
+	}
 }
@@ -15,26 +15,58 @@
  */
 package net.derquinse.bocas;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
 /**
  * Bocas decorator that synchronously replicates buckets.
  * @author Andres Rodriguez.
  */
 final class SyncReplicatedBocasDecorator implements BocasDecorator {
-	/** Replica service. */
-	private final BocasService replica;
+	/** Replica services. */
+	private final List<BocasService> replicas;
 	/** Whether to check for existing entries before writing. */
 	private final boolean checkBeforeWrite;
+	/** Number of replicas that must be written. */
+	private final int quorum;
+	/** Executor for parallel writes, {@code null} for serial writes. */
+	@Nullable
+	private final Executor executor;
+	/** Hedged reads configuration, {@code null} if reads are served by the primary. */
+	@Nullable
+	private final HedgedReadBuilder hedged;
 
 	/** Constructor. */
-	SyncReplicatedBocasDecorator(BocasService replica, boolean checkBeforeWrite) {
-		this.replica = checkNotNull(replica, "The replica service must be provided.");
+	SyncReplicatedBocasDecorator(List<BocasService> replicas, boolean checkBeforeWrite, int quorum,
+			@Nullable Executor executor, @Nullable HedgedReadBuilder hedged) {
+		this.replicas = ImmutableList.copyOf(checkNotNull(replicas, "The replica services must be provided."));
+		checkArgument(!this.replicas.isEmpty(), "At least one replica must be provided");
+		checkArgument(quorum >= 0 && quorum <= this.replicas.size(), "The quorum must be in [0, %s]",
+				this.replicas.size());
 		this.checkBeforeWrite = checkBeforeWrite;
+		this.quorum = quorum;
+		this.executor = executor;
+		this.hedged = hedged;
 	}
 
 	@Override
 	public Bocas decorate(String name, Bocas bocas) {
-		return BocasServices.syncReplica(bocas, replica.getBucket(name), checkBeforeWrite);
+		final List<Bocas> buckets = Lists.newArrayListWithCapacity(replicas.size());
+		for (BocasService replica : replicas) {
+			buckets.add(replica.getBucket(name));
+		}
+		HedgedReads reads = null;
+		if (hedged != null) {
+			reads = hedged.create(ImmutableList.<Bocas> builder().add(bocas).addAll(buckets).build(), 0);
+		}
+		return new SyncReplicatedBocas(bocas, buckets, checkBeforeWrite, quorum, executor, reads);
 	}
 }
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.derquinse.bocas.BocasPreconditions.checkLoader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ForwardingConcurrentMap;
+import com.google.common.collect.ForwardingSet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Cache with a heap tier, an optional off-heap tier and an optional disk tier. Entries evicted by
+ * size from a tier are demoted to the next one, and entries found in a lower tier are promoted back
+ * to the heap tier. Statistics are recorded for the whole cache and for every tier.
+ * <p>
+ * The map view iterates only the heap tier, but its lookups check every tier without promoting.
+ * @author Andres Rodriguez.
+ */
+final class TieredCache<K> extends AbstractCache<K, MemoryByteSource> {
+	/** Heap tier loader. */
+	private final MemoryByteSourceLoader loader;
+	/** Off-heap tier loader. */
+	private final MemoryByteSourceLoader offHeapLoader;
+	/** Heap tier. */
+	private final Cache<K, MemoryByteSource> heap;
+	/** Off-heap tier, {@code null} if not used. */
+	@Nullable
+	private final Cache<K, MemoryByteSource> offHeap;
+	/** Disk tier, {@code null} if not used. */
+	@Nullable
+	private final DiskCacheTier<K> disk;
+	/** Statistics of the whole cache. */
+	private final SimpleStatsCounter stats = new SimpleStatsCounter();
+	/** Ticker for load times. */
+	private final Ticker ticker = Ticker.systemTicker();
+	/** Map view. */
+	private ConcurrentMap<K, MemoryByteSource> asMap;
+
+	/**
+	 * Constructor.
+	 * @param loader Loader for the values of the heap tier.
+	 * @param heapWeight Maximum weight of the heap tier.
+	 * @param offHeapWeight Maximum weight of the off-heap tier, negative if not used.
+	 * @param disk Disk tier, {@code null} if not used.
+	 */
+	TieredCache(MemoryByteSourceLoader loader, long heapWeight, long offHeapWeight, @Nullable DiskCacheTier<K> disk) {
+		this.loader = checkLoader(loader);
+		this.offHeapLoader = loader.direct(true);
+		this.heap = CacheBuilder.newBuilder().recordStats().maximumWeight(heapWeight).weigher(EntryWeigher.INSTANCE)
+				.removalListener(new Demotion(0)).build();
+		if (offHeapWeight >= 0) {
+			this.offHeap = CacheBuilder.newBuilder().recordStats().maximumWeight(offHeapWeight)
+					.weigher(EntryWeigher.INSTANCE).removalListener(new Demotion(1)).build();
+		} else {
+			this.offHeap = null;
+		}
+		this.disk = disk;
+	}
+
+	private static MemoryByteSource load(MemoryByteSourceLoader loader, ByteSource value) {
+		try {
+			return loader.load(value);
+		} catch (IOException e) {
+			throw new BocasException(e);
+		}
+	}
+
+	/** Demotes an entry evicted from a tier. */
+	private void demote(int from, K key, MemoryByteSource value) {
+		if (from == 0 && offHeap != null) {
+			offHeap.put(key, load(offHeapLoader, value));
+		} else if (disk != null) {
+			disk.put(key, value);
+		} else {
+			stats.recordEviction();
+		}
+	}
+
+	/** Looks for an entry in the lower tiers, promoting it if found. */
+	@SuppressWarnings("unchecked")
+	@Nullable
+	private MemoryByteSource promote(Object key) {
+		if (offHeap != null) {
+			final MemoryByteSource value = offHeap.getIfPresent(key);
+			if (value != null) {
+				offHeap.invalidate(key);
+				final MemoryByteSource promoted = load(loader, value);
+				heap.put((K) key, promoted);
+				return promoted;
+			}
+		}
+		if (disk != null) {
+			final ByteSource value = disk.getIfPresent(key);
+			if (value != null) {
+				final MemoryByteSource promoted = load(loader, value);
+				disk.invalidate(key);
+				heap.put((K) key, promoted);
+				return promoted;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.Cache#getIfPresent(java.lang.Object)
+	 */
+	@Override
+	public MemoryByteSource getIfPresent(Object key) {
+		MemoryByteSource value = heap.getIfPresent(checkNotNull(key));
+		if (value == null) {
+			value = promote(key);
+		}
+		if (value != null) {
+			stats.recordHits(1);
+		} else {
+			stats.recordMisses(1);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the value of a key, loading it if needed. Concurrent loads of the same key are not
+	 * coalesced, as the caching buckets already do it.
+	 * @see com.google.common.cache.AbstractCache#get(java.lang.Object, java.util.concurrent.Callable)
+	 */
+	@Override
+	public MemoryByteSource get(K key, Callable<? extends MemoryByteSource> valueLoader) throws ExecutionException {
+		checkNotNull(valueLoader);
+		MemoryByteSource value = getIfPresent(key);
+		if (value != null) {
+			return value;
+		}
+		final long start = ticker.read();
+		try {
+			value = valueLoader.call();
+		} catch (RuntimeException e) {
+			stats.recordLoadException(ticker.read() - start);
+			throw new UncheckedExecutionException(e);
+		} catch (Exception e) {
+			stats.recordLoadException(ticker.read() - start);
+			throw new ExecutionException(e);
+		} catch (Error e) {
+			stats.recordLoadException(ticker.read() - start);
+			throw new ExecutionError(e);
+		}
+		if (value == null) {
+			stats.recordLoadException(ticker.read() - start);
+			throw new InvalidCacheLoadException("Loader returned null");
+		}
+		stats.recordLoadSuccess(ticker.read() - start);
+		put(key, value);
+		return value;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void put(K key, MemoryByteSource value) {
+		invalidateLower(key);
+		heap.put(key, value);
+	}
+
+	private void invalidateLower(Object key) {
+		if (offHeap != null) {
+			offHeap.invalidate(key);
+		}
+		if (disk != null) {
+			disk.invalidate(key);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#invalidate(java.lang.Object)
+	 */
+	@Override
+	public void invalidate(Object key) {
+		heap.invalidate(key);
+		invalidateLower(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#invalidateAll()
+	 */
+	@Override
+	public void invalidateAll() {
+		heap.invalidateAll();
+		if (offHeap != null) {
+			offHeap.invalidateAll();
+		}
+		if (disk != null) {
+			disk.invalidateAll();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#size()
+	 */
+	@Override
+	public long size() {
+		return heap.size() + (offHeap != null ? offHeap.size() : 0L) + (disk != null ? disk.size() : 0L);
+	}
+
+	/**
+	 * Returns the statistics of the whole cache. Hits are lookups found in any tier and evictions are
+	 * entries evicted from the last tier.
+	 * @see com.google.common.cache.AbstractCache#stats()
+	 */
+	@Override
+	public CacheStats stats() {
+		final CacheStats s = stats.snapshot();
+		if (disk != null) {
+			return s.plus(new CacheStats(0L, 0L, 0L, 0L, 0L, disk.stats().evictionCount()));
+		}
+		return s;
+	}
+
+	/** Closes the cache, deleting the disk tier segment files. */
+	void close() {
+		if (disk != null) {
+			disk.close();
+		}
+	}
+
+	/** Returns the statistics of the heap, off-heap and disk tiers, in that order. */
+	List<CacheStats> tierStats() {
+		return ImmutableList.of(heap.stats(), InternalUtils.stats(offHeap),
+				disk != null ? disk.stats() : InternalUtils.EMPTY_STATS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#asMap()
+	 */
+	@Override
+	public ConcurrentMap<K, MemoryByteSource> asMap() {
+		if (asMap == null) {
+			asMap = new AsMap();
+		}
+		return asMap;
+	}
+
+	/** Whether any lower tier contains a key. */
+	private boolean lowerContains(Object key) {
+		return (offHeap != null && offHeap.asMap().containsKey(key)) || (disk != null && disk.containsKey(key));
+	}
+
+	/** Demotes the entries evicted from a tier. */
+	private final class Demotion implements RemovalListener<K, MemoryByteSource> {
+		/** Tier. */
+		private final int tier;
+
+		Demotion(int tier) {
+			this.tier = tier;
+		}
+
+		@Override
+		public void onRemoval(RemovalNotification<K, MemoryByteSource> notification) {
+			if (notification.getCause() == RemovalCause.SIZE) {
+				demote(tier, notification.getKey(), notification.getValue());
+			}
+		}
+	}
+
+	/** Map view. Reads do not record statistics nor promote entries. */
+	private final class AsMap extends ForwardingConcurrentMap<K, MemoryByteSource> {
+		@Override
+		protected ConcurrentMap<K, MemoryByteSource> delegate() {
+			return heap.asMap();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return super.containsKey(key) || lowerContains(key);
+		}
+
+		@Override
+		public MemoryByteSource get(Object key) {
+			MemoryByteSource value = super.get(key);
+			if (value == null && offHeap != null) {
+				value = offHeap.asMap().get(key);
+			}
+			if (value == null && disk != null) {
+				final ByteSource stored = disk.peek(key);
+				if (stored != null) {
+					value = load(loader, stored);
+				}
+			}
+			return value;
+		}
+
+		@Override
+		public MemoryByteSource put(K key, MemoryByteSource value) {
+			invalidateLower(key);
+			return super.put(key, value);
+		}
+
+		@Override
+		public void putAll(Map<? extends K, ? extends MemoryByteSource> map) {
+			standardPutAll(map);
+		}
+
+		@Override
+		public MemoryByteSource remove(Object key) {
+			invalidateLower(key);
+			return super.remove(key);
+		}
+
+		@Override
+		public void clear() {
+			invalidateAll();
+		}
+
+		@Override
+		public Set<K> keySet() {
+			final Set<K> keys = super.keySet();
+			return new ForwardingSet<K>() {
+				@Override
+				protected Set<K> delegate() {
+					return keys;
+				}
+
+				@Override
+				public boolean contains(Object key) {
+					return AsMap.this.containsKey(key);
+				}
+			};
+		}
+	}
+}
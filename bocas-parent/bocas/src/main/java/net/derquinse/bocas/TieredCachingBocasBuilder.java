@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static net.derquinse.bocas.BocasPreconditions.checkLoader;
+
+import java.io.File;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Builder for tiered caching bocas repositories. Entries evicted from the heap tier are demoted to
+ * the off-heap tier and then to the disk tier, if they are used, and promoted back to the heap tier
+ * when they are hit.
+ * @author Andres Rodriguez.
+ */
+@Beta
+public final class TieredCachingBocasBuilder {
+	/** Default disk segment size (64 MB). */
+	private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+	/** Whether the service has already been built. */
+	private boolean built = false;
+	/** Memory loader to use. */
+	private MemoryByteSourceLoader loader = MemoryByteSourceLoader.get();
+	/** Whether the cache is shared among the available buckets. */
+	private boolean shared = false;
+	/** Whether writes are always performed. */
+	private Boolean alwaysWrite = null;
+	/** Maximum weight of the heap tier, -1 if not set. */
+	private long heapWeight = -1L;
+	/** Maximum weight of the off-heap tier, -1 if not used. */
+	private long offHeapWeight = -1L;
+	/** Directory of the disk tier, {@code null} if not used. */
+	private File directory = null;
+	/** Maximum weight of the disk tier. */
+	private long diskWeight = -1L;
+	/** Disk segment size. */
+	private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	/** Constructor. */
+	TieredCachingBocasBuilder() {
+	}
+
+	private void checkNotBuilt() {
+		checkState(!built, "The service has already been built");
+	}
+
+	/**
+	 * Specifies the maximum weight of the heap tier. The weight of an entry is the number of bytes of
+	 * its value. It is mandatory.
+	 * @throws IllegalArgumentException if {@code weight} is negative
+	 * @throws IllegalStateException if the weight was already set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder heapMaximumWeight(long weight) {
+		checkNotBuilt();
+		checkState(heapWeight < 0, "The heap tier maximum weight has already been set");
+		checkArgument(weight >= 0, "The maximum weight must be >= 0");
+		this.heapWeight = weight;
+		return this;
+	}
+
+	/**
+	 * Specifies the maximum weight of the off-heap tier, which keeps values in direct memory. If not
+	 * specified the tier is not used.
+	 * @throws IllegalArgumentException if {@code weight} is negative
+	 * @throws IllegalStateException if the weight was already set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder offHeapMaximumWeight(long weight) {
+		checkNotBuilt();
+		checkState(offHeapWeight < 0, "The off-heap tier maximum weight has already been set");
+		checkArgument(weight >= 0, "The maximum weight must be >= 0");
+		this.offHeapWeight = weight;
+		return this;
+	}
+
+	/**
+	 * Specifies the disk tier, which keeps values in memory-mapped segment files. If not specified the
+	 * tier is not used. The segment files are deleted when evicted or when the service is closed.
+	 * @param directory Directory to create the segment files in.
+	 * @param weight Maximum number of bytes of the segment files.
+	 * @throws IllegalArgumentException if the directory is not a directory or the weight is negative
+	 * @throws IllegalStateException if the disk tier was already set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder disk(File directory, long weight) {
+		checkNotBuilt();
+		checkState(this.directory == null, "The disk tier has already been set");
+		checkNotNull(directory, "The directory must be provided");
+		checkArgument(directory.isDirectory(), "%s is not a directory", directory);
+		checkArgument(weight >= 0, "The maximum weight must be >= 0");
+		this.directory = directory;
+		this.diskWeight = weight;
+		return this;
+	}
+
+	/**
+	 * Specifies the size of the disk segment files. Larger values are not stored in the disk tier.
+	 * The default is 64 MB.
+	 * @throws IllegalArgumentException if the size is not > 0
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder diskSegmentSize(int size) {
+		checkNotBuilt();
+		checkArgument(size > 0, "The segment size must be > 0");
+		this.segmentSize = size;
+		return this;
+	}
+
+	/**
+	 * Specifies the memory loader to use for the heap tier.
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder loader(MemoryByteSourceLoader loader) {
+		checkNotBuilt();
+		this.loader = checkLoader(loader);
+		return this;
+	}
+
+	/**
+	 * Specifies if the cached values will be shared among the available buckets.
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder shared() {
+		checkNotBuilt();
+		this.shared = true;
+		return this;
+	}
+
+	/**
+	 * Specifies whether writes are always propagated to the source service. For shared caches the
+	 * default value is true, otherwise is false.
+	 * @throws IllegalStateException if the value has already been set
+	 * @throws IllegalStateException if the service has already been built
+	 */
+	public TieredCachingBocasBuilder alwaysWrite(boolean alwaysWrite) {
+		checkNotBuilt();
+		checkState(this.alwaysWrite == null, "The alwaysWrite flag has already been set");
+		this.alwaysWrite = alwaysWrite;
+		return this;
+	}
+
+	private <K> TieredCache<K> cache() {
+		final DiskCacheTier<K> disk = directory != null ? new DiskCacheTier<K>(directory, diskWeight, segmentSize) : null;
+		return new TieredCache<K>(loader, heapWeight, offHeapWeight, disk);
+	}
+
+	/**
+	 * Builds a cache.
+	 * @param service Repository to cache.
+	 * @return The caching repository.
+	 * @throws IllegalStateException if the heap tier maximum weight has not been set
+	 * @throws IllegalStateException if the disk tier maximum weight is less than the segment size
+	 */
+	public TieredCachingBocasService build(BocasService service) {
+		checkNotBuilt();
+		checkState(heapWeight >= 0, "The heap tier maximum weight must be set");
+		checkState(directory == null || diskWeight == 0 || diskWeight >= segmentSize,
+				"The disk tier maximum weight must be 0 or at least the segment size (%s)", segmentSize);
+		built = true;
+		final boolean write = alwaysWrite != null ? alwaysWrite.booleanValue() : shared;
+		if (shared) {
+			final TieredCache<ByteString> cache = cache();
+			return new DefaultTieredCachingBocasService(new SharedGuavaCachingBocasService(service, loader, cache, null,
+					write), cache);
+		} else {
+			final TieredCache<BucketKey> cache = cache();
+			return new DefaultTieredCachingBocasService(new BucketGuavaCachingBocasService(service, loader, cache, null,
+					write), cache);
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import java.util.List;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Interface for a caching bocas repository with several cache tiers. The statistics returned by
+ * {@link #stats()} are those of the whole cache, where hits are lookups found in any tier.
+ * @author Andres Rodriguez.
+ */
+public interface TieredCachingBocasService extends CachingBocasService {
+	/**
+	 * Returns the statistics of every tier, from the fastest to the slowest. Lookups missing a tier
+	 * are looked up in the next one, so the request count of a tier is the miss count of the previous
+	 * one. Unused tiers return empty statistics.
+	 * @return A current snapshot of the heap, off-heap and disk tier statistics, in that order.
+	 */
+	List<CacheStats> tierStats();
+}
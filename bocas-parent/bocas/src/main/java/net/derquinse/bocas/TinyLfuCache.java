@@ -0,0 +1,603 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Bounded cache with a W-TinyLFU policy. New entries enter a small LRU window and, when they leave
+ * it, they are only admitted into the main segmented LRU region if their estimated access
+ * frequency is higher than the one of the entry that would be evicted, so that bursts of entries
+ * that are read once do not flush the frequently used ones. Frequencies are estimated with a
+ * {@link FrequencySketch}.
+ * <p>
+ * Values are read without locking. Accesses are recorded in the policy only if its lock is free,
+ * so under contention some of them are dropped, which only affects the eviction order.
+ * @author Andres Rodriguez.
+ */
+final class TinyLfuCache<K, V> extends AbstractCache<K, V> {
+	/** Fraction of the capacity used by the admission window. */
+	private static final double WINDOW = 0.01;
+	/** Fraction of the main region used by the protected segment. */
+	private static final double PROTECTED = 0.8;
+
+	/** Queue ids. */
+	private static final int NONE = 0, IN_WINDOW = 1, IN_PROBATION = 2, IN_PROTECTED = 3;
+
+	/** Entries. */
+	private final ConcurrentMap<K, Node<K, V>> data = Maps.newConcurrentMap();
+	/** Loads in progress. */
+	private final ConcurrentMap<K, FutureTask<V>> loading = Maps.newConcurrentMap();
+	/** Policy lock. */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** Frequency sketch, guarded by the lock. */
+	private final FrequencySketch sketch = new FrequencySketch();
+	/** Entry weigher, {@code null} if every entry weighs one. */
+	@Nullable
+	private final Weigher<? super K, ? super V> weigher;
+	/** Maximum weight. */
+	private final long maximum;
+	/** Maximum weight of the window. */
+	private final long windowMaximum;
+	/** Maximum weight of the protected segment. */
+	private final long protectedMaximum;
+	/** Expiration after access in nanoseconds, zero if entries don't expire. */
+	private final long expireNanos;
+	/** Ticker. */
+	private final Ticker ticker;
+	/** Statistics. */
+	private final SimpleStatsCounter stats = new SimpleStatsCounter();
+	/** Queues (sentinels of circular lists), guarded by the lock. */
+	private final Node<K, V> window = new Node<K, V>(), probation = new Node<K, V>(), protect = new Node<K, V>();
+	/** Queue weights, guarded by the lock. */
+	private long windowWeight, probationWeight, protectedWeight;
+	/** Map view. */
+	private ConcurrentMap<K, V> asMap;
+
+	/**
+	 * Constructor.
+	 * @param maximum Maximum weight (or number of entries if no weigher is provided).
+	 * @param weigher Entry weigher, {@code null} if every entry weighs one.
+	 * @param expireNanos Expiration after access in nanoseconds, zero if entries don't expire.
+	 * @param ticker Ticker to use for expiration.
+	 */
+	TinyLfuCache(long maximum, @Nullable Weigher<? super K, ? super V> weigher, long expireNanos, Ticker ticker) {
+		checkArgument(maximum >= 0, "The maximum weight must be >= 0");
+		checkArgument(expireNanos >= 0, "The expiration must be >= 0");
+		this.maximum = maximum;
+		this.weigher = weigher;
+		this.expireNanos = expireNanos;
+		this.ticker = checkNotNull(ticker);
+		this.windowMaximum = (long) (maximum * WINDOW);
+		this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED);
+		if (weigher == null) {
+			sketch.ensureCapacity(maximum);
+		}
+	}
+
+	private static int hash(Object key) {
+		final int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private int weigh(K key, V value) {
+		if (weigher == null) {
+			return 1;
+		}
+		final int w = weigher.weigh(key, value);
+		checkArgument(w >= 0, "Negative weight");
+		return w;
+	}
+
+	/** Returns the live node of a key, or {@code null} if not found or expired. */
+	@Nullable
+	private Node<K, V> live(Object key) {
+		final Node<K, V> node = data.get(checkNotNull(key));
+		if (node == null) {
+			return null;
+		}
+		if (expireNanos > 0 && ticker.read() - node.accessTime >= expireNanos) {
+			lock.lock();
+			try {
+				if (data.remove(key, node)) {
+					unlink(node);
+				}
+			} finally {
+				lock.unlock();
+			}
+			return null;
+		}
+		return node;
+	}
+
+	/** Records an access to a node, unless the policy is busy. */
+	private void access(Node<K, V> node) {
+		if (expireNanos > 0) {
+			node.accessTime = ticker.read();
+		}
+		if (lock.tryLock()) {
+			try {
+				onAccess(node);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.Cache#getIfPresent(java.lang.Object)
+	 */
+	@Override
+	public V getIfPresent(Object key) {
+		final Node<K, V> node = live(key);
+		if (node == null) {
+			stats.recordMisses(1);
+			return null;
+		}
+		stats.recordHits(1);
+		access(node);
+		return node.value;
+	}
+
+	/**
+	 * Returns the value of a key, loading it if needed. Concurrent loads of the same key are
+	 * coalesced.
+	 * @see com.google.common.cache.AbstractCache#get(java.lang.Object, java.util.concurrent.Callable)
+	 */
+	@Override
+	public V get(K key, final Callable<? extends V> valueLoader) throws ExecutionException {
+		checkNotNull(valueLoader);
+		final V value = getIfPresent(key);
+		if (value != null) {
+			return value;
+		}
+		final FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				return valueLoader.call();
+			}
+		});
+		final FutureTask<V> existing = loading.putIfAbsent(key, task);
+		if (existing != null) {
+			return result(existing);
+		}
+		try {
+			final long start = ticker.read();
+			task.run();
+			final V loaded;
+			try {
+				loaded = result(task);
+			} catch (ExecutionException e) {
+				stats.recordLoadException(ticker.read() - start);
+				throw e;
+			} catch (RuntimeException e) {
+				stats.recordLoadException(ticker.read() - start);
+				throw e;
+			}
+			stats.recordLoadSuccess(ticker.read() - start);
+			put(key, loaded);
+			return loaded;
+		} finally {
+			loading.remove(key, task);
+		}
+	}
+
+	/** Returns the result of a load, converting exceptions as Guava caches do. */
+	private static <V> V result(FutureTask<V> task) throws ExecutionException {
+		final V value;
+		try {
+			value = Uninterruptibles.getUninterruptibly(task);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw new UncheckedExecutionException(cause);
+			}
+			if (cause instanceof Error) {
+				throw new ExecutionError((Error) cause);
+			}
+			throw e;
+		}
+		if (value == null) {
+			throw new InvalidCacheLoadException("Loader returned null");
+		}
+		return value;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void put(K key, V value) {
+		put(key, value, false);
+	}
+
+	/**
+	 * Puts an entry.
+	 * @param onlyIfAbsent Whether existing entries must be kept.
+	 * @return The previous value, if any.
+	 */
+	@Nullable
+	private V put(K key, V value, boolean onlyIfAbsent) {
+		checkNotNull(key);
+		checkNotNull(value);
+		final int weight = weigh(key, value);
+		lock.lock();
+		try {
+			final Node<K, V> existing = live(key);
+			if (existing != null) {
+				final V old = existing.value;
+				if (!onlyIfAbsent) {
+					existing.value = value;
+					addWeight(existing.queue, weight - existing.weight);
+					existing.weight = weight;
+					onAccess(existing);
+					evict();
+				}
+				return old;
+			}
+			final Node<K, V> node = new Node<K, V>(key, value, weight);
+			node.accessTime = expireNanos > 0 ? ticker.read() : 0L;
+			data.put(key, node);
+			if (weigher != null) {
+				sketch.ensureCapacity(data.size());
+			}
+			sketch.increment(hash(key));
+			link(window, node, IN_WINDOW);
+			evict();
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Removes an entry, returning the removed node. */
+	@Nullable
+	private Node<K, V> remove(Object key, @Nullable Object value) {
+		lock.lock();
+		try {
+			final Node<K, V> node = data.get(key);
+			if (node == null || (value != null && !value.equals(node.value))) {
+				return null;
+			}
+			data.remove(key);
+			unlink(node);
+			return node;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#invalidate(java.lang.Object)
+	 */
+	@Override
+	public void invalidate(Object key) {
+		remove(checkNotNull(key), null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#invalidateAll()
+	 */
+	@Override
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			for (Node<K, V> node : data.values()) {
+				unlink(node);
+			}
+			data.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#size()
+	 */
+	@Override
+	public long size() {
+		return data.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#stats()
+	 */
+	@Override
+	public CacheStats stats() {
+		return stats.snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.google.common.cache.AbstractCache#asMap()
+	 */
+	@Override
+	public ConcurrentMap<K, V> asMap() {
+		if (asMap == null) {
+			asMap = new AsMap();
+		}
+		return asMap;
+	}
+
+	/** Adds weight to a queue. Must be called holding the lock. */
+	private void addWeight(int queue, long weight) {
+		switch (queue) {
+		case IN_WINDOW:
+			windowWeight += weight;
+			break;
+		case IN_PROBATION:
+			probationWeight += weight;
+			break;
+		case IN_PROTECTED:
+			protectedWeight += weight;
+			break;
+		default:
+			break;
+		}
+	}
+
+	/** Links a node at the most recently used end of a queue. Must be called holding the lock. */
+	private void link(Node<K, V> head, Node<K, V> node, int queue) {
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+		node.queue = queue;
+		addWeight(queue, node.weight);
+	}
+
+	/** Unlinks a node from its queue. Must be called holding the lock. */
+	private void unlink(Node<K, V> node) {
+		if (node.queue != NONE) {
+			node.prev.next = node.next;
+			node.next.prev = node.prev;
+			node.prev = null;
+			node.next = null;
+			addWeight(node.queue, -node.weight);
+			node.queue = NONE;
+		}
+	}
+
+	/** Updates the policy after an access. Must be called holding the lock. */
+	private void onAccess(Node<K, V> node) {
+		final int queue = node.queue;
+		if (queue == NONE) {
+			return; // Already removed
+		}
+		sketch.increment(hash(node.key));
+		unlink(node);
+		if (queue == IN_WINDOW) {
+			link(window, node, IN_WINDOW);
+		} else {
+			// Probation entries are promoted, demoting the least recently used protected ones.
+			link(protect, node, IN_PROTECTED);
+			while (protectedWeight > protectedMaximum && protect.next != node) {
+				final Node<K, V> demoted = protect.next;
+				unlink(demoted);
+				link(probation, demoted, IN_PROBATION);
+			}
+		}
+	}
+
+	/** Evicts entries until the cache is within its bounds. Must be called holding the lock. */
+	private void evict() {
+		// Entries leaving the window become admission candidates at the end of the probation segment.
+		int candidates = 0;
+		while (windowWeight > windowMaximum && window.next != window) {
+			final Node<K, V> node = window.next;
+			unlink(node);
+			link(probation, node, IN_PROBATION);
+			candidates++;
+		}
+		while (windowWeight + probationWeight + protectedWeight > maximum) {
+			final Node<K, V> victim;
+			if (probation.next != probation) {
+				final Node<K, V> lru = probation.next;
+				final Node<K, V> candidate = probation.prev;
+				if (candidates > 0 && candidate != lru) {
+					// Admission: the candidate replaces the victim only if it is used more frequently.
+					if (sketch.frequency(hash(candidate.key)) > sketch.frequency(hash(lru.key))) {
+						victim = lru;
+					} else {
+						victim = candidate;
+						candidates--;
+					}
+				} else {
+					victim = lru;
+					if (candidate == lru && candidates > 0) {
+						candidates--;
+					}
+				}
+			} else if (protect.next != protect) {
+				victim = protect.next;
+			} else {
+				victim = window.next;
+			}
+			data.remove(victim.key, victim);
+			unlink(victim);
+			stats.recordEviction();
+		}
+	}
+
+	/** Cache entry and queue node. */
+	private static final class Node<K, V> {
+		/** Key. */
+		final K key;
+		/** Value. */
+		volatile V value;
+		/** Last access time. */
+		volatile long accessTime;
+		/** Weight, guarded by the lock. */
+		int weight;
+		/** Queue the node is in, guarded by the lock. */
+		int queue = NONE;
+		/** Previous node, guarded by the lock. */
+		Node<K, V> prev;
+		/** Next node, guarded by the lock. */
+		Node<K, V> next;
+
+		/** Sentinel constructor. */
+		Node() {
+			this.key = null;
+			this.prev = this;
+			this.next = this;
+		}
+
+		/** Constructor. */
+		Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/** Map view. Reads do not record statistics. */
+	private final class AsMap extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+		@Override
+		public boolean containsKey(Object key) {
+			return live(key) != null;
+		}
+
+		@Override
+		public V get(Object key) {
+			final Node<K, V> node = live(key);
+			return node != null ? node.value : null;
+		}
+
+		@Override
+		public V put(K key, V value) {
+			return TinyLfuCache.this.put(key, value, false);
+		}
+
+		@Override
+		public V putIfAbsent(K key, V value) {
+			return TinyLfuCache.this.put(key, value, true);
+		}
+
+		@Override
+		public V remove(Object key) {
+			final Node<K, V> node = TinyLfuCache.this.remove(key, null);
+			return node != null ? node.value : null;
+		}
+
+		@Override
+		public boolean remove(Object key, Object value) {
+			return TinyLfuCache.this.remove(key, checkNotNull(value)) != null;
+		}
+
+		@Override
+		public boolean replace(K key, V oldValue, V newValue) {
+			checkNotNull(oldValue);
+			lock.lock();
+			try {
+				final Node<K, V> node = live(key);
+				if (node == null || !oldValue.equals(node.value)) {
+					return false;
+				}
+				TinyLfuCache.this.put(key, newValue, false);
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public V replace(K key, V value) {
+			lock.lock();
+			try {
+				return live(key) != null ? TinyLfuCache.this.put(key, value, false) : null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int size() {
+			return data.size();
+		}
+
+		@Override
+		public void clear() {
+			invalidateAll();
+		}
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public int size() {
+					return data.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					final Iterator<Node<K, V>> it = data.values().iterator();
+					return new Iterator<Map.Entry<K, V>>() {
+						private Node<K, V> current;
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Map.Entry<K, V> next() {
+							current = it.next();
+							return new SimpleImmutableEntry<K, V>(current.key, current.value);
+						}
+
+						@Override
+						public void remove() {
+							checkNotNull(current);
+							TinyLfuCache.this.remove(current.key, null);
+							current = null;
+						}
+					};
+				}
+			};
+		}
+	}
+}
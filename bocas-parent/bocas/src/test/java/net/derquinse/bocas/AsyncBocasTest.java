@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static net.derquinse.common.io.MemoryByteSourceLoader.get;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Test for asynchronous buckets.
+ */
+public class AsyncBocasTest {
+	private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+	@AfterClass
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void executor() throws Exception {
+		final Bocas bucket = BocasServices.memoryBucket(sha256(), get());
+		final AsyncBocas async = BocasServices.async(BocasServices.shared(bucket), executor).getBucket("test");
+		assertEquals(async.getHashFunction(), sha256());
+		Map<ByteString, MemoryByteSource> set = BocasExerciser.dataSet(sha256(), 50);
+		assertTrue(async.contained(set.keySet()).get().isEmpty());
+		assertTrue(async.get(set.keySet()).get().isEmpty());
+		List<ListenableFuture<ByteString>> puts = Lists.newArrayList();
+		for (MemoryByteSource value : set.values()) {
+			puts.add(async.put(value));
+		}
+		assertEquals(Futures.allAsList(puts).get().size(), set.size());
+		assertEquals(bucket.contained(set.keySet()), set.keySet());
+		assertEquals(async.contained(set.keySet()).get(), set.keySet());
+		assertEquals(async.get(set.keySet()).get().keySet(), set.keySet());
+		MemoryByteSource value = BocasExerciser.data();
+		ByteString key = sha256().hash(value);
+		assertFalse(async.contains(key).get());
+		assertFalse(async.get(key).get().isPresent());
+		assertEquals(async.putAll(ImmutableList.of(value)).get(), ImmutableList.of(key));
+		assertTrue(async.contains(key).get());
+		BocasExerciser.check(value, async.get(key).get().get());
+	}
+
+}
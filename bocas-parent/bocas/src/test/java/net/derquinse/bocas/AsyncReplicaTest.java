@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static net.derquinse.common.io.MemoryByteSourceLoader.get;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Test for asynchronous replicas.
+ */
+public class AsyncReplicaTest {
+
+	private static Bocas newBucket() {
+		return BocasServices.memoryBucket(sha256(), get());
+	}
+
+	/** Replica that fails while down. */
+	private static final class FailingBocas extends ForwardingBocas {
+		final Bocas delegate = newBucket();
+		volatile boolean down = false;
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		@Override
+		public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+			if (down) {
+				throw new BocasException("Replica down");
+			}
+			return super.putAll(values);
+		}
+	}
+
+	@Test
+	public void replicated() throws Exception {
+		final Bocas primary = newBucket();
+		final Bocas replica = newBucket();
+		final AsyncReplicatedBocas replicated = BocasServices.asyncReplica().batchSize(7).build(primary, replica, "test");
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		replicated.putAll(data.values());
+		assertEquals(primary.contained(data.keySet()), data.keySet());
+		assertTrue(replicated.awaitReplication(10L, TimeUnit.SECONDS));
+		assertEquals(replica.contained(data.keySet()), data.keySet());
+		assertEquals(replicated.getReplicatedCount(), 20L);
+		assertEquals(replicated.getLag(TimeUnit.NANOSECONDS), 0L);
+		replicated.close();
+	}
+
+	/** Keys not replicated before closing must be replicated from the journal. */
+	@Test
+	public void journal() throws Exception {
+		final File dir = Files.createTempDir();
+		final Bocas primary = newBucket();
+		final FailingBocas replica = new FailingBocas();
+		replica.down = true;
+		final AsyncReplicatedBocas first = BocasServices.asyncReplica().directory(dir)
+				.retryDelay(10L, 20L, TimeUnit.MILLISECONDS).build(primary, replica, "test");
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		first.putAll(data.values());
+		assertTrue(replica.contained(data.keySet()).isEmpty());
+		assertEquals(first.getPendingCount(), 20);
+		// The worker may not have tried yet when closed.
+		for (int i = 0; i < 100 && first.getFailureCount() == 0; i++) {
+			Thread.sleep(10L);
+		}
+		first.close();
+		assertTrue(first.getFailureCount() > 0);
+		replica.down = false;
+		final AsyncReplicatedBocas second = BocasServices.asyncReplica().directory(dir).build(primary, replica, "test");
+		assertTrue(second.awaitReplication(10L, TimeUnit.SECONDS));
+		assertEquals(replica.contained(data.keySet()), data.keySet());
+		assertTrue(!second.isCatchingUp());
+		second.close();
+		assertEquals(new File(dir, "74657374.journal").length(), 8L);
+	}
+
+	/** Journal files must stay in the directory whatever the bucket name. */
+	@Test
+	public void journalName() throws Exception {
+		final File dir = Files.createTempDir();
+		final AsyncReplicaBuilder builder = BocasServices.asyncReplica().directory(dir);
+		for (String name : new String[] { "../up", "a/b", "\u00f1" }) {
+			assertEquals(builder.journalFile(name).getParentFile(), dir);
+		}
+		final AsyncReplicatedBocas replicated = builder.build(newBucket(), newBucket(), "../test");
+		replicated.close();
+		assertEquals(dir.listFiles().length, 1);
+	}
+
+	/** A zero retry delay would retry failed batches in a busy loop. */
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void zeroRetryDelay() throws Exception {
+		BocasServices.asyncReplica().retryDelay(0L, 10L, TimeUnit.MILLISECONDS);
+	}
+
+	/** The journal must not grow without bound if the queue is never drained. */
+	@Test
+	public void journalCompaction() throws Exception {
+		final File file = new File(Files.createTempDir(), "test.journal");
+		ReplicationJournal journal = new ReplicationJournal(file, 4, false, 16L);
+		final List<ByteString> keys = Lists.newArrayList();
+		for (int i = 0; i < 203; i++) {
+			keys.add(ByteString.copyFrom(Ints.toByteArray(i)));
+		}
+		journal.append(keys.subList(0, 3));
+		for (int i = 3; i < 203; i += 2) {
+			journal.append(keys.subList(i, i + 2));
+			journal.commit(2);
+			assertTrue(file.length() <= 8L + 16L + 4L * 5, "Journal length: " + file.length());
+		}
+		assertEquals(journal.pending(), keys.subList(200, 203));
+		journal.close();
+		journal = new ReplicationJournal(file, 4, false, 16L);
+		assertEquals(journal.pending(), keys.subList(200, 203));
+		journal.close();
+	}
+
+	/** Writers blocked on a full queue must fail if the journal can't be written. */
+	@Test
+	public void failedJournal() throws Exception {
+		final ReplicationJournal journal = new ReplicationJournal(new File(Files.createTempDir(), "test.journal"), 32,
+				false);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Bocas replica = new ForwardingBocas() {
+			final Bocas delegate = newBucket();
+
+			@Override
+			protected Bocas delegate() {
+				return delegate;
+			}
+
+			@Override
+			public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+				Uninterruptibles.awaitUninterruptibly(latch);
+				final List<ByteString> keys = super.putAll(values);
+				try {
+					journal.close();
+				} catch (IOException e) {
+					throw new AssertionError(e);
+				}
+				return keys;
+			}
+		};
+		final AsyncReplicatedBocas replicated = new AsyncReplicatedBocas(newBucket(), replica, 1, 10, 1000L, 1000L,
+				journal);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			replicated.put(BocasExerciser.data());
+			final Future<ByteString> blocked = executor.submit(new Callable<ByteString>() {
+				@Override
+				public ByteString call() throws Exception {
+					return replicated.put(BocasExerciser.data());
+				}
+			});
+			latch.countDown();
+			try {
+				blocked.get(10L, TimeUnit.SECONDS);
+				fail("Replication failure expected");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof BocasException);
+			}
+			assertNotNull(replicated.getFailure());
+			try {
+				replicated.put(BocasExerciser.data());
+				fail("Replication failure expected");
+			} catch (BocasException e) {
+				// Expected.
+			}
+		} finally {
+			executor.shutdown();
+			replicated.close();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
+
+/**
+ * Test for batching buckets.
+ */
+public class BatchingBocasTest {
+	/** Bucket counting the read calls. */
+	private static final class CountingBocas extends ForwardingBocas {
+		final Bocas delegate = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		final AtomicInteger single = new AtomicInteger();
+		final AtomicInteger bulk = new AtomicInteger();
+		volatile boolean fail = false;
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		private void check() {
+			if (fail) {
+				throw new BocasException("Read failed");
+			}
+		}
+
+		@Override
+		public boolean contains(ByteString key) {
+			single.incrementAndGet();
+			check();
+			return super.contains(key);
+		}
+
+		@Override
+		public Set<ByteString> contained(Iterable<ByteString> keys) {
+			bulk.incrementAndGet();
+			check();
+			return super.contained(keys);
+		}
+
+		@Override
+		public Optional<ByteSource> get(ByteString key) {
+			single.incrementAndGet();
+			check();
+			return super.get(key);
+		}
+
+		@Override
+		public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+			bulk.incrementAndGet();
+			check();
+			return super.get(keys);
+		}
+	}
+
+	/** Runs concurrent single-key reads of every key, returning the number found. */
+	private static int read(final BatchingBocas bocas, List<ByteString> keys, final boolean get) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(keys.size());
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<Boolean>> futures = Lists.newArrayList();
+			for (final ByteString key : keys) {
+				futures.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						start.await();
+						return get ? bocas.get(key).isPresent() : bocas.contains(key);
+					}
+				}));
+			}
+			start.countDown();
+			int found = 0;
+			for (Future<Boolean> f : futures) {
+				found += f.get() ? 1 : 0;
+			}
+			return found;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void exercise() throws Exception {
+		BocasExerciser.exercise(BocasServices.batching().window(1L, TimeUnit.MILLISECONDS).build(
+				BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get())), 20);
+	}
+
+	/** Concurrent reads must be merged into bulk reads. */
+	@Test
+	public void batched() throws Exception {
+		final CountingBocas source = new CountingBocas();
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		source.delegate.putAll(data.values());
+		final BatchingBocas bocas = BocasServices.batching().window(200L, TimeUnit.MILLISECONDS).maxBatchSize(10)
+				.build(source);
+		final List<ByteString> keys = Lists.newArrayList(data.keySet());
+		keys.add(sha256().hash(BocasExerciser.data()));
+		assertEquals(read(bocas, keys, true), data.size());
+		assertEquals(read(bocas, keys, false), data.size());
+		assertEquals(bocas.getCallCount(), 2L * keys.size());
+		assertTrue(bocas.getBatchCount() < keys.size(), "Reads not batched");
+		assertTrue(bocas.getLargestBatchSize() <= 10);
+		assertTrue(bocas.getAverageBatchSize() > 1.0);
+		assertEquals(source.single.get() + source.bulk.get(), (int) bocas.getBatchCount());
+	}
+
+	/** Failures must be reported to every caller of the batch. */
+	@Test
+	public void failure() throws Exception {
+		final CountingBocas source = new CountingBocas();
+		source.fail = true;
+		final BatchingBocas bocas = BocasServices.batching().build(source);
+		try {
+			bocas.contains(sha256().hash(BocasExerciser.data()));
+			assertFalse(true, "Exception expected");
+		} catch (BocasException e) {
+			assertEquals(e.getMessage(), "Read failed");
+		}
+	}
+}
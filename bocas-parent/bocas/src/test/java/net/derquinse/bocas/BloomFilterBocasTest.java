@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static net.derquinse.common.io.MemoryByteSourceLoader.get;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+/**
+ * Test for Bloom filter decorators.
+ */
+public class BloomFilterBocasTest {
+	@Test
+	public void filter() throws Exception {
+		final Bocas bucket = BocasServices.memoryBucket(sha256(), get());
+		final File dir = Files.createTempDir();
+		final File file = new File(dir, "74657374.bloom");
+		final BloomFilterBocas bloom = BocasServices.bloomFilter().expectedInsertions(100).fpp(0.001).directory(dir)
+				.build(bucket, "test");
+		Map<ByteString, MemoryByteSource> set1 = BocasExerciser.dataSet(sha256(), 50);
+		Map<ByteString, MemoryByteSource> set2 = BocasExerciser.dataSet(sha256(), 50);
+		Map<ByteString, MemoryByteSource> set3 = BocasExerciser.dataSet(sha256(), 50);
+		// Not ready: every lookup reaches the bucket
+		bucket.putAll(set1.values());
+		assertFalse(bloom.isReady());
+		assertEquals(bloom.contained(set1.keySet()), set1.keySet());
+		// Rebuilt
+		bloom.rebuild(set1.keySet());
+		assertTrue(bloom.isReady());
+		assertEquals(bloom.contained(set1.keySet()), set1.keySet());
+		assertEquals(bloom.get(set1.keySet()).keySet(), set1.keySet());
+		assertTrue(bloom.contained(set2.keySet()).isEmpty());
+		// Writes through the decorator are added to the filter
+		bloom.putAll(set2.values());
+		assertEquals(bloom.contained(set2.keySet()), set2.keySet());
+		// Writes behind the decorator are answered as misses locally
+		bucket.putAll(set3.values());
+		assertEquals(bucket.contained(set3.keySet()), set3.keySet());
+		assertTrue(bloom.contained(set3.keySet()).size() < 5);
+		// Grow beyond the expected insertions
+		BocasExerciser.exercise(bloom);
+		// Persistence
+		bloom.close();
+		assertTrue(file.exists());
+		final BloomFilterBocas loaded = BocasServices.bloomFilter().directory(dir).build(bucket, "test");
+		assertTrue(loaded.isReady());
+		assertFalse(file.exists());
+		assertEquals(loaded.contained(set1.keySet()), set1.keySet());
+		assertEquals(loaded.contained(set2.keySet()), set2.keySet());
+		assertTrue(loaded.contained(set3.keySet()).size() < 5);
+		// Rebuild scanning the bucket
+		loaded.rebuild();
+		assertEquals(loaded.contained(set3.keySet()), set3.keySet());
+		loaded.close();
+		assertTrue(file.delete());
+		assertTrue(dir.delete());
+	}
+
+	/** Filter files must stay in the directory whatever the bucket name. */
+	@Test
+	public void fileName() throws Exception {
+		final File dir = Files.createTempDir();
+		for (String name : new String[] { "../up", "a/b", "\u00f1" }) {
+			assertEquals(BloomFilterBocasService.file(dir, name).getParentFile(), dir);
+		}
+		final BloomFilterBocas bloom = BocasServices.bloomFilter().directory(dir)
+				.build(BocasServices.memoryBucket(sha256(), get()), "../test");
+		bloom.rebuild(ImmutableSet.<ByteString> of());
+		bloom.close();
+		assertEquals(dir.listFiles().length, 1);
+	}
+
+	@Test
+	public void service() throws Exception {
+		final BloomFilterBocasService service = BocasServices.bloomFilter().expectedInsertions(100).build(
+				BocasServices.shared(BocasServices.memoryBucket(sha256(), get())));
+		final BloomFilterBocas bucket = service.getBucket("test");
+		bucket.rebuild(ImmutableSet.<ByteString> of());
+		assertTrue(bucket == service.getBucket("test"));
+		BocasExerciser.exercise(bucket);
+		BocasExerciser.exercise(service.getBucket("other"));
+	}
+}
@@ -21,8 +21,10 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +42,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
 import com.google.common.primitives.Longs;
 
@@ -58,8 +61,12 @@ public final class BocasExerciser {
 	private final int tasks;
 
 	public static MemoryByteSource data() {
+		return data(1024, 10240);
+	}
+
+	public static MemoryByteSource data(int minSize, int maxSize) {
 		byte[] deterministic = Longs.toByteArray(INDEX.incrementAndGet());
-		byte[] data = RandomSupport.getBytes(RandomSupport.nextInt(1024, 10240));
+		byte[] data = RandomSupport.getBytes(RandomSupport.nextInt(minSize, maxSize));
 		for (int i = 0; i < deterministic.length; i++) {
 			data[i] = deterministic[i];
 		}
@@ -151,6 +158,42 @@ public final class BocasExerciser {
 		}
 	}
 
+	private void checkRanges(ByteSource value) throws IOException {
+		ByteString k = hash(value);
+		long size = value.size();
+		check(value.slice(0, 10), bocas.get(k, 0, 10).get());
+		check(value.slice(7, 100), bocas.get(k, 7, 100).get());
+		check(value.slice(size / 2, size), bocas.get(k, size / 2, size).get());
+		check(value.slice(size - 3, 3), bocas.get(k, size - 3, Long.MAX_VALUE).get());
+		check(value, bocas.get(k, 0, size).get());
+		assertEquals(bocas.get(k, 5, 0).get().size(), 0L);
+		assertEquals(bocas.get(k, size, 10).get().size(), 0L);
+		assertEquals(bocas.get(k, size + 100, 10).get().size(), 0L);
+	}
+
+	private void checkScan(Map<ByteString, ? extends ByteSource> expected) throws IOException {
+		final Set<ByteString> found = Sets.newHashSet();
+		String cursor = null;
+		do {
+			final BocasKeyPage page = bocas.scan(cursor, 100, true);
+			assertTrue(page.getKeys().size() <= 100);
+			for (ByteString k : page.getKeys()) {
+				assertTrue(found.add(k));
+				final ByteSource v = expected.get(k);
+				if (v != null) {
+					assertEquals(page.getSizes().get(k).longValue(), v.size());
+				}
+			}
+			cursor = page.getCursor().orNull();
+		} while (cursor != null);
+		assertTrue(found.containsAll(expected.keySet()));
+		assertTrue(Sets.newHashSet(BocasServices.keys(bocas, 33)).containsAll(expected.keySet()));
+		final BocasKeyPage first = bocas.scan(null, 1, false);
+		assertEquals(first.getKeys().size(), 1);
+		assertTrue(first.getSizes().isEmpty());
+		assertFalse(first.isLast());
+	}
+
 	private ByteString put(ByteSource value) throws IOException {
 		ByteString returned = bocas.put(value);
 		ByteString k = hash(value);
@@ -159,11 +202,26 @@ public final class BocasExerciser {
 		return k;
 	}
 
+	private ByteString putStream(ByteSource value) throws IOException {
+		final InputStream is = value.openStream();
+		try {
+			ByteString returned = bocas.put(is);
+			ByteString k = hash(value);
+			assertEquals(returned, k);
+			checkInRepository(value);
+			checkRanges(value);
+			return k;
+		} finally {
+			is.close();
+		}
+	}
+
 	private void checkNotInRepository(ByteSource value) throws Exception {
 		ByteString k = hash(value);
 		assertFalse(bocas.contains(k));
 		assertTrue(bocas.contained(ImmutableSet.of(k)).isEmpty());
 		assertFalse(bocas.get(k).isPresent());
+		assertFalse(bocas.get(k, 0, 10).isPresent());
 		assertTrue(bocas.get(ImmutableSet.of(k)).isEmpty());
 	}
 
@@ -176,6 +234,8 @@ public final class BocasExerciser {
 		MemoryByteSource data3 = data();
 		ByteString k3 = hash(data3);
 		checkInRepository(data1);
+		checkRanges(data1);
+		checkRanges(data2);
 		checkNotInRepository(data3);
 		MemoryByteSource data4 = data();
 		ByteString k4 = hash(data4);
@@ -212,6 +272,16 @@ public final class BocasExerciser {
 		bocas.putAll(valueList);
 		assertTrue(bocas.contained(keyList).containsAll(keyList));
 		assertTrue(bocas.get(keyList).keySet().containsAll(keyList));
+		// Streaming
+		putStream(data());
+		putStream(data(300000, 400000));
+		// Scan
+		final Map<ByteString, ByteSource> scanned = Maps.newHashMap();
+		for (ByteSource v : valueList) {
+			scanned.put(hash(v), v);
+		}
+		scanned.put(k1, data1);
+		checkScan(scanned);
 		// ZIP
 		ZipBocas zb = ZipBocas.of(bocas);
 		Map<String, ByteString> entries = zb.putZip(ZipFileLoader.get().load(getClass().getResourceAsStream("loren.zip")));
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Benchmark comparing the hit rates of Guava's LRU-based caches and W-TinyLFU caches on synthetic
+ * Zipf traces, with and without scan bursts, and on a recorded trace if a file with one key per line
+ * is provided as an argument. It is not run as part of the test suite, run it as a Java application.
+ * @author Andres Rodriguez.
+ */
+public final class CacheHitRateBenchmark {
+	/** Number of distinct keys in the synthetic traces. */
+	private static final int KEYS = 100000;
+	/** Number of accesses in the synthetic traces. */
+	private static final int ACCESSES = 1000000;
+	/** Cache size. */
+	private static final int CACHE_SIZE = 1000;
+	/** Accesses between scan bursts. */
+	private static final int SCAN_PERIOD = 100000;
+	/** Number of keys in a scan burst. */
+	private static final int SCAN_SIZE = 5000;
+
+	private CacheHitRateBenchmark() {
+	}
+
+	/** Generates a Zipf distributed trace. */
+	private static List<Long> zipf(double exponent, long seed) {
+		final double[] cdf = new double[KEYS];
+		double sum = 0;
+		for (int i = 0; i < KEYS; i++) {
+			sum += 1.0 / Math.pow(i + 1, exponent);
+			cdf[i] = sum;
+		}
+		final Random random = new Random(seed);
+		final List<Long> trace = Lists.newArrayListWithCapacity(ACCESSES);
+		for (int i = 0; i < ACCESSES; i++) {
+			int k = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+			trace.add((long) (k < 0 ? -k - 1 : k));
+		}
+		return trace;
+	}
+
+	/** Adds bursts of keys read only once to a trace. */
+	private static List<Long> withScans(List<Long> trace) {
+		final List<Long> scanned = Lists.newArrayListWithCapacity(trace.size() + trace.size() / SCAN_PERIOD * SCAN_SIZE);
+		long next = KEYS;
+		for (int i = 0; i < trace.size(); i++) {
+			if (i > 0 && i % SCAN_PERIOD == 0) {
+				for (int j = 0; j < SCAN_SIZE; j++) {
+					scanned.add(next++);
+				}
+			}
+			scanned.add(trace.get(i));
+		}
+		return scanned;
+	}
+
+	private static List<Long> recorded(File file) throws Exception {
+		final List<Long> trace = Lists.newArrayList();
+		for (String line : Files.readLines(file, Charsets.UTF_8)) {
+			final String key = line.trim();
+			if (key.length() > 0) {
+				trace.add((long) key.hashCode() << 32 | (key.length() & 0xffffffffL));
+			}
+		}
+		return trace;
+	}
+
+	private static double hitRate(Cache<Long, Boolean> cache, List<Long> trace) {
+		for (Long key : trace) {
+			if (cache.getIfPresent(key) == null) {
+				cache.put(key, Boolean.TRUE);
+			}
+		}
+		return cache.stats().hitRate();
+	}
+
+	private static void run(String name, List<Long> trace) {
+		final Cache<Long, Boolean> lru = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).recordStats().build();
+		final Cache<Long, Boolean> tinyLfu = new TinyLfuCache<Long, Boolean>(CACHE_SIZE, null, 0L, Ticker.systemTicker());
+		System.out.printf("%s (%d accesses): LRU %.2f%%, W-TinyLFU %.2f%%%n", name, trace.size(),
+				100 * hitRate(lru, trace), 100 * hitRate(tinyLfu, trace));
+	}
+
+	public static void main(String[] args) throws Exception {
+		run("Zipf 0.9", zipf(0.9, 1L));
+		run("Zipf 0.7", zipf(0.7, 2L));
+		run("Zipf 0.9 with scans", withScans(zipf(0.9, 3L)));
+		for (String arg : args) {
+			run(arg, recorded(new File(arg)));
+		}
+	}
+}
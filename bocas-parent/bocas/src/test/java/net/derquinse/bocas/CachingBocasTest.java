@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Test for the caching buckets.
+ */
+public class CachingBocasTest {
+	/** Bucket counting the keys fetched. */
+	private static final class CountingBocas extends ForwardingBocas {
+		final Bocas delegate = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		final Multiset<ByteString> fetched = ConcurrentHashMultiset.create();
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		@Override
+		public Optional<ByteSource> get(ByteString key) {
+			fetched.add(key);
+			Uninterruptibles.sleepUninterruptibly(50L, TimeUnit.MILLISECONDS);
+			return super.get(key);
+		}
+
+		@Override
+		public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+			fetched.addAll(Lists.newArrayList(keys));
+			Uninterruptibles.sleepUninterruptibly(50L, TimeUnit.MILLISECONDS);
+			return super.get(keys);
+		}
+	}
+
+	/** Concurrent misses of the same keys must be loaded once. */
+	@Test
+	public void coalesced() throws Exception {
+		final CountingBocas source = new CountingBocas();
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 50);
+		source.delegate.putAll(data.values());
+		final Bocas cached = BocasServices.cache().maximumSize(1000L).build(BocasServices.shared(source))
+				.getBucket("test");
+		final List<ByteString> keys = Lists.newArrayList(data.keySet());
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Integer>> futures = Lists.newArrayList();
+			for (int i = 0; i < 8; i++) {
+				final int t = i;
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						if (t % 2 == 0) {
+							return cached.get(keys.subList(t, keys.size())).size();
+						}
+						return cached.get(keys.get(t)).isPresent() ? 1 : 0;
+					}
+				}));
+			}
+			for (int i = 0; i < 8; i++) {
+				assertEquals(futures.get(i).get().intValue(), i % 2 == 0 ? keys.size() - i : 1);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		for (ByteString key : keys) {
+			assertEquals(source.fetched.count(key), 1, "Key fetched more than once");
+		}
+	}
+
+	/** Loads must be recorded in the cache statistics. */
+	@Test
+	public void stats() throws Exception {
+		final CountingBocas source = new CountingBocas();
+		final ByteString key = source.delegate.put(BocasExerciser.data());
+		final CachingBocasService service = BocasServices.cache().maximumSize(1000L).build(BocasServices.shared(source));
+		final Bocas cached = service.getBucket("test");
+		assertTrue(cached.get(key).isPresent());
+		assertTrue(cached.get(key).isPresent());
+		assertFalse(cached.get(sha256().hash(BocasExerciser.data())).isPresent());
+		final CacheStats stats = service.stats();
+		assertEquals(stats.hitCount(), 1L);
+		assertEquals(stats.missCount(), 2L);
+		assertEquals(stats.loadSuccessCount(), 1L);
+		assertEquals(stats.loadExceptionCount(), 1L);
+		assertTrue(stats.averageLoadPenalty() >= TimeUnit.MILLISECONDS.toNanos(50L));
+	}
+
+	/** Absent entries must be remembered until written. */
+	@Test
+	public void negative() throws Exception {
+		final CountingBocas source = new CountingBocas();
+		final CachingBocasService service = BocasServices.cache().maximumSize(1000L)
+				.negativeCache(1000L, 1L, TimeUnit.MINUTES).build(BocasServices.shared(source));
+		final Bocas cached = service.getBucket("test");
+		final MemoryByteSource value = BocasExerciser.data();
+		final ByteString key = sha256().hash(value);
+		assertFalse(cached.get(key).isPresent());
+		assertFalse(cached.get(key).isPresent());
+		assertFalse(cached.contains(key));
+		assertEquals(source.fetched.count(key), 1);
+		assertEquals(service.negativeStats().hitCount(), 2L);
+		assertEquals(cached.put(value), key);
+		assertTrue(cached.contains(key));
+		assertTrue(cached.get(key).isPresent());
+	}
+
+	/** A new cache must be prewarmed with the keys snapshotted by a previous one. */
+	@Test
+	public void warmStart() throws Exception {
+		final File file = new File(Files.createTempDir(), "cache.keys");
+		final CountingBocas source = new CountingBocas();
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		source.delegate.putAll(data.values());
+		final BocasService shared = BocasServices.shared(source);
+		final CachingBocasService first = BocasServices.cache().maximumSize(1000L)
+				.warmStart(file, 50L, TimeUnit.MILLISECONDS, 2).build(shared);
+		assertEquals(first.getBucket("test").get(data.keySet()).size(), data.size());
+		for (int i = 0; i < 100 && !file.exists(); i++) {
+			Thread.sleep(50L);
+		}
+		assertTrue(file.exists());
+		source.fetched.clear();
+		final CachingBocasService second = BocasServices.cache().maximumSize(1000L)
+				.warmStart(file, 1L, TimeUnit.MINUTES, 2).build(shared);
+		for (int i = 0; i < 100 && source.fetched.size() < data.size(); i++) {
+			Thread.sleep(50L);
+		}
+		// Loads still in flight are waited for, so entries are fetched once.
+		assertEquals(second.getBucket("test").get(data.keySet()).size(), data.size());
+		for (ByteString key : data.keySet()) {
+			assertEquals(source.fetched.count(key), 1);
+		}
+		second.close();
+		// Closed services don't write snapshots.
+		first.close();
+		Thread.sleep(100L);
+		assertTrue(file.delete());
+		Thread.sleep(200L);
+		assertFalse(file.exists());
+	}
+
+	/** Corrupt snapshots must be ignored. */
+	@Test
+	public void corruptSnapshot() throws Exception {
+		final File file = new File(Files.createTempDir(), "cache.keys");
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x426f6357);
+			out.writeInt(1);
+			out.writeInt(1);
+			out.writeInt(Integer.MAX_VALUE);
+		} finally {
+			out.close();
+		}
+		final CountingBocas source = new CountingBocas();
+		final CachingBocasService service = BocasServices.cache().maximumSize(1000L)
+				.warmStart(file, 1L, TimeUnit.MINUTES, 2).build(BocasServices.shared(source));
+		final MemoryByteSource value = BocasExerciser.data();
+		final ByteString key = service.getBucket("test").put(value);
+		assertTrue(service.getBucket("test").get(key).isPresent());
+		service.close();
+	}
+
+}
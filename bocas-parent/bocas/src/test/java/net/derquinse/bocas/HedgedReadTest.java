@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Test for hedged reads.
+ */
+public class HedgedReadTest {
+	/** Bucket with slow reads. */
+	private static final class SlowBocas extends ForwardingBocas {
+		final Bocas delegate = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		volatile long delay = 200L;
+		volatile boolean failWrites = false;
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		private void sleep() {
+			Uninterruptibles.sleepUninterruptibly(delay, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public boolean contains(ByteString key) {
+			sleep();
+			return super.contains(key);
+		}
+
+		@Override
+		public Set<ByteString> contained(Iterable<ByteString> keys) {
+			sleep();
+			return super.contained(keys);
+		}
+
+		@Override
+		public Optional<ByteSource> get(ByteString key) {
+			sleep();
+			return super.get(key);
+		}
+
+		@Override
+		public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+			sleep();
+			return super.get(keys);
+		}
+
+		@Override
+		public ByteString put(ByteSource value) {
+			if (failWrites) {
+				throw new BocasException("Write failed");
+			}
+			return super.put(value);
+		}
+
+		@Override
+		public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+			if (failWrites) {
+				throw new BocasException("Write failed");
+			}
+			return super.putAll(values);
+		}
+	}
+
+	private static HedgedReadBuilder builder() {
+		return BocasServices.hedgedReads().delay(5L, 50L, TimeUnit.MILLISECONDS);
+	}
+
+	/** Reads must be answered by a replica when the primary is slow. */
+	@Test
+	public void replica() throws Exception {
+		final SlowBocas primary = new SlowBocas();
+		final Bocas replica = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		final Bocas hedged = builder().syncReplica(primary, ImmutableList.of(replica), false, 1, null);
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		hedged.putAll(data.values());
+		final ByteString key = data.keySet().iterator().next();
+		final Stopwatch w = Stopwatch.createStarted();
+		assertTrue(hedged.contains(key));
+		assertTrue(hedged.get(key).isPresent());
+		assertEquals(hedged.contained(data.keySet()), data.keySet());
+		assertEquals(hedged.get(data.keySet()).size(), data.size());
+		assertTrue(w.elapsed(TimeUnit.MILLISECONDS) < 4 * primary.delay, "Reads not hedged");
+		// Entries missing in the replica are looked for in the primary.
+		final MemoryByteSource value = BocasExerciser.data();
+		final ByteString missing = primary.delegate.put(value);
+		assertTrue(hedged.contains(missing));
+		assertTrue(hedged.get(missing).isPresent());
+	}
+
+	/** Writes must be checked in the primary, so a failed primary write is retried. */
+	@Test
+	public void failedPrimaryWrite() throws Exception {
+		final SlowBocas primary = new SlowBocas();
+		final Bocas replica = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		final Bocas hedged = builder().syncReplica(primary, ImmutableList.of(replica), true, 1, null);
+		final MemoryByteSource value = BocasExerciser.data();
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		primary.failWrites = true;
+		try {
+			hedged.put(value);
+			fail("Partial write expected");
+		} catch (PartialWriteException e) {
+		}
+		try {
+			hedged.putAll(data.values());
+			fail("Partial write expected");
+		} catch (PartialWriteException e) {
+		}
+		final ByteString key = sha256().hash(value);
+		assertTrue(replica.contains(key));
+		assertEquals(replica.contained(data.keySet()), data.keySet());
+		primary.failWrites = false;
+		hedged.put(value);
+		hedged.putAll(data.values());
+		assertTrue(primary.delegate.contains(key));
+		assertEquals(primary.delegate.contained(data.keySet()), data.keySet());
+	}
+
+	/** Reads must be answered by the seed when the primary is slow, merging partial answers. */
+	@Test
+	public void seeded() throws Exception {
+		final SlowBocas primary = new SlowBocas();
+		final Bocas seed = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		final Bocas hedged = builder().seeded(primary, seed);
+		final Map<ByteString, MemoryByteSource> set1 = BocasExerciser.dataSet(sha256(), 20);
+		final Map<ByteString, MemoryByteSource> set2 = BocasExerciser.dataSet(sha256(), 20);
+		primary.delegate.putAll(set1.values());
+		seed.putAll(set2.values());
+		final ByteString key = set2.keySet().iterator().next();
+		final Stopwatch w = Stopwatch.createStarted();
+		assertTrue(hedged.contains(key));
+		assertTrue(hedged.get(key).isPresent());
+		assertTrue(w.elapsed(TimeUnit.MILLISECONDS) < primary.delay, "Reads not hedged");
+		assertTrue(hedged.contains(set1.keySet().iterator().next()));
+		assertEquals(hedged.contained(set1.keySet()), set1.keySet());
+		assertEquals(hedged.get(set2.keySet()).size(), set2.size());
+		final ByteString missing = sha256().hash(BocasExerciser.data());
+		assertFalse(hedged.contains(missing));
+		assertFalse(hedged.get(missing).isPresent());
+	}
+
+	/** Hedged seeded buckets must behave as regular buckets. */
+	@Test
+	public void exercise() throws Exception {
+		final Bocas primary = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		final Bocas seed = BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+		BocasExerciser.exercise(builder().seeded(primary, seed));
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+
+/**
+ * Test for instrumented buckets.
+ */
+public class InstrumentedBocasTest {
+	private static Bocas memory() {
+		return BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+	}
+
+	/** Returns the metrics of the operations of a bucket, by operation. */
+	private static Map<BocasOperation, BocasOperationStats> stats(BocasMetrics metrics, String bucket) {
+		final Map<BocasOperation, BocasOperationStats> map = Maps.newEnumMap(BocasOperation.class);
+		for (BocasOperationStats s : metrics.getStats(bucket)) {
+			map.put(s.getOperation(), s);
+		}
+		return map;
+	}
+
+	@Test
+	public void exercise() throws Exception {
+		final BocasMetrics metrics = BocasServices.metrics();
+		final BocasService service = BocasServices.instrumented().sink(metrics).build(BocasServices.shared(memory()));
+		BocasExerciser.exercise(service.getBucket("test"));
+		assertEquals(metrics.getBuckets(), ImmutableList.of("test"));
+		final Map<BocasOperation, BocasOperationStats> stats = stats(metrics, "test");
+		assertTrue(stats.get(BocasOperation.PUT).getByteCount() > 0);
+		assertTrue(stats.get(BocasOperation.GET).getCount() > 0);
+		for (BocasOperationStats s : stats.values()) {
+			assertEquals(s.getErrorCount(), 0L);
+			assertTrue(s.getLatency50() <= s.getLatency99());
+			assertTrue(s.getLatency999() <= s.getMaxLatency());
+		}
+	}
+
+	/** Keys, bytes and errors must be recorded per operation. */
+	@Test
+	public void counters() throws Exception {
+		final BocasMetrics metrics = BocasServices.metrics();
+		final AtomicInteger recorded = new AtomicInteger();
+		final Bocas bocas = BocasServices.instrumented().sink(new BocasMetricsSink() {
+			@Override
+			public void record(String bucket, BocasOperation operation, long nanos, int keys, long bytes, boolean failed) {
+				throw new IllegalStateException();
+			}
+		}).sink(metrics).sink(new BocasMetricsSink() {
+			@Override
+			public void record(String bucket, BocasOperation operation, long nanos, int keys, long bytes, boolean failed) {
+				recorded.incrementAndGet();
+			}
+		}).build(memory(), "b");
+		final MemoryByteSource v1 = BocasExerciser.data();
+		final MemoryByteSource v2 = BocasExerciser.data();
+		final ByteString k1 = bocas.put(v1);
+		final List<ByteString> keys = bocas.putAll(ImmutableList.of(v1, v2));
+		assertTrue(bocas.get(k1).isPresent());
+		assertEquals(bocas.get(keys).size(), 2);
+		assertEquals(bocas.contained(ImmutableList.of(k1, sha256().hash(BocasExerciser.data()))).size(), 1);
+		final ByteString k2 = bocas.put(v2.openStream());
+		assertEquals(k2, keys.get(1));
+		try {
+			bocas.scan("not a cursor", 10, false);
+			assertFalse(true, "Exception expected");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		final Map<BocasOperation, BocasOperationStats> stats = stats(metrics, "b");
+		assertEquals(recorded.get(), 7);
+		assertEquals(stats.get(BocasOperation.PUT).getCount(), 2L);
+		assertEquals(stats.get(BocasOperation.PUT).getByteCount(), v1.size() + v2.size());
+		assertEquals(stats.get(BocasOperation.PUT_ALL).getKeyCount(), 2L);
+		assertEquals(stats.get(BocasOperation.PUT_ALL).getByteCount(), v1.size() + v2.size());
+		assertEquals(stats.get(BocasOperation.GET).getByteCount(), v1.size());
+		assertEquals(stats.get(BocasOperation.GET_ALL).getAverageKeys(), 2.0);
+		assertEquals(stats.get(BocasOperation.CONTAINED).getKeyCount(), 2L);
+		assertEquals(stats.get(BocasOperation.SCAN).getErrorCount(), 1L);
+		assertFalse(stats.containsKey(BocasOperation.CONTAINS));
+		metrics.reset();
+		assertTrue(metrics.getStats("b").isEmpty());
+	}
+
+	/** Percentiles must be within the histogram precision. */
+	@Test
+	public void histogram() {
+		final BocasMetrics metrics = BocasServices.metrics();
+		for (long i = 1; i <= 100000; i++) {
+			metrics.record("h", BocasOperation.GET, i * 1000L, 1, 0L, false);
+		}
+		final BocasOperationStats stats = metrics.getStats("h").get(0);
+		assertEquals(stats.getCount(), 100000L);
+		assertEquals(stats.getMaxLatency(), 100000000L);
+		assertEquals(stats.getMeanLatency(), 50000500.0, 1.0);
+		for (double p : new double[] { 1.0, 50.0, 90.0, 99.0, 99.9 }) {
+			final double expected = p * 1000000.0;
+			assertEquals(stats.latencyAt(p), expected, expected * 0.032);
+		}
+		assertEquals(stats.latencyAt(100.0), 100000000L);
+	}
+
+	/** The metrics must be readable through JMX. */
+	@Test
+	public void mbean() throws Exception {
+		final BocasMetrics metrics = BocasServices.metrics();
+		BocasServices.instrumented().sink(metrics).build(memory(), "jmx").put(BocasExerciser.data());
+		final ObjectName name = metrics.registerMBean("test");
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			final CompositeData[] stats = (CompositeData[]) server.getAttribute(name, "Stats");
+			assertEquals(stats.length, 1);
+			assertEquals(stats[0].get("bucket"), "jmx");
+			assertEquals(stats[0].get("operation"), BocasOperation.PUT.name());
+			assertEquals(stats[0].get("count"), 1L);
+			server.invoke(name, "reset", new Object[0], new String[0]);
+			assertTrue(metrics.getStats().isEmpty());
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	/** Values must not be read just to be measured. */
+	@Test
+	public void unknownSizes() throws Exception {
+		final BocasMetrics metrics = BocasServices.metrics();
+		final Bocas bocas = BocasServices.instrumented().sink(metrics).build(memory(), "u");
+		final MemoryByteSource data = BocasExerciser.data();
+		bocas.put(new ByteSource() {
+			@Override
+			public InputStream openStream() throws IOException {
+				return data.openStream();
+			}
+		});
+		assertEquals(metrics.getStats("u").get(0).getByteCount(), 0L);
+	}
+}
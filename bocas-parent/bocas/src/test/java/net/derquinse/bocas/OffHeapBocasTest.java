@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.io.ByteSource;
+
+/**
+ * Test for {@link OffHeapBocas}.
+ */
+public class OffHeapBocasTest {
+	/** Small slabs, so that values are spread across several ones and large values get their own. */
+	private BocasService memory = BocasServices.shared(BocasServices.offHeapBucket(sha256(), 16384));
+
+	@Test
+	public void test() throws Exception {
+		BocasExerciser.exercise(memory.getBucket("test"));
+	}
+
+	@Test(dependsOnMethods = "test")
+	public void cached() throws Exception {
+		BocasExerciser.cached(memory, "test");
+	}
+
+	@Test(dependsOnMethods = "cached")
+	public void fallback() throws Exception {
+		BocasExerciser.fallback(memory, "test");
+	}
+
+	/** Many small entries, growing the index stripes. Scans must return keys in order. */
+	@Test
+	public void many() throws Exception {
+		final Bocas bocas = BocasServices.offHeapBucket(sha256(), 4096);
+		final List<MemoryByteSource> values = Lists.newArrayList();
+		for (int i = 0; i < 5000; i++) {
+			values.add(BocasExerciser.data(16, 64));
+		}
+		final List<ByteString> keys = bocas.putAll(values);
+		assertEquals(bocas.contained(keys).size(), keys.size());
+		final Map<ByteString, ByteSource> found = bocas.get(keys.subList(0, 100));
+		for (int i = 0; i < 100; i++) {
+			BocasExerciser.check(values.get(i), found.get(keys.get(i)));
+		}
+		final List<ByteString> scanned = Lists.newArrayList(BocasServices.keys(bocas, 333));
+		assertEquals(scanned.size(), keys.size());
+		assertTrue(Ordering.from(InternalUtils.KEY_ORDER).isStrictlyOrdered(scanned));
+		final BocasKeyPage page = bocas.scan(null, Integer.MAX_VALUE, true);
+		assertEquals(page.getKeys(), scanned);
+		assertEquals(page.getSizes().size(), keys.size());
+		assertTrue(page.isLast());
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark comparing the memory footprint of the heap and off-heap memory buckets. It is not run
+ * as part of the test suite, run it as a Java application with a large enough heap (e.g. -Xmx2g
+ * -XX:MaxDirectMemorySize=2g).
+ * @author Andres Rodriguez.
+ */
+public final class OffHeapFootprintBenchmark {
+	/** Number of entries in the bucket. */
+	private static final int ENTRIES = 500000;
+	/** Number of entries in each put. */
+	private static final int PUT_SIZE = 1000;
+	/** Number of full collections to time. */
+	private static final int COLLECTIONS = 3;
+
+	private OffHeapFootprintBenchmark() {
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		final Runtime r = Runtime.getRuntime();
+		return r.totalMemory() - r.freeMemory();
+	}
+
+	private static long gcMillis() {
+		long t = 0;
+		for (GarbageCollectorMXBean b : ManagementFactory.getGarbageCollectorMXBeans()) {
+			t += Math.max(0, b.getCollectionTime());
+		}
+		return t;
+	}
+
+	private static void run(String name, Bocas bocas) {
+		final long before = usedHeap();
+		final List<ByteString> keys = Lists.newArrayListWithCapacity(ENTRIES);
+		Stopwatch w = Stopwatch.createStarted();
+		for (int i = 0; i < ENTRIES; i += PUT_SIZE) {
+			final List<MemoryByteSource> values = Lists.newArrayListWithCapacity(PUT_SIZE);
+			for (int j = 0; j < PUT_SIZE; j++) {
+				values.add(BocasExerciser.data(64, 256));
+			}
+			keys.addAll(bocas.putAll(values));
+		}
+		System.out.printf("%s: put x %d: %s%n", name, ENTRIES, w);
+		final long heap = usedHeap() - before;
+		final long gc = gcMillis();
+		for (int i = 0; i < COLLECTIONS; i++) {
+			System.gc();
+		}
+		final long gcTime = (gcMillis() - gc) / COLLECTIONS;
+		final long offHeap = bocas instanceof OffHeapBocas ? ((OffHeapBocas) bocas).getAllocatedBytes() : 0L;
+		System.out.printf("%s: heap %d KB (%d bytes/entry), off-heap %d KB, full GC %d ms%n", name, heap / 1024,
+				heap / ENTRIES, offHeap / 1024, gcTime);
+		w = Stopwatch.createStarted();
+		int found = 0;
+		for (ByteString key : keys) {
+			if (bocas.get(key).isPresent()) {
+				found++;
+			}
+		}
+		System.out.printf("%s: get x %d: %s (%d found)%n", name, ENTRIES, w, found);
+		// Keep the bucket reachable until measured.
+		bocas.close();
+	}
+
+	public static void main(String[] args) throws Exception {
+		run("memory", BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get()));
+		run("off-heap", BocasServices.offHeapBucket(sha256()));
+	}
+}
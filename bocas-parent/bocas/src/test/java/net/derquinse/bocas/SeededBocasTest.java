@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Test for seeded buckets.
+ */
+public class SeededBocasTest {
+	private static Bocas newBucket() {
+		return BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+	}
+
+	/** Bucket counting the keys requested. */
+	private static final class CountingBocas extends ForwardingBocas {
+		final Bocas delegate = newBucket();
+		final Multiset<ByteString> requested = ConcurrentHashMultiset.create();
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		@Override
+		public Set<ByteString> contained(Iterable<ByteString> keys) {
+			requested.addAll(Lists.newArrayList(keys));
+			return super.contained(keys);
+		}
+
+		@Override
+		public Map<ByteString, ByteSource> get(Iterable<ByteString> keys) {
+			requested.addAll(Lists.newArrayList(keys));
+			return super.get(keys);
+		}
+	}
+
+	private static void await(Bocas bocas, Set<ByteString> keys) throws InterruptedException {
+		for (int i = 0; i < 100 && bocas.contained(keys).size() < keys.size(); i++) {
+			Thread.sleep(20L);
+		}
+		assertEquals(bocas.contained(keys), keys);
+	}
+
+	@Test
+	public void exercise() throws Exception {
+		BocasExerciser.exercise(BocasServices.seeded().promote(100).speculative(0.5).build(newBucket(), newBucket()));
+	}
+
+	/** Seed hits must be written into the primary. */
+	@Test
+	public void promotion() throws Exception {
+		final Bocas primary = newBucket();
+		final Bocas seed = newBucket();
+		final Bocas seeded = BocasServices.seeded().promote(100).build(primary, seed);
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		seed.putAll(data.values());
+		final ByteString key = data.keySet().iterator().next();
+		assertTrue(seeded.get(key).isPresent());
+		await(primary, Collections.singleton(key));
+		assertEquals(seeded.get(data.keySet()).size(), data.size());
+		await(primary, data.keySet());
+	}
+
+	/** Promotions in flight must not be repeated, and must be dropped beyond the capacity. */
+	@Test
+	public void bounded() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Bocas delegate = newBucket();
+		final Bocas primary = new ForwardingBocas() {
+			@Override
+			protected Bocas delegate() {
+				return delegate;
+			}
+
+			@Override
+			public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+				Uninterruptibles.awaitUninterruptibly(latch);
+				return super.putAll(values);
+			}
+		};
+		final Bocas seed = newBucket();
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 20);
+		seed.putAll(data.values());
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			final SeedPromoter promoter = new SeedPromoter(primary, executor, 10);
+			final Map<ByteString, ByteSource> values = seed.get(data.keySet());
+			promoter.promote(values);
+			promoter.promote(values);
+			assertEquals(promoter.getPendingCount(), 10);
+			assertEquals(promoter.getDroppedCount(), 20L);
+			latch.countDown();
+			for (int i = 0; i < 100 && promoter.getPendingCount() > 0; i++) {
+				Thread.sleep(20L);
+			}
+			assertEquals(promoter.getPromotedCount(), 10L);
+		} finally {
+			latch.countDown();
+			executor.shutdown();
+		}
+	}
+
+	/** Bulk reads must probe the seed in parallel when the primary hit rate is low. */
+	@Test
+	public void speculative() throws Exception {
+		final Bocas primary = newBucket();
+		final CountingBocas seed = new CountingBocas();
+		final Bocas seeded = new SeededBocas(primary, seed, null, MoreExecutors.directExecutor(), 0, 0.5);
+		final Map<ByteString, MemoryByteSource> inPrimary = BocasExerciser.dataSet(sha256(), 10);
+		final Map<ByteString, MemoryByteSource> inSeed = BocasExerciser.dataSet(sha256(), 10);
+		primary.putAll(inPrimary.values());
+		seed.delegate.putAll(inSeed.values());
+		// Missing entries lower the hit rate.
+		for (int i = 0; i < 50; i++) {
+			assertEquals(seeded.get(inSeed.keySet()).size(), inSeed.size());
+		}
+		seed.requested.clear();
+		final Iterable<ByteString> keys = Iterables.concat(inPrimary.keySet(), inSeed.keySet());
+		assertEquals(seeded.get(keys).size(), 20);
+		assertEquals(seeded.contained(keys).size(), 20);
+		// Every key is probed in the seed.
+		for (ByteString key : inPrimary.keySet()) {
+			assertEquals(seed.requested.count(key), 2);
+		}
+	}
+}
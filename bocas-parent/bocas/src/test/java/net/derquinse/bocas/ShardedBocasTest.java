@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.common.base.ByteString;
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Test for sharded buckets.
+ */
+public class ShardedBocasTest {
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private static Bocas newBucket() {
+		return BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get());
+	}
+
+	private static Map<String, Bocas> shards(int from, int to) {
+		final ImmutableMap.Builder<String, Bocas> builder = ImmutableMap.builder();
+		for (int i = from; i < to; i++) {
+			builder.put("shard" + i, newBucket());
+		}
+		return builder.build();
+	}
+
+	/** Returns every key in a bucket, checking each one is returned once. */
+	private static Set<ByteString> scan(Bocas bocas) {
+		final Set<ByteString> keys = Sets.newHashSet();
+		for (ByteString key : BocasServices.keys(bocas, 7)) {
+			assertTrue(keys.add(key), "Key scanned twice");
+		}
+		return keys;
+	}
+
+	@AfterClass
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void exercise() throws Exception {
+		BocasExerciser.exercise(BocasServices.sharded(shards(0, 4), executor));
+		BocasExerciser.exercise(BocasServices.sharded(shards(0, 3), null));
+	}
+
+	/** Entries must be spread among the shards. */
+	@Test
+	public void distribution() throws Exception {
+		final Map<String, Bocas> shards = shards(0, 4);
+		final Bocas sharded = BocasServices.sharded(shards, executor);
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 400);
+		sharded.putAll(data.values());
+		assertEquals(sharded.contained(data.keySet()), data.keySet());
+		assertEquals(sharded.get(data.keySet()).size(), data.size());
+		for (Bocas shard : shards.values()) {
+			final int n = scan(shard).size();
+			assertTrue(n > 50 && n < 150, "Unbalanced shard: " + n);
+		}
+		assertEquals(scan(sharded), data.keySet());
+	}
+
+	/** Only the affected entries must be moved when adding shards, and remain readable meanwhile. */
+	@Test
+	public void rebalance() throws Exception {
+		final ShardedBocas sharded = BocasServices.sharded(shards(0, 3), executor);
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 300);
+		sharded.putAll(data.values());
+		final Map<String, Bocas> added = shards(3, 4);
+		sharded.addShards(added);
+		assertTrue(sharded.isRebalancing());
+		assertEquals(sharded.getShardCount(), 4);
+		assertEquals(sharded.contained(data.keySet()), data.keySet());
+		assertEquals(sharded.get(data.keySet()).size(), data.size());
+		for (ByteString key : data.keySet()) {
+			assertTrue(sharded.contains(key));
+		}
+		assertEquals(scan(sharded), data.keySet());
+		final long moved = sharded.rebalance();
+		assertFalse(sharded.isRebalancing());
+		assertTrue(moved > 30 && moved < 150, "Unexpected number of entries moved: " + moved);
+		final Bocas shard = added.values().iterator().next();
+		assertEquals(scan(shard).size(), moved);
+		assertEquals(sharded.contained(data.keySet()), data.keySet());
+		assertEquals(scan(sharded), data.keySet());
+		assertEquals(sharded.rebalance(), 0L);
+	}
+
+	/** Writes started before an addition must reach their new shard even if rebalanced meanwhile. */
+	@Test
+	public void concurrentWrite() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ImmutableMap.Builder<String, Bocas> builder = ImmutableMap.builder();
+		for (int i = 0; i < 3; i++) {
+			builder.put("shard" + i, new ForwardingBocas() {
+				final Bocas delegate = newBucket();
+
+				@Override
+				protected Bocas delegate() {
+					return delegate;
+				}
+
+				@Override
+				public ByteString put(ByteSource value) {
+					entered.countDown();
+					Uninterruptibles.awaitUninterruptibly(release);
+					return super.put(value);
+				}
+			});
+		}
+		final ShardedBocas sharded = BocasServices.sharded(builder.build(), executor);
+		final List<String> names = ImmutableList.of("shard0", "shard1", "shard2");
+		final HashRing ring = new HashRing(names).add(ImmutableList.of("shard3"));
+		MemoryByteSource data;
+		do {
+			data = BocasExerciser.data();
+		} while (ring.shard(sha256().hash(data)) != 3);
+		final MemoryByteSource value = data;
+		final ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			final Future<ByteString> written = writer.submit(new Callable<ByteString>() {
+				@Override
+				public ByteString call() throws Exception {
+					return sharded.put(value);
+				}
+			});
+			assertTrue(entered.await(10L, TimeUnit.SECONDS));
+			final Map<String, Bocas> added = shards(3, 4);
+			sharded.addShards(added);
+			sharded.rebalance();
+			release.countDown();
+			final ByteString key = written.get(10L, TimeUnit.SECONDS);
+			assertTrue(added.get("shard3").contains(key));
+			assertTrue(sharded.contains(key));
+		} finally {
+			release.countDown();
+			writer.shutdown();
+		}
+	}
+
+	/** A failed addition must leave every bucket with the same shards. */
+	@Test
+	public void serviceFailedAddition() throws Exception {
+		final ShardedBocasService service = BocasServices.shardedService(
+				ImmutableMap.of("a", BocasServices.shared(newBucket()), "b", BocasServices.shared(newBucket())), executor);
+		final ShardedBocas x = (ShardedBocas) service.getBucket("x");
+		final ShardedBocas y = (ShardedBocas) service.getBucket("y");
+		service.addShards(ImmutableMap.of("c", BocasServices.shared(newBucket())));
+		try {
+			service.rebalance(ImmutableList.of("x"));
+			fail("Bucket y has not been rebalanced");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		try {
+			service.addShards(ImmutableMap.of("d", BocasServices.shared(newBucket())));
+			fail("Bucket y has not been rebalanced");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		assertEquals(x.getShardCount(), 3);
+		assertEquals(y.getShardCount(), 3);
+		assertTrue(y.isRebalancing());
+		// Completing the rebalancing allows new additions.
+		service.rebalance(ImmutableList.of("y"));
+		service.addShards(ImmutableMap.of("d", BocasServices.shared(newBucket())));
+		assertEquals(x.getShardCount(), 4);
+		assertEquals(y.getShardCount(), 4);
+	}
+
+	/** Sharded services must shard every bucket. */
+	@Test
+	public void service() throws Exception {
+		final ShardedBocasService service = BocasServices.shardedService(
+				ImmutableMap.of("a", BocasServices.shared(newBucket()), "b", BocasServices.shared(newBucket())), executor);
+		final Map<ByteString, MemoryByteSource> data = BocasExerciser.dataSet(sha256(), 100);
+		service.getBucket("test").putAll(data.values());
+		service.addShards(ImmutableMap.of("c", BocasServices.shared(newBucket())));
+		assertEquals(service.getBucket("test").contained(data.keySet()), data.keySet());
+		assertTrue(service.rebalance(ImmutableList.of("test")) > 0L);
+		assertEquals(service.getBucket("test").get(data.keySet()).size(), data.size());
+	}
+}
@@ -19,15 +19,27 @@ import static net.derquinse.bocas.BocasHashFunction.sha256;
 import static net.derquinse.bocas.BocasServices.shared;
 import static net.derquinse.common.io.MemoryByteSourceLoader.get;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import net.derquinse.common.base.ByteString;
 import net.derquinse.common.io.MemoryByteSource;
 
 import org.testng.annotations.Test;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 /**
  * Test for synchronous replicas.
  */
@@ -89,4 +101,126 @@ public class SyncReplicaTest {
 		test(primary.getBucket("test"), replica.getBucket("test"));
 	}
 
+	/** Bucket reading the values some time after being written. */
+	private static final class SlowBocas extends ForwardingBocas {
+		final Bocas delegate = newBucket();
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		@Override
+		public ByteString put(ByteSource value) {
+			Uninterruptibles.sleepUninterruptibly(200L, TimeUnit.MILLISECONDS);
+			return super.put(value);
+		}
+	}
+
+	/** Bucket failing every write. */
+	private static final class FailingBocas extends ForwardingBocas {
+		final Bocas delegate = newBucket();
+
+		@Override
+		protected Bocas delegate() {
+			return delegate;
+		}
+
+		@Override
+		public ByteString put(ByteSource value) {
+			throw new BocasException("Write failed");
+		}
+
+		@Override
+		public List<ByteString> putAll(Iterable<? extends ByteSource> values) {
+			throw new BocasException("Write failed");
+		}
+	}
+
+	private void quorum(boolean parallel) throws Exception {
+		final ExecutorService executor = parallel ? Executors.newFixedThreadPool(3) : null;
+		final Bocas primary = newBucket();
+		final Bocas replica = newBucket();
+		final FailingBocas failing = new FailingBocas();
+		final Map<ByteString, MemoryByteSource> set1 = BocasExerciser.dataSet(sha256(), 20);
+		final Map<ByteString, MemoryByteSource> set2 = BocasExerciser.dataSet(sha256(), 20);
+		try {
+			// Quorum reached
+			Bocas replicated = BocasServices.syncReplica(primary, ImmutableList.of(failing, replica), true, 1,
+					executor);
+			replicated.putAll(set1.values());
+			assertEquals(primary.contained(set1.keySet()), set1.keySet());
+			assertEquals(replica.contained(set1.keySet()), set1.keySet());
+			// Quorum not reached
+			replicated = BocasServices.syncReplica(primary, ImmutableList.of(replica, failing), true, 2, executor);
+			try {
+				replicated.putAll(set2.values());
+				fail("Partial write expected");
+			} catch (PartialWriteException e) {
+				assertNull(e.getPrimaryFailure());
+				assertNull(e.getReplicaFailures().get(0));
+				assertNotNull(e.getReplicaFailures().get(1));
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void serialQuorum() throws Exception {
+		quorum(false);
+	}
+
+	@Test
+	public void parallelQuorum() throws Exception {
+		quorum(true);
+	}
+
+	@Test
+	public void parallel() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Bocas primary = newBucket();
+			final Bocas replica = newBucket();
+			final Map<ByteString, MemoryByteSource> set1 = BocasExerciser.dataSet(sha256(), 20);
+			final Map<ByteString, MemoryByteSource> set2 = BocasExerciser.dataSet(sha256(), 20);
+			primary.putAll(set1.values());
+			final Bocas replicated = BocasServices.syncReplica(primary, ImmutableList.of(replica), true, 1, executor);
+			// Each bucket checks its own entries, so set 1 is copied to the replica.
+			replicated.putAll(set1.values());
+			replicated.putAll(set2.values());
+			assertEquals(replica.contained(set1.keySet()), set1.keySet());
+			assertEquals(primary.contained(set2.keySet()), set2.keySet());
+			assertEquals(replica.contained(set2.keySet()), set2.keySet());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/** Streamed values must be written to the replicas still in progress when the put returns. */
+	@Test
+	public void parallelStream() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			final Bocas primary = newBucket();
+			final Bocas replica = newBucket();
+			final SlowBocas slow = new SlowBocas();
+			final Bocas replicated = BocasServices.syncReplica(primary, ImmutableList.of(replica, slow), false, 1,
+					executor);
+			final MemoryByteSource value = BocasExerciser.data();
+			final ByteString key = replicated.put(value.openStream());
+			assertEquals(key, sha256().hash(value));
+			for (int i = 0; i < 100 && !slow.delegate.contains(key); i++) {
+				Thread.sleep(20L);
+			}
+			final Optional<ByteSource> written = slow.delegate.get(key);
+			assertTrue(written.isPresent());
+			assertTrue(written.get().contentEquals(value));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 }
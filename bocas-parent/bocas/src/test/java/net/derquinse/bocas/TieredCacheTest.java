@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import net.derquinse.common.io.MemoryByteSource;
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Test for {@link TieredCache}.
+ */
+public class TieredCacheTest {
+	/** Entries evicted from the memory tiers must be demoted to disk and promoted on hit. */
+	@Test
+	public void demotion() throws Exception {
+		final File dir = Files.createTempDir();
+		final TieredCache<Integer> cache = new TieredCache<Integer>(MemoryByteSourceLoader.get(), 0L, 0L,
+				new DiskCacheTier<Integer>(dir, 1 << 20, 1 << 16));
+		final MemoryByteSource value = BocasExerciser.data();
+		cache.put(1, value);
+		final MemoryByteSource found = cache.getIfPresent(1);
+		assertNotNull(found);
+		BocasExerciser.check(found, value);
+		assertEquals(cache.stats().hitCount(), 1L);
+		assertEquals(cache.tierStats().get(0).missCount(), 1L);
+		assertEquals(cache.tierStats().get(1).missCount(), 1L);
+		assertEquals(cache.tierStats().get(2).hitCount(), 1L);
+	}
+
+	/** The disk tier must drop its oldest segments when full. */
+	@Test
+	public void diskEviction() throws Exception {
+		final File dir = Files.createTempDir();
+		final DiskCacheTier<Integer> disk = new DiskCacheTier<Integer>(dir, 1 << 15, 1 << 14);
+		for (int i = 0; i < 10; i++) {
+			disk.put(i, BocasExerciser.data(5000, 6000));
+		}
+		assertTrue(disk.stats().evictionCount() > 0);
+		assertNotNull(disk.peek(9));
+		assertTrue(dir.listFiles().length <= 2);
+	}
+
+	/** Closing the disk tier must delete its segment files and stop storing values. */
+	@Test
+	public void diskClose() throws Exception {
+		final File dir = Files.createTempDir();
+		final DiskCacheTier<Integer> disk = new DiskCacheTier<Integer>(dir, 1 << 15, 1 << 14);
+		disk.put(1, BocasExerciser.data());
+		assertEquals(dir.listFiles().length, 1);
+		disk.close();
+		assertEquals(dir.listFiles().length, 0);
+		assertEquals(disk.size(), 0L);
+		assertEquals(disk.stats().evictionCount(), 0L);
+		disk.put(2, BocasExerciser.data());
+		assertEquals(dir.listFiles().length, 0);
+	}
+
+	/** A disk tier that can't hold a single segment must be rejected. */
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void diskTooSmall() throws Exception {
+		final BocasService memory = BocasServices.shared(BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get()));
+		BocasServices.tieredCache().heapMaximumWeight(100000L).disk(Files.createTempDir(), 1 << 20).build(memory);
+	}
+
+	@Test
+	public void service() throws Exception {
+		final BocasService memory = BocasServices.shared(BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get()));
+		final File dir = Files.createTempDir();
+		final TieredCachingBocasService cache = BocasServices.tieredCache().heapMaximumWeight(100000L)
+				.offHeapMaximumWeight(200000L).disk(dir, 1 << 22).diskSegmentSize(1 << 20).build(memory);
+		BocasExerciser.exercise(cache.getBucket("test"));
+		assertTrue(cache.stats().requestCount() > 0);
+		assertEquals(cache.tierStats().size(), 3);
+		cache.close();
+		assertEquals(dir.listFiles().length, 0);
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.derquinse.bocas;
+
+import static net.derquinse.bocas.BocasHashFunction.sha256;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import net.derquinse.common.io.MemoryByteSourceLoader;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Test for {@link TinyLfuCache}.
+ */
+public class TinyLfuCacheTest {
+	private static TinyLfuCache<Integer, String> cache(long maximum) {
+		return new TinyLfuCache<Integer, String>(maximum, null, 0L, Ticker.systemTicker());
+	}
+
+	@Test
+	public void bounded() {
+		final TinyLfuCache<Integer, String> cache = cache(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(i, "v" + i);
+		}
+		assertEquals(cache.size(), 100L);
+		assertEquals(cache.stats().evictionCount(), 900L);
+		assertEquals(cache.asMap().size(), 100);
+	}
+
+	/** A burst of entries read once must not flush the frequently used ones. */
+	@Test
+	public void scanResistant() {
+		final TinyLfuCache<Integer, String> cache = cache(100);
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++) {
+				if (cache.getIfPresent(i) == null) {
+					cache.put(i, "hot" + i);
+				}
+			}
+		}
+		for (int i = 1000; i < 11000; i++) {
+			cache.put(i, "cold" + i);
+		}
+		int hot = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.asMap().containsKey(i)) {
+				hot++;
+			}
+		}
+		assertTrue(hot >= 45, "Only " + hot + " hot entries survived");
+	}
+
+	@Test
+	public void load() throws Exception {
+		final TinyLfuCache<Integer, String> cache = cache(10);
+		final Callable<String> loader = new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return "loaded";
+			}
+		};
+		assertEquals(cache.get(1, loader), "loaded");
+		assertEquals(cache.get(1, loader), "loaded");
+		assertEquals(cache.stats().loadCount(), 1L);
+		assertEquals(cache.stats().hitCount(), 1L);
+		assertEquals(cache.stats().missCount(), 1L);
+		cache.invalidate(1);
+		assertNull(cache.getIfPresent(1));
+	}
+
+	@Test
+	public void service() throws Exception {
+		final BocasService memory = BocasServices.shared(BocasServices.memoryBucket(sha256(), MemoryByteSourceLoader.get()));
+		final CachingBocasService cache = BocasServices.cache().tinyLfu().maximumWeight(10000000L)
+				.expireAfterAccess(10L, TimeUnit.MINUTES).build(memory);
+		BocasExerciser.exercise(cache.getBucket("test"));
+		assertTrue(cache.stats().requestCount() > 0);
+	}
+
+}